@@ -0,0 +1,168 @@
+package com.github.kilianB.jmh;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import com.github.kilianB.hash.Hash;
+
+/**
+ * Deterministic synthetic images and hashes used as benchmark input. The same
+ * seed always produces the same data, keeping results of different runs
+ * comparable without shipping image files.
+ *
+ * @author Kilian
+ * @since 3.0.1
+ */
+class BenchmarkData {
+
+	/** Number of hashes derived from the same cluster center */
+	static final int CLUSTER_SIZE = 8;
+
+	/** Maximum number of bits flipped to derive a hash from its cluster center */
+	static final int MAX_FLIPS = 6;
+
+	private BenchmarkData() {
+	}
+
+	/**
+	 * Create a photo like image consisting of a gradient background and a few
+	 * random shapes.
+	 *
+	 * @param width  the width of the image
+	 * @param height the height of the image
+	 * @param seed   the seed determining the content
+	 * @return the image
+	 */
+	static BufferedImage createImage(int width, int height, long seed) {
+		Random rng = new Random(seed);
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+		Graphics2D g = image.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		g.setPaint(new GradientPaint(0, 0, randomColor(rng), width, height, randomColor(rng)));
+		g.fillRect(0, 0, width, height);
+		for (int i = 0; i < 12; i++) {
+			g.setColor(randomColor(rng));
+			int x = rng.nextInt(width);
+			int y = rng.nextInt(height);
+			int w = 1 + rng.nextInt(width / 2);
+			int h = 1 + rng.nextInt(height / 2);
+			if (rng.nextBoolean()) {
+				g.fillOval(x - w / 2, y - h / 2, w, h);
+			} else {
+				g.fillRect(x - w / 2, y - h / 2, w, h);
+			}
+		}
+		g.dispose();
+		return image;
+	}
+
+	/**
+	 * Create a near duplicate of an image by adding noise to every pixel.
+	 *
+	 * @param image the original image
+	 * @param noise the maximum deviation per color channel
+	 * @param seed  the seed determining the noise
+	 * @return a new image
+	 */
+	static BufferedImage createNearDuplicate(BufferedImage image, int noise, long seed) {
+		Random rng = new Random(seed);
+		BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+		for (int x = 0; x < image.getWidth(); x++) {
+			for (int y = 0; y < image.getHeight(); y++) {
+				int rgb = image.getRGB(x, y);
+				int r = clamp(((rgb >> 16) & 0xFF) + rng.nextInt(2 * noise + 1) - noise);
+				int gr = clamp(((rgb >> 8) & 0xFF) + rng.nextInt(2 * noise + 1) - noise);
+				int b = clamp((rgb & 0xFF) + rng.nextInt(2 * noise + 1) - noise);
+				copy.setRGB(x, y, (r << 16) | (gr << 8) | b);
+			}
+		}
+		return copy;
+	}
+
+	/**
+	 * Create a uniformly distributed random hash.
+	 *
+	 * @param bitResolution the number of bits of the hash
+	 * @param rng           the random source
+	 * @return the hash
+	 */
+	static Hash randomHash(int bitResolution, Random rng) {
+		long[] words = new long[(bitResolution + 63) / 64];
+		for (int i = 0; i < words.length; i++) {
+			words[i] = rng.nextLong();
+		}
+		int rest = bitResolution % 64;
+		if (rest != 0) {
+			words[words.length - 1] &= (1L << rest) - 1;
+		}
+		return new Hash(words, bitResolution, 0);
+	}
+
+	/**
+	 * Derive a near duplicate hash by flipping up to {@link #MAX_FLIPS} random
+	 * bits.
+	 *
+	 * @param hash the original hash
+	 * @param rng  the random source
+	 * @return the new hash
+	 */
+	static Hash flipBits(Hash hash, Random rng) {
+		long[] words = hash.getPackedHashValue().clone();
+		for (int flip = rng.nextInt(MAX_FLIPS + 1); flip > 0; flip--) {
+			int bit = rng.nextInt(hash.getBitResolution());
+			words[bit / 64] ^= 1L << (bit % 64);
+		}
+		return new Hash(words, hash.getBitResolution(), hash.getAlgorithmId());
+	}
+
+	/**
+	 * Create a corpus of hashes forming clusters of {@link #CLUSTER_SIZE} near
+	 * duplicates, mimicking a collection containing similar images.
+	 *
+	 * @param size          the number of hashes
+	 * @param bitResolution the number of bits of each hash
+	 * @param seed          the seed determining the hashes
+	 * @return the corpus
+	 */
+	static Hash[] createCorpus(int size, int bitResolution, long seed) {
+		Random rng = new Random(seed);
+		Hash[] corpus = new Hash[size];
+		Hash center = null;
+		for (int i = 0; i < size; i++) {
+			if (i % CLUSTER_SIZE == 0) {
+				center = randomHash(bitResolution, rng);
+			}
+			corpus[i] = flipBits(center, rng);
+		}
+		return corpus;
+	}
+
+	/**
+	 * Create queries which are near duplicates of random corpus entries.
+	 *
+	 * @param corpus the corpus
+	 * @param count  the number of queries
+	 * @param seed   the seed determining the queries
+	 * @return the queries
+	 */
+	static Hash[] createQueries(Hash[] corpus, int count, long seed) {
+		Random rng = new Random(seed);
+		Hash[] queries = new Hash[count];
+		for (int i = 0; i < count; i++) {
+			queries[i] = flipBits(corpus[rng.nextInt(corpus.length)], rng);
+		}
+		return queries;
+	}
+
+	private static Color randomColor(Random rng) {
+		return new Color(rng.nextInt(256), rng.nextInt(256), rng.nextInt(256));
+	}
+
+	private static int clamp(int value) {
+		return Math.max(0, Math.min(255, value));
+	}
+}
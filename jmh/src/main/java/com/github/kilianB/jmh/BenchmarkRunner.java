@@ -0,0 +1,59 @@
+package com.github.kilianB.jmh;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmark jar. Accepts the same command line options as
+ * the default jmh main class but writes the results as json to
+ * <code>jmh-result.json</code> unless a different result format is requested
+ * via <code>-rf</code>.
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar                      all benchmarks
+ * java -jar target/benchmarks.jar HashingBenchmark     a single class
+ * java -jar target/benchmarks.jar -p bitResolution=64  a subset of parameters
+ * java -jar target/benchmarks.jar -h                   available options
+ * </pre>
+ *
+ * @author Kilian
+ * @since 3.0.1
+ */
+public class BenchmarkRunner {
+
+	public static void main(String[] args) throws RunnerException, IOException {
+		CommandLineOptions cmd;
+		try {
+			cmd = new CommandLineOptions(args);
+		} catch (CommandLineOptionException e) {
+			System.err.println("Error parsing command line:");
+			System.err.println(" " + e.getMessage());
+			System.exit(1);
+			return;
+		}
+
+		if (cmd.shouldHelp()) {
+			cmd.showHelp();
+			return;
+		}
+
+		ChainedOptionsBuilder options = new OptionsBuilder().parent(cmd);
+		if (!cmd.getResultFormat().hasValue()) {
+			options.resultFormat(ResultFormatType.JSON);
+		}
+
+		Runner runner = new Runner(options.build());
+		if (cmd.shouldList()) {
+			runner.list();
+		} else {
+			runner.run();
+		}
+	}
+}
@@ -0,0 +1,192 @@
+package com.github.kilianB.jmh;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.kilianB.hashAlgorithms.AverageHash;
+import com.github.kilianB.hashAlgorithms.HashingAlgorithm;
+import com.github.kilianB.hashAlgorithms.PerceptiveHash;
+import com.github.kilianB.matcher.persistent.ConcurrentConsecutiveMatcher;
+import com.github.kilianB.matcher.persistent.ConsecutiveMatcher;
+
+/**
+ * Throughput of a persistent matcher shared by multiple threads adding and
+ * querying images at the same time.
+ *
+ * <p>
+ * The {@link ConcurrentConsecutiveMatcher} is compared against a
+ * {@link ConsecutiveMatcher} guarded by a single lock. Every invocation
+ * distributes a fixed number of operations onto the worker threads. A
+ * configurable share of the operations adds a new image, the remaining
+ * operations query near duplicates of images contained in the matcher.
+ *
+ * @author Kilian
+ * @since 3.0.1
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConcurrentMatcherBenchmark {
+
+	static final int IMAGE_SIZE = 64;
+
+	static final int CORPUS_SIZE = 1000;
+
+	static final int OPERATIONS = 512;
+
+	static final double THRESHOLD = 0.25;
+
+	/**
+	 * A matcher reduced to the add and lookup operation
+	 */
+	interface SharedMatcher {
+		void add(String uniqueId, BufferedImage image);
+
+		int match(BufferedImage image);
+	}
+
+	@Param({ "Synchronized", "Concurrent" })
+	public String matcher;
+
+	@Param({ "1", "2", "4", "8" })
+	public int threads;
+
+	/** Percentage of operations adding an image */
+	@Param({ "0", "10" })
+	public int writePercent;
+
+	private SharedMatcher shared;
+
+	private ExecutorService executor;
+
+	private BufferedImage[] queries;
+
+	private BufferedImage[] additions;
+
+	/** True if the operation at the index adds an image */
+	private boolean[] isWrite;
+
+	private final AtomicInteger nextId = new AtomicInteger();
+
+	@Setup(Level.Trial)
+	public void setup() {
+		HashingAlgorithm[] algorithms = { new AverageHash(64), new PerceptiveHash(64) };
+		shared = createMatcher(algorithms);
+
+		BufferedImage[] images = new BufferedImage[CORPUS_SIZE];
+		for (int i = 0; i < CORPUS_SIZE; i++) {
+			images[i] = BenchmarkData.createImage(IMAGE_SIZE, IMAGE_SIZE, i);
+			shared.add(Integer.toString(nextId.getAndIncrement()), images[i]);
+		}
+
+		Random rng = new Random(0);
+		queries = new BufferedImage[OPERATIONS];
+		additions = new BufferedImage[OPERATIONS];
+		isWrite = new boolean[OPERATIONS];
+		for (int i = 0; i < OPERATIONS; i++) {
+			queries[i] = BenchmarkData.createNearDuplicate(images[rng.nextInt(CORPUS_SIZE)], 8, i);
+			additions[i] = BenchmarkData.createImage(IMAGE_SIZE, IMAGE_SIZE, CORPUS_SIZE + i);
+			isWrite[i] = rng.nextInt(100) < writePercent;
+		}
+
+		executor = Executors.newFixedThreadPool(threads);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		executor.shutdown();
+	}
+
+	private SharedMatcher createMatcher(HashingAlgorithm[] algorithms) {
+		switch (matcher) {
+		case "Synchronized": {
+			ConsecutiveMatcher m = new ConsecutiveMatcher(false);
+			for (HashingAlgorithm algo : algorithms) {
+				m.addHashingAlgorithm(algo, THRESHOLD);
+			}
+			return new SharedMatcher() {
+				@Override
+				public synchronized void add(String uniqueId, BufferedImage image) {
+					m.addImage(uniqueId, image);
+				}
+
+				@Override
+				public synchronized int match(BufferedImage image) {
+					return m.getMatchingImages(image).size();
+				}
+			};
+		}
+		case "Concurrent": {
+			ConcurrentConsecutiveMatcher m = new ConcurrentConsecutiveMatcher(false);
+			for (HashingAlgorithm algo : algorithms) {
+				m.addHashingAlgorithm(algo, THRESHOLD);
+			}
+			return new SharedMatcher() {
+				@Override
+				public void add(String uniqueId, BufferedImage image) {
+					m.addImage(uniqueId, image);
+				}
+
+				@Override
+				public int match(BufferedImage image) {
+					return m.getMatchingImages(image).size();
+				}
+			};
+		}
+		default:
+			throw new IllegalArgumentException("Unknown matcher " + matcher);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(OPERATIONS)
+	public long mixedOperations() throws InterruptedException, ExecutionException {
+		List<Callable<Long>> tasks = new ArrayList<>(threads);
+		for (int t = 0; t < threads; t++) {
+			int thread = t;
+			tasks.add(() -> {
+				long matches = 0;
+				for (int i = thread; i < OPERATIONS; i += threads) {
+					if (isWrite[i]) {
+						shared.add(Integer.toString(nextId.getAndIncrement()), additions[i]);
+					} else {
+						matches += shared.match(queries[i]);
+					}
+				}
+				return matches;
+			});
+		}
+		long matches = 0;
+		for (Future<Long> result : executor.invokeAll(tasks)) {
+			matches += result.get();
+		}
+		return matches;
+	}
+}
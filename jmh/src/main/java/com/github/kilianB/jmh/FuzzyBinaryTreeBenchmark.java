@@ -0,0 +1,78 @@
+package com.github.kilianB.jmh;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.kilianB.datastructures.tree.binaryTreeFuzzy.FuzzyBinaryTree;
+import com.github.kilianB.hash.FuzzyHash;
+import com.github.kilianB.hash.Hash;
+
+/**
+ * Nearest neighbour query performance of the fuzzy binary tree for different
+ * corpus sizes.
+ *
+ * <p>
+ * The tree is filled with one fuzzy hash per corpus entry of the
+ * {@link TreeBenchmark}, each merged from the entry and a few near duplicates
+ * of it. The fuzzy tree does not support range queries.
+ *
+ * @author Kilian
+ * @since 3.0.1
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FuzzyBinaryTreeBenchmark {
+
+	private static final int MERGED_HASHES = 4;
+
+	@Param({ "1000", "10000", "100000" })
+	public int corpusSize;
+
+	private FuzzyBinaryTree tree;
+
+	private Hash[] queries;
+
+	@Setup
+	public void setup() {
+		Hash[] corpus = BenchmarkData.createCorpus(corpusSize, TreeBenchmark.BIT_RESOLUTION, 0);
+		queries = BenchmarkData.createQueries(corpus, TreeBenchmark.QUERIES, 1);
+
+		Random rng = new Random(2);
+		tree = new FuzzyBinaryTree(false);
+		for (Hash hash : corpus) {
+			Hash[] members = new Hash[MERGED_HASHES];
+			members[0] = hash;
+			for (int i = 1; i < MERGED_HASHES; i++) {
+				members[i] = BenchmarkData.flipBits(hash, rng);
+			}
+			tree.addHash(new FuzzyHash(members));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(TreeBenchmark.QUERIES)
+	public long nearestNeighbour() {
+		long matches = 0;
+		for (Hash query : queries) {
+			matches += tree.getNearestNeighbour(query).size();
+		}
+		return matches;
+	}
+}
@@ -0,0 +1,78 @@
+package com.github.kilianB.jmh;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.kilianB.hash.FuzzyHash;
+import com.github.kilianB.hash.Hash;
+
+/**
+ * Cost of maintaining a fuzzy hash as done by the clustering code. Each
+ * invocation merges and subtracts a set of hashes and reads the resulting
+ * majority hash, or computes the weighted distance to a set of hashes.
+ *
+ * @author Kilian
+ * @since 3.0.1
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FuzzyHashBenchmark {
+
+	private static final int HASHES = 256;
+
+	@Param({ "64", "256", "1024" })
+	public int bitResolution;
+
+	private Hash[] hashes;
+
+	private FuzzyHash fuzzy;
+
+	@Setup
+	public void setup() {
+		Random rng = new Random(0);
+		hashes = new Hash[HASHES];
+		for (int i = 0; i < HASHES; i++) {
+			hashes[i] = BenchmarkData.randomHash(bitResolution, rng);
+		}
+		fuzzy = new FuzzyHash(hashes);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(HASHES)
+	public long mergeSubtract() {
+		long sum = 0;
+		for (int i = 0; i < HASHES; i++) {
+			fuzzy.mergeFast(hashes[i]);
+			sum += fuzzy.getPackedHashValue()[0];
+			fuzzy.subtractFast(hashes[i]);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(HASHES)
+	public double weightedDistance() {
+		double sum = 0;
+		for (int i = 0; i < HASHES; i++) {
+			sum += fuzzy.weightedDistance(hashes[i]);
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,118 @@
+package com.github.kilianB.jmh;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.kilianB.hash.HammingKernel;
+import com.github.kilianB.hash.Hash;
+
+/**
+ * Cost of computing the hamming distance between two hashes. Each invocation
+ * compares a set of different hash pairs to keep the branch predictor from
+ * learning a single input.
+ *
+ * <p>
+ * The one to many benchmarks scan a contiguous array of packed hashes using the
+ * scalar and the fastest available {@link HammingKernel}. Add the vector module
+ * to the class path and pass <code>--jvmArgs "--add-modules
+ * jdk.incubator.vector"</code> to compare the vectorized kernel.
+ *
+ * @author Kilian
+ * @since 3.0.1
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HammingDistanceBenchmark {
+
+	private static final int PAIRS = 1024;
+
+	@Param({ "64", "256", "1024" })
+	public int bitResolution;
+
+	private Hash[] first;
+	private Hash[] second;
+
+	private long[] needle;
+	private long[] haystack;
+	private int wordCount;
+	private int[] distances;
+
+	@Setup
+	public void setup() {
+		Random rng = new Random(0);
+		first = new Hash[PAIRS];
+		second = new Hash[PAIRS];
+		for (int i = 0; i < PAIRS; i++) {
+			first[i] = BenchmarkData.randomHash(bitResolution, rng);
+			second[i] = BenchmarkData.randomHash(bitResolution, rng);
+		}
+		needle = first[0].getPackedHashValue();
+		wordCount = needle.length;
+		haystack = new long[PAIRS * wordCount];
+		for (int i = 0; i < PAIRS; i++) {
+			System.arraycopy(second[i].getPackedHashValue(), 0, haystack, i * wordCount, wordCount);
+		}
+		distances = new int[PAIRS];
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PAIRS)
+	public long hammingDistance() {
+		long sum = 0;
+		for (int i = 0; i < PAIRS; i++) {
+			sum += first[i].hammingDistance(second[i]);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PAIRS)
+	public long hammingDistanceFast() {
+		long sum = 0;
+		for (int i = 0; i < PAIRS; i++) {
+			sum += first[i].hammingDistanceFast(second[i]);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PAIRS)
+	public double normalizedHammingDistanceFast() {
+		double sum = 0;
+		for (int i = 0; i < PAIRS; i++) {
+			sum += first[i].normalizedHammingDistanceFast(second[i]);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PAIRS)
+	public int[] oneToManyScalar() {
+		HammingKernel.scalar().distances(needle, haystack, wordCount, PAIRS, distances);
+		return distances;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PAIRS)
+	public int[] oneToManyKernel() {
+		HammingKernel.getInstance().distances(needle, haystack, wordCount, PAIRS, distances);
+		return distances;
+	}
+}
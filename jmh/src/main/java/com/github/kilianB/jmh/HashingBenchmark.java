@@ -0,0 +1,120 @@
+package com.github.kilianB.jmh;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.kilianB.hash.Hash;
+import com.github.kilianB.hashAlgorithms.AverageColorHash;
+import com.github.kilianB.hashAlgorithms.AverageHash;
+import com.github.kilianB.hashAlgorithms.AverageKernelHash;
+import com.github.kilianB.hashAlgorithms.DifferenceHash;
+import com.github.kilianB.hashAlgorithms.DifferenceHash.Precision;
+import com.github.kilianB.hashAlgorithms.HashingAlgorithm;
+import com.github.kilianB.hashAlgorithms.MedianHash;
+import com.github.kilianB.hashAlgorithms.PerceptiveHash;
+import com.github.kilianB.hashAlgorithms.PreparedImage;
+import com.github.kilianB.hashAlgorithms.RotAverageHash;
+import com.github.kilianB.hashAlgorithms.RotPHash;
+import com.github.kilianB.hashAlgorithms.WaveletHash;
+
+/**
+ * Time to hash a single image for each hashing algorithm at different bit
+ * resolutions and source image sizes.
+ *
+ * <p>
+ * {@link #hash()} measures the entire pipeline including rescaling the source
+ * image. {@link #hashPrepared()} reuses a {@link PreparedImage}, measuring the
+ * algorithm specific part only.
+ *
+ * @author Kilian
+ * @since 3.0.1
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HashingBenchmark {
+
+	@Param({ "AverageHash", "AverageColorHash", "AverageKernelHash", "DifferenceHash", "MedianHash", "PerceptiveHash",
+			"RotAverageHash", "RotPHash", "WaveletHash" })
+	public String algorithm;
+
+	@Param({ "16", "64", "256" })
+	public int bitResolution;
+
+	/** Length of the sides of the hashed image */
+	@Param({ "256", "1024" })
+	public int imageSize;
+
+	private HashingAlgorithm hasher;
+
+	private BufferedImage image;
+
+	private PreparedImage prepared;
+
+	@Setup
+	public void setup() {
+		hasher = createAlgorithm(algorithm, bitResolution);
+		image = BenchmarkData.createImage(imageSize, imageSize, 0);
+		prepared = new PreparedImage(image);
+		// Populate the rescaled image cache
+		hasher.hash(prepared);
+	}
+
+	@Benchmark
+	public Hash hash() {
+		return hasher.hash(image);
+	}
+
+	@Benchmark
+	public Hash hashPrepared() {
+		return hasher.hash(prepared);
+	}
+
+	/**
+	 * Create a hashing algorithm by its simple class name.
+	 *
+	 * @param name          the simple class name of the algorithm
+	 * @param bitResolution the bit resolution
+	 * @return the hashing algorithm
+	 * @throws IllegalArgumentException if the name is unknown
+	 */
+	static HashingAlgorithm createAlgorithm(String name, int bitResolution) {
+		switch (name) {
+		case "AverageHash":
+			return new AverageHash(bitResolution);
+		case "AverageColorHash":
+			return new AverageColorHash(bitResolution);
+		case "AverageKernelHash":
+			return new AverageKernelHash(bitResolution);
+		case "DifferenceHash":
+			return new DifferenceHash(bitResolution, Precision.Double);
+		case "MedianHash":
+			return new MedianHash(bitResolution);
+		case "PerceptiveHash":
+			return new PerceptiveHash(bitResolution);
+		case "RotAverageHash":
+			return new RotAverageHash(bitResolution);
+		case "RotPHash":
+			return new RotPHash(bitResolution);
+		case "WaveletHash":
+			return new WaveletHash(bitResolution, 3);
+		default:
+			throw new IllegalArgumentException("Unknown hashing algorithm " + name);
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package com.github.kilianB.jmh;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.kilianB.datastructures.ClusterResult;
+import com.github.kilianB.datastructures.KMeansPlusPlus;
+import com.github.kilianB.hash.Hash;
+
+/**
+ * Time to cluster a corpus of near duplicate hashes using kmeans plus plus on
+ * the calling thread and on a fork join pool.
+ *
+ * @author Kilian
+ * @since 3.0.1
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KMeansBenchmark {
+
+	@Param({ "100000", "1000000" })
+	public int corpusSize;
+
+	@Param({ "100", "1000" })
+	public int k;
+
+	private Hash[] hashes;
+
+	private ForkJoinPool pool;
+
+	@Setup
+	public void setup() {
+		hashes = BenchmarkData.createCorpus(corpusSize, 64, 0);
+		pool = new ForkJoinPool();
+	}
+
+	@TearDown
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Benchmark
+	public ClusterResult sequential() {
+		return new KMeansPlusPlus(k, null).cluster(hashes, 20);
+	}
+
+	@Benchmark
+	public ClusterResult parallel() {
+		return new KMeansPlusPlus(k, pool).cluster(hashes, 20);
+	}
+}
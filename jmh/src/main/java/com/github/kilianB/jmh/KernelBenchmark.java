@@ -0,0 +1,73 @@
+package com.github.kilianB.jmh;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.kilianB.hashAlgorithms.filter.Kernel;
+import com.github.kilianB.hashAlgorithms.filter.MedianKernel;
+
+/**
+ * Time to apply a filter kernel to an image.
+ *
+ * @author Kilian
+ * @since 3.0.1
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class KernelBenchmark {
+
+	@Param({ "box3", "box7", "box7Separable", "gaussian5", "median3" })
+	public String kernel;
+
+	/** Length of the sides of the filtered image */
+	@Param({ "128", "512" })
+	public int imageSize;
+
+	private Kernel filter;
+
+	private BufferedImage image;
+
+	@Setup
+	public void setup() {
+		filter = createKernel(kernel);
+		image = BenchmarkData.createImage(imageSize, imageSize, 0);
+	}
+
+	@Benchmark
+	public BufferedImage filter() {
+		return filter.filter(image);
+	}
+
+	private static Kernel createKernel(String name) {
+		switch (name) {
+		case "box3":
+			return Kernel.boxFilterNormalized(3, 3);
+		case "box7":
+			return Kernel.boxFilterNormalized(7, 7);
+		case "box7Separable":
+			return Kernel.boxFilterNormalizedSep(7, 7);
+		case "gaussian5":
+			return Kernel.gaussianFilter(5, 5, 1);
+		case "median3":
+			return new MedianKernel(3, 3);
+		default:
+			throw new IllegalArgumentException("Unknown kernel " + name);
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package com.github.kilianB.jmh;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.kilianB.hashAlgorithms.AverageHash;
+import com.github.kilianB.hashAlgorithms.PerceptiveHash;
+import com.github.kilianB.matcher.persistent.ConsecutiveMatcher;
+import com.github.kilianB.matcher.persistent.MappedConsecutiveMatcher;
+import com.github.kilianB.matcher.persistent.MappedHashFile;
+import com.github.kilianB.matcher.persistent.PersistentImageMatcher;
+
+/**
+ * Time to reopen a persistent matcher and query it afterwards.
+ *
+ * <p>
+ * A {@link ConsecutiveMatcher} restored by java serialization is compared
+ * against a {@link MappedConsecutiveMatcher} containing the same hashes.
+ *
+ * @author Kilian
+ * @since 3.0.1
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MappedMatcherBenchmark {
+
+	static final int IMAGE_SIZE = 32;
+
+	static final double THRESHOLD = 0.25;
+
+	@Param({ "1000", "10000" })
+	public int corpusSize;
+
+	private File serialized;
+
+	private File mapped;
+
+	private MappedConsecutiveMatcher mappedMatcher;
+
+	private ConsecutiveMatcher serializedMatcher;
+
+	private BufferedImage query;
+
+	@Setup
+	public void setup() throws IOException {
+		ConsecutiveMatcher matcher = new ConsecutiveMatcher(true);
+		matcher.addHashingAlgorithm(new AverageHash(64), THRESHOLD);
+		matcher.addHashingAlgorithm(new PerceptiveHash(64), THRESHOLD);
+		for (int i = 0; i < corpusSize; i++) {
+			matcher.addImage(Integer.toString(i), BenchmarkData.createImage(IMAGE_SIZE, IMAGE_SIZE, i));
+		}
+		query = BenchmarkData.createNearDuplicate(BenchmarkData.createImage(IMAGE_SIZE, IMAGE_SIZE, 0), 8, 0);
+
+		serialized = File.createTempFile("MappedMatcherBenchmark", ".ser");
+		matcher.serializeState(serialized);
+
+		mapped = File.createTempFile("MappedMatcherBenchmark", ".idx");
+		mapped.delete();
+		MappedConsecutiveMatcher.convert(matcher, mapped).close();
+
+		serializedMatcher = matcher;
+		mappedMatcher = new MappedConsecutiveMatcher(mapped);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		mappedMatcher.close();
+		serialized.delete();
+		mapped.delete();
+		MappedHashFile.idFile(mapped).delete();
+	}
+
+	@Benchmark
+	public Object openSerialized() throws ClassNotFoundException, IOException {
+		return PersistentImageMatcher.reconstructState(serialized, false);
+	}
+
+	@Benchmark
+	public long openMapped() throws IOException {
+		try (MappedConsecutiveMatcher matcher = new MappedConsecutiveMatcher(mapped)) {
+			return matcher.getImageCount();
+		}
+	}
+
+	@Benchmark
+	public int querySerialized() {
+		return serializedMatcher.getMatchingImages(query).size();
+	}
+
+	@Benchmark
+	public int queryMapped() throws IOException {
+		return mappedMatcher.getMatchingImages(query).size();
+	}
+}
@@ -0,0 +1,206 @@
+package com.github.kilianB.jmh;
+
+import java.awt.image.BufferedImage;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.kilianB.hashAlgorithms.AverageHash;
+import com.github.kilianB.hashAlgorithms.HashingAlgorithm;
+import com.github.kilianB.hashAlgorithms.PerceptiveHash;
+import com.github.kilianB.matcher.exotic.SingleImageMatcher;
+import com.github.kilianB.matcher.persistent.database.DatabaseImageMatcher;
+import com.github.kilianB.matcher.persistent.database.H2DatabaseImageMatcher;
+
+/**
+ * End to end time of looking up an image in an image matcher, including hashing
+ * the query image.
+ *
+ * <p>
+ * Every matcher is configured with an average and a perceptive hash and filled
+ * with synthetic images. Queries are noisy copies of images contained in the
+ * matcher. The database matcher uses an in memory h2 database to exclude disk
+ * latency from the measurement.
+ *
+ * @author Kilian
+ * @since 3.0.1
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MatcherBenchmark {
+
+	static final int IMAGE_SIZE = 128;
+
+	static final int QUERIES = 16;
+
+	static final double THRESHOLD = 0.25;
+
+	/**
+	 * A matcher reduced to the lookup operation
+	 */
+	@FunctionalInterface
+	interface Lookup {
+		/**
+		 * @return the number of matches
+		 */
+		int match(BufferedImage image) throws SQLException;
+	}
+
+	@State(Scope.Benchmark)
+	public static class Corpus {
+
+		@Param({ "CachedConsecutiveMatcher", "CachedCumulativeMatcher", "PersistentConsecutiveMatcher",
+				"PersistentCumulativeMatcher", "H2DatabaseImageMatcher" })
+		public String matcher;
+
+		@Param({ "100", "1000" })
+		public int corpusSize;
+
+		Lookup lookup;
+
+		BufferedImage[] queries;
+
+		private DatabaseImageMatcher dbMatcher;
+
+		@Setup
+		public void setup() throws SQLException {
+			HashingAlgorithm[] algorithms = { new AverageHash(64), new PerceptiveHash(64) };
+			BufferedImage[] images = new BufferedImage[corpusSize];
+			for (int i = 0; i < corpusSize; i++) {
+				images[i] = BenchmarkData.createImage(IMAGE_SIZE, IMAGE_SIZE, i);
+			}
+			queries = createQueries(images);
+			lookup = createMatcher(algorithms, images);
+		}
+
+		@TearDown
+		public void tearDown() throws SQLException {
+			if (dbMatcher != null) {
+				dbMatcher.close();
+			}
+		}
+
+		private Lookup createMatcher(HashingAlgorithm[] algorithms, BufferedImage[] images) throws SQLException {
+			switch (matcher) {
+			case "CachedConsecutiveMatcher": {
+				com.github.kilianB.matcher.cached.ConsecutiveMatcher m = new com.github.kilianB.matcher.cached.ConsecutiveMatcher();
+				for (HashingAlgorithm algo : algorithms) {
+					m.addHashingAlgorithm(algo, THRESHOLD);
+				}
+				m.addImages(images);
+				return image -> m.getMatchingImages(image).size();
+			}
+			case "CachedCumulativeMatcher": {
+				com.github.kilianB.matcher.cached.CumulativeMatcher m = new com.github.kilianB.matcher.cached.CumulativeMatcher(
+						THRESHOLD * algorithms.length);
+				for (HashingAlgorithm algo : algorithms) {
+					m.addHashingAlgorithm(algo);
+				}
+				m.addImages(images);
+				return image -> m.getMatchingImages(image).size();
+			}
+			case "PersistentConsecutiveMatcher": {
+				com.github.kilianB.matcher.persistent.ConsecutiveMatcher m = new com.github.kilianB.matcher.persistent.ConsecutiveMatcher(
+						false);
+				for (HashingAlgorithm algo : algorithms) {
+					m.addHashingAlgorithm(algo, THRESHOLD);
+				}
+				for (int i = 0; i < images.length; i++) {
+					m.addImage(Integer.toString(i), images[i]);
+				}
+				return image -> m.getMatchingImages(image).size();
+			}
+			case "PersistentCumulativeMatcher": {
+				com.github.kilianB.matcher.persistent.CumulativeMatcher m = new com.github.kilianB.matcher.persistent.CumulativeMatcher(
+						false, THRESHOLD * algorithms.length);
+				for (HashingAlgorithm algo : algorithms) {
+					m.addHashingAlgorithm(algo);
+				}
+				for (int i = 0; i < images.length; i++) {
+					m.addImage(Integer.toString(i), images[i]);
+				}
+				return image -> m.getMatchingImages(image).size();
+			}
+			case "H2DatabaseImageMatcher": {
+				dbMatcher = new H2DatabaseImageMatcher(
+						DriverManager.getConnection("jdbc:h2:mem:jmh" + corpusSize, "sa", ""));
+				for (HashingAlgorithm algo : algorithms) {
+					dbMatcher.addHashingAlgorithm(algo, THRESHOLD);
+				}
+				for (int i = 0; i < images.length; i++) {
+					dbMatcher.addImage(Integer.toString(i), images[i]);
+				}
+				DatabaseImageMatcher m = dbMatcher;
+				return image -> m.getMatchingImages(image).size();
+			}
+			default:
+				throw new IllegalArgumentException("Unknown matcher " + matcher);
+			}
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class Pair {
+
+		SingleImageMatcher matcher;
+
+		BufferedImage image;
+
+		BufferedImage image1;
+
+		@Setup
+		public void setup() {
+			matcher = new SingleImageMatcher();
+			matcher.addHashingAlgorithm(new AverageHash(64), THRESHOLD);
+			matcher.addHashingAlgorithm(new PerceptiveHash(64), THRESHOLD);
+			image = BenchmarkData.createImage(IMAGE_SIZE, IMAGE_SIZE, 0);
+			image1 = BenchmarkData.createNearDuplicate(image, 8, 1);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(QUERIES)
+	public long getMatchingImages(Corpus corpus) throws SQLException {
+		long matches = 0;
+		for (BufferedImage query : corpus.queries) {
+			matches += corpus.lookup.match(query);
+		}
+		return matches;
+	}
+
+	/**
+	 * The single image matcher does not hold a corpus. Benchmark the comparison of
+	 * two images instead.
+	 */
+	@Benchmark
+	public boolean checkSimilarity(Pair pair) {
+		return pair.matcher.checkSimilarity(pair.image, pair.image1);
+	}
+
+	private static BufferedImage[] createQueries(BufferedImage[] images) {
+		Random rng = new Random(0);
+		BufferedImage[] queries = new BufferedImage[QUERIES];
+		for (int i = 0; i < QUERIES; i++) {
+			queries[i] = BenchmarkData.createNearDuplicate(images[rng.nextInt(images.length)], 8, i);
+		}
+		return queries;
+	}
+}
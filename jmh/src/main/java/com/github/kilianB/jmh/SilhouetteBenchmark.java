@@ -0,0 +1,80 @@
+package com.github.kilianB.jmh;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.kilianB.datastructures.ClusterResult;
+import com.github.kilianB.hash.Hash;
+
+/**
+ * Time to compute the silhouette coefficient of a clustered corpus exactly and
+ * approximated from a fixed number of hashes per cluster. Groups of near
+ * duplicates are distributed round robin over the clusters.
+ *
+ * @author Kilian
+ * @since 3.0.1
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SilhouetteBenchmark {
+
+	@Param({ "10000", "50000" })
+	public int corpusSize;
+
+	@Param({ "10", "100" })
+	public int k;
+
+	private Hash[] hashes;
+
+	private int[] clusterIndex;
+
+	private ForkJoinPool pool;
+
+	@Setup
+	public void setup() {
+		hashes = BenchmarkData.createCorpus(corpusSize, 64, 0);
+		clusterIndex = new int[corpusSize];
+		for (int i = 0; i < corpusSize; i++) {
+			clusterIndex[i] = (i / BenchmarkData.CLUSTER_SIZE) % k;
+		}
+		pool = new ForkJoinPool();
+	}
+
+	@TearDown
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Benchmark
+	public double exactSequential() {
+		return new ClusterResult(clusterIndex, hashes, null).getSilhouetteCoef();
+	}
+
+	@Benchmark
+	public double exactParallel() {
+		return new ClusterResult(clusterIndex, hashes, pool).getSilhouetteCoef();
+	}
+
+	@Benchmark
+	public double approximate() {
+		return new ClusterResult(clusterIndex, hashes, pool)
+				.getApproximateSilhouetteCoef(ClusterResult.DEFAULT_SILHOUETTE_SAMPLE_SIZE);
+	}
+}
@@ -0,0 +1,165 @@
+package com.github.kilianB.jmh;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.kilianB.datastructures.tree.AbstractBinaryTree;
+import com.github.kilianB.datastructures.tree.Result;
+
+import com.github.kilianB.datastructures.tree.binaryTree.BinaryTree;
+import com.github.kilianB.datastructures.tree.binaryTree.CompactBinaryTree;
+import com.github.kilianB.datastructures.tree.flat.FlatHashIndex;
+import com.github.kilianB.datastructures.tree.multiIndex.MultiIndexHashTable;
+import com.github.kilianB.hash.Hash;
+
+/**
+ * Query performance of the hamming distance indices for different corpus sizes
+ * and search radii.
+ *
+ * <p>
+ * The corpus consists of clusters of near duplicate 64 bit hashes (see
+ * {@link BenchmarkData#createCorpus(int, int, long)}). Every query is a near
+ * duplicate of a corpus entry.
+ *
+ * @author Kilian
+ * @since 3.0.1
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TreeBenchmark {
+
+	static final int BIT_RESOLUTION = 64;
+
+	static final int QUERIES = 64;
+
+	@State(Scope.Benchmark)
+	public static class Index {
+
+		@Param({ "BinaryTree", "CompactBinaryTree", "MultiIndexHashTable", "FlatHashIndex" })
+		public String index;
+
+		@Param({ "1000", "10000", "100000" })
+		public int corpusSize;
+
+		AbstractBinaryTree<Integer> tree;
+
+		Hash[] queries;
+
+		List<Hash> queryList;
+
+		@Setup
+		public void setup() {
+			Hash[] corpus = BenchmarkData.createCorpus(corpusSize, BIT_RESOLUTION, 0);
+			queries = BenchmarkData.createQueries(corpus, QUERIES, 1);
+			queryList = Arrays.asList(queries);
+			tree = createIndex(index, corpus);
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class Radius {
+
+		@Param({ "2", "8", "16" })
+		public int radius;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(QUERIES)
+	public long withinHammingDistance(Index index, Radius radius) {
+		long matches = 0;
+		for (Hash query : index.queries) {
+			matches += index.tree.getElementsWithinHammingDistance(query, radius.radius).size();
+		}
+		return matches;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(QUERIES)
+	public long withinHammingDistanceBatch(Index index, Radius radius) {
+		long matches = 0;
+		for (PriorityQueue<Result<Integer>> results : index.tree
+				.getElementsWithinHammingDistance(index.queryList, radius.radius)) {
+			matches += results.size();
+		}
+		return matches;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(QUERIES)
+	public long nearestNeighbour(Index index) {
+		long matches = 0;
+		for (Hash query : index.queries) {
+			matches += index.tree.getNearestNeighbour(query).size();
+		}
+		return matches;
+	}
+
+	@State(Scope.Benchmark)
+	public static class K {
+
+		@Param({ "1", "10", "100" })
+		public int k;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(QUERIES)
+	public long nearestNeighbours(Index index, K k) {
+		long matches = 0;
+		for (Hash query : index.queries) {
+			matches += index.tree.getNearestNeighbours(query, k.k).size();
+		}
+		return matches;
+	}
+
+
+	static AbstractBinaryTree<Integer> createIndex(String name, Hash[] corpus) {
+		switch (name) {
+		case "BinaryTree":
+			return fill(new BinaryTree<>(false), corpus);
+		case "CompactBinaryTree":
+			return new CompactBinaryTree<>(fill(new BinaryTree<>(false), corpus));
+		case "MultiIndexHashTable":
+			return fill(new MultiIndexHashTable<>(false), corpus);
+		case "FlatHashIndex":
+			FlatHashIndex<Integer> flat = new FlatHashIndex<>(false);
+			for (int i = 0; i < corpus.length; i++) {
+				flat.addHash(corpus[i], i);
+			}
+			return flat;
+		default:
+			throw new IllegalArgumentException("Unknown index " + name);
+		}
+	}
+
+	private static BinaryTree<Integer> fill(BinaryTree<Integer> tree, Hash[] corpus) {
+		for (int i = 0; i < corpus.length; i++) {
+			tree.addHash(corpus[i], i);
+		}
+		return tree;
+	}
+
+	private static MultiIndexHashTable<Integer> fill(MultiIndexHashTable<Integer> table, Hash[] corpus) {
+		for (int i = 0; i < corpus.length; i++) {
+			table.addHash(corpus[i], i);
+		}
+		return table;
+	}
+}
@@ -0,0 +1,82 @@
+package com.github.kilianB.jmh;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.kilianB.datastructures.tree.binaryTree.BinaryTree;
+import com.github.kilianB.hash.Hash;
+
+/**
+ * Construction time of the binary tree inserting the hashes one by one compared
+ * to bulk loading them sequentially and in parallel.
+ *
+ * @author Kilian
+ * @since 3.0.1
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TreeBuildBenchmark {
+
+	@Param({ "10000", "100000", "1000000" })
+	public int corpusSize;
+
+	private List<Hash> hashes;
+
+	private List<Integer> values;
+
+	private ForkJoinPool pool;
+
+	@Setup
+	public void setup() {
+		hashes = Arrays.asList(BenchmarkData.createCorpus(corpusSize, TreeBenchmark.BIT_RESOLUTION, 0));
+		values = new ArrayList<>(corpusSize);
+		for (int i = 0; i < corpusSize; i++) {
+			values.add(i);
+		}
+		pool = new ForkJoinPool();
+	}
+
+	@TearDown
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Benchmark
+	public BinaryTree<Integer> addHash() {
+		BinaryTree<Integer> tree = new BinaryTree<>(false);
+		for (int i = 0; i < corpusSize; i++) {
+			tree.addHash(hashes.get(i), values.get(i));
+		}
+		return tree;
+	}
+
+	@Benchmark
+	public BinaryTree<Integer> bulkLoad() {
+		return new BinaryTree<>(hashes, values, false);
+	}
+
+	@Benchmark
+	public BinaryTree<Integer> bulkLoadParallel() {
+		return new BinaryTree<>(hashes, values, false, pool);
+	}
+}
@@ -0,0 +1,8 @@
+/**
+ * JMH benchmarks of the hashing algorithms, hash indices and image matchers.
+ * Run via {@link com.github.kilianB.jmh.BenchmarkRunner}.
+ * 
+ * @author Kilian
+ *
+ */
+package com.github.kilianB.jmh;
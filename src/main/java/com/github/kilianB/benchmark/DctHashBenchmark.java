@@ -0,0 +1,74 @@
+package com.github.kilianB.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import com.github.kilianB.hashAlgorithms.HashingAlgorithm;
+import com.github.kilianB.hashAlgorithms.PerceptiveHash;
+import com.github.kilianB.hashAlgorithms.PreparedImage;
+import com.github.kilianB.hashAlgorithms.RotPHash;
+
+/**
+ * Report the throughput and the heap allocated per hash of the dct based
+ * hashing algorithms.
+ *
+ * <p>
+ * The rescaled luma values are cached by the {@link PreparedImage} reused for
+ * every iteration, isolating the cost of the dct transformation from decoding
+ * and rescaling the image.
+ *
+ * @author Kilian
+ * @since 3.0.1
+ */
+public class DctHashBenchmark {
+
+	private static final int WARMUP = 20_000;
+
+	private static final int ITERATIONS = 100_000;
+
+	public static void main(String[] args) {
+
+		BufferedImage image = new BufferedImage(256, 256, BufferedImage.TYPE_INT_RGB);
+		Random rng = new Random(0);
+		for (int x = 0; x < image.getWidth(); x++) {
+			for (int y = 0; y < image.getHeight(); y++) {
+				image.setRGB(x, y, rng.nextInt(0xFFFFFF));
+			}
+		}
+		PreparedImage prepared = new PreparedImage(image);
+
+		HashingAlgorithm[] algorithms = { new PerceptiveHash(32), new PerceptiveHash(64), new PerceptiveHash(256),
+				new RotPHash(32), new RotPHash(64), new RotPHash(256) };
+
+		System.out.printf("%-22s %14s %16s%n", "Algorithm", "Hashes/s", "Bytes/Hash");
+
+		for (HashingAlgorithm algorithm : algorithms) {
+			for (int i = 0; i < WARMUP; i++) {
+				algorithm.hash(prepared);
+			}
+			long allocatedBefore = allocatedBytes();
+			long start = System.nanoTime();
+			for (int i = 0; i < ITERATIONS; i++) {
+				algorithm.hash(prepared);
+			}
+			long elapsed = System.nanoTime() - start;
+			long allocated = allocatedBytes() - allocatedBefore;
+
+			System.out.printf("%-22s %14.0f %16s%n", algorithm, ITERATIONS / (elapsed / 1e9),
+					allocated < 0 ? "n/a" : String.format("%.0f", allocated / (double) ITERATIONS));
+		}
+	}
+
+	/**
+	 * @return the bytes allocated by the current thread or a negative value if
+	 *         the jvm does not support allocation tracking
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+}
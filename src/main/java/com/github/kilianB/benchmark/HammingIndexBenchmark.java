@@ -0,0 +1,103 @@
+package com.github.kilianB.benchmark;
+
+import java.util.Random;
+
+import com.github.kilianB.datastructures.tree.AbstractBinaryTree;
+import com.github.kilianB.datastructures.tree.binaryTree.BinaryTree;
+import com.github.kilianB.datastructures.tree.multiIndex.MultiIndexHashTable;
+import com.github.kilianB.hash.Hash;
+
+/**
+ * Compare the query performance of the hamming distance indices for different
+ * corpus sizes and search radii.
+ *
+ * <p>
+ * The corpus consists of random 64 bit hashes. Every query is a slightly
+ * altered copy of a hash present in the corpus, mimicking a near duplicate
+ * search. Queries of a single configuration are aborted once they exceed the
+ * time budget, in which case the average of the completed queries is reported.
+ *
+ * @author Kilian
+ * @since 3.0.1
+ */
+public class HammingIndexBenchmark {
+
+	private static final int BIT_RESOLUTION = 64;
+
+	private static final int QUERIES = 50;
+
+	/** Time budget per index, corpus size and radius in nano seconds */
+	private static final long BUDGET = 20_000_000_000L;
+
+	public static void main(String[] args) {
+
+		int[] corpusSizes = { 10_000, 100_000, 1_000_000 };
+		int[] radii = { 2, 5, 10, 15, 20 };
+
+		System.out.printf("%-22s %10s %7s %14s %14s %10s%n", "Index", "Corpus", "Radius", "Build [ms]",
+				"Query [us]", "Matches");
+
+		for (int corpusSize : corpusSizes) {
+			Hash[] corpus = createCorpus(corpusSize, 0);
+			Hash[] queries = createQueries(corpus, 1);
+
+			long start = System.nanoTime();
+			BinaryTree<Integer> binTree = new BinaryTree<>(false);
+			for (int i = 0; i < corpus.length; i++) {
+				binTree.addHash(corpus[i], i);
+			}
+			benchmark(binTree, "BinaryTree", (System.nanoTime() - start) / 1e6, queries, radii);
+			binTree = null;
+
+			start = System.nanoTime();
+			MultiIndexHashTable<Integer> mih = new MultiIndexHashTable<>(false);
+			for (int i = 0; i < corpus.length; i++) {
+				mih.addHash(corpus[i], i);
+			}
+			benchmark(mih, "MultiIndexHashTable", (System.nanoTime() - start) / 1e6, queries, radii);
+		}
+	}
+
+	private static void benchmark(AbstractBinaryTree<Integer> index, String name, double buildMs, Hash[] queries,
+			int[] radii) {
+
+		for (int radius : radii) {
+			long matches = 0;
+			int completed = 0;
+			long start = System.nanoTime();
+			for (Hash query : queries) {
+				matches += index.getElementsWithinHammingDistance(query, radius).size();
+				completed++;
+				if (System.nanoTime() - start > BUDGET) {
+					break;
+				}
+			}
+			double queryUs = (System.nanoTime() - start) / 1e3 / completed;
+			System.out.printf("%-22s %10d %7d %14.1f %14.1f %10.1f%s%n", name, index.getHashCount(), radius, buildMs, queryUs,
+					matches / (double) completed, completed < queries.length ? " (budget exceeded)" : "");
+		}
+	}
+
+	private static Hash[] createCorpus(int size, long seed) {
+		Random rng = new Random(seed);
+		Hash[] corpus = new Hash[size];
+		for (int i = 0; i < size; i++) {
+			corpus[i] = new Hash(new long[] { rng.nextLong() }, BIT_RESOLUTION, 0);
+		}
+		return corpus;
+	}
+
+	private static Hash[] createQueries(Hash[] corpus, long seed) {
+		Random rng = new Random(seed);
+		Hash[] queries = new Hash[QUERIES];
+		for (int i = 0; i < QUERIES; i++) {
+			long word = corpus[rng.nextInt(corpus.length)].getPackedHashValue()[0];
+			// Flip a few bits to create a near duplicate
+			for (int flip = rng.nextInt(8); flip > 0; flip--) {
+				word ^= 1L << rng.nextInt(BIT_RESOLUTION);
+			}
+			queries[i] = new Hash(new long[] { word }, BIT_RESOLUTION, 0);
+		}
+		return queries;
+	}
+}
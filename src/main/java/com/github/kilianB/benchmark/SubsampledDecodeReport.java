@@ -0,0 +1,134 @@
+package com.github.kilianB.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import com.github.kilianB.hash.Hash;
+import com.github.kilianB.hashAlgorithms.AverageColorHash;
+import com.github.kilianB.hashAlgorithms.AverageHash;
+import com.github.kilianB.hashAlgorithms.DifferenceHash;
+import com.github.kilianB.hashAlgorithms.DifferenceHash.Precision;
+import com.github.kilianB.hashAlgorithms.HashingAlgorithm;
+import com.github.kilianB.hashAlgorithms.MedianHash;
+import com.github.kilianB.hashAlgorithms.PerceptiveHash;
+import com.github.kilianB.hashAlgorithms.RotAverageHash;
+import com.github.kilianB.hashAlgorithms.RotPHash;
+import com.github.kilianB.hashAlgorithms.SubsampledImageLoader;
+import com.github.kilianB.hashAlgorithms.WaveletHash;
+
+/**
+ * Report the deviation of hashes computed from subsampled decodes compared to
+ * hashes computed from the full resolution image, as well as the time and
+ * memory spent decoding.
+ *
+ * <p>
+ * For every hashing algorithm and minimum size the mean and maximum normalized
+ * hamming distance between the hash of the full decode and the hash of the
+ * {@link SubsampledImageLoader} decode are printed. Drift is only meaningful for
+ * images considerably larger than the minimum size, so point the report to a
+ * directory of camera sized photos.
+ *
+ * <pre>
+ * java com.github.kilianB.benchmark.SubsampledDecodeReport /path/to/images
+ * </pre>
+ *
+ * @author Kilian
+ * @since 3.0.1
+ */
+public class SubsampledDecodeReport {
+
+	private static final int[] MINIMUM_SIZES = { 64, 128, 256, 512 };
+
+	public static void main(String[] args) throws IOException {
+
+		if (args.length != 1 || !new File(args[0]).isDirectory()) {
+			System.out.println("Usage: SubsampledDecodeReport <image directory>");
+			return;
+		}
+
+		List<File> files = new ArrayList<>();
+		for (File f : new File(args[0]).listFiles()) {
+			if (f.isFile()) {
+				files.add(f);
+			}
+		}
+
+		HashingAlgorithm[] algorithms = { new AverageHash(64), new AverageColorHash(64), new MedianHash(64),
+				new DifferenceHash(64, Precision.Double), new PerceptiveHash(64), new WaveletHash(64, 3),
+				new RotAverageHash(64), new RotPHash(64) };
+
+		// Full decode as reference
+		List<Hash[]> reference = new ArrayList<>();
+		List<File> images = new ArrayList<>();
+		long fullDecodeNanos = 0;
+		long fullPixels = 0;
+		for (File f : files) {
+			long start = System.nanoTime();
+			BufferedImage image = ImageIO.read(f);
+			fullDecodeNanos += System.nanoTime() - start;
+			if (image == null) {
+				continue;
+			}
+			fullPixels += image.getWidth() * (long) image.getHeight();
+			Hash[] hashes = new Hash[algorithms.length];
+			for (int i = 0; i < algorithms.length; i++) {
+				hashes[i] = algorithms[i].hash(image);
+			}
+			reference.add(hashes);
+			images.add(f);
+		}
+
+		if (images.isEmpty()) {
+			System.out.println("No readable images found in " + args[0]);
+			return;
+		}
+
+		System.out.printf("Images: %d%n%n", images.size());
+		System.out.printf("%-12s %14s %14s%n", "Decode", "Avg [ms]", "Avg [MPixel]");
+		report("Full", fullDecodeNanos, fullPixels, images.size());
+
+		double[][] meanDrift = new double[MINIMUM_SIZES.length][algorithms.length];
+		double[][] maxDrift = new double[MINIMUM_SIZES.length][algorithms.length];
+
+		for (int s = 0; s < MINIMUM_SIZES.length; s++) {
+			SubsampledImageLoader loader = new SubsampledImageLoader(MINIMUM_SIZES[s], false);
+			long decodeNanos = 0;
+			long pixels = 0;
+			for (int j = 0; j < images.size(); j++) {
+				long start = System.nanoTime();
+				BufferedImage image = loader.load(images.get(j));
+				decodeNanos += System.nanoTime() - start;
+				pixels += image.getWidth() * (long) image.getHeight();
+				for (int i = 0; i < algorithms.length; i++) {
+					double drift = reference.get(j)[i].normalizedHammingDistanceFast(algorithms[i].hash(image));
+					meanDrift[s][i] += drift / images.size();
+					maxDrift[s][i] = Math.max(maxDrift[s][i], drift);
+				}
+			}
+			report("Min " + MINIMUM_SIZES[s], decodeNanos, pixels, images.size());
+		}
+
+		System.out.printf("%nNormalized hamming distance to the full decode (mean / max)%n");
+		System.out.printf("%-18s", "Algorithm");
+		for (int size : MINIMUM_SIZES) {
+			System.out.printf(" %15s", "Min " + size);
+		}
+		System.out.println();
+		for (int i = 0; i < algorithms.length; i++) {
+			System.out.printf("%-18s", algorithms[i].getClass().getSimpleName());
+			for (int s = 0; s < MINIMUM_SIZES.length; s++) {
+				System.out.printf(" %7.3f / %5.3f", meanDrift[s][i], maxDrift[s][i]);
+			}
+			System.out.println();
+		}
+	}
+
+	private static void report(String name, long nanos, long pixels, int count) {
+		System.out.printf("%-12s %14.2f %14.3f%n", name, nanos / 1e6 / count, pixels / 1e6 / count);
+	}
+}
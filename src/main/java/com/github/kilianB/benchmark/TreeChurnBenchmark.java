@@ -0,0 +1,91 @@
+package com.github.kilianB.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.github.kilianB.datastructures.tree.binaryTree.BinaryTree;
+import com.github.kilianB.hash.Hash;
+
+/**
+ * Report the heap consumed by a {@link BinaryTree} whose entries are
+ * continuously replaced. Each round removes random live entries and adds the
+ * same number of new entries keeping the number of live entries constant.
+ *
+ * <p>
+ * Removing a hash unlinks all nodes which no longer lead to a value. The bytes
+ * per live entry therefore are expected to stay flat over the course of the
+ * run instead of growing with the number of hashes ever added. Run with a
+ * sufficiently large heap (e.g. -Xmx4g).
+ *
+ * @author Kilian
+ * @since 3.0.1
+ */
+public class TreeChurnBenchmark {
+
+	private static final int BIT_RESOLUTION = 64;
+
+	private static final int LIVE_ENTRIES = 200_000;
+
+	private static final int ROUNDS = 50;
+
+	/** Fraction of the live entries replaced each round */
+	private static final double CHURN = 0.2;
+
+	public static void main(String[] args) {
+
+		Random rng = new Random(0);
+		List<Hash> hashes = new ArrayList<>(LIVE_ENTRIES);
+		List<Integer> values = new ArrayList<>(LIVE_ENTRIES);
+		int nextValue = 0;
+
+		long before = usedMemory();
+		BinaryTree<Integer> binTree = new BinaryTree<>(false);
+		for (int i = 0; i < LIVE_ENTRIES; i++) {
+			Hash hash = new Hash(new long[] { rng.nextLong() }, BIT_RESOLUTION, 0);
+			hashes.add(hash);
+			values.add(nextValue);
+			binTree.addHash(hash, nextValue++);
+		}
+
+		System.out.printf("%8s %12s %12s %14s %14s%n", "Round", "Added", "Live", "Bytes/Entry", "Round [ms]");
+		report(0, nextValue, binTree, usedMemory() - before, 0);
+
+		int replacements = (int) (LIVE_ENTRIES * CHURN);
+		for (int round = 1; round <= ROUNDS; round++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < replacements; i++) {
+				int slot = rng.nextInt(LIVE_ENTRIES);
+				binTree.removeHash(hashes.get(slot), values.get(slot));
+
+				Hash hash = new Hash(new long[] { rng.nextLong() }, BIT_RESOLUTION, 0);
+				hashes.set(slot, hash);
+				values.set(slot, nextValue);
+				binTree.addHash(hash, nextValue++);
+			}
+			double roundMs = (System.nanoTime() - start) / 1e6;
+			if (round % 10 == 0) {
+				report(round, nextValue, binTree, usedMemory() - before, roundMs);
+			}
+		}
+	}
+
+	private static void report(int round, int added, BinaryTree<Integer> binTree, long bytes, double roundMs) {
+		// The bookkeeping lists holding the live hashes are part of the measurement
+		System.out.printf("%8d %12d %12d %14.1f %14.1f%n", round, added, binTree.getHashCount(),
+				bytes / (double) binTree.getHashCount(), roundMs);
+	}
+
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
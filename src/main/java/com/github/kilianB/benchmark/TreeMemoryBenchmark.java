@@ -0,0 +1,108 @@
+package com.github.kilianB.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.github.kilianB.datastructures.tree.AbstractBinaryTree;
+import com.github.kilianB.datastructures.tree.binaryTree.BinaryTree;
+import com.github.kilianB.datastructures.tree.binaryTree.CompactBinaryTree;
+import com.github.kilianB.hash.Hash;
+
+/**
+ * Report the heap consumed per entry by the pointer based {@link BinaryTree}
+ * and the array encoded {@link CompactBinaryTree} as well as the time required
+ * for searches.
+ *
+ * <p>
+ * The heap is measured as the difference of the used memory before and after
+ * the tree was created. The hashes and values are allocated up front and are
+ * not part of the reported number. Run with a sufficiently large heap (e.g.
+ * -Xmx8g) for the bigger corpora.
+ *
+ * @author Kilian
+ * @since 3.0.1
+ */
+public class TreeMemoryBenchmark {
+
+	private static final int BIT_RESOLUTION = 64;
+
+	private static final int QUERIES = 200;
+
+	private static final int RADIUS = 4;
+
+	public static void main(String[] args) {
+
+		int[] corpusSizes = { 10_000, 100_000, 1_000_000 };
+
+		System.out.printf("%-18s %10s %14s %14s %14s%n", "Tree", "Corpus", "Build [ms]", "Bytes/Entry",
+				"Query [us]");
+
+		for (int corpusSize : corpusSizes) {
+			Random rng = new Random(0);
+			List<Hash> hashes = new ArrayList<>(corpusSize);
+			List<Integer> values = new ArrayList<>(corpusSize);
+			for (int i = 0; i < corpusSize; i++) {
+				hashes.add(new Hash(new long[] { rng.nextLong() }, BIT_RESOLUTION, 0));
+				values.add(i);
+			}
+
+			long before = usedMemory();
+			long start = System.nanoTime();
+			BinaryTree<Integer> binTree = new BinaryTree<>(false);
+			for (int i = 0; i < corpusSize; i++) {
+				binTree.addHash(hashes.get(i), values.get(i));
+			}
+			double buildMs = (System.nanoTime() - start) / 1e6;
+			long binaryTreeBytes = usedMemory() - before;
+			double binaryTreeQuery = query(binTree, hashes);
+			report("BinaryTree", corpusSize, buildMs, binaryTreeBytes, binaryTreeQuery);
+
+			start = System.nanoTime();
+			CompactBinaryTree<Integer> converted = new CompactBinaryTree<>(binTree);
+			buildMs = (System.nanoTime() - start) / 1e6;
+			binTree = null;
+			converted = null;
+
+			before = usedMemory();
+			start = System.nanoTime();
+			CompactBinaryTree<Integer> compact = new CompactBinaryTree<>(hashes, values, false);
+			double bulkMs = (System.nanoTime() - start) / 1e6;
+			long compactBytes = usedMemory() - before;
+			double compactQuery = query(compact, hashes);
+			report("Compact (convert)", corpusSize, buildMs, compactBytes, compactQuery);
+			report("Compact (bulk)", corpusSize, bulkMs, compactBytes, compactQuery);
+		}
+	}
+
+	private static double query(AbstractBinaryTree<Integer> tree, List<Hash> hashes) {
+		// Warm up
+		for (int i = 0; i < QUERIES; i++) {
+			tree.getElementsWithinHammingDistance(hashes.get(i % hashes.size()), RADIUS);
+		}
+		Random rng = new Random(1);
+		long start = System.nanoTime();
+		for (int i = 0; i < QUERIES; i++) {
+			tree.getElementsWithinHammingDistance(hashes.get(rng.nextInt(hashes.size())), RADIUS);
+		}
+		return (System.nanoTime() - start) / 1e3 / QUERIES;
+	}
+
+	private static void report(String name, int corpusSize, double buildMs, long bytes, double queryUs) {
+		System.out.printf("%-18s %10d %14.1f %14.1f %14.1f%n", name, corpusSize, buildMs, bytes / (double) corpusSize,
+				queryUs);
+	}
+
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -2,27 +2,72 @@ package com.github.kilianB.datastructures;
 
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.DoubleSummaryStatistics;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.stream.Collectors;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 import com.github.kilianB.ArrayUtil;
+import com.github.kilianB.Require;
 import com.github.kilianB.StringUtil;
 import com.github.kilianB.hash.FuzzyHash;
+import com.github.kilianB.hash.HammingKernel;
 import com.github.kilianB.hash.Hash;
 import com.github.kilianB.mutable.MutableDouble;
 
 /**
+ * The result of a clustering operation including quality metrics of the
+ * clusters.
+ * 
+ * <p>
+ * The silhouette coefficient can be computed exactly or approximated.
+ * <ul>
+ * <li>The exact coefficient compares every hash to every other hash, in parallel
+ * on a fork join pool. The effort grows quadratic with the number of
+ * hashes.</li>
+ * <li>The approximation evaluates at most <code>sampleSize</code> randomly
+ * chosen hashes of each cluster against the samples of the other clusters. At
+ * most <code>k * sampleSize * (k + sampleSize)</code> hamming distances are
+ * computed regardless of the number of clustered hashes.</li>
+ * </ul>
+ * In both modes the mean distance to other clusters is only computed if the
+ * distance to the centroid minus the mean radius of the cluster does not rule
+ * the cluster out as closest neighbouring cluster. The
+ * <code>SilhouetteBenchmark</code> of the jmh module reports the timings of
+ * both modes.
+ * 
+ * <p>
+ * {@link #getBestFitCluster(Hash)} and {@link #getPotentialFits(Hash, double)}
+ * search an index of the centroids visiting clusters ordered by the smallest
+ * weighted distance a hash can have to them.
  * 
  * @author Kilian
  * @since 3.0.0
  */
 public class ClusterResult {
 
+	/**
+	 * The number of hashes up to which {@link #printInformation(boolean)} computes
+	 * the exact silhouette coefficient.
+	 */
+	public static final int EXACT_SILHOUETTE_LIMIT = 1 << 14;
+
+	/**
+	 * The number of hashes sampled from each cluster if the silhouette coefficient
+	 * is approximated by {@link #printInformation(boolean)}
+	 */
+	public static final int DEFAULT_SILHOUETTE_SAMPLE_SIZE = 256;
+
+	/** The minimum number of hashes evaluated by a single task */
+	private static final int CHUNK_SIZE = 1 << 8;
+
+	private static final HammingKernel KERNEL = HammingKernel.getInstance();
+
 	protected int numberOfClusters;
 
 	/** Keep track to which cluster a certain points belongs */
@@ -48,15 +93,46 @@ public class ClusterResult {
 	private HashMap<Integer, MutableDouble> sse = new HashMap<>();
 	private HashMap<Integer, MutableDouble> silhouetteCoef = new HashMap<>();
 
-	private boolean silhouetteCoefComputed = false;
+	/** Silhouette coefficient of all hashes */
+	private double silhouetteCoefAll;
+
+	/**
+	 * The number of hashes sampled per cluster to compute the silhouette
+	 * coefficient. Integer.MAX_VALUE for the exact coefficient, 0 if not yet
+	 * computed
+	 */
+	private int silhouetteSampleSize = 0;
+
+	/** The clustered hashes */
+	private final Hash[] hashes;
+
+	/** The pool used to compute the exact silhouette coefficient in parallel */
+	private final ForkJoinPool pool;
+
+	/** Lazily created index of the centroids */
+	private CentroidIndex centroidIndex;
 	// Cohesion ...
 
 	// Radius ... diameter
 	// density volume/points
 
 	public ClusterResult(int[] clusterIndex, Hash[] hashes) {
+		this(clusterIndex, hashes, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param clusterIndex the cluster of each hash. -1 for noise
+	 * @param hashes       the clustered hashes
+	 * @param pool         the pool used to compute silhouette coefficients in
+	 *                     parallel. If null all computations are executed on the
+	 *                     calling thread
+	 * @since 3.0.1
+	 */
+	public ClusterResult(int[] clusterIndex, Hash[] hashes, ForkJoinPool pool) {
 
 		this.clusterIndex = clusterIndex;
+		this.hashes = hashes;
+		this.pool = pool;
 
 		// How many clusters do we work with
 		numberOfClusters = ArrayUtil.maximum(clusterIndex) + 1;
@@ -102,74 +178,203 @@ public class ClusterResult {
 
 	}
 
-	private void calculateSilhouetteCoefficient() {
-		// Calculate the distance
+	/**
+	 * Compute the silhouette coefficient of each cluster.
+	 * 
+	 * @param sampleSize the maximum number of hashes evaluated per cluster.
+	 *                   Integer.MAX_VALUE to evaluate all hashes
+	 */
+	private void calculateSilhouetteCoefficient(int sampleSize) {
 
-		if (silhouetteCoefComputed) {
+		// The exact coefficient is the best approximation
+		if (silhouetteSampleSize == Integer.MAX_VALUE || silhouetteSampleSize == sampleSize) {
 			return;
 		}
 
-		Hash[] hashes = entryToDataIndex.keySet().toArray(new Hash[entryToDataIndex.size()]);
-
-		for (int i = 0; i < hashes.length; i++) {
-
-			int cluster = indexToCluster(entryToDataIndex.get(hashes[i]));
-
-			// Silhouette Coefficient
-			// 0. For each point calculate the distance to all other points in the same
-			// cluster
-			List<Hash> sameCluster = hashesByCluster.get(cluster);
-			// -1 don't count itself
-			int pointsInCluster = sameCluster.size() - 1;
+		int bits = hashes.length == 0 ? 0 : hashes[0].getBitResolution();
+		int wordCount = KMeans.wordCount(bits);
+
+		// The sampled hashes of each cluster packed contiguously. Noise is not
+		// evaluated
+		Random rng = new Random(0);
+		long[][] samples = new long[numberOfClusters][];
+		long[] centroids = new long[numberOfClusters * wordCount];
+		double[] radius = new double[numberOfClusters];
+		boolean exact = true;
+		int evaluated = 0;
+		for (int c = 0; c < numberOfClusters; c++) {
+			List<Integer> members = entriesInCluster.get(c);
+			int count = Math.min(sampleSize, members.size());
+			exact &= count == members.size();
+			int[] indices = new int[members.size()];
+			for (int i = 0; i < indices.length; i++) {
+				indices[i] = members.get(i);
+			}
+			Hash[] sample = new Hash[count];
+			for (int i = 0; i < count; i++) {
+				if (count < indices.length) {
+					// Partial fisher yates shuffle
+					int j = i + rng.nextInt(indices.length - i);
+					int temp = indices[j];
+					indices[j] = indices[i];
+					indices[i] = temp;
+				}
+				sample[i] = hashes[indices[i]];
+			}
+			samples[c] = KMeans.pack(sample, bits);
+			long[] centroid = KMeans.pack(new Hash[] { clusters.get(c) }, bits);
+			System.arraycopy(centroid, 0, centroids, c * wordCount, wordCount);
+
+			// Mean distance of the samples to the centroid
+			if (count > 0) {
+				int[] distances = new int[count];
+				KERNEL.distances(centroid, samples[c], wordCount, count, distances);
+				long sum = 0;
+				for (int distance : distances) {
+					sum += distance;
+				}
+				radius[c] = sum / (double) count;
+			}
+			evaluated += count;
+		}
 
-			double avgDistSameCluster = 0;
-			for (Hash h : sameCluster) {
-				avgDistSameCluster += h.normalizedHammingDistanceFast(hashes[i]);
+		int[] pointCluster = new int[evaluated];
+		int[] pointIndex = new int[evaluated];
+		for (int c = 0, p = 0; c < numberOfClusters; c++) {
+			for (int i = 0; i < samples[c].length / wordCount; i++, p++) {
+				pointCluster[p] = c;
+				pointIndex[p] = i;
 			}
+		}
 
-			// TODO we could cut this quickly by first finding the cluster centeroid that is
-			// the
-			// closest and just calculate the distance to this point. For kMeans this is
-			// deterministic.
-			// for others not so much
+		Silhouette silhouette = new Silhouette(samples, centroids, radius, wordCount);
+		double[] coefficients = new double[evaluated];
+		ParallelRange.forEach(pool, 0, evaluated, CHUNK_SIZE,
+				(from, to) -> silhouette.compute(from, to, pointCluster, pointIndex, coefficients));
+
+		// Sum up in order to stay deterministic
+		double total = 0;
+		for (int c = -1, p = 0; c < numberOfClusters; c++) {
+			double sum = 0;
+			int count = c == -1 ? 0 : samples[c].length / wordCount;
+			for (int i = 0; i < count; i++, p++) {
+				sum += coefficients[p];
+			}
+			total += sum;
+			silhouetteCoef.get(c).setValue(count == 0 ? 0 : sum / count);
+		}
+		silhouetteCoefAll = evaluated == 0 ? 0 : total / evaluated;
+		silhouetteSampleSize = exact ? Integer.MAX_VALUE : sampleSize;
+	}
 
-			double minAvgDistanceOtherCluster = Double.MAX_VALUE;
+	/**
+	 * Computes the silhouette coefficient of sampled hashes. The distance to
+	 * another cluster is only computed if the distance to it's centroid minus it's
+	 * radius does not rule it out as closest neighbouring cluster.
+	 */
+	private static class Silhouette {
+
+		private final long[][] samples;
+		private final long[] centroids;
+		private final double[] radius;
+		private final int wordCount;
+		private final int k;
+		private final int maxSampleCount;
+
+		Silhouette(long[][] samples, long[] centroids, double[] radius, int wordCount) {
+			this.samples = samples;
+			this.centroids = centroids;
+			this.radius = radius;
+			this.wordCount = wordCount;
+			this.k = samples.length;
+			int max = 0;
+			for (long[] sample : samples) {
+				max = Math.max(max, sample.length / wordCount);
+			}
+			this.maxSampleCount = max;
+		}
 
-			for (int j = 0; j < numberOfClusters; j++) {
-				if (j != cluster) {
-					double avgDistanceOtherCluster = 0;
-					List<Hash> otherCluster = hashesByCluster.get(j);
-					pointsInCluster = otherCluster.size();
+		void compute(int from, int to, int[] pointCluster, int[] pointIndex, double[] coefficients) {
+			long[] needle = new long[wordCount];
+			int[] distances = new int[maxSampleCount];
+			double[] lowerBound = new double[k];
+			long[] order = new long[k];
+			for (int p = from; p < to; p++) {
+				int cluster = pointCluster[p];
+				System.arraycopy(samples[cluster], pointIndex[p] * wordCount, needle, 0, wordCount);
+				coefficients[p] = coefficient(needle, cluster, distances, lowerBound, order);
+			}
+		}
 
-					for (Hash h : otherCluster) {
-						avgDistanceOtherCluster += h.normalizedHammingDistanceFast(hashes[i]) / pointsInCluster;
-					}
-					if (avgDistanceOtherCluster < minAvgDistanceOtherCluster) {
-						minAvgDistanceOtherCluster = avgDistanceOtherCluster;
-					}
+		private double coefficient(long[] needle, int cluster, int[] distances, double[] lowerBound, long[] order) {
+			int own = samples[cluster].length / wordCount;
+			// Singleton clusters
+			if (own <= 1) {
+				return 0;
+			}
+			// Mean distance to the other members. The distance to itself is 0
+			double a = sum(needle, cluster, distances) / (double) (own - 1);
+
+			// The mean distance to the members of a cluster is at least the distance to
+			// the centroid minus the mean distance of the members to the centroid
+			int candidates = 0;
+			for (int c = 0; c < k; c++) {
+				if (c != cluster && samples[c].length > 0) {
+					double bound = Math.max(0,
+							KERNEL.distance(needle, 0, centroids, c * wordCount, wordCount) - radius[c]);
+					lowerBound[c] = bound;
+					// Non negative floats keep their order when compared as bits
+					order[candidates++] = ((long) Float.floatToIntBits((float) bound) << 32) | c;
 				}
+			}
+			if (candidates == 0) {
+				return 0;
+			}
+			Arrays.sort(order, 0, candidates);
 
-				double silhoutteCoefficient;
-				if (avgDistSameCluster < minAvgDistanceOtherCluster) {
-					silhoutteCoefficient = 1 - (avgDistSameCluster / minAvgDistanceOtherCluster);
-				} else {
-					silhoutteCoefficient = (minAvgDistanceOtherCluster / avgDistSameCluster) - 1;
+			double b = Double.MAX_VALUE;
+			for (int i = 0; i < candidates; i++) {
+				int c = (int) order[i];
+				if (lowerBound[c] >= b) {
+					continue;
 				}
+				b = Math.min(b, sum(needle, c, distances) / (double) (samples[c].length / wordCount));
+			}
+
+			double max = Math.max(a, b);
+			return max == 0 ? 0 : (b - a) / max;
+		}
 
-				MutableDouble sil = silhouetteCoef.get(cluster);
-				sil.setValue(sil.getValue() + silhoutteCoefficient / sameCluster.size());
+		private long sum(long[] needle, int cluster, int[] distances) {
+			int count = samples[cluster].length / wordCount;
+			KERNEL.distances(needle, samples[cluster], wordCount, count, distances);
+			long sum = 0;
+			for (int i = 0; i < count; i++) {
+				sum += distances[i];
 			}
+			return sum;
 		}
-		silhouetteCoefComputed = true;
 	}
 
 	// Cohesian /Area of the cluster.
 
+	/**
+	 * Print the clusters and their metrics to the console.
+	 * 
+	 * @param includeSilhouetteCoefficient if true the silhouette coefficient of
+	 *                                     each cluster is included. Up to
+	 *                                     {@link #EXACT_SILHOUETTE_LIMIT} hashes
+	 *                                     the exact coefficient is computed, for
+	 *                                     larger results it is approximated from
+	 *                                     {@link #DEFAULT_SILHOUETTE_SAMPLE_SIZE}
+	 *                                     hashes per cluster.
+	 */
 	public void printInformation(boolean includeSilhouetteCoefficient) {
 
 		// Lazily calulate metric. Might be expensive if we have many entries
 		if (includeSilhouetteCoefficient) {
-			calculateSilhouetteCoefficient();
+			calculateSilhouetteCoefficient(clusterIndex.length <= EXACT_SILHOUETTE_LIMIT ? Integer.MAX_VALUE
+					: DEFAULT_SILHOUETTE_SAMPLE_SIZE);
 		}
 
 		StringBuilder sb = new StringBuilder();
@@ -198,7 +403,7 @@ public class ClusterResult {
 			sb.append(" [ ").append(clusters.get(i)).append("] ");
 			if (includeSilhouetteCoefficient) {
 				silouetteCoeffificient += silhouetteCoef.get(i).getValue();
-				sb.append("Silhouette Coef: ").append(df.format(silouetteCoeffificient));
+				sb.append("Silhouette Coef: ").append(df.format(silhouetteCoef.get(i).getValue()));
 			}
 			sb.append(" SSE:").append(sseDf.format(sse.get(i).doubleValue())).append("\n");
 		}
@@ -207,6 +412,10 @@ public class ClusterResult {
 		if (includeSilhouetteCoefficient) {
 			sb.append("Silhouette Coef/#clusters: " + df.format(silouetteCoeffificient / numberOfClusters))
 					.append("\n");
+			if (silhouetteSampleSize != Integer.MAX_VALUE) {
+				sb.append("Silhouette Coef approximated from " + silhouetteSampleSize + " hashes per cluster")
+						.append("\n");
+			}
 		}
 		System.out.println(sb.toString());
 	}
@@ -237,11 +446,62 @@ public class ClusterResult {
 		return sseSum;
 	}
 
+	/**
+	 * Get the exact silhouette coefficient of a cluster. The coefficient is
+	 * computed in parallel the first time it is requested. The effort grows
+	 * quadratic with the number of clustered hashes.
+	 * 
+	 * @param cluster the cluster index
+	 * @return the mean silhouette coefficient of the hashes of the cluster in
+	 *         range [-1,1]
+	 */
 	public double getSilhouetteCoef(int cluster) {
-		calculateSilhouetteCoefficient();
+		calculateSilhouetteCoefficient(Integer.MAX_VALUE);
 		return silhouetteCoef.get(cluster).doubleValue();
 	}
 
+	/**
+	 * Get the exact silhouette coefficient of all clustered hashes.
+	 * 
+	 * @return the mean silhouette coefficient of all hashes in range [-1,1]
+	 * @since 3.0.1
+	 */
+	public double getSilhouetteCoef() {
+		calculateSilhouetteCoefficient(Integer.MAX_VALUE);
+		return silhouetteCoefAll;
+	}
+
+	/**
+	 * Approximate the silhouette coefficient of a cluster by evaluating at most
+	 * sampleSize randomly chosen hashes of each cluster. The sampled hashes are
+	 * only compared against the samples of the clusters. If the exact coefficient
+	 * is already known it is returned instead.
+	 * 
+	 * @param cluster    the cluster index
+	 * @param sampleSize the maximum number of hashes sampled from each cluster
+	 * @return the approximated mean silhouette coefficient of the cluster in range
+	 *         [-1,1]
+	 * @since 3.0.1
+	 */
+	public double getApproximateSilhouetteCoef(int cluster, int sampleSize) {
+		calculateSilhouetteCoefficient(Require.positiveValue(sampleSize));
+		return silhouetteCoef.get(cluster).doubleValue();
+	}
+
+	/**
+	 * Approximate the silhouette coefficient of all hashes by evaluating at most
+	 * sampleSize randomly chosen hashes of each cluster. If the exact coefficient
+	 * is already known it is returned instead.
+	 * 
+	 * @param sampleSize the maximum number of hashes sampled from each cluster
+	 * @return the approximated mean silhouette coefficient in range [-1,1]
+	 * @since 3.0.1
+	 */
+	public double getApproximateSilhouetteCoef(int sampleSize) {
+		calculateSilhouetteCoefficient(Require.positiveValue(sampleSize));
+		return silhouetteCoefAll;
+	}
+
 	/**
 	 * Return the cluster index whose centeroid is most similar to the supplied hash
 	 * 
@@ -249,20 +509,7 @@ public class ClusterResult {
 	 * @return the category (index) of the best matching cluster
 	 */
 	public int getBestFitCluster(Hash testHash) {
-
-		int bestCategory = -2;
-		double bestFitness = Double.MAX_VALUE;
-
-		for (Entry<Integer, FuzzyHash> entry : clusters.entrySet()) {
-
-			double dist = entry.getValue().weightedDistance(testHash);
-			if (dist < bestFitness) {
-				bestFitness = dist;
-				bestCategory = entry.getKey();
-			}
-
-		}
-		return bestCategory;
+		return getCentroidIndex().bestFit(testHash);
 	}
 
 	/**
@@ -320,54 +567,216 @@ public class ClusterResult {
 	 */
 	public Map<Integer, Double> getPotentialFits(Hash testHash, double sigma) {
 
-		// This maps to the cluster id.
+		// This maps to the cluster id. Sorted by distance, ties in the order of the
+		// cluster ids
+		List<double[]> fits = getCentroidIndex().potentialFits(testHash, sigma);
+		fits.sort((f, f1) -> {
+			int c = Double.compare(f[1], f1[1]);
+			return c != 0 ? c : Integer.compare(rank((int) f[0]), rank((int) f1[0]));
+		});
+
+		Map<Integer, Double> resultValue = new LinkedHashMap<>();
+		for (double[] fit : fits) {
+			resultValue.put((int) fit[0], fit[1]);
+		}
+		return resultValue;
+	}
 
-		Map<Integer, Double> resultValue = new HashMap<>();
+	private CentroidIndex getCentroidIndex() {
+		if (centroidIndex == null) {
+			centroidIndex = new CentroidIndex();
+		}
+		return centroidIndex;
+	}
 
-		int bestCategory = -2;
-		double bestFitness = Double.MAX_VALUE;
+	/**
+	 * Ties between clusters are resolved in favour of the lower cluster index.
+	 * Noise comes last
+	 */
+	private static int rank(int cluster) {
+		return cluster == -1 ? Integer.MAX_VALUE : cluster;
+	}
 
-		// For every cluster midpoit
-		for (Entry<Integer, FuzzyHash> entry : clusters.entrySet()) {
+	/**
+	 * The centroids packed into primitive arrays. The weighted distance of a hash
+	 * to a centroid is the sum of the distances of the individual bits. If a bit
+	 * agrees with the majority bit of the centroid it contributes the smaller
+	 * distance, otherwise the larger. Summing the smaller distances of all bits
+	 * yields the smallest possible distance to the centroid. Clusters are visited
+	 * in ascending order of this base distance and skipped as soon as the base
+	 * distance plus the smallest possible penalty of each disagreeing bit exceeds
+	 * the best distance found.
+	 */
+	private class CentroidIndex {
 
-			// Compute the distance
-			double dist = entry.getValue().weightedDistance(testHash);
+		/**
+		 * Slack absorbing rounding differences between the bounds and the exact
+		 * distance
+		 */
+		private static final double EPSILON = 1e-9;
 
-			// Common error range of the cluster
-			double upperBound = stats.get(entry.getKey()).getMax();
+		private final int bits;
+		private final int wordCount;
 
-			// TODO if the cluster only contains 1 entry this would add nothing! this can't
-			// be true either.
-			// Maybe under a certain threshold assume the average of the top 20% quantile.
-			if (dist <= upperBound * sigma) {
-				// Additionally + range...
-				resultValue.put(entry.getKey(), dist);
-			}
+		/** The cluster ids in ascending order of the base distance */
+		private final int[] ids;
 
-			// Also keep track of the best fitness even if it does not fall into the error
-			// category.
-			// The best metach might often be inside here
-			if (dist < bestFitness) {
-				bestFitness = dist;
-				bestCategory = entry.getKey();
+		/** The distance of each bit to a 1 bit. ids.length * bits */
+		private final double[] bitDistance;
+
+		/** The packed majority bits of each centroid */
+		private final long[] majority;
+
+		/** The normalized distance of a hash agreeing with all majority bits */
+		private final double[] base;
+
+		/** The smallest normalized increase of the distance per disagreeing bit */
+		private final double[] minPenalty;
+
+		/** The largest distance of a member of each cluster to the centroid */
+		private final double[] maxDistance;
+
+		CentroidIndex() {
+			// Clusters without members have no centroid
+			List<Integer> ids = new ArrayList<>();
+			int bits = 0;
+			for (Entry<Integer, FuzzyHash> entry : clusters.entrySet()) {
+				if (entry.getValue().getAddedCount() > 0) {
+					ids.add(entry.getKey());
+					bits = entry.getValue().getBitResolution();
+				}
+			}
+			this.bits = bits;
+			wordCount = KMeans.wordCount(bits);
+
+			int n = ids.size();
+			double[] unorderedBase = new double[n];
+			for (int i = 0; i < n; i++) {
+				FuzzyHash centroid = clusters.get(ids.get(i));
+				for (int b = 0; b < bits; b++) {
+					double d = centroid.getWeightedDistance(b, true);
+					unorderedBase[i] += Math.min(d, 1 - d);
+				}
+			}
+			Integer[] order = new Integer[n];
+			for (int i = 0; i < n; i++) {
+				order[i] = i;
+			}
+			Arrays.sort(order, (i, i1) -> Double.compare(unorderedBase[i], unorderedBase[i1]));
+
+			this.ids = new int[n];
+			bitDistance = new double[n * bits];
+			majority = new long[n * wordCount];
+			base = new double[n];
+			minPenalty = new double[n];
+			maxDistance = new double[n];
+			for (int pos = 0; pos < n; pos++) {
+				int id = ids.get(order[pos]);
+				FuzzyHash centroid = clusters.get(id);
+				this.ids[pos] = id;
+				double penalty = Double.MAX_VALUE;
+				for (int b = 0; b < bits; b++) {
+					double d = centroid.getWeightedDistance(b, true);
+					bitDistance[pos * bits + b] = d;
+					if (d < 0.5) {
+						majority[pos * wordCount + (b >>> 6)] |= 1L << b;
+					}
+					penalty = Math.min(penalty, Math.abs(1 - 2 * d));
+				}
+				base[pos] = unorderedBase[order[pos]] / bits;
+				minPenalty[pos] = bits == 0 ? 0 : penalty / bits;
+				maxDistance[pos] = stats.get(id).getMax();
 			}
 		}
 
-		if (!resultValue.containsKey(bestCategory)) {
-			resultValue.put(bestCategory, 1d);
+		int bestFit(Hash testHash) {
+			long[] words = words(testHash);
+			int bestCategory = -2;
+			double bestFitness = Double.MAX_VALUE;
+			for (int pos = 0; pos < ids.length; pos++) {
+				// All following clusters are further away
+				if (base[pos] - EPSILON > bestFitness) {
+					break;
+				}
+				if (lowerBound(words, pos) - EPSILON > bestFitness) {
+					continue;
+				}
+				double dist = distance(words, pos);
+				int id = ids[pos];
+				if (dist < bestFitness || (dist == bestFitness && rank(id) < rank(bestCategory))) {
+					bestFitness = dist;
+					bestCategory = id;
+				}
+			}
+			return bestCategory;
 		}
 
-		// Int
-		/// get all
+		/**
+		 * @return the cluster id and distance of each cluster whose distance is within
+		 *         sigma times the largest distance of a member. The best fitting
+		 *         cluster is always contained. If it is not within range the distance
+		 *         is reported as 1
+		 */
+		List<double[]> potentialFits(Hash testHash, double sigma) {
+			long[] words = words(testHash);
+
+			double maxThreshold = -Double.MAX_VALUE;
+			for (int pos = 0; pos < ids.length; pos++) {
+				maxThreshold = Math.max(maxThreshold, maxDistance[pos] * sigma);
+			}
 
-		// Sort it by distance (TODO should it be distance - error?)
-		resultValue = resultValue.entrySet().stream().sorted(Map.Entry.comparingByValue())
-				.collect(Collectors.toMap(e -> e.getKey(), e -> e.getValue(), (u, v) -> {
-					throw new IllegalStateException(String.format("Duplicate key %s", u));
-				}, LinkedHashMap::new));
+			List<double[]> fits = new ArrayList<>();
+			int bestCategory = -2;
+			double bestFitness = Double.MAX_VALUE;
+			boolean bestContained = false;
+			for (int pos = 0; pos < ids.length; pos++) {
+				double threshold = maxDistance[pos] * sigma;
+				if (base[pos] - EPSILON > bestFitness && base[pos] - EPSILON > maxThreshold) {
+					break;
+				}
+				double lowerBound = lowerBound(words, pos) - EPSILON;
+				if (lowerBound > bestFitness && lowerBound > threshold) {
+					continue;
+				}
+				double dist = distance(words, pos);
+				int id = ids[pos];
+				boolean contained = dist <= threshold;
+				if (contained) {
+					fits.add(new double[] { id, dist });
+				}
+				if (dist < bestFitness || (dist == bestFitness && rank(id) < rank(bestCategory))) {
+					bestFitness = dist;
+					bestCategory = id;
+					bestContained = contained;
+				}
+			}
+			if (!bestContained) {
+				fits.add(new double[] { bestCategory, 1d });
+			}
+			return fits;
+		}
 
-//		System.out.println("Values: " + resultValue);
+		private long[] words(Hash testHash) {
+			long[] words = testHash.getPackedHashValue();
+			return words.length < wordCount ? Arrays.copyOf(words, wordCount) : words;
+		}
 
-		return resultValue;
+		private double lowerBound(long[] words, int pos) {
+			int differing = KERNEL.distance(words, 0, majority, pos * wordCount, wordCount);
+			return base[pos] + differing * minPenalty[pos];
+		}
+
+		/**
+		 * Identical to {@link FuzzyHash#weightedDistance(Hash)}
+		 */
+		private double distance(long[] words, int pos) {
+			int offset = pos * bits;
+			double hammingDistance = 0;
+			for (int bit = 0; bit < bits; bit++) {
+				double distance = bitDistance[offset + bit];
+				hammingDistance += (words[bit >>> 6] & (1L << bit)) != 0 ? distance : 1 - distance;
+			}
+			return hammingDistance / bits;
+		}
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -1,36 +1,81 @@
 package com.github.kilianB.datastructures;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.logging.Logger;
 
 import com.github.kilianB.ArrayUtil;
 import com.github.kilianB.Require;
 import com.github.kilianB.hash.FuzzyHash;
+import com.github.kilianB.hash.HammingKernel;
 import com.github.kilianB.hash.Hash;
 import com.github.kilianB.pcg.fast.PcgRSFast;
 
 /**
+ * Partition hashes into k clusters minimizing the hamming distance of each hash
+ * to the majority hash of it's cluster.
+ *
+ * <p>
+ * The hashes and cluster centers are packed into contiguous long arrays. Points
+ * are assigned in parallel chunks on a fork join pool. Each chunk counts the
+ * bits of the points changing their cluster into partial counters which are
+ * summed up to update the cluster centers. Only the centers of clusters which
+ * gained or lost points are recomputed.
+ *
+ * <p>
+ * Distance computations are skipped using the triangle inequality (Hamerly).
+ * For each point an upper bound of the distance to it's center and a lower
+ * bound of the distance to the second closest center is kept. The bounds are
+ * adjusted by the distance the centers moved. As long as the upper bound is
+ * smaller than the lower bound or half the distance of the center to the
+ * closest other center the assignment can not change. The result is identical
+ * to comparing every point to every center.
+ *
  * @author Kilian
  *
  */
 public class KMeans {
 
 	private static final Logger LOGGER = Logger.getLogger(KMeans.class.getSimpleName());
-	
+
+	/** The minimum number of points assigned by a single task */
+	protected static final int CHUNK_SIZE = 1 << 12;
+
+	private static final HammingKernel KERNEL = HammingKernel.getInstance();
+
 	/**
 	 * The number of cluster the data will be partitioned into
 	 */
 	protected int k;
 
 	/**
-	 * Create a KMeans clusterer
-	 * 
+	 * The pool used to assign points in parallel. If null the clustering is
+	 * performed on the calling thread
+	 */
+	protected final ForkJoinPool pool;
+
+	/**
+	 * Create a KMeans clusterer assigning points in parallel on the common fork
+	 * join pool.
+	 *
 	 * @param clusters the number of cluster to partition the data into
 	 */
 	public KMeans(int clusters) {
+		this(clusters, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Create a KMeans clusterer
+	 *
+	 * @param clusters the number of cluster to partition the data into
+	 * @param pool     the pool used to assign points in parallel. If null all
+	 *                 computations are executed on the calling thread
+	 * @since 3.0.1
+	 */
+	public KMeans(int clusters, ForkJoinPool pool) {
 		this.k = Require.positiveValue(clusters);
+		this.pool = pool;
 	}
 
 	public ClusterResult cluster(Hash[] hashes) {
@@ -41,116 +86,398 @@ public class KMeans {
 
 		int[] cluster = new int[hashes.length];
 
-		
 		// If only one cluster is available return an array indicating all data
 		// belonging to this one cluster
 		if (k == 1) {
-			return new ClusterResult(cluster, hashes);
+			return new ClusterResult(cluster, hashes, pool);
 		} else if (k > hashes.length) {
 			ArrayUtil.fillArray(cluster, i ->{ return i;});
 			LOGGER.info("Not enough images present for k categories. Assume: " + hashes.length + " cluster/s");
-			return new ClusterResult(cluster, hashes);
+			return new ClusterResult(cluster, hashes, pool);
 		}
 
 		// 0 = choose random start clusters
 		FuzzyHash[] clusterMeans = computeStartingClusters(hashes);
 
-		System.out.println("starting cluster");
-		
-		
 		// Iteratively improve clusters
 		computeKMeans(cluster, clusterMeans, hashes, maxIter);
 
-		return new ClusterResult(cluster, hashes);
+		return new ClusterResult(cluster, hashes, pool);
 	}
 
 	protected FuzzyHash[] computeStartingClusters(Hash[] hashes) {
 
 		PcgRSFast rng = new PcgRSFast();
 
-		// Lets randomly pick hashes
-		List<Integer> randomIndices = new ArrayList<>(k);
-
-		for (int i = 0; i < hashes.length; i++) {
-			randomIndices.add(i);
-		}
-
-		Collections.shuffle(randomIndices, rng);
+		// Lets randomly pick hashes. Partial fisher yates shuffle
+		int[] indices = new int[hashes.length];
+		ArrayUtil.fillArray(indices, i -> {
+			return i;
+		});
 
 		FuzzyHash[] startingClusters = new FuzzyHash[k];
 
-		System.out.println(randomIndices);
-		
 		for (int i = 0; i < k; i++) {
+			int j = i + rng.nextInt(indices.length - i);
+			int index = indices[j];
+			indices[j] = indices[i];
+			indices[i] = index;
 			startingClusters[i] = new FuzzyHash();
-			startingClusters[i].mergeFast(hashes[randomIndices.remove(0)]);
+			startingClusters[i].mergeFast(hashes[index]);
 		}
 
 		return startingClusters;
 	}
 
+	/**
+	 * Iteratively assign the hashes to the closest cluster mean and recompute the
+	 * means until no hash changes it's cluster or the maximum number of iterations
+	 * is reached.
+	 *
+	 * @param cluster      the array the cluster index of each hash is written to
+	 * @param clusterMeans the starting cluster means. After the method returns the
+	 *                     array holds the means of the final clusters
+	 * @param hashes       the hashes to cluster. All hashes are expected to have
+	 *                     the same bit resolution
+	 * @param maxIter      the maximum number of iterations
+	 */
 	protected void computeKMeans(int[] cluster, FuzzyHash[] clusterMeans, Hash[] hashes, int maxIter) {
 
+		Clustering clustering = new Clustering(hashes, clusterMeans);
+
 		int iter = 0;
 
 		boolean dirty = false;
 
 		do {
-			dirty = false;
-			// For each datapoint
-			for (int dataIndex = 0; dataIndex < hashes.length; dataIndex++) {
+			Counters counters = clustering.assign();
+			dirty = counters != null;
+			if (dirty) {
+				clustering.update(counters);
+			}
+
+			if (iter++ > maxIter) {
+				break;
+			}
+		} while (dirty);
+
+		System.arraycopy(clustering.assignment, 0, cluster, 0, cluster.length);
+
+		// Publish the final cluster means
+		for (int i = 0; i < clusterMeans.length; i++) {
+			clusterMeans[i] = new FuzzyHash();
+		}
+		for (int dataIndex = 0; dataIndex < hashes.length; dataIndex++) {
+			clusterMeans[cluster[dataIndex]].mergeFast(hashes[dataIndex]);
+		}
+	}
+
+	/**
+	 * Pack the hashes into a contiguous array. Hash <code>i</code> occupies the
+	 * words <code>[i * wordCount, (i+1) * wordCount)</code>. Bits beyond the bit
+	 * resolution are cleared.
+	 *
+	 * @param hashes        the hashes to pack
+	 * @param bitResolution the bit resolution of the hashes
+	 * @return the packed hashes
+	 * @since 3.0.1
+	 */
+	protected static long[] pack(Hash[] hashes, int bitResolution) {
+		int wordCount = wordCount(bitResolution);
+		long lastWordMask = bitResolution % 64 == 0 ? -1L : (1L << bitResolution) - 1;
+		long[] data = new long[hashes.length * wordCount];
+		for (int i = 0; i < hashes.length; i++) {
+			long[] words = hashes[i].getPackedHashValue();
+			System.arraycopy(words, 0, data, i * wordCount, Math.min(wordCount, words.length));
+			data[(i + 1) * wordCount - 1] &= lastWordMask;
+		}
+		return data;
+	}
+
+	protected static int wordCount(int bitResolution) {
+		return Math.max(1, (bitResolution + 63) / 64);
+	}
+
+	/**
+	 * The state of the clustering. Points and centers are packed into long words,
+	 * the bits of the members of each cluster are counted to compute the majority
+	 * hash of the cluster.
+	 */
+	private class Clustering {
+
+		private final int n;
+		private final int bits;
+		private final int wordCount;
+
+		/** The packed points */
+		private final long[] data;
+
+		/** The packed centers */
+		private final long[] centers;
+
+		/** The number of 1 bits of the members at each position. k * bits */
+		private final int[] ones;
+
+		/** The number of members of each cluster */
+		private final int[] sizes;
+
+		/** The cluster of each point. -1 if not yet assigned */
+		private final int[] assignment;
+
+		/** Upper bound of the distance of each point to it's center */
+		private final int[] upper;
+
+		/** Lower bound of the distance of each point to the second closest center */
+		private final int[] lower;
+
+		/** Distance each center moved during the last update */
+		private final int[] drift;
 
-				// TODO reset
-				double minDistance = Double.MAX_VALUE;
-				int bestCluster = -1;
+		/** The distance of each center to the closest other center */
+		private final int[] nearestCenter;
 
-				for (int clusterIndex = 0; clusterIndex < clusterMeans.length; clusterIndex++) {
+		/** The largest drift and the cluster it belongs to */
+		private int maxDrift;
+		private int maxDriftCluster = -1;
 
-//					double distToCluster = clusterMeans[clusterIndex].weightedDistance(hashes[dataIndex]);
+		/** The largest drift of all other clusters */
+		private int secondMaxDrift;
 
-					double distToCluster = clusterMeans[clusterIndex].normalizedHammingDistanceFast(hashes[dataIndex]);
+		/** True once the centers were computed from the members */
+		private boolean initialized;
 
-					if (distToCluster < minDistance) {
-						bestCluster = clusterIndex;
-						minDistance = distToCluster;
+		Clustering(Hash[] hashes, FuzzyHash[] clusterMeans) {
+			n = hashes.length;
+			bits = hashes[0].getBitResolution();
+			wordCount = wordCount(bits);
+			data = pack(hashes, bits);
+			centers = pack(clusterMeans, bits);
+			ones = new int[k * bits];
+			sizes = new int[k];
+			assignment = new int[n];
+			Arrays.fill(assignment, -1);
+			upper = new int[n];
+			lower = new int[n];
+			drift = new int[k];
+			nearestCenter = new int[k];
+		}
+
+		/**
+		 * Assign each point to the closest center.
+		 *
+		 * @return the counters of the points which changed their cluster or null if
+		 *         all points kept their cluster
+		 */
+		Counters assign() {
+			computeNearestCenters();
+			if (pool == null || n <= CHUNK_SIZE) {
+				return assign(0, n);
+			}
+			return pool.invoke(new AssignTask(this, 0, n, ParallelRange.chunkSize(pool, n, CHUNK_SIZE)));
+		}
+
+		private void computeNearestCenters() {
+			ParallelRange.forEach(pool, 0, k, CHUNK_SIZE, (from, to) -> {
+				for (int c = from; c < to; c++) {
+					int min = Integer.MAX_VALUE;
+					for (int other = 0; other < k; other++) {
+						if (other != c) {
+							min = Math.min(min,
+									KERNEL.distance(centers, c * wordCount, centers, other * wordCount, wordCount));
+						}
 					}
+					nearestCenter[c] = min;
 				}
+			});
+		}
 
-				if (cluster[dataIndex] != bestCluster) {
-					cluster[dataIndex] = bestCluster;
-					dirty = true;
+		Counters assign(int from, int to) {
+			Counters counters = null;
+			long[] needle = new long[wordCount];
+			int[] distances = new int[k];
+			for (int i = from; i < to; i++) {
+				int current = assignment[i];
+				if (current != -1) {
+					// Move the bounds by the distance the centers moved
+					int u = upper[i] + drift[current];
+					int l = lower[i] - (current == maxDriftCluster ? secondMaxDrift : maxDrift);
+					lower[i] = l;
+					// All other centers are strictly further away
+					if (u < l || 2 * u < nearestCenter[current]) {
+						upper[i] = u;
+						continue;
+					}
+					// Tighten the upper bound
+					u = KERNEL.distance(data, i * wordCount, centers, current * wordCount, wordCount);
+					upper[i] = u;
+					if (u < l || 2 * u < nearestCenter[current]) {
+						continue;
+					}
 				}
-			}
 
-			if (dirty) {
-				// recompute cluster means
-
-				// Reset
-//				ArrayUtil.fillArrayMulti(clusterMeans, () -> {
-//					return new FuzzyHash(hashResolution);
-//				});
-
-				Hash[] clones = new Hash[clusterMeans.length];
-				int i = 0;
-				for (FuzzyHash fuzzy : clusterMeans) {
-					fuzzy.reset();
-					clones[i++] = new Hash(fuzzy.getHashValue(), fuzzy.getBitResolution(), fuzzy.getAlgorithmId());
+				System.arraycopy(data, i * wordCount, needle, 0, wordCount);
+				KERNEL.distances(needle, centers, wordCount, k, distances);
+				int best = 0;
+				int bestDistance = distances[0];
+				int second = Integer.MAX_VALUE;
+				for (int c = 1; c < k; c++) {
+					int distance = distances[c];
+					if (distance < bestDistance) {
+						second = bestDistance;
+						bestDistance = distance;
+						best = c;
+					} else if (distance < second) {
+						second = distance;
+					}
 				}
+				upper[i] = bestDistance;
+				lower[i] = second;
 
-				for (int dataIndex = 0; dataIndex < hashes.length; dataIndex++) {
-					int clusterIndex = cluster[dataIndex];
-					clusterMeans[clusterIndex].mergeFast(hashes[dataIndex]);
+				if (best != current) {
+					if (counters == null) {
+						counters = new Counters(k, bits);
+					}
+					counters.move(data, i * wordCount, wordCount, current, best);
+					assignment[i] = best;
 				}
+			}
+			return counters;
+		}
 
-				for (int j = 0; j < clones.length; j++) {
-					clusterMeans[j].subtractFast(clones[j]);
+		/**
+		 * Apply the counted moves and recompute the centers of all clusters which
+		 * gained or lost members.
+		 */
+		void update(Counters counters) {
+			for (int i = 0; i < ones.length; i++) {
+				ones[i] += counters.ones[i];
+			}
+			maxDrift = 0;
+			secondMaxDrift = 0;
+			maxDriftCluster = -1;
+			long[] center = new long[wordCount];
+			for (int c = 0; c < k; c++) {
+				sizes[c] += counters.sizes[c];
+				// The first update replaces the starting centers of all clusters
+				if (!counters.touched[c] && initialized) {
+					drift[c] = 0;
+					continue;
+				}
+				// Majority bit. Ties resolve to 0 like the fuzzy hash
+				Arrays.fill(center, 0);
+				int offset = c * bits;
+				int size = sizes[c];
+				for (int b = 0; b < bits; b++) {
+					if (2 * ones[offset + b] > size) {
+						center[b >>> 6] |= 1L << b;
+					}
+				}
+				int d = KERNEL.distance(center, 0, centers, c * wordCount, wordCount);
+				System.arraycopy(center, 0, centers, c * wordCount, wordCount);
+				drift[c] = d;
+				if (d > maxDrift) {
+					secondMaxDrift = maxDrift;
+					maxDrift = d;
+					maxDriftCluster = c;
+				} else if (d > secondMaxDrift) {
+					secondMaxDrift = d;
 				}
 			}
+			initialized = true;
+		}
+	}
 
-			if (iter++ > maxIter) {
-				break;
+	/**
+	 * Bit counts of the points which changed their cluster during an assignment
+	 * pass. Each task counts into it's own instance, the instances are summed up
+	 * afterwards.
+	 */
+	private static class Counters {
+
+		/** Change of the number of 1 bits at each position. k * bits */
+		private final int[] ones;
+
+		/** Change of the number of members */
+		private final int[] sizes;
+
+		/** Clusters which gained or lost members */
+		private final boolean[] touched;
+
+		private final int bits;
+
+		Counters(int k, int bits) {
+			this.bits = bits;
+			ones = new int[k * bits];
+			sizes = new int[k];
+			touched = new boolean[k];
+		}
+
+		void move(long[] data, int offset, int wordCount, int from, int to) {
+			if (from != -1) {
+				count(data, offset, wordCount, from, -1);
 			}
-//			System.out.println("iter: " + iter++ + " " + totalError);
-		} while (dirty);
+			count(data, offset, wordCount, to, 1);
+		}
+
+		private void count(long[] data, int offset, int wordCount, int cluster, int delta) {
+			int base = cluster * bits;
+			for (int w = 0; w < wordCount; w++) {
+				// Only visit the set bits
+				for (long word = data[offset + w]; word != 0; word &= word - 1) {
+					ones[base + (w << 6) + Long.numberOfTrailingZeros(word)] += delta;
+				}
+			}
+			sizes[cluster] += delta;
+			touched[cluster] = true;
+		}
+
+		static Counters merge(Counters c, Counters c1) {
+			if (c == null) {
+				return c1;
+			}
+			if (c1 == null) {
+				return c;
+			}
+			for (int i = 0; i < c.ones.length; i++) {
+				c.ones[i] += c1.ones[i];
+			}
+			for (int i = 0; i < c.sizes.length; i++) {
+				c.sizes[i] += c1.sizes[i];
+				c.touched[i] |= c1.touched[i];
+			}
+			return c;
+		}
+	}
+
+	/**
+	 * Splits the points in halves until a chunk remains
+	 */
+	private static class AssignTask extends RecursiveTask<Counters> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final transient Clustering clustering;
+		private final int from;
+		private final int to;
+		private final int chunkSize;
+
+		AssignTask(Clustering clustering, int from, int to, int chunkSize) {
+			this.clustering = clustering;
+			this.from = from;
+			this.to = to;
+			this.chunkSize = chunkSize;
+		}
+
+		@Override
+		protected Counters compute() {
+			if (to - from <= chunkSize) {
+				return clustering.assign(from, to);
+			}
+			int mid = (from + to) >>> 1;
+			AssignTask left = new AssignTask(clustering, from, mid, chunkSize);
+			left.fork();
+			Counters right = new AssignTask(clustering, mid, to, chunkSize).compute();
+			return Counters.merge(left.join(), right);
+		}
 	}
 }
@@ -1,9 +1,12 @@
 package com.github.kilianB.datastructures;
 
+import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 import com.github.kilianB.ArrayUtil;
 import com.github.kilianB.hash.FuzzyHash;
+import com.github.kilianB.hash.HammingKernel;
 import com.github.kilianB.hash.Hash;
 import com.github.kilianB.pcg.fast.PcgRSFast;
 
@@ -11,7 +14,12 @@ import com.github.kilianB.pcg.fast.PcgRSFast;
  * Kmeans plus plus implementation. Opposed to Kmeans this algorithm
  * strategically chooses it's starting clusters to decrease iteration time at the
  * later stage
- * 
+ *
+ * <p>
+ * The squared distance of each point to the closest chosen center is kept and
+ * only compared against the newly chosen center, in parallel if a pool is
+ * available.
+ *
  * @author Kilian
  *
  */
@@ -21,6 +29,16 @@ public class KMeansPlusPlus extends KMeans {
 		super(clusters);
 	}
 
+	/**
+	 * @param clusters the number of cluster to partition the data into
+	 * @param pool     the pool used to assign points in parallel. If null all
+	 *                 computations are executed on the calling thread
+	 * @since 3.0.1
+	 */
+	public KMeansPlusPlus(int clusters, ForkJoinPool pool) {
+		super(clusters, pool);
+	}
+
 	@Override
 	protected FuzzyHash[] computeStartingClusters(Hash[] hashes) {
 
@@ -33,41 +51,45 @@ public class KMeansPlusPlus extends KMeans {
 			return new FuzzyHash();
 		});
 
-		// Randomly choose a starting point. Initial vector
-		clusterMeans[0].mergeFast(hashes[rng.nextInt(hashes.length)]);
+		int bits = hashes[0].getBitResolution();
+		int wordCount = wordCount(bits);
+		long[] data = pack(hashes, bits);
+		HammingKernel kernel = HammingKernel.getInstance();
 
-		for (int cluster = 1; cluster < k; cluster++) {
+		// Squared normalized distance to the closest center
+		double[] distance = new double[hashes.length];
+		Arrays.fill(distance, Double.MAX_VALUE);
 
-			// Choose a random cluster center with probability equal to the squared distance
-			// of the closest existing center
-			double[] distance = new double[hashes.length];
-			ArrayUtil.fillArray(distance, () -> {
-				return Double.MAX_VALUE;
-			});
-
-			double sum = 0;
+		// Randomly choose a starting point. Initial vector
+		int index = rng.nextInt(hashes.length);
+		clusterMeans[0].mergeFast(hashes[index]);
 
-			// For each point
-			for (int i = 0; i < hashes.length; i++) {
+		for (int cluster = 1; cluster < k; cluster++) {
 
-				// find the minimum distance to all already existing clusters
-				for (int j = 0; j < cluster; j++) {
-					double distTemp = clusterMeans[j].normalizedHammingDistanceFast(hashes[i]);
+			// Only the center chosen last can be closer than the known distance
+			int centerOffset = index * wordCount;
+			ParallelRange.forEach(pool, 0, hashes.length, CHUNK_SIZE, (from, to) -> {
+				for (int i = from; i < to; i++) {
+					double distTemp = kernel.distance(data, i * wordCount, data, centerOffset, wordCount)
+							/ (double) bits;
 					distTemp *= distTemp;
 					if (distTemp < distance[i]) {
 						distance[i] = distTemp;
 					}
 				}
+			});
+
+			// Choose a random cluster center with probability equal to the squared distance
+			// of the closest existing center
+			double sum = 0;
+			for (int i = 0; i < hashes.length; i++) {
 				sum += distance[i];
 			}
-			int index = 0;
+			index = 0;
 			double rand = rng.nextDouble() * sum;
 			double runningSum = distance[0];
-			for (; index < hashes.length; index++) {
-				if (rand <= runningSum) {
-					break;
-				}
-				runningSum += distance[index + 1];
+			while (rand > runningSum && index < hashes.length - 1) {
+				runningSum += distance[++index];
 			}
 			clusterMeans[cluster].mergeFast(hashes[index]);
 		}
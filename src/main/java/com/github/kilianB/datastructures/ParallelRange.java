@@ -0,0 +1,90 @@
+package com.github.kilianB.datastructures;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Executes an action for a range of indices on a fork join pool. The range is
+ * split in halves until the chunks are small enough to be processed by a single
+ * task.
+ * 
+ * <p>
+ * A null pool processes the range on the calling thread.
+ * 
+ * @author Kilian
+ * @since 3.0.1
+ */
+public final class ParallelRange {
+
+	private ParallelRange() {
+	}
+
+	/**
+	 * Action applied to the indices [from, to)
+	 */
+	public interface RangeAction {
+		void apply(int from, int to);
+	}
+
+	/**
+	 * Execute the action for all indices in [from, to). Ranges not larger than the
+	 * threshold are processed on the calling thread.
+	 * 
+	 * @param pool      the pool used to process the chunks. If null the range is
+	 *                  processed on the calling thread
+	 * @param from      the first index, inclusive
+	 * @param to        the last index, exclusive
+	 * @param threshold the minimum number of indices processed by a single task
+	 * @param action    the action
+	 */
+	public static void forEach(ForkJoinPool pool, int from, int to, int threshold, RangeAction action) {
+		if (pool == null || to - from <= threshold) {
+			action.apply(from, to);
+		} else {
+			pool.invoke(new RangeTask(action, from, to, chunkSize(pool, to - from, threshold)));
+		}
+	}
+
+	/**
+	 * Chunks are large enough to keep the number of tasks proportional to the
+	 * parallelism of the pool.
+	 * 
+	 * @param pool      the pool processing the chunks
+	 * @param count     the number of indices
+	 * @param threshold the minimum size of a chunk
+	 * @return the maximum number of indices processed by a single task
+	 */
+	static int chunkSize(ForkJoinPool pool, int count, int threshold) {
+		return Math.max(threshold, count / (pool.getParallelism() * 4) + 1);
+	}
+
+	/**
+	 * Splits the range in halves until a chunk remains
+	 */
+	private static class RangeTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final transient RangeAction action;
+		private final int from;
+		private final int to;
+		private final int chunkSize;
+
+		RangeTask(RangeAction action, int from, int to, int chunkSize) {
+			this.action = action;
+			this.from = from;
+			this.to = to;
+			this.chunkSize = chunkSize;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= chunkSize) {
+				action.apply(from, to);
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new RangeTask(action, from, mid, chunkSize), new RangeTask(action, mid, to, chunkSize));
+		}
+	}
+}
@@ -1,8 +1,13 @@
 package com.github.kilianB.datastructures.tree;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 import com.github.kilianB.datastructures.tree.binaryTree.Leaf;
 import com.github.kilianB.datastructures.tree.binaryTree.Node;
@@ -109,6 +114,206 @@ public abstract class AbstractBinaryTree<T> implements Serializable {
 		hashCount++;
 	}
 
+	/**
+	 * Insert all hashes into the empty tree at once. The resulting tree is
+	 * identical to a tree created by adding the hashes one by one in the order of
+	 * the list.
+	 * <p>
+	 * 
+	 * Instead of walking down from the root for each hash the tree is built top
+	 * down. The hashes are stably partitioned by the bit of the current level
+	 * (radix partition) and every node is created exactly once. Subtrees of
+	 * different partitions are independent and may be built in parallel.
+	 * 
+	 * @param hashes the hashes to add. All hashes are expected to have the same
+	 *               bit resolution
+	 * @param values the value associated with the hash at the same index
+	 * @param pool   the pool used to build large subtrees in parallel or null to
+	 *               build the tree in the calling thread
+	 * @throws IllegalArgumentException if the number of hashes and values does not
+	 *                                  match or the hashes have different bit
+	 *                                  resolutions
+	 * @throws IllegalStateException    if the tree is not empty or hash
+	 *                                  consistency is ensured and hashes of
+	 *                                  different algorithms are supplied
+	 * @since 3.0.1
+	 */
+	protected void bulkLoad(List<? extends Hash> hashes, List<? extends T> values, ForkJoinPool pool) {
+		if (hashes.size() != values.size()) {
+			throw new IllegalArgumentException("Each hash requires exactly one value");
+		}
+		if (hashCount != 0) {
+			throw new IllegalStateException("Bulk loading requires an empty tree");
+		}
+		int n = hashes.size();
+		if (n == 0) {
+			return;
+		}
+
+		int bitResolution = hashes.get(0).getBitResolution();
+		int wordCount = (bitResolution + 63) / 64;
+		int consistentAlgoId = algoId;
+		long[][] words = new long[n][];
+		for (int i = 0; i < n; i++) {
+			Hash hash = hashes.get(i);
+			if (ensureHashConsistency) {
+				if (consistentAlgoId == 0) {
+					consistentAlgoId = hash.getAlgorithmId();
+				} else if (consistentAlgoId != hash.getAlgorithmId()) {
+					throw new IllegalStateException("Tried to add an incompatible hash to the binary tree");
+				}
+			}
+			if (hash.getBitResolution() != bitResolution) {
+				throw new IllegalArgumentException("All hashes are expected to have the same bit resolution");
+			}
+			words[i] = hash.getPackedHashValue();
+			if (words[i].length < wordCount) {
+				words[i] = Arrays.copyOf(words[i], wordCount);
+			}
+		}
+
+		int[] order = new int[n];
+		for (int i = 0; i < n; i++) {
+			order[i] = i;
+		}
+		BulkLoad load = new BulkLoad(words, values, order, new int[n], pool != null);
+		if (pool == null) {
+			bulkLoad(root, bitResolution, 0, n, load);
+		} else {
+			pool.invoke(new BulkLoadTask(root, bitResolution, 0, n, load));
+		}
+		algoId = consistentAlgoId;
+		hashCount = n;
+	}
+
+	/**
+	 * Build the subtree of the node for the hashes in the range [from, to) of the
+	 * order.
+	 * 
+	 * @param node  the node whose children are created
+	 * @param depth the depth of the node. The children represent bit depth - 1
+	 */
+	private void bulkLoad(Node node, int depth, int from, int to, BulkLoad load) {
+		int bit = depth - 1;
+		int split = load.partition(bit, from, to);
+
+		List<BulkLoadTask> tasks = null;
+		for (int c = 0; c < 2; c++) {
+			boolean one = c == 1;
+			int start = one ? split : from;
+			int end = one ? to : split;
+			if (start == end) {
+				continue;
+			}
+			if (bit == 0) {
+				Leaf<T> leaf = new Leaf<T>();
+				for (int i = start; i < end; i++) {
+					leaf.addData(load.values.get(load.order[i]));
+				}
+				node.setChild(one, leaf);
+			} else {
+				Node child = node.createChild(one);
+				for (int i = start; i < end; i++) {
+					bulkLoadVisit(child, load.values.get(load.order[i]), bit, one);
+				}
+				if (load.parallel && end - start >= BulkLoad.PARALLEL_THRESHOLD) {
+					if (tasks == null) {
+						tasks = new ArrayList<>(2);
+					}
+					tasks.add(new BulkLoadTask(child, bit, start, end, load));
+				} else {
+					bulkLoad(child, bit, start, end, load);
+				}
+			}
+		}
+		if (tasks != null) {
+			ForkJoinTask.invokeAll(tasks);
+		}
+	}
+
+	/**
+	 * Called during bulk loading for every value whose path passes through an
+	 * inner node, allowing subclasses to maintain additional node state.
+	 * 
+	 * @param node  the inner node
+	 * @param value the value added below the node
+	 * @param bit   the index of the bit the node represents
+	 * @param one   the value of the bit
+	 * @since 3.0.1
+	 */
+	protected void bulkLoadVisit(Node node, T value, int bit, boolean one) {
+	}
+
+	/**
+	 * Shared state of a bulk load. Tasks work on disjoint ranges of the arrays.
+	 */
+	private class BulkLoad {
+
+		/** Ranges smaller than this are built in the current thread */
+		static final int PARALLEL_THRESHOLD = 1 << 13;
+
+		final long[][] words;
+		final List<? extends T> values;
+		/** The indices of the hashes sorted by the path from the root */
+		final int[] order;
+		final int[] buffer;
+		final boolean parallel;
+
+		BulkLoad(long[][] words, List<? extends T> values, int[] order, int[] buffer, boolean parallel) {
+			this.words = words;
+			this.values = values;
+			this.order = order;
+			this.buffer = buffer;
+			this.parallel = parallel;
+		}
+
+		/**
+		 * Stable partition of the range by the supplied bit. Zeros are placed first.
+		 * 
+		 * @return the index of the first hash with the bit set
+		 */
+		int partition(int bit, int from, int to) {
+			int zeros = from;
+			for (int i = from; i < to; i++) {
+				if (((words[order[i]][bit >>> 6] >>> bit) & 1) == 0) {
+					buffer[zeros++] = order[i];
+				}
+			}
+			int ones = zeros;
+			for (int i = from; i < to; i++) {
+				if (((words[order[i]][bit >>> 6] >>> bit) & 1) == 1) {
+					buffer[ones++] = order[i];
+				}
+			}
+			System.arraycopy(buffer, from, order, from, to - from);
+			return zeros;
+		}
+	}
+
+	private class BulkLoadTask extends RecursiveAction {
+
+		private static final long serialVersionUID = -2837719564911040124L;
+
+		private final Node node;
+		private final int depth;
+		private final int from;
+		private final int to;
+		private final BulkLoad load;
+
+		BulkLoadTask(Node node, int depth, int from, int to, BulkLoad load) {
+			this.node = node;
+			this.depth = depth;
+			this.from = from;
+			this.to = to;
+			this.load = load;
+		}
+
+		@Override
+		protected void compute() {
+			bulkLoad(node, depth, from, to, load);
+		}
+	}
+
 	/**
 	 * @return the root of the binary tree
 	 */
@@ -123,6 +328,24 @@ public abstract class AbstractBinaryTree<T> implements Serializable {
 		return hashCount;
 	}
 
+	/**
+	 * @return true if the tree checks that all hashes are created by the same
+	 *         algorithm
+	 * @since 3.0.1
+	 */
+	public boolean isEnsureHashConsistency() {
+		return ensureHashConsistency;
+	}
+
+	/**
+	 * @return the algorithm id the hashes of this tree have to match. Only set if
+	 *         the tree ensures hash consistency.
+	 * @since 3.0.1
+	 */
+	public int getAlgorithmId() {
+		return algoId;
+	}
+
 	/**
 	 * Traverse the tree and output all key = hashes and values found.
 	 */
@@ -150,6 +373,30 @@ public abstract class AbstractBinaryTree<T> implements Serializable {
 	 */
 	public abstract PriorityQueue<Result<T>> getElementsWithinHammingDistance(Hash hash, int maxDistance);
 
+	/**
+	 * Return all elements of the tree whose hamming distance to each of the
+	 * needles is smaller or equal than the supplied max distance.
+	 * 
+	 * <p>
+	 * Implementations may evaluate the needles together, sharing the traversal of
+	 * the tree. The default implementation searches each needle on its own.
+	 * 
+	 * @param needles     The hashes to search for
+	 * @param maxDistance The maximal hamming distance deviation all found hashes
+	 *                    may possess
+	 * @return the search results of each needle in the order of the supplied
+	 *         needles. The results of a needle are ordered to return the closest
+	 *         match first.
+	 * @since 3.0.1
+	 */
+	public List<PriorityQueue<Result<T>>> getElementsWithinHammingDistance(List<Hash> needles, int maxDistance) {
+		List<PriorityQueue<Result<T>>> results = new ArrayList<>(needles.size());
+		for (Hash needle : needles) {
+			results.add(getElementsWithinHammingDistance(needle, maxDistance));
+		}
+		return results;
+	}
+
 	/**
 	 * Get the most similar to the queried argument. In case of equidistant hashes,
 	 * multiple objects may be returned.
@@ -160,6 +407,42 @@ public abstract class AbstractBinaryTree<T> implements Serializable {
 	 */
 	public abstract List<Result<T>> getNearestNeighbour(Hash hash);
 
+	/**
+	 * Get the k hashes most similar to the queried argument. Unlike
+	 * {@link #getNearestNeighbour(Hash)} no search radius has to be known in
+	 * advance.
+	 * <p>
+	 * The default implementation doubles the search radius of
+	 * {@link #getElementsWithinHammingDistance(Hash, int)} until k hashes are
+	 * found. Trees able to stop as soon as no hash closer than the k-th best match
+	 * can exist override this method.
+	 * 
+	 * @param hash the hash to search the closest matches for
+	 * @param k    the maximum number of results
+	 * @return at most k results sorted by distance, closest first. If multiple
+	 *         hashes share the distance of the k-th result an arbitrary subset of
+	 *         them is returned.
+	 * @throws IllegalArgumentException if k is not positive
+	 * @since 3.0.1
+	 */
+	public List<Result<T>> getNearestNeighbours(Hash hash, int k) {
+		BoundedResultQueue<T> closest = new BoundedResultQueue<>(k);
+		int bits = hash.getBitResolution();
+		PriorityQueue<Result<T>> results;
+		int maxDistance = 0;
+		while (true) {
+			results = getElementsWithinHammingDistance(hash, maxDistance);
+			if (results.size() >= k || maxDistance >= bits) {
+				break;
+			}
+			maxDistance = Math.min(bits, Math.max(1, maxDistance * 2));
+		}
+		for (Result<T> r : results) {
+			closest.offer(r);
+		}
+		return closest.toSortedList();
+	}
+
 	/**
 	 * Recursively traverse the tree and print all hashes found
 	 * 
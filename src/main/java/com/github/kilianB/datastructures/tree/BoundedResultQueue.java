@@ -0,0 +1,115 @@
+package com.github.kilianB.datastructures.tree;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Collects the k results with the smallest hamming distance offered to it.
+ * <p>
+ * The results are kept in a max heap of at most k elements. Once the queue is
+ * full the distance of the worst result is the bound a result has to beat to be
+ * accepted, which allows searches to prune branches that can not contain a
+ * closer result. Results with the same distance as the current bound are
+ * rejected, keeping the results offered first.
+ *
+ * @author Kilian
+ * @param <T> the type of the values
+ * @since 3.0.1
+ */
+public class BoundedResultQueue<T> {
+
+	private final int k;
+
+	/** The worst result is located at the head */
+	private final PriorityQueue<Result<T>> heap;
+
+	/**
+	 * @param k the maximum number of results retained
+	 * @throws IllegalArgumentException if k is not positive
+	 */
+	public BoundedResultQueue(int k) {
+		if (k <= 0) {
+			throw new IllegalArgumentException("k has to be positive. Found: " + k);
+		}
+		this.k = k;
+		Comparator<Result<T>> byDistance = Comparator.comparingDouble(r -> r.distance);
+		heap = new PriorityQueue<>(Math.min(k, 1024), byDistance.reversed());
+	}
+
+	/**
+	 * @param distance the distance of a potential result
+	 * @return true if a result with the given distance would be retained
+	 */
+	public boolean accepts(double distance) {
+		return heap.size() < k || distance < heap.peek().distance;
+	}
+
+	/**
+	 * Add a result if it is closer than the worst result retained so far.
+	 *
+	 * @param value              the value of the result
+	 * @param distance           the hamming distance
+	 * @param normalizedDistance the normalized hamming distance
+	 * @return true if the result was retained
+	 */
+	public boolean offer(T value, double distance, double normalizedDistance) {
+		if (!accepts(distance)) {
+			return false;
+		}
+		if (heap.size() == k) {
+			heap.poll();
+		}
+		heap.add(new Result<T>(value, distance, normalizedDistance));
+		return true;
+	}
+
+	/**
+	 * Add a result if it is closer than the worst result retained so far.
+	 *
+	 * @param result the result
+	 * @return true if the result was retained
+	 */
+	public boolean offer(Result<T> result) {
+		if (!accepts(result.distance)) {
+			return false;
+		}
+		if (heap.size() == k) {
+			heap.poll();
+		}
+		heap.add(result);
+		return true;
+	}
+
+	/**
+	 * @return true if k results are retained
+	 */
+	public boolean isFull() {
+		return heap.size() == k;
+	}
+
+	/**
+	 * @return the distance a result has to be smaller than to be retained or
+	 *         {@link Double#MAX_VALUE} if the queue is not full yet
+	 */
+	public double getBound() {
+		return heap.size() < k ? Double.MAX_VALUE : heap.peek().distance;
+	}
+
+	/**
+	 * @return the number of results retained
+	 */
+	public int size() {
+		return heap.size();
+	}
+
+	/**
+	 * @return the retained results sorted by distance, closest first
+	 */
+	public List<Result<T>> toSortedList() {
+		List<Result<T>> results = new ArrayList<>(heap);
+		results.sort(Comparator.comparingDouble(r -> r.distance));
+		return results;
+	}
+}
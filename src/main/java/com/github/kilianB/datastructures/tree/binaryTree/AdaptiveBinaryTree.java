@@ -0,0 +1,192 @@
+package com.github.kilianB.datastructures.tree.binaryTree;
+
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.github.kilianB.datastructures.tree.Result;
+import com.github.kilianB.datastructures.tree.flat.FlatHashIndex;
+import com.github.kilianB.hash.Hash;
+
+/**
+ * A binary tree scanning all hashes linearly as long as it holds few hashes.
+ *
+ * <p>
+ * Up to the threshold the hashes are kept in a {@link FlatHashIndex}, whose
+ * search time is predictable and usually lower than traversing the tree. Once
+ * the number of hashes reaches the threshold the tree is bulk loaded from the
+ * flat index and all further operations are handled by the tree. The tree does
+ * not switch back to the flat index if hashes are removed.
+ *
+ * <p>
+ * Calling {@link #getRoot()} while hashes are kept in the flat index converts
+ * the flat index to the tree regardless of the threshold.
+ *
+ * @author Kilian
+ * @since 3.0.1
+ */
+public class AdaptiveBinaryTree<T> extends BinaryTree<T> {
+
+	private static final long serialVersionUID = -3120583938725617421L;
+
+	/** Number of hashes at which the flat index is converted to a tree */
+	public static final int DEFAULT_THRESHOLD = 1 << 20;
+
+	private final int threshold;
+
+	/** Holds the hashes until the threshold is reached. Null afterwards */
+	private FlatHashIndex<T> flatIndex;
+
+	/**
+	 * Create a tree switching from a linear scan to the tree at
+	 * {@link #DEFAULT_THRESHOLD} hashes.
+	 *
+	 * @param ensureHashConsistency If true adding and matching hashes will check
+	 *                              weather they are generated by the same
+	 *                              algorithms as the first hash added to the tree
+	 */
+	public AdaptiveBinaryTree(boolean ensureHashConsistency) {
+		this(ensureHashConsistency, DEFAULT_THRESHOLD);
+	}
+
+	/**
+	 * @param ensureHashConsistency If true adding and matching hashes will check
+	 *                              weather they are generated by the same
+	 *                              algorithms as the first hash added to the tree
+	 * @param threshold             the number of hashes at which the linear scan
+	 *                              is replaced by the tree. If not positive the
+	 *                              tree is used right away
+	 */
+	public AdaptiveBinaryTree(boolean ensureHashConsistency, int threshold) {
+		super(ensureHashConsistency);
+		this.threshold = threshold;
+		if (threshold > 0) {
+			flatIndex = new FlatHashIndex<>(ensureHashConsistency);
+		}
+	}
+
+	@Override
+	public void addHash(Hash hash, T value) {
+		if (flatIndex == null) {
+			super.addHash(hash, value);
+			return;
+		}
+		flatIndex.addHash(hash, value);
+		hashCount = flatIndex.getHashCount();
+		algoId = flatIndex.getAlgorithmId();
+		if (hashCount >= threshold) {
+			convert();
+		}
+	}
+
+	/**
+	 * Bulk load the tree from the flat index
+	 */
+	private void convert() {
+		List<Hash> hashes = flatIndex.getHashes();
+		List<T> values = flatIndex.getValues();
+		flatIndex = null;
+		hashCount = 0;
+		bulkLoad(hashes, values, null);
+	}
+
+	@Override
+	public boolean removeHash(Hash hash, T value) {
+		if (flatIndex == null) {
+			return super.removeHash(hash, value);
+		}
+		boolean removed = flatIndex.removeHash(hash, value);
+		hashCount = flatIndex.getHashCount();
+		return removed;
+	}
+
+	@Override
+	public PriorityQueue<Result<T>> getElementsWithinHammingDistance(Hash hash, int maxDistance) {
+		if (flatIndex == null) {
+			return super.getElementsWithinHammingDistance(hash, maxDistance);
+		}
+		return flatIndex.getElementsWithinHammingDistance(hash, maxDistance);
+	}
+
+	@Override
+	public List<PriorityQueue<Result<T>>> getElementsWithinHammingDistance(List<Hash> needles, int maxDistance) {
+		if (flatIndex == null) {
+			return super.getElementsWithinHammingDistance(needles, maxDistance);
+		}
+		return flatIndex.getElementsWithinHammingDistance(needles, maxDistance);
+	}
+
+	@Override
+	public List<Result<T>> getNearestNeighbour(Hash hash) {
+		if (flatIndex == null) {
+			return super.getNearestNeighbour(hash);
+		}
+		return flatIndex.getNearestNeighbour(hash);
+	}
+
+	@Override
+	public List<Result<T>> getNearestNeighbours(Hash hash, int k) {
+		if (flatIndex == null) {
+			return super.getNearestNeighbours(hash, k);
+		}
+		return flatIndex.getNearestNeighbours(hash, k);
+	}
+
+	/**
+	 * @return the root of the binary tree. If the hashes are still kept in the flat
+	 *         index the tree is built first
+	 */
+	@Override
+	public Node getRoot() {
+		if (flatIndex != null) {
+			convert();
+		}
+		return super.getRoot();
+	}
+
+	@Override
+	public void printTree() {
+		if (flatIndex == null) {
+			super.printTree();
+		} else {
+			flatIndex.printTree();
+		}
+	}
+
+	/**
+	 * @return true if the hashes are searched by scanning all of them
+	 */
+	public boolean isFlat() {
+		return flatIndex != null;
+	}
+
+	/**
+	 * @return the number of hashes at which the linear scan is replaced by the
+	 *         tree
+	 */
+	public int getThreshold() {
+		return threshold;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = super.hashCode();
+		result = prime * result + ((flatIndex == null) ? 0 : flatIndex.hashCode());
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!super.equals(obj)) {
+			return false;
+		}
+		if (!(obj instanceof AdaptiveBinaryTree)) {
+			return flatIndex == null;
+		}
+		AdaptiveBinaryTree<?> other = (AdaptiveBinaryTree<?>) obj;
+		if (flatIndex == null) {
+			return other.flatIndex == null;
+		}
+		return flatIndex.equals(other.flatIndex);
+	}
+}
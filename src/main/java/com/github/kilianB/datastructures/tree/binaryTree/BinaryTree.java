@@ -1,13 +1,15 @@
 package com.github.kilianB.datastructures.tree.binaryTree;
 
 import java.io.Serializable;
-import java.math.BigInteger;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
 
 import com.github.kilianB.datastructures.tree.AbstractBinaryTree;
+import com.github.kilianB.datastructures.tree.BoundedResultQueue;
 import com.github.kilianB.datastructures.tree.NodeInfo;
 import com.github.kilianB.datastructures.tree.Result;
 import com.github.kilianB.hash.Hash;
@@ -69,6 +71,55 @@ public class BinaryTree<T> extends AbstractBinaryTree<T> implements Serializable
 		super(ensureHashConsistency);
 	}
 
+	/**
+	 * Bulk load a binary tree from the supplied hashes. The resulting tree is
+	 * identical to a tree created by adding the hashes one by one, but is built
+	 * top down via radix partitioning creating every node exactly once.
+	 * 
+	 * @param hashes                the hashes to add to the tree. All hashes are
+	 *                              expected to have the same bit resolution
+	 * @param values                the value associated with the hash at the same
+	 *                              index
+	 * @param ensureHashConsistency If true adding and matching hashes will check
+	 *                              weather they are generated by the same
+	 *                              algorithms as the first hash added to the tree
+	 * @throws IllegalArgumentException if the number of hashes and values does not
+	 *                                  match or the hashes have different bit
+	 *                                  resolutions
+	 * @throws IllegalStateException    if hash consistency is ensured and hashes
+	 *                                  of different algorithms are supplied
+	 * @since 3.0.1
+	 */
+	public BinaryTree(List<Hash> hashes, List<T> values, boolean ensureHashConsistency) {
+		this(hashes, values, ensureHashConsistency, null);
+	}
+
+	/**
+	 * Bulk load a binary tree from the supplied hashes building large subtrees in
+	 * parallel. The resulting tree is identical to a tree created by adding the
+	 * hashes one by one.
+	 * 
+	 * @param hashes                the hashes to add to the tree. All hashes are
+	 *                              expected to have the same bit resolution
+	 * @param values                the value associated with the hash at the same
+	 *                              index
+	 * @param ensureHashConsistency If true adding and matching hashes will check
+	 *                              weather they are generated by the same
+	 *                              algorithms as the first hash added to the tree
+	 * @param pool                  the fork join pool used to build the subtrees
+	 *                              or null to build the tree in the calling thread
+	 * @throws IllegalArgumentException if the number of hashes and values does not
+	 *                                  match or the hashes have different bit
+	 *                                  resolutions
+	 * @throws IllegalStateException    if hash consistency is ensured and hashes
+	 *                                  of different algorithms are supplied
+	 * @since 3.0.1
+	 */
+	public BinaryTree(List<Hash> hashes, List<T> values, boolean ensureHashConsistency, ForkJoinPool pool) {
+		super(ensureHashConsistency);
+		bulkLoad(hashes, values, pool);
+	}
+
 	protected BinaryTree() {
 		
 	}
@@ -78,6 +129,86 @@ public class BinaryTree<T> extends AbstractBinaryTree<T> implements Serializable
 		super.addHash(hash, value);
 	}
 
+	/**
+	 * Remove a value associated with the supplied hash from the binary tree. Nodes
+	 * which no longer lead to any value are unlinked from the tree, keeping the
+	 * number of nodes proportional to the hashes contained in the tree.
+	 * <p>
+	 * 
+	 * If the value was added multiple times with the same hash only a single
+	 * occurrence is removed.
+	 * 
+	 * If the tree is configured to ensureHashConsistency this function will throw
+	 * an unchecked IlleglStateException if the hash does not comply with the first
+	 * hash added to the tree.
+	 * 
+	 * @param hash  The hash the value was added with
+	 * @param value The value to remove
+	 * @return true if the value was found and removed, false otherwise
+	 * @since 3.0.1
+	 */
+	@SuppressWarnings("unchecked")
+	public boolean removeHash(Hash hash, T value) {
+
+		if (ensureHashConsistency && algoId != 0 && algoId != hash.getAlgorithmId()) {
+			throw new IllegalStateException("Tried to add an incompatible hash to the binary tree");
+		}
+
+		int bits = hash.getBitResolution();
+
+		// parents[i] is the node whose child represents bit i
+		Node[] parents = new Node[bits];
+		Node currentNode = root;
+		for (int i = bits - 1; i >= 0; i--) {
+			parents[i] = currentNode;
+			currentNode = currentNode.getChild(hash.getBitUnsafe(i));
+			if (currentNode == null) {
+				return false;
+			}
+		}
+
+		// The hash is shorter than the hashes of the tree
+		if (!(currentNode instanceof Leaf)) {
+			return false;
+		}
+
+		Leaf<T> leaf = (Leaf<T>) currentNode;
+		if (!leaf.removeData(value)) {
+			return false;
+		}
+		hashCount--;
+
+		if (leaf.getData().isEmpty()) {
+			// Unlink the branch up to the first node with another child
+			for (int i = 0; i < bits; i++) {
+				Node parent = parents[i];
+				parent.setChild(hash.getBitUnsafe(i), null);
+				if (parent == root || parent.getChild(true) != null || parent.getChild(false) != null) {
+					break;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Associate a value with a new hash. The value is removed from the old hash
+	 * and added to the new hash. Empty branches of the old hash are unlinked from
+	 * the tree.
+	 * 
+	 * @param oldHash The hash the value was added with
+	 * @param newHash The hash the value will be found with
+	 * @param value   The value to move
+	 * @return true if the value was associated with the old hash. The value is
+	 *         added to the new hash in either case.
+	 * @since 3.0.1
+	 */
+	public boolean updateHash(Hash oldHash, Hash newHash, T value) {
+		boolean removed = removeHash(oldHash, value);
+		addHash(newHash, value);
+		return removed;
+	}
+
 	/**
 	 * Return all elements of the tree whose hamming distance is smaller or equal
 	 * than the supplied max distance.
@@ -108,7 +239,6 @@ public class BinaryTree<T> extends AbstractBinaryTree<T> implements Serializable
 
 		PriorityQueue<Result<T>> result = new PriorityQueue<Result<T>>();
 
-		BigInteger hashValue = hash.getHashValue();
 		int treeDepth = hash.getBitResolution();
 
 		ArrayDeque<NodeInfo<T>> queue = new ArrayDeque<>();
@@ -133,12 +263,12 @@ public class BinaryTree<T> extends AbstractBinaryTree<T> implements Serializable
 			}
 			/*
 			 * else { System.out.printf("%-8s Depth: %d Distance: %d Next Bit: %s%n",
-			 * info.curPath, info.depth, info.distance, hashValue.testBit(info.depth - 1) ?
+			 * info.curPath, info.depth, info.distance, hash.getBitUnsafe(info.depth - 1) ?
 			 * "1" : "0"); }
 			 */
 
 			// Next bit
-			boolean bit = hashValue.testBit(info.depth - 1);
+			boolean bit = hash.getBitUnsafe(info.depth - 1);
 			// Are children of the current
 
 			Node correctChild = info.node.getChild(bit);
@@ -157,6 +287,158 @@ public class BinaryTree<T> extends AbstractBinaryTree<T> implements Serializable
 		return result;
 	}
 
+	/**
+	 * Return all elements of the tree whose hamming distance to each of the
+	 * needles is smaller or equal than the supplied max distance.
+	 * 
+	 * <p>
+	 * The tree is traversed once for all needles. Each visited node carries the
+	 * needles still within the max distance alongside their distance, therefore
+	 * the prefix shared by multiple needles is only walked once. The needles are
+	 * sorted beforehand to evaluate identical needles a single time.
+	 * 
+	 * If the tree is configured to ensureHashConsistency this function will throw
+	 * an unchecked IlleglStateException if a needle does not comply with the
+	 * first hash added to the tree.
+	 * 
+	 * @param needles     The hashes to search for. All hashes are expected to have
+	 *                    the same bit resolution
+	 * @param maxDistance The maximal hamming distance deviation all found hashes
+	 *                    may possess
+	 * @return the search results of each needle in the order of the supplied
+	 *         needles. The results of a needle are ordered to return the closest
+	 *         match first.
+	 * @throws IllegalArgumentException if the needles have different bit
+	 *                                  resolutions
+	 * @since 3.0.1
+	 */
+	@Override
+	public List<PriorityQueue<Result<T>>> getElementsWithinHammingDistance(List<Hash> needles, int maxDistance) {
+
+		int n = needles.size();
+		List<PriorityQueue<Result<T>>> result = new ArrayList<>(n);
+		if (n == 0) {
+			return result;
+		}
+
+		// Validate all needles before any work is done
+		int treeDepth = needles.get(0).getBitResolution();
+		for (Hash hash : needles) {
+			if (ensureHashConsistency && algoId != hash.getAlgorithmId()) {
+				throw new IllegalStateException("Tried to add an incompatible hash to the binary tree");
+			}
+			if (hash.getBitResolution() != treeDepth) {
+				throw new IllegalArgumentException("All needles are expected to have the same bit resolution");
+			}
+		}
+
+		// The packed value may contain more words than required
+		int wordCount = (treeDepth + 63) / 64;
+		long[][] words = new long[n][];
+		for (int i = 0; i < n; i++) {
+			words[i] = needles.get(i).getPackedHashValue();
+			if (words[i].length != wordCount) {
+				words[i] = Arrays.copyOf(words[i], wordCount);
+			}
+			result.add(new PriorityQueue<Result<T>>());
+		}
+
+		if (maxDistance < 0) {
+			return result;
+		}
+
+		// Sort the needles along the paths of the tree (most significant bit first)
+		Integer[] order = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> {
+			for (int w = wordCount - 1; w >= 0; w--) {
+				int cmp = Long.compareUnsigned(words[a][w], words[b][w]);
+				if (cmp != 0) {
+					return cmp;
+				}
+			}
+			return 0;
+		});
+
+		// Only search the first of identical needles
+		int[] representative = new int[n];
+		int[] unique = new int[n];
+		int uniqueCount = 0;
+		for (int i = 0; i < n; i++) {
+			int needle = order[i];
+			if (uniqueCount > 0 && Arrays.equals(words[needle], words[unique[uniqueCount - 1]])) {
+				representative[needle] = unique[uniqueCount - 1];
+			} else {
+				representative[needle] = needle;
+				unique[uniqueCount++] = needle;
+			}
+		}
+
+		// Depth first search carrying the active needles
+		ArrayDeque<BatchNodeInfo> stack = new ArrayDeque<>();
+		stack.add(new BatchNodeInfo(root, treeDepth, unique, new int[uniqueCount], uniqueCount));
+
+		while (!stack.isEmpty()) {
+
+			BatchNodeInfo info = stack.removeLast();
+
+			// We reached a leaf
+			if (info.depth == 0) {
+				@SuppressWarnings("unchecked")
+				Leaf<T> leaf = (Leaf<T>) info.node;
+				for (int j = 0; j < info.size; j++) {
+					int distance = info.distances[j];
+					PriorityQueue<Result<T>> needleResult = result.get(info.needles[j]);
+					for (T o : leaf.getData()) {
+						needleResult.add(new Result<T>(o, distance, distance / (double) treeDepth));
+					}
+				}
+				continue;
+			}
+
+			int bit = info.depth - 1;
+
+			for (int c = 0; c < 2; c++) {
+				boolean childBit = c == 1;
+				Node child = info.node.getChild(childBit);
+				if (child == null) {
+					continue;
+				}
+
+				int[] activeNeedles = new int[info.size];
+				int[] activeDistances = new int[info.size];
+				int size = 0;
+				for (int j = 0; j < info.size; j++) {
+					int needle = info.needles[j];
+					int distance = info.distances[j];
+					if ((((words[needle][bit >>> 6] >>> bit) & 1) == 1) != childBit) {
+						distance++;
+					}
+					if (distance <= maxDistance) {
+						activeNeedles[size] = needle;
+						activeDistances[size++] = distance;
+					}
+				}
+				if (size > 0) {
+					stack.add(new BatchNodeInfo(child, info.depth - 1, activeNeedles, activeDistances, size));
+				}
+			}
+		}
+
+		// Copy the results to identical needles
+		for (int i = 0; i < n; i++) {
+			if (representative[i] != i) {
+				PriorityQueue<Result<T>> needleResult = result.get(i);
+				for (Result<T> r : result.get(representative[i])) {
+					needleResult.add(new Result<T>(r.value, r.distance, r.normalizedHammingDistance));
+				}
+			}
+		}
+		return result;
+	}
+
 	/**
 	 * Retrieve the hash that is the most similar to the queried hash. The closest
 	 * hash is the hash with the smallest distance.
@@ -172,7 +454,6 @@ public class BinaryTree<T> extends AbstractBinaryTree<T> implements Serializable
 			throw new IllegalStateException("Tried to add an incompatible hash to the binary tree");
 		}
 
-		BigInteger hashValue = hash.getHashValue();
 		int treeDepth = hash.getBitResolution();
 
 		ArrayDeque<NodeInfo<T>> queue = new ArrayDeque<>();
@@ -213,7 +494,7 @@ public class BinaryTree<T> extends AbstractBinaryTree<T> implements Serializable
 			// TODO das ist keine tiefensuche!
 
 			// Next bit
-			boolean bit = hashValue.testBit(info.depth - 1);
+			boolean bit = hash.getBitUnsafe(info.depth - 1);
 			// Are children of the current
 
 			if (info.distance + 1 <= curBestDistance) {
@@ -232,6 +513,101 @@ public class BinaryTree<T> extends AbstractBinaryTree<T> implements Serializable
 		}
 		return result;
 	}
+
+	/**
+	 * Retrieve the k hashes most similar to the queried hash.
+	 * 
+	 * <p>
+	 * Best first search. Starting at the root the path matching the needle is
+	 * followed directly while every diverging branch is deferred to a queue
+	 * holding the nodes of the same distance. Leaves are therefore reached in
+	 * ascending distance and branches which can not beat the k-th best result
+	 * found so far are never expanded.
+	 * 
+	 * @param hash to search the neighbours for.
+	 * @param k    the maximum number of results
+	 * @return at most k results sorted by distance, closest first
+	 * @throws IllegalArgumentException if k is not positive
+	 * @since 3.0.1
+	 */
+	@Override
+	public List<Result<T>> getNearestNeighbours(Hash hash, int k) {
+
+		if (ensureHashConsistency && algoId != hash.getAlgorithmId()) {
+			throw new IllegalStateException("Tried to add an incompatible hash to the binary tree");
+		}
+
+		BoundedResultQueue<T> result = new BoundedResultQueue<>(k);
+
+		int treeDepth = hash.getBitResolution();
+
+		// Deferred nodes grouped by their distance to the needle
+		@SuppressWarnings("unchecked")
+		ArrayDeque<NodeInfo<T>>[] buckets = new ArrayDeque[treeDepth + 1];
+		buckets[0] = new ArrayDeque<>();
+		buckets[0].add(new NodeInfo<T>(root, 0, treeDepth));
+
+		for (int distance = 0; distance <= treeDepth && result.accepts(distance); distance++) {
+			ArrayDeque<NodeInfo<T>> bucket = buckets[distance];
+			while (bucket != null && !bucket.isEmpty() && result.accepts(distance)) {
+				NodeInfo<T> info = bucket.poll();
+				Node node = info.node;
+				int depth = info.depth;
+
+				// Follow the matching path. Its distance does not change
+				while (node != null) {
+					if (depth == 0) {
+						@SuppressWarnings("unchecked")
+						Leaf<T> leaf = (Leaf<T>) node;
+						for (T o : leaf.getData()) {
+							if (!result.offer(o, distance, distance / (double) treeDepth)) {
+								break;
+							}
+						}
+						break;
+					}
+					boolean bit = hash.getBitUnsafe(depth - 1);
+
+					if (result.accepts(distance + 1)) {
+						Node failedChild = node.getChild(!bit);
+						if (failedChild != null) {
+							if (buckets[distance + 1] == null) {
+								buckets[distance + 1] = new ArrayDeque<>();
+							}
+							buckets[distance + 1].add(new NodeInfo<T>(failedChild, distance + 1, depth - 1));
+						}
+					}
+					node = node.getChild(bit);
+					depth--;
+				}
+			}
+			// Release the bucket early
+			buckets[distance] = null;
+		}
+		return result.toSortedList();
+	}
+
+	/**
+	 * A node visited by a batch query and the needles which are still within the
+	 * search distance
+	 */
+	private static class BatchNodeInfo {
+		final Node node;
+		final int depth;
+		/** The indices of the active needles */
+		final int[] needles;
+		/** The distance of each active needle to the node */
+		final int[] distances;
+		final int size;
+
+		BatchNodeInfo(Node node, int depth, int[] needles, int[] distances, int size) {
+			this.node = node;
+			this.depth = depth;
+			this.needles = needles;
+			this.distances = distances;
+			this.size = size;
+		}
+	}
 	
 	
 
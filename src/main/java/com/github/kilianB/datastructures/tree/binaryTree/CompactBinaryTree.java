@@ -0,0 +1,569 @@
+package com.github.kilianB.datastructures.tree.binaryTree;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.github.kilianB.datastructures.tree.AbstractBinaryTree;
+import com.github.kilianB.datastructures.tree.BoundedResultQueue;
+import com.github.kilianB.datastructures.tree.Result;
+import com.github.kilianB.hash.Hash;
+
+/**
+ * An immutable, array encoded version of the {@link BinaryTree}.
+ *
+ * <p>
+ * Instead of keeping an object for every node the tree structure is stored in a
+ * single int array holding the child indices of each node. The values of all
+ * leaves are kept in one flat array. Nodes are laid out in depth first order
+ * placing every subtree in a contiguous memory region. This reduces the heap
+ * consumption by a great deal and improves cache locality during searches.
+ *
+ * <p>
+ * The tree can either be created from an existing binary tree or bulk loaded
+ * from a collection of hashes. Hashes can not be added once the tree is
+ * created.
+ *
+ * @author Kilian
+ * @since 3.0.1
+ */
+public class CompactBinaryTree<T> extends AbstractBinaryTree<T> implements Serializable {
+
+	private static final long serialVersionUID = -6017462593950213316L;
+
+	/** Marker for absent children */
+	private static final int NONE = -1;
+
+	/** The number of bits of the hashes represented by this tree */
+	private int bitResolution;
+
+	/**
+	 * The child indices. The 0 child of node n is located at 2n, the 1 child at 2n
+	 * + 1. Children of nodes directly above the leaves point to leaf indices.
+	 */
+	private int[] children;
+
+	/** The values of leaf l are located at [leafOffsets[l], leafOffsets[l + 1]) */
+	private int[] leafOffsets;
+
+	/** The values of all leaves */
+	private Object[] values;
+
+	/**
+	 * Create a compact copy of a binary tree. The binary tree is not altered.
+	 *
+	 * @param tree the tree to copy
+	 */
+	public CompactBinaryTree(BinaryTree<T> tree) {
+		this.ensureHashConsistency = tree.isEnsureHashConsistency();
+		this.algoId = tree.getAlgorithmId();
+		this.hashCount = tree.getHashCount();
+
+		Node root = tree.getRoot();
+
+		// Determine the depth of the tree by following any path to a leaf
+		Node n = root;
+		while (n != null && !(n instanceof Leaf)) {
+			bitResolution++;
+			n = n.leftChild != null ? n.leftChild : n.rightChild;
+		}
+		if (n == null) {
+			// Empty tree
+			bitResolution = 0;
+			children = new int[0];
+			leafOffsets = new int[] { 0 };
+			values = new Object[0];
+			return;
+		}
+
+		Builder builder = new Builder(hashCount);
+		copy(root, bitResolution, builder);
+		builder.finish(this);
+	}
+
+	/**
+	 * Bulk load a compact binary tree from the supplied hashes.
+	 *
+	 * @param hashes                the hashes to add to the tree. All hashes are
+	 *                              expected to have the same bit resolution
+	 * @param values                the value associated with the hash at the same
+	 *                              index
+	 * @param ensureHashConsistency If true matching hashes will check weather they
+	 *                              are generated by the same algorithms as the
+	 *                              first hash
+	 * @throws IllegalArgumentException if the number of hashes and values does not
+	 *                                  match or the hashes have different bit
+	 *                                  resolutions
+	 * @throws IllegalStateException    if hash consistency is ensured and hashes
+	 *                                  of different algorithms are supplied
+	 */
+	public CompactBinaryTree(List<Hash> hashes, List<T> values, boolean ensureHashConsistency) {
+		if (hashes.size() != values.size()) {
+			throw new IllegalArgumentException("Each hash requires exactly one value");
+		}
+		this.ensureHashConsistency = ensureHashConsistency;
+		this.hashCount = hashes.size();
+
+		if (hashes.isEmpty()) {
+			children = new int[0];
+			leafOffsets = new int[] { 0 };
+			this.values = new Object[0];
+			return;
+		}
+
+		bitResolution = hashes.get(0).getBitResolution();
+		int wordCount = (bitResolution + 63) / 64;
+
+		long[][] words = new long[hashes.size()][];
+		for (int i = 0; i < words.length; i++) {
+			Hash hash = hashes.get(i);
+			if (ensureHashConsistency) {
+				if (algoId == 0) {
+					algoId = hash.getAlgorithmId();
+				} else if (algoId != hash.getAlgorithmId()) {
+					throw new IllegalStateException("Tried to add an incompatible hash to the binary tree");
+				}
+			}
+			if (hash.getBitResolution() != bitResolution) {
+				throw new IllegalArgumentException("All hashes are expected to have the same bit resolution");
+			}
+			words[i] = packedWords(hash, wordCount);
+		}
+
+		// Sort the entries by their path from the root (most significant bit first)
+		Integer[] order = new Integer[words.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> {
+			for (int w = wordCount - 1; w >= 0; w--) {
+				int cmp = Long.compareUnsigned(words[a][w], words[b][w]);
+				if (cmp != 0) {
+					return cmp;
+				}
+			}
+			return 0;
+		});
+
+		long[][] sortedWords = new long[order.length][];
+		Object[] sortedValues = new Object[order.length];
+		for (int i = 0; i < order.length; i++) {
+			sortedWords[i] = words[order[i]];
+			sortedValues[i] = values.get(order[i]);
+		}
+
+		Builder builder = new Builder(hashCount);
+		build(sortedWords, sortedValues, 0, sortedWords.length, bitResolution, builder);
+		builder.finish(this);
+	}
+
+	/**
+	 * Recursively copy the node into the builder.
+	 *
+	 * @return the index of the created node or leaf
+	 */
+	@SuppressWarnings("unchecked")
+	private static int copy(Node node, int depth, Builder builder) {
+		if (depth == 0) {
+			return builder.addLeaf(((Leaf<Object>) node).getData());
+		}
+		int index = builder.addNode();
+		if (node.rightChild != null) {
+			builder.setChild(index, false, copy(node.rightChild, depth - 1, builder));
+		}
+		if (node.leftChild != null) {
+			builder.setChild(index, true, copy(node.leftChild, depth - 1, builder));
+		}
+		return index;
+	}
+
+	/**
+	 * Recursively build the subtree for the sorted hashes in the range [from, to).
+	 * All hashes in the range share the same prefix down to the current depth.
+	 *
+	 * @return the index of the created node or leaf
+	 */
+	private static int build(long[][] words, Object[] values, int from, int to, int depth, Builder builder) {
+		if (depth == 0) {
+			return builder.addLeaf(Arrays.asList(values).subList(from, to));
+		}
+		int index = builder.addNode();
+		int bit = depth - 1;
+		// Zeros are sorted before ones
+		int split = from;
+		while (split < to && ((words[split][bit >>> 6] >>> bit) & 1) == 0) {
+			split++;
+		}
+		if (split > from) {
+			builder.setChild(index, false, build(words, values, from, split, depth - 1, builder));
+		}
+		if (to > split) {
+			builder.setChild(index, true, build(words, values, split, to, depth - 1, builder));
+		}
+		return index;
+	}
+
+	@Override
+	public PriorityQueue<Result<T>> getElementsWithinHammingDistance(Hash hash, int maxDistance) {
+
+		checkHash(hash);
+
+		PriorityQueue<Result<T>> result = new PriorityQueue<Result<T>>();
+
+		if (hashCount == 0) {
+			return result;
+		}
+
+		long[] needle = packedWords(hash, (bitResolution + 63) / 64);
+
+		// Depth first search using a primitive stack of (node, depth, distance)
+		int[] stack = new int[3 * (2 * bitResolution + 2)];
+		int size = push(stack, 0, 0, bitResolution, 0);
+
+		while (size > 0) {
+			size -= 3;
+			int node = stack[size];
+			int depth = stack[size + 1];
+			int distance = stack[size + 2];
+
+			// Follow the matching path directly and only defer the diverging branches
+			while (true) {
+				if (depth == 0) {
+					addLeaf(result, node, distance);
+					break;
+				}
+
+				int bit = depth - 1;
+				int correct = (int) ((needle[bit >>> 6] >>> bit) & 1);
+
+				if (distance + 1 <= maxDistance) {
+					int failedChild = children[2 * node + (correct ^ 1)];
+					if (failedChild != NONE) {
+						size = push(stack, size, failedChild, depth - 1, distance + 1);
+					}
+				}
+				node = children[2 * node + correct];
+				if (node == NONE) {
+					break;
+				}
+				depth--;
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public List<Result<T>> getNearestNeighbour(Hash hash) {
+
+		checkHash(hash);
+
+		List<Result<T>> result = new ArrayList<>();
+
+		if (hashCount == 0) {
+			return result;
+		}
+
+		long[] needle = packedWords(hash, (bitResolution + 63) / 64);
+
+		int curBestDistance = Integer.MAX_VALUE;
+
+		// Depth first search with aggressive pruning
+		int[] stack = new int[3 * (2 * bitResolution + 2)];
+		int size = push(stack, 0, 0, bitResolution, 0);
+
+		while (size > 0) {
+			size -= 3;
+			int node = stack[size];
+			int depth = stack[size + 1];
+			int distance = stack[size + 2];
+
+			// If we found a better result ignore it.
+			if (distance > curBestDistance) {
+				continue;
+			}
+
+			// Follow the matching path directly and only defer the diverging branches
+			while (true) {
+				if (depth == 0) {
+					if (curBestDistance > distance) {
+						result.clear();
+						curBestDistance = distance;
+					}
+					addLeaf(result, node, distance);
+					break;
+				}
+
+				int bit = depth - 1;
+				int correct = (int) ((needle[bit >>> 6] >>> bit) & 1);
+
+				if (distance + 1 <= curBestDistance) {
+					int failedChild = children[2 * node + (correct ^ 1)];
+					if (failedChild != NONE) {
+						size = push(stack, size, failedChild, depth - 1, distance + 1);
+					}
+				}
+				node = children[2 * node + correct];
+				if (node == NONE) {
+					break;
+				}
+				depth--;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Retrieve the k hashes most similar to the queried hash.
+	 *
+	 * <p>
+	 * Best first search. The matching path of a node is followed directly while
+	 * diverging branches are deferred into a stack per distance, visiting leaves
+	 * in ascending distance until k results are found.
+	 *
+	 * @param hash to search the neighbours for.
+	 * @param k    the maximum number of results
+	 * @return at most k results sorted by distance, closest first
+	 * @throws IllegalArgumentException if k is not positive
+	 */
+	@Override
+	public List<Result<T>> getNearestNeighbours(Hash hash, int k) {
+
+		checkHash(hash);
+
+		BoundedResultQueue<T> result = new BoundedResultQueue<>(k);
+
+		if (hashCount == 0) {
+			return result.toSortedList();
+		}
+
+		long[] needle = packedWords(hash, (bitResolution + 63) / 64);
+
+		// Deferred (node, depth) pairs grouped by their distance to the needle
+		int[][] buckets = new int[bitResolution + 1][];
+		int[] sizes = new int[bitResolution + 1];
+		buckets[0] = new int[] { 0, bitResolution };
+		sizes[0] = 2;
+
+		for (int distance = 0; distance <= bitResolution && result.accepts(distance); distance++) {
+			int[] bucket = buckets[distance];
+			for (int i = 0; i < sizes[distance] && result.accepts(distance); i += 2) {
+				int node = bucket[i];
+				int depth = bucket[i + 1];
+
+				while (true) {
+					if (depth == 0) {
+						addLeaf(result, node, distance);
+						break;
+					}
+
+					int bit = depth - 1;
+					int correct = (int) ((needle[bit >>> 6] >>> bit) & 1);
+
+					if (result.accepts(distance + 1)) {
+						int failedChild = children[2 * node + (correct ^ 1)];
+						if (failedChild != NONE) {
+							int[] next = buckets[distance + 1];
+							int nextSize = sizes[distance + 1];
+							if (next == null) {
+								next = buckets[distance + 1] = new int[16];
+							} else if (nextSize + 2 > next.length) {
+								next = buckets[distance + 1] = Arrays.copyOf(next, next.length * 2);
+							}
+							next[nextSize] = failedChild;
+							next[nextSize + 1] = depth - 1;
+							sizes[distance + 1] = nextSize + 2;
+						}
+					}
+					node = children[2 * node + correct];
+					if (node == NONE) {
+						break;
+					}
+					depth--;
+				}
+			}
+			// Release the bucket early
+			buckets[distance] = null;
+		}
+		return result.toSortedList();
+	}
+
+	/**
+	 * @return the bit resolution of the hashes represented by this tree
+	 */
+	public int getBitResolution() {
+		return bitResolution;
+	}
+
+	/**
+	 * @return the number of inner nodes of the tree
+	 */
+	public int getNodeCount() {
+		return children.length / 2;
+	}
+
+	/**
+	 * @return the number of leaves of the tree. Each leaf represents a distinct
+	 *         hash
+	 */
+	public int getLeafCount() {
+		return leafOffsets.length - 1;
+	}
+
+	/**
+	 * Hashes can not be added to the compact tree.
+	 *
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	protected void addHash(Hash hash, T value) {
+		throw new UnsupportedOperationException("The compact binary tree is immutable");
+	}
+
+	@Override
+	public void printTree() {
+		if (hashCount > 0) {
+			printTree(0, bitResolution, "");
+		}
+	}
+
+	private void printTree(int node, int depth, String curString) {
+		if (depth == 0) {
+			System.out.println("Leaf found: " + curString + " "
+					+ Arrays.asList(values).subList(leafOffsets[node], leafOffsets[node + 1]));
+		} else {
+			if (children[2 * node + 1] != NONE) {
+				printTree(children[2 * node + 1], depth - 1, curString + "1");
+			}
+			if (children[2 * node] != NONE) {
+				printTree(children[2 * node], depth - 1, curString + "0");
+			}
+		}
+	}
+
+	/**
+	 * Return the packed words of a hash padded to the word count of the tree. A
+	 * hash is not required to store words above its most significant set bit.
+	 *
+	 * @param hash      the hash
+	 * @param wordCount the number of words required by the bit resolution
+	 * @return an array of exactly wordCount words
+	 */
+	private static long[] packedWords(Hash hash, int wordCount) {
+		long[] words = hash.getPackedHashValue();
+		return words.length == wordCount ? words : Arrays.copyOf(words, wordCount);
+	}
+
+	private void checkHash(Hash hash) {
+
+		if (ensureHashConsistency && algoId != hash.getAlgorithmId()) {
+			throw new IllegalStateException("Tried to add an incompatible hash to the binary tree");
+		}
+		if (hashCount > 0 && hash.getBitResolution() != bitResolution) {
+			throw new IllegalArgumentException("Hash length " + hash.getBitResolution()
+					+ " does not match the bit resolution of the tree " + bitResolution);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void addLeaf(Collection<Result<T>> result, int leaf, int distance) {
+		for (int i = leafOffsets[leaf]; i < leafOffsets[leaf + 1]; i++) {
+			result.add(new Result<T>((T) values[i], distance, distance / (double) bitResolution));
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void addLeaf(BoundedResultQueue<T> result, int leaf, int distance) {
+		for (int i = leafOffsets[leaf]; i < leafOffsets[leaf + 1]; i++) {
+			if (!result.offer((T) values[i], distance, distance / (double) bitResolution)) {
+				return;
+			}
+		}
+	}
+
+	private static int push(int[] stack, int size, int node, int depth, int distance) {
+		stack[size] = node;
+		stack[size + 1] = depth;
+		stack[size + 2] = distance;
+		return size + 3;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = super.hashCode();
+		result = prime * result + bitResolution;
+		result = prime * result + Arrays.hashCode(children);
+		result = prime * result + Arrays.hashCode(leafOffsets);
+		result = prime * result + Arrays.hashCode(values);
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!super.equals(obj)) {
+			return false;
+		}
+		if (!(obj instanceof CompactBinaryTree)) {
+			return false;
+		}
+		CompactBinaryTree<?> other = (CompactBinaryTree<?>) obj;
+		return bitResolution == other.bitResolution && Arrays.equals(children, other.children)
+				&& Arrays.equals(leafOffsets, other.leafOffsets) && Arrays.equals(values, other.values);
+	}
+
+	/**
+	 * Growable arrays used during construction of the tree
+	 */
+	private static class Builder {
+
+		private int[] children = new int[64];
+		private int nodeCount;
+
+		private int[] leafOffsets = new int[64];
+		private int leafCount;
+
+		private Object[] values;
+		private int valueCount;
+
+		Builder(int expectedValues) {
+			values = new Object[expectedValues];
+		}
+
+		int addNode() {
+			if (2 * nodeCount + 2 > children.length) {
+				children = Arrays.copyOf(children, children.length * 2);
+			}
+			children[2 * nodeCount] = NONE;
+			children[2 * nodeCount + 1] = NONE;
+			return nodeCount++;
+		}
+
+		void setChild(int node, boolean one, int child) {
+			children[2 * node + (one ? 1 : 0)] = child;
+		}
+
+		int addLeaf(List<?> data) {
+			if (leafCount + 2 > leafOffsets.length) {
+				leafOffsets = Arrays.copyOf(leafOffsets, leafOffsets.length * 2);
+			}
+			if (valueCount + data.size() > values.length) {
+				values = Arrays.copyOf(values, Math.max(valueCount + data.size(), values.length * 2));
+			}
+			leafOffsets[leafCount] = valueCount;
+			for (Object o : data) {
+				values[valueCount++] = o;
+			}
+			leafOffsets[leafCount + 1] = valueCount;
+			return leafCount++;
+		}
+
+		void finish(CompactBinaryTree<?> tree) {
+			tree.children = Arrays.copyOf(children, 2 * nodeCount);
+			tree.leafOffsets = Arrays.copyOf(leafOffsets, leafCount + 1);
+			tree.values = Arrays.copyOf(values, valueCount);
+		}
+	}
+}
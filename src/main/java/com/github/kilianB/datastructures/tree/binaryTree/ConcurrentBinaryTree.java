@@ -0,0 +1,660 @@
+package com.github.kilianB.datastructures.tree.binaryTree;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+
+import com.github.kilianB.datastructures.tree.AbstractBinaryTree;
+import com.github.kilianB.datastructures.tree.BoundedResultQueue;
+import com.github.kilianB.datastructures.tree.Result;
+import com.github.kilianB.hash.Hash;
+
+/**
+ * A thread safe binary tree allowing an arbitrary number of concurrent searches
+ * while hashes are added and removed.
+ * <p>
+ * Searches never block. The state of the tree is kept in an immutable snapshot
+ * consisting of a {@link CompactBinaryTree}, a small buffer of recently added
+ * hashes which is scanned linearly and a list of removed hashes which are
+ * filtered from the results. Adding or removing a hash appends it to the buffer
+ * or removal list and publishes a new snapshot. Searches in progress keep
+ * working on the snapshot they started with.
+ * <p>
+ * Once the buffer and removal list grow beyond a fraction of the compact tree
+ * they are merged into a new compact tree. The writer triggering the merge
+ * builds the new tree without holding the monitor of the tree. Other writers
+ * continue to append to the buffer in the meantime and searches use the old
+ * snapshot until the new tree is published. The amortized cost of adding a
+ * hash grows logarithmically with the size of the tree.
+ *
+ * @author Kilian
+ * @since 3.0.1
+ */
+public class ConcurrentBinaryTree<T> extends AbstractBinaryTree<T> {
+
+	private static final long serialVersionUID = 3389475102359285611L;
+
+	/** Minimum number of buffered and removed hashes before merging */
+	private static final int MIN_BUFFER_SIZE = 256;
+
+	/** The buffer is merged once it exceeds 1 / MERGE_RATIO of the compact tree */
+	private static final int MERGE_RATIO = 8;
+
+	/** The state visible to searches. Replaced while holding the monitor */
+	private transient volatile Snapshot<T> snapshot;
+
+	/** True while a writer builds a new compact tree. Guarded by this */
+	private transient boolean merging;
+
+	/**
+	 * @param ensureHashConsistency If true adding and matching hashes will check
+	 *                              weather they are generated by the same
+	 *                              algorithms as the first hash added to the tree
+	 */
+	public ConcurrentBinaryTree(boolean ensureHashConsistency) {
+		this.ensureHashConsistency = ensureHashConsistency;
+		this.snapshot = createSnapshot(new ArrayList<>(), new ArrayList<>(), 0, 0);
+	}
+
+	/**
+	 * Insert a value associated with the supplied hash in the binary tree. The
+	 * value is visible to all searches started after this method returns.
+	 *
+	 * @param hash  The hash used to save the value in the tree
+	 * @param value The value which will be returned if the hash matches
+	 * @throws IllegalStateException    if the tree ensures hash consistency and
+	 *                                  the hash was created by a different
+	 *                                  algorithm than the first hash
+	 * @throws IllegalArgumentException if the bit resolution of the hash does not
+	 *                                  match the hashes already added
+	 */
+	@Override
+	public void addHash(Hash hash, T value) {
+		Snapshot<T> s;
+		synchronized (this) {
+			Snapshot<T> current = snapshot;
+
+			int hashAlgoId = current.algoId;
+			if (ensureHashConsistency) {
+				if (hashAlgoId == 0) {
+					hashAlgoId = hash.getAlgorithmId();
+				} else if (hashAlgoId != hash.getAlgorithmId()) {
+					throw new IllegalStateException("Tried to add an incompatible hash to the binary tree");
+				}
+			}
+			if (current.bitResolution != 0 && hash.getBitResolution() != current.bitResolution) {
+				throw new IllegalArgumentException("Hash length " + hash.getBitResolution()
+						+ " does not match the bit resolution of the tree " + current.bitResolution);
+			}
+
+			algoId = hashAlgoId;
+			hashCount++;
+			s = new Snapshot<T>(current.base, current.baseHashes, current.baseValues,
+					current.buffer.append(hash, value), current.removed, hashCount, hashAlgoId,
+					hash.getBitResolution());
+			snapshot = s;
+			if (!claimMerge(s)) {
+				return;
+			}
+		}
+		merge(s);
+	}
+
+	/**
+	 * Remove a value associated with the supplied hash from the tree. The value is
+	 * no longer returned by searches started after this method returns.
+	 * <p>
+	 * If the value was added multiple times with the same hash only a single
+	 * occurrence is removed.
+	 *
+	 * @param hash  The hash the value was added with
+	 * @param value The value to remove
+	 * @return true if the value was found and removed, false otherwise
+	 * @throws IllegalStateException if the tree ensures hash consistency and the
+	 *                               hash was created by a different algorithm
+	 *                               than the first hash
+	 */
+	public boolean removeHash(Hash hash, T value) {
+		Snapshot<T> s;
+		synchronized (this) {
+			Snapshot<T> current = snapshot;
+			if (ensureHashConsistency && current.algoId != 0 && current.algoId != hash.getAlgorithmId()) {
+				throw new IllegalStateException("Tried to add an incompatible hash to the binary tree");
+			}
+			if (current.hashCount == 0 || hash.getBitResolution() != current.bitResolution
+					|| current.count(hash, value) == 0) {
+				return false;
+			}
+
+			hashCount--;
+			s = new Snapshot<T>(current.base, current.baseHashes, current.baseValues, current.buffer,
+					current.removed.append(hash, value), hashCount, current.algoId, current.bitResolution);
+			snapshot = s;
+			if (!claimMerge(s)) {
+				return true;
+			}
+		}
+		merge(s);
+		return true;
+	}
+
+	/**
+	 * Associate a value with a new hash. The value is removed from the old hash
+	 * and added to the new hash.
+	 *
+	 * @param oldHash The hash the value was added with
+	 * @param newHash The hash the value will be found with
+	 * @param value   The value to move
+	 * @return true if the value was associated with the old hash. The value is
+	 *         added to the new hash in either case.
+	 */
+	public boolean updateHash(Hash oldHash, Hash newHash, T value) {
+		boolean removed = removeHash(oldHash, value);
+		addHash(newHash, value);
+		return removed;
+	}
+
+	/**
+	 * Check if the snapshot has to be merged and no other writer is merging.
+	 * Has to be called while holding the monitor.
+	 *
+	 * @param s the snapshot just published
+	 * @return true if the caller has to merge the snapshot
+	 */
+	private boolean claimMerge(Snapshot<T> s) {
+		if (merging || s.buffer.size + s.removed.size < Math.max(MIN_BUFFER_SIZE,
+				s.base.getHashCount() / MERGE_RATIO)) {
+			return false;
+		}
+		merging = true;
+		return true;
+	}
+
+	/**
+	 * Merge the compact tree, buffer and removed hashes of the snapshot into a new
+	 * compact tree. The tree is built without holding the monitor. Hashes added
+	 * or removed in the meantime are carried over to the published snapshot.
+	 *
+	 * @param s the snapshot to merge
+	 */
+	private void merge(Snapshot<T> s) {
+		List<Hash> mergedHashes = new ArrayList<>(s.hashCount);
+		List<T> mergedValues = new ArrayList<>(s.hashCount);
+		CompactBinaryTree<T> base = null;
+		try {
+			s.collect(mergedHashes, mergedValues);
+			base = new CompactBinaryTree<>(mergedHashes, mergedValues, false);
+		} finally {
+			synchronized (this) {
+				if (base != null) {
+					Snapshot<T> current = snapshot;
+					snapshot = new Snapshot<T>(base, mergedHashes, mergedValues,
+							current.buffer.skip(s.buffer.size), current.removed.skip(s.removed.size),
+							current.hashCount, current.algoId, current.bitResolution);
+				}
+				merging = false;
+			}
+		}
+	}
+
+	/**
+	 * Create a snapshot holding all hashes in a compact tree.
+	 */
+	private static <T> Snapshot<T> createSnapshot(List<Hash> hashes, List<T> values, int hashAlgoId,
+			int bitResolution) {
+		CompactBinaryTree<T> base = new CompactBinaryTree<>(hashes, values, false);
+		return new Snapshot<T>(base, hashes, values, Entries.EMPTY, Entries.EMPTY, hashes.size(), hashAlgoId,
+				bitResolution);
+	}
+
+	@Override
+	public PriorityQueue<Result<T>> getElementsWithinHammingDistance(Hash hash, int maxDistance) {
+		Snapshot<T> s = snapshot;
+		s.checkHash(hash, ensureHashConsistency);
+
+		PriorityQueue<Result<T>> result = s.base.getElementsWithinHammingDistance(hash, maxDistance);
+
+		long[] needle = hash.getPackedHashValue();
+		s.searchBuffer(needle, maxDistance, result);
+		s.filterRemoved(needle, maxDistance, result);
+		return result;
+	}
+
+	@Override
+	public List<Result<T>> getNearestNeighbour(Hash hash) {
+		Snapshot<T> s = snapshot;
+		s.checkHash(hash, ensureHashConsistency);
+
+		long[] needle = hash.getPackedHashValue();
+		Collection<Result<T>> candidates;
+		if (s.removed.size == 0) {
+			List<Result<T>> nearest = s.base.getNearestNeighbour(hash);
+			s.searchBuffer(needle, nearest.isEmpty() ? Integer.MAX_VALUE : (int) nearest.get(0).distance, nearest);
+			candidates = nearest;
+		} else {
+			// The closest hashes of the base may have been removed
+			candidates = s.search(hash, needle, 1);
+		}
+
+		int curBestDistance = Integer.MAX_VALUE;
+		for (Result<T> r : candidates) {
+			curBestDistance = Math.min(curBestDistance, (int) r.distance);
+		}
+		List<Result<T>> nearest = new ArrayList<>();
+		for (Result<T> r : candidates) {
+			if (r.distance == curBestDistance) {
+				nearest.add(r);
+			}
+		}
+		return nearest;
+	}
+
+	@Override
+	public List<Result<T>> getNearestNeighbours(Hash hash, int k) {
+		BoundedResultQueue<T> result = new BoundedResultQueue<>(k);
+
+		Snapshot<T> s = snapshot;
+		s.checkHash(hash, ensureHashConsistency);
+
+		long[] needle = hash.getPackedHashValue();
+		if (s.removed.size == 0) {
+			for (Result<T> r : s.base.getNearestNeighbours(hash, k)) {
+				result.offer(r);
+			}
+			for (int i = 0; i < s.buffer.size; i++) {
+				int distance = Hash.hammingDistanceFast(needle, s.buffer.words[i]);
+				if (result.accepts(distance)) {
+					result.offer(s.createResult(s.buffer, i, distance));
+				}
+			}
+		} else {
+			for (Result<T> r : s.search(hash, needle, k)) {
+				result.offer(r);
+			}
+		}
+		return result.toSortedList();
+	}
+
+	/**
+	 * @return how many hashes were added to the tree
+	 */
+	@Override
+	public int getHashCount() {
+		return snapshot.hashCount;
+	}
+
+	@Override
+	public int getAlgorithmId() {
+		return snapshot.algoId;
+	}
+
+	/**
+	 * The concurrent tree does not consist of linked nodes. Every call builds a
+	 * binary tree from the hashes currently present. Changes to the returned nodes
+	 * are not reflected by this tree.
+	 *
+	 * @return the root of a binary tree holding the hashes of this tree
+	 */
+	@Override
+	public Node getRoot() {
+		List<Hash> hashes = new ArrayList<>();
+		List<T> values = new ArrayList<>();
+		snapshot.collect(hashes, values);
+		return new BinaryTree<T>(hashes, values, false).getRoot();
+	}
+
+	@Override
+	public void printTree() {
+		Snapshot<T> s = snapshot;
+		s.base.printTree();
+		for (int i = 0; i < s.buffer.size; i++) {
+			System.out.println("Buffered: " + s.buffer.hashes[i].getHashValue().toString(2) + " "
+					+ s.buffer.values[i]);
+		}
+		for (int i = 0; i < s.removed.size; i++) {
+			System.out.println("Removed: " + s.removed.hashes[i].getHashValue().toString(2) + " "
+					+ s.removed.values[i]);
+		}
+	}
+
+	@Override
+	public int hashCode() {
+		Snapshot<T> s = snapshot;
+		List<Hash> hashes = new ArrayList<>();
+		List<Object> values = new ArrayList<>();
+		s.collect(hashes, values);
+
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + s.algoId;
+		result = prime * result + (ensureHashConsistency ? 1231 : 1237);
+		result = prime * result + s.hashCount;
+		result = prime * result + hashes.hashCode();
+		result = prime * result + values.hashCode();
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof ConcurrentBinaryTree)) {
+			return false;
+		}
+		ConcurrentBinaryTree<?> other = (ConcurrentBinaryTree<?>) obj;
+		Snapshot<T> s = snapshot;
+		Snapshot<?> otherSnapshot = other.snapshot;
+		if (ensureHashConsistency != other.ensureHashConsistency || s.algoId != otherSnapshot.algoId
+				|| s.hashCount != otherSnapshot.hashCount) {
+			return false;
+		}
+		List<Hash> hashes = new ArrayList<>();
+		List<Object> values = new ArrayList<>();
+		s.collect(hashes, values);
+		List<Hash> otherHashes = new ArrayList<>();
+		List<Object> otherValues = new ArrayList<>();
+		otherSnapshot.collect(otherHashes, otherValues);
+		return hashes.equals(otherHashes) && values.equals(otherValues);
+	}
+
+	// Serialization
+	private void writeObject(ObjectOutputStream oos) throws IOException {
+		oos.defaultWriteObject();
+		List<Hash> hashes = new ArrayList<>();
+		List<Object> values = new ArrayList<>();
+		snapshot.collect(hashes, values);
+		oos.writeObject(hashes);
+		oos.writeObject(values);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream ois) throws ClassNotFoundException, IOException {
+		ois.defaultReadObject();
+		List<Hash> hashes = (List<Hash>) ois.readObject();
+		List<T> values = (List<T>) ois.readObject();
+		hashCount = hashes.size();
+		snapshot = createSnapshot(hashes, values, algoId, hashes.isEmpty() ? 0 : hashes.get(0).getBitResolution());
+	}
+
+	/**
+	 * Immutable view of the tree used by searches
+	 */
+	private static final class Snapshot<T> {
+		final CompactBinaryTree<T> base;
+		/** The hashes and values the base was built from */
+		final List<Hash> baseHashes;
+		final List<T> baseValues;
+		/** Hashes added after the base was built */
+		final Entries buffer;
+		/** Hashes removed after the base was built */
+		final Entries removed;
+		final int hashCount;
+		final int algoId;
+		final int bitResolution;
+
+		Snapshot(CompactBinaryTree<T> base, List<Hash> baseHashes, List<T> baseValues, Entries buffer,
+				Entries removed, int hashCount, int algoId, int bitResolution) {
+			this.base = base;
+			this.baseHashes = baseHashes;
+			this.baseValues = baseValues;
+			this.buffer = buffer;
+			this.removed = removed;
+			this.hashCount = hashCount;
+			this.algoId = algoId;
+			this.bitResolution = bitResolution;
+		}
+
+		void checkHash(Hash hash, boolean ensureHashConsistency) {
+			if (ensureHashConsistency && algoId != 0 && algoId != hash.getAlgorithmId()) {
+				throw new IllegalStateException("Tried to add an incompatible hash to the binary tree");
+			}
+			if (bitResolution != 0 && hash.getBitResolution() != bitResolution) {
+				throw new IllegalArgumentException("Hash length " + hash.getBitResolution()
+						+ " does not match the bit resolution of the tree " + bitResolution);
+			}
+		}
+
+		/**
+		 * Count how often the value is contained with exactly this hash
+		 */
+		int count(Hash hash, Object value) {
+			long[] needle = hash.getPackedHashValue();
+			int count = 0;
+			for (Result<T> r : base.getElementsWithinHammingDistance(hash, 0)) {
+				if (Objects.equals(r.value, value)) {
+					count++;
+				}
+			}
+			return count + buffer.count(needle, value) - removed.count(needle, value);
+		}
+
+		/**
+		 * Add the buffered hashes within the distance to the results
+		 */
+		void searchBuffer(long[] needle, int maxDistance, Collection<Result<T>> results) {
+			for (int i = 0; i < buffer.size; i++) {
+				int distance = Hash.hammingDistanceFast(needle, buffer.words[i]);
+				if (distance <= maxDistance) {
+					results.add(createResult(buffer, i, distance));
+				}
+			}
+		}
+
+		/**
+		 * Search the base and the buffer for at least k hashes which were not
+		 * removed. The removed hashes are filtered from a search covering all hashes
+		 * up to the distance of the k + removed closest hashes of the base.
+		 */
+		Collection<Result<T>> search(Hash hash, long[] needle, int k) {
+			int limit = k > Integer.MAX_VALUE - removed.size ? Integer.MAX_VALUE : k + removed.size;
+			List<Result<T>> nearest = base.getNearestNeighbours(hash, limit);
+			Collection<Result<T>> results;
+			int maxDistance;
+			if (nearest.size() < limit) {
+				// The base contains less hashes
+				results = nearest;
+				maxDistance = Integer.MAX_VALUE;
+			} else {
+				maxDistance = (int) nearest.get(nearest.size() - 1).distance;
+				results = base.getElementsWithinHammingDistance(hash, maxDistance);
+			}
+			searchBuffer(needle, maxDistance, results);
+			filterRemoved(needle, maxDistance, results);
+			return results;
+		}
+
+		/**
+		 * Remove the results of removed hashes. The results have to contain all hashes
+		 * within the distance.
+		 */
+		void filterRemoved(long[] needle, int maxDistance, Collection<Result<T>> results) {
+			if (removed.size == 0) {
+				return;
+			}
+			int[] distances = new int[removed.size];
+			int pending = 0;
+			for (int i = 0; i < removed.size; i++) {
+				int distance = Hash.hammingDistanceFast(needle, removed.words[i]);
+				if (distance <= maxDistance) {
+					distances[i] = distance;
+					pending++;
+				} else {
+					distances[i] = -1;
+				}
+			}
+			// Results of the same value and distance can not be told apart
+			for (Iterator<Result<T>> iter = results.iterator(); pending > 0 && iter.hasNext();) {
+				Result<T> r = iter.next();
+				for (int i = 0; i < distances.length; i++) {
+					if (distances[i] == (int) r.distance && Objects.equals(removed.values[i], r.value)) {
+						distances[i] = -1;
+						pending--;
+						iter.remove();
+						break;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Collect the hashes and values of the tree in insertion order
+		 */
+		@SuppressWarnings("unchecked")
+		void collect(List<Hash> hashes, List<? super T> values) {
+			Map<Key, Integer> pending = new HashMap<>();
+			for (int i = 0; i < removed.size; i++) {
+				pending.merge(new Key(removed.words[i], removed.values[i]), 1, Integer::sum);
+			}
+			for (int i = 0; i < baseHashes.size(); i++) {
+				Hash hash = baseHashes.get(i);
+				T value = baseValues.get(i);
+				if (pending.isEmpty() || !consume(pending, new Key(hash.getPackedHashValue(), value))) {
+					hashes.add(hash);
+					values.add(value);
+				}
+			}
+			for (int i = 0; i < buffer.size; i++) {
+				if (pending.isEmpty() || !consume(pending, new Key(buffer.words[i], buffer.values[i]))) {
+					hashes.add(buffer.hashes[i]);
+					values.add((T) buffer.values[i]);
+				}
+			}
+		}
+
+		private static boolean consume(Map<Key, Integer> pending, Key key) {
+			Integer count = pending.get(key);
+			if (count == null) {
+				return false;
+			}
+			if (count == 1) {
+				pending.remove(key);
+			} else {
+				pending.put(key, count - 1);
+			}
+			return true;
+		}
+
+		@SuppressWarnings("unchecked")
+		Result<T> createResult(Entries entries, int index, int distance) {
+			return new Result<T>((T) entries.values[index], distance, distance / (double) bitResolution);
+		}
+	}
+
+	/**
+	 * Append only list of hashes shared by successive snapshots. Each snapshot only
+	 * accesses the first size entries, allowing writers to append in place.
+	 */
+	private static final class Entries {
+		static final Entries EMPTY = new Entries(new Hash[0], new long[0][], new Object[0], 0);
+
+		final Hash[] hashes;
+		/** The packed values of the hashes */
+		final long[][] words;
+		final Object[] values;
+		/** Number of valid entries */
+		final int size;
+
+		Entries(Hash[] hashes, long[][] words, Object[] values, int size) {
+			this.hashes = hashes;
+			this.words = words;
+			this.values = values;
+			this.size = size;
+		}
+
+		Entries append(Hash hash, Object value) {
+			Hash[] newHashes = hashes;
+			long[][] newWords = words;
+			Object[] newValues = values;
+			if (size == hashes.length) {
+				// Searches only access the first size entries. Resize on a copy
+				int capacity = Math.max(16, hashes.length * 2);
+				newHashes = Arrays.copyOf(hashes, capacity);
+				newWords = Arrays.copyOf(words, capacity);
+				newValues = Arrays.copyOf(values, capacity);
+			}
+			newHashes[size] = hash;
+			newWords[size] = hash.getPackedHashValue();
+			newValues[size] = value;
+			return new Entries(newHashes, newWords, newValues, size + 1);
+		}
+
+		/**
+		 * @param count the number of entries to drop
+		 * @return a copy of the entries without the first count entries
+		 */
+		Entries skip(int count) {
+			if (count == size) {
+				return EMPTY;
+			}
+			return new Entries(Arrays.copyOfRange(hashes, count, size), Arrays.copyOfRange(words, count, size),
+					Arrays.copyOfRange(values, count, size), size - count);
+		}
+
+		int count(long[] needle, Object value) {
+			int count = 0;
+			for (int i = 0; i < size; i++) {
+				if (Hash.hammingDistanceFast(needle, words[i]) == 0 && Objects.equals(values[i], value)) {
+					count++;
+				}
+			}
+			return count;
+		}
+	}
+
+	/**
+	 * A hash and value pair. Packed values differing only in trailing zero words
+	 * are considered equal.
+	 */
+	private static final class Key {
+		final long[] words;
+		/** Number of words up to the last non zero word */
+		final int length;
+		final Object value;
+
+		Key(long[] words, Object value) {
+			int length = words.length;
+			while (length > 0 && words[length - 1] == 0) {
+				length--;
+			}
+			this.words = words;
+			this.length = length;
+			this.value = value;
+		}
+
+		@Override
+		public int hashCode() {
+			int result = Objects.hashCode(value);
+			for (int i = 0; i < length; i++) {
+				result = 31 * result + Long.hashCode(words[i]);
+			}
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			if (length != other.length || !Objects.equals(value, other.value)) {
+				return false;
+			}
+			for (int i = 0; i < length; i++) {
+				if (words[i] != other.words[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
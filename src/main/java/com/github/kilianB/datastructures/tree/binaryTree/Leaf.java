@@ -23,6 +23,16 @@ public class Leaf<T> extends Node{
 		this.data.add(data);
 	}
 	
+	/**
+	 * Remove the first occurrence of the data from the leaf
+	 * @param data	Value to remove
+	 * @return true if the leaf contained the value
+	 * @since 3.0.1
+	 */
+	public boolean removeData(T data) {
+		return this.data.remove(data);
+	}
+	
 	/**
 	 * @return a strong reference to the arraylist backing this leaf
 	 */
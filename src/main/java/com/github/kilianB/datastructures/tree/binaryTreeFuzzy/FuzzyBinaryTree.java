@@ -2,11 +2,14 @@ package com.github.kilianB.datastructures.tree.binaryTreeFuzzy;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
 import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
 
 import com.github.kilianB.MathUtil;
 import com.github.kilianB.datastructures.tree.AbstractBinaryTree;
+import com.github.kilianB.datastructures.tree.BoundedResultQueue;
 import com.github.kilianB.datastructures.tree.NodeInfo;
 import com.github.kilianB.datastructures.tree.Result;
 import com.github.kilianB.datastructures.tree.binaryTree.Leaf;
@@ -30,6 +33,14 @@ import com.github.kilianB.hash.Hash;
 public class FuzzyBinaryTree extends AbstractBinaryTree<FuzzyHash> {
 
 	private static final long serialVersionUID = -246416483525585695L;
+
+	/**
+	 * Orders nodes by the lower bound of their distance. Of equally distant nodes
+	 * the deeper one is expanded first
+	 */
+	static final Comparator<NodeInfo<FuzzyHash>> CLOSEST_FIRST = Comparator
+			.comparingDouble((NodeInfo<FuzzyHash> info) -> info.distance).thenComparingInt(info -> info.depth);
+
 	// TODO debug
 	private int hashLengthDebug = -1;;
 
@@ -37,7 +48,31 @@ public class FuzzyBinaryTree extends AbstractBinaryTree<FuzzyHash> {
 		super(ensureHashConsistency);
 		root = new FuzzyNode();
 	}
-	
+
+	/**
+	 * Bulk load a fuzzy binary tree. The resulting tree is identical to a tree
+	 * created by adding the hashes one by one.
+	 * 
+	 * @param fuzzyHashs            the hashes to add. All hashes are expected to
+	 *                              have the same bit resolution
+	 * @param ensureHashConsistency If true adding and matching hashes will check
+	 *                              weather they are generated by the same
+	 *                              algorithms as the first hash added to the tree
+	 * @param pool                  the fork join pool used to build the subtrees
+	 *                              or null to build the tree in the calling thread
+	 * @throws IllegalArgumentException if the hashes have different bit
+	 *                                  resolutions
+	 * @throws IllegalStateException    if hash consistency is ensured and hashes
+	 *                                  of different algorithms are supplied
+	 * @since 3.0.1
+	 */
+	public FuzzyBinaryTree(List<FuzzyHash> fuzzyHashs, boolean ensureHashConsistency, ForkJoinPool pool) {
+		this(ensureHashConsistency);
+		bulkLoad(fuzzyHashs, fuzzyHashs, pool);
+		if (!fuzzyHashs.isEmpty()) {
+			hashLengthDebug = fuzzyHashs.get(0).getBitResolution();
+		}
+	}
 
 	public void addHash(FuzzyHash hash) {
 		addHash(hash, hash);
@@ -101,6 +136,11 @@ public class FuzzyBinaryTree extends AbstractBinaryTree<FuzzyHash> {
 		hashCount++;
 	}
 
+	@Override
+	protected void bulkLoadVisit(Node node, FuzzyHash value, int bit, boolean one) {
+		((FuzzyNode) node).setNodeBounds(value.getWeightedDistance(bit, one));
+	}
+
 	// TODO check if distance is correct
 
 	public List<Result<FuzzyHash>> getNearestNeighbour(Hash hash) {
@@ -212,6 +252,91 @@ public class FuzzyBinaryTree extends AbstractBinaryTree<FuzzyHash> {
 		return resultCandidates;
 	}
 
+	/**
+	 * Retrieve the k fuzzy hashes most similar to the queried hash. The distance
+	 * is the weighted distance of the fuzzy hash. Nodes are expanded in the order
+	 * of their lower distance bound and subtrees whose bound exceeds the k-th
+	 * best distance found so far are pruned.
+	 * 
+	 * @param hash the hash to search the neighbours for
+	 * @param k    the maximum number of results
+	 * @return at most k results sorted by distance, closest first
+	 * @throws IllegalArgumentException if k is not positive
+	 * @since 3.0.1
+	 */
+	@Override
+	public List<Result<FuzzyHash>> getNearestNeighbours(Hash hash, int k) {
+
+		if (ensureHashConsistency && algoId != hash.getAlgorithmId()) {
+			throw new IllegalStateException("Tried to add an incompatible hash to the binary tree");
+		}
+
+		BoundedResultQueue<FuzzyHash> result = new BoundedResultQueue<>(k);
+
+		if (hashCount == 0) {
+			return result.toSortedList();
+		}
+
+		int treeDepth = hash.getBitResolution();
+
+		if (hashLengthDebug != treeDepth) {
+			throw new IllegalStateException("Tried to get neareast neighbot an incompatible hash to the binary tree");
+		}
+
+		PriorityQueue<NodeInfo<FuzzyHash>> queue = new PriorityQueue<>(CLOSEST_FIRST);
+
+		// Begin search at the root
+		queue.add(new NodeInfo<FuzzyHash>(root, 0, treeDepth));
+
+		while (!queue.isEmpty()) {
+
+			NodeInfo<FuzzyHash> info = queue.poll();
+
+			// Neither this nor any remaining subtree can contain a closer hash than
+			// the k-th best
+			if (info.distance > result.getBound()) {
+				break;
+			}
+
+			// We reached a leaf
+			if (info.depth == 0) {
+				@SuppressWarnings("unchecked")
+				Leaf<FuzzyHash> leaf = (Leaf<FuzzyHash>) info.node;
+				for (FuzzyHash o : leaf.getData()) {
+					double normalizedDistance = o.weightedDistance(hash);
+					result.offer(o, normalizedDistance * treeDepth, normalizedDistance);
+				}
+				continue;
+			}
+
+			boolean bit = hash.getBitUnsafe(info.depth - 1);
+
+			// Children of the next level
+			for (int i = 0; i < 2; i++) {
+				boolean left = i == 0;
+				Node child = info.node.getChild(left);
+				if (child == null) {
+					continue;
+				}
+				if (info.depth != 1) {
+					FuzzyNode node = (FuzzyNode) child;
+					double newDistance;
+					if (bit == left) {
+						newDistance = info.distance + node.lowerDistance;
+					} else {
+						newDistance = info.distance + (1 - node.uppderDistance);
+					}
+					if (newDistance <= result.getBound()) {
+						queue.add(new NodeInfo<>(node, newDistance, info.depth - 1));
+					}
+				} else {
+					queue.add(new NodeInfo<>(child, info.distance, info.depth - 1));
+				}
+			}
+		}
+		return result.toSortedList();
+	}
+
 	@Override
 	public PriorityQueue<Result<FuzzyHash>> getElementsWithinHammingDistance(Hash hash, int maxDistance) {
 		// TODO Auto-generated method stub
@@ -0,0 +1,481 @@
+package com.github.kilianB.datastructures.tree.flat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+
+import com.github.kilianB.datastructures.tree.AbstractBinaryTree;
+import com.github.kilianB.datastructures.tree.BoundedResultQueue;
+import com.github.kilianB.datastructures.tree.Result;
+import com.github.kilianB.hash.Hash;
+
+/**
+ * A not thread safe index computing the
+ * <a href="https://en.wikipedia.org/wiki/Hamming_distance">hamming distance</a>
+ * of the needle to every hash it contains.
+ *
+ * <p>
+ * Hashes are stored column packed. Word <code>w</code> of all hashes is kept in
+ * one contiguous array allowing the jit to process multiple hashes per
+ * instruction. The index is split into chunks of {@link #CHUNK_SIZE} hashes
+ * which are scanned in parallel on a fork join pool once the index grows beyond
+ * {@link #PARALLEL_THRESHOLD} hashes. A chunk stops accumulating words as soon
+ * as every hash of the chunk exceeds the search radius.
+ *
+ * <p>
+ * Opposed to the {@link com.github.kilianB.datastructures.tree.binaryTree.BinaryTree
+ * BinaryTree} the search effort does not depend on the search radius or the
+ * distribution of the hashes. For up to a few million hashes and moderate to
+ * large radii a linear scan usually outperforms the tree.
+ *
+ * <p>
+ * All hashes added to the index are expected to have the same bit resolution.
+ *
+ * @author Kilian
+ * @since 3.0.1
+ */
+public class FlatHashIndex<T> extends AbstractBinaryTree<T> {
+
+	private static final long serialVersionUID = 6541382145474613318L;
+
+	/** Number of hashes scanned by a single task */
+	public static final int CHUNK_SIZE = 1 << 12;
+
+	/** Smaller indices are always scanned on the calling thread */
+	public static final int PARALLEL_THRESHOLD = 1 << 15;
+
+	/** Bit resolution of the indexed hashes. -1 if no hash was added yet */
+	private int hashLength = -1;
+
+	/** Number of long words required to store a single hash */
+	private int wordCount;
+
+	/** Column packed hashes. Word w of entry i is stored at columns[w][i] */
+	private long[][] columns;
+
+	/** The value of entry i */
+	private Object[] values;
+
+	/** Weather queries are split across multiple threads */
+	private final boolean parallel;
+
+	/**
+	 * The pool used for parallel queries. Not serialized, deserialized indices use
+	 * the common pool
+	 */
+	private transient ForkJoinPool pool;
+
+	/**
+	 * Create a flat index scanning large indices in parallel on the common fork
+	 * join pool.
+	 *
+	 * @param ensureHashConsistency If true adding and matching hashes will check
+	 *                              weather they are generated by the same
+	 *                              algorithms as the first hash added to the index
+	 */
+	public FlatHashIndex(boolean ensureHashConsistency) {
+		this(ensureHashConsistency, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Create a flat index.
+	 *
+	 * @param ensureHashConsistency If true adding and matching hashes will check
+	 *                              weather they are generated by the same
+	 *                              algorithms as the first hash added to the index
+	 * @param pool                  the pool used to scan large indices in
+	 *                              parallel. If null all queries are executed on
+	 *                              the calling thread
+	 */
+	public FlatHashIndex(boolean ensureHashConsistency, ForkJoinPool pool) {
+		this.ensureHashConsistency = ensureHashConsistency;
+		this.parallel = pool != null;
+		this.pool = pool;
+	}
+
+	/**
+	 * Insert a value associated with the supplied hash in the index (similar to a
+	 * map). Saved values can be found by invoking
+	 * {@link #getElementsWithinHammingDistance}.
+	 *
+	 * <p>
+	 * If the index is configured to ensureHashConsistency this function will throw
+	 * an unchecked IlleglStateException if the added hash does not comply with the
+	 * first hash added to the index.
+	 *
+	 * @param hash  The hash used to save the value in the index
+	 * @param value The value which will be returned if the hash is matched
+	 * @throws IllegalArgumentException if the bit resolution of the hash does not
+	 *                                  match the previously added hashes
+	 */
+	@Override
+	public void addHash(Hash hash, T value) {
+
+		if (ensureHashConsistency) {
+			if (algoId == 0) {
+				algoId = hash.getAlgorithmId();
+			} else {
+				if (algoId != hash.getAlgorithmId())
+					throw new IllegalStateException("Tried to add an incompatible hash to the binary tree");
+			}
+		}
+
+		if (hashLength == -1) {
+			hashLength = hash.getBitResolution();
+			wordCount = Math.max(1, (hashLength + 63) / 64);
+			columns = new long[wordCount][16];
+			values = new Object[16];
+		}
+		long[] words = getWords(hash);
+
+		if (hashCount == values.length) {
+			int capacity = values.length * 2;
+			for (int w = 0; w < wordCount; w++) {
+				columns[w] = Arrays.copyOf(columns[w], capacity);
+			}
+			values = Arrays.copyOf(values, capacity);
+		}
+		for (int w = 0; w < wordCount; w++) {
+			columns[w][hashCount] = words[w];
+		}
+		values[hashCount] = value;
+		hashCount++;
+	}
+
+	/**
+	 * Remove a value associated with the supplied hash from the index. The last
+	 * entry of the index takes the place of the removed entry.
+	 *
+	 * @param hash  The hash the value was added with
+	 * @param value The value to remove
+	 * @return true if the value was found and removed, false otherwise
+	 */
+	public boolean removeHash(Hash hash, T value) {
+
+		if (ensureHashConsistency && algoId != 0 && algoId != hash.getAlgorithmId()) {
+			throw new IllegalStateException("Tried to add an incompatible hash to the binary tree");
+		}
+
+		if (hashCount == 0) {
+			return false;
+		}
+
+		long[] needle = getWords(hash);
+		for (int i = 0; i < hashCount; i++) {
+			if (distance(needle, i) == 0 && (value == null ? values[i] == null : value.equals(values[i]))) {
+				int last = hashCount - 1;
+				for (int w = 0; w < wordCount; w++) {
+					columns[w][i] = columns[w][last];
+				}
+				values[i] = values[last];
+				values[last] = null;
+				hashCount--;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Associate a value with a new hash. The value is removed from the old hash
+	 * and appended to the index with the new hash.
+	 *
+	 * @param oldHash The hash the value was added with
+	 * @param newHash The hash the value will be found with
+	 * @param value   The value to move
+	 * @return true if the value was associated with the old hash. The value is
+	 *         added to the new hash in either case.
+	 */
+	public boolean updateHash(Hash oldHash, Hash newHash, T value) {
+		boolean removed = removeHash(oldHash, value);
+		addHash(newHash, value);
+		return removed;
+	}
+
+	@Override
+	public PriorityQueue<Result<T>> getElementsWithinHammingDistance(Hash hash, int maxDistance) {
+
+		if (ensureHashConsistency && algoId != hash.getAlgorithmId()) {
+			throw new IllegalStateException("Tried to add an incompatible hash to the binary tree");
+		}
+
+		if (hashCount == 0 || maxDistance < 0) {
+			return new PriorityQueue<Result<T>>();
+		}
+
+		long[] needle = getWords(hash);
+		List<Result<T>> matches = scan((from, to) -> {
+			List<Result<T>> chunkMatches = new ArrayList<>();
+			int[] distances = new int[to - from];
+			distances(needle, from, to, maxDistance, distances);
+			for (int i = 0; i < distances.length; i++) {
+				int distance = distances[i];
+				if (distance <= maxDistance) {
+					chunkMatches.add(result(from + i, distance));
+				}
+			}
+			return chunkMatches;
+		}, (left, right) -> {
+			left.addAll(right);
+			return left;
+		});
+		return new PriorityQueue<Result<T>>(matches);
+	}
+
+	@Override
+	public List<Result<T>> getNearestNeighbour(Hash hash) {
+
+		if (ensureHashConsistency && algoId != hash.getAlgorithmId()) {
+			throw new IllegalStateException("Tried to add an incompatible hash to the binary tree");
+		}
+
+		if (hashCount == 0) {
+			return new ArrayList<>();
+		}
+
+		long[] needle = getWords(hash);
+		return scan((from, to) -> {
+			List<Result<T>> best = new ArrayList<>();
+			int[] distances = new int[to - from];
+			distances(needle, from, to, Integer.MAX_VALUE, distances);
+			int bestDistance = Integer.MAX_VALUE;
+			for (int i = 0; i < distances.length; i++) {
+				int distance = distances[i];
+				if (distance < bestDistance) {
+					best.clear();
+					bestDistance = distance;
+				}
+				if (distance == bestDistance) {
+					best.add(result(from + i, distance));
+				}
+			}
+			return best;
+		}, (left, right) -> {
+			double leftDistance = left.get(0).distance;
+			double rightDistance = right.get(0).distance;
+			if (rightDistance < leftDistance) {
+				return right;
+			}
+			if (rightDistance == leftDistance) {
+				left.addAll(right);
+			}
+			return left;
+		});
+	}
+
+	@Override
+	public List<Result<T>> getNearestNeighbours(Hash hash, int k) {
+
+		if (ensureHashConsistency && algoId != hash.getAlgorithmId()) {
+			throw new IllegalStateException("Tried to add an incompatible hash to the binary tree");
+		}
+
+		BoundedResultQueue<T> result = new BoundedResultQueue<>(k);
+
+		if (hashCount == 0) {
+			return result.toSortedList();
+		}
+
+		long[] needle = getWords(hash);
+		return scan((from, to) -> {
+			BoundedResultQueue<T> chunkResult = new BoundedResultQueue<>(k);
+			int[] distances = new int[to - from];
+			distances(needle, from, to, Integer.MAX_VALUE, distances);
+			for (int i = 0; i < distances.length; i++) {
+				int distance = distances[i];
+				if (chunkResult.accepts(distance)) {
+					chunkResult.offer(result(from + i, distance));
+				}
+			}
+			return chunkResult;
+		}, (left, right) -> {
+			// Offer in order to keep the first results on ties
+			for (Result<T> r : right.toSortedList()) {
+				left.offer(r);
+			}
+			return left;
+		}).toSortedList();
+	}
+
+	/**
+	 * Print all hashes and values stored in the index.
+	 */
+	@Override
+	public void printTree() {
+		for (int i = 0; i < hashCount; i++) {
+			StringBuilder sb = new StringBuilder(hashLength);
+			for (int bit = hashLength - 1; bit >= 0; bit--) {
+				sb.append(((columns[bit >>> 6][i] >>> bit) & 1) == 1 ? '1' : '0');
+			}
+			System.out.println("Entry found: " + sb + " " + values[i]);
+		}
+	}
+
+	/**
+	 * @return the hashes contained in the index in the order of their entries
+	 */
+	public List<Hash> getHashes() {
+		List<Hash> hashes = new ArrayList<>(hashCount);
+		for (int i = 0; i < hashCount; i++) {
+			long[] words = new long[wordCount];
+			for (int w = 0; w < wordCount; w++) {
+				words[w] = columns[w][i];
+			}
+			hashes.add(new Hash(words, hashLength, algoId));
+		}
+		return hashes;
+	}
+
+	/**
+	 * @return the values contained in the index in the order of their entries
+	 */
+	@SuppressWarnings("unchecked")
+	public List<T> getValues() {
+		List<T> list = new ArrayList<>(hashCount);
+		for (int i = 0; i < hashCount; i++) {
+			list.add((T) values[i]);
+		}
+		return list;
+	}
+
+	/** Computes the result of a range of entries */
+	private interface ChunkScan<R> {
+		R scan(int from, int to);
+	}
+
+	/**
+	 * Scan the index chunk by chunk. Chunks are merged in the order of their
+	 * entries.
+	 */
+	private <R> R scan(ChunkScan<R> chunkScan, BinaryOperator<R> merge) {
+		int chunks = (hashCount + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		if (!parallel || hashCount < PARALLEL_THRESHOLD) {
+			R result = chunkScan.scan(0, Math.min(CHUNK_SIZE, hashCount));
+			for (int c = 1; c < chunks; c++) {
+				result = merge.apply(result, chunkScan.scan(c * CHUNK_SIZE, Math.min((c + 1) * CHUNK_SIZE, hashCount)));
+			}
+			return result;
+		}
+		ForkJoinPool p = pool == null ? ForkJoinPool.commonPool() : pool;
+		return p.invoke(new ScanTask<R>(chunkScan, merge, 0, chunks, hashCount));
+	}
+
+	/**
+	 * Compute the hamming distance of the needle to the entries [from, to). Once
+	 * the distance of all entries exceeds maxDistance the remaining words are
+	 * skipped and the reported distances are only a lower bound.
+	 */
+	private void distances(long[] needle, int from, int to, int maxDistance, int[] distances) {
+		int n = to - from;
+		long word = needle[0];
+		long[] column = columns[0];
+		int min = Integer.MAX_VALUE;
+		for (int i = 0; i < n; i++) {
+			int distance = Long.bitCount(word ^ column[from + i]);
+			distances[i] = distance;
+			min = Math.min(min, distance);
+		}
+		for (int w = 1; w < wordCount && min <= maxDistance; w++) {
+			word = needle[w];
+			column = columns[w];
+			min = Integer.MAX_VALUE;
+			for (int i = 0; i < n; i++) {
+				int distance = distances[i] + Long.bitCount(word ^ column[from + i]);
+				distances[i] = distance;
+				min = Math.min(min, distance);
+			}
+		}
+	}
+
+	private int distance(long[] needle, int entryId) {
+		int distance = 0;
+		for (int w = 0; w < wordCount; w++) {
+			distance += Long.bitCount(needle[w] ^ columns[w][entryId]);
+		}
+		return distance;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Result<T> result(int entryId, int distance) {
+		return new Result<T>((T) values[entryId], distance, distance / (double) hashLength);
+	}
+
+	private long[] getWords(Hash hash) {
+		if (hashLength != -1 && hash.getBitResolution() != hashLength) {
+			throw new IllegalArgumentException("Hash length " + hash.getBitResolution()
+					+ " does not match the bit resolution of the index " + hashLength);
+		}
+		long[] words = hash.getPackedHashValue();
+		if (words.length < wordCount) {
+			words = Arrays.copyOf(words, wordCount);
+		}
+		return words;
+	}
+
+	/**
+	 * Splits a range of chunks in halves until a single chunk remains
+	 */
+	private static class ScanTask<R> extends RecursiveTask<R> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final ChunkScan<R> chunkScan;
+		private final BinaryOperator<R> merge;
+		private final int fromChunk;
+		private final int toChunk;
+		private final int hashCount;
+
+		ScanTask(ChunkScan<R> chunkScan, BinaryOperator<R> merge, int fromChunk, int toChunk, int hashCount) {
+			this.chunkScan = chunkScan;
+			this.merge = merge;
+			this.fromChunk = fromChunk;
+			this.toChunk = toChunk;
+			this.hashCount = hashCount;
+		}
+
+		@Override
+		protected R compute() {
+			if (toChunk - fromChunk == 1) {
+				return chunkScan.scan(fromChunk * CHUNK_SIZE, Math.min(toChunk * CHUNK_SIZE, hashCount));
+			}
+			int mid = (fromChunk + toChunk) >>> 1;
+			ScanTask<R> left = new ScanTask<>(chunkScan, merge, fromChunk, mid, hashCount);
+			left.fork();
+			R right = new ScanTask<>(chunkScan, merge, mid, toChunk, hashCount).compute();
+			return merge.apply(left.join(), right);
+		}
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = super.hashCode();
+		result = prime * result + hashLength;
+		result = prime * result + getValues().hashCode();
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!super.equals(obj)) {
+			return false;
+		}
+		if (!(obj instanceof FlatHashIndex)) {
+			return false;
+		}
+		FlatHashIndex<?> other = (FlatHashIndex<?>) obj;
+		if (hashLength != other.hashLength || !getValues().equals(other.getValues())) {
+			return false;
+		}
+		for (int w = 0; w < wordCount; w++) {
+			if (!Arrays.equals(Arrays.copyOf(columns[w], hashCount), Arrays.copyOf(other.columns[w], hashCount))) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
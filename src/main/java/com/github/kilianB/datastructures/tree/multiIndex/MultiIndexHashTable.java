@@ -0,0 +1,530 @@
+package com.github.kilianB.datastructures.tree.multiIndex;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.IntConsumer;
+
+import com.github.kilianB.datastructures.tree.AbstractBinaryTree;
+import com.github.kilianB.datastructures.tree.BoundedResultQueue;
+import com.github.kilianB.datastructures.tree.Result;
+import com.github.kilianB.hash.HammingKernel;
+import com.github.kilianB.hash.Hash;
+
+/**
+ * A not thread safe index implementing
+ * <a href="https://www.cs.toronto.edu/~norouzi/research/papers/multi_index_hashing.pdf">multi
+ * index hashing</a> to quickly find hashes within a given
+ * <a href="https://en.wikipedia.org/wiki/Hamming_distance">hamming distance</a>
+ * of a needle.
+ *
+ * <p>
+ * Each hash is split into <code>m</code> disjoint substrings and every substring
+ * is kept in a separate hash table. Due to the pigeonhole principle a hash
+ * within distance <code>r</code> of the needle has to match at least one
+ * substring within distance <code>r / m</code>. Only these substring
+ * neighbourhoods are probed and the returned candidates are verified by
+ * computing the full hamming distance.
+ *
+ * <p>
+ * Opposed to the {@link com.github.kilianB.datastructures.tree.binaryTree.BinaryTree
+ * BinaryTree} whose search effort grows exponentially with the search radius
+ * this index stays feasible for large radii and large collections. For small
+ * radii and few hashes the binary tree is usually the better choice.
+ *
+ * <p>
+ * All hashes added to the index are expected to have the same bit resolution.
+ *
+ * @author Kilian
+ * @since 3.0.1
+ */
+public class MultiIndexHashTable<T> extends AbstractBinaryTree<T> implements Serializable {
+
+	private static final long serialVersionUID = -1783734373409470012L;
+
+	private static final HammingKernel KERNEL = HammingKernel.getInstance();
+
+	/**
+	 * The substring length used if no explicit number of substrings is provided.
+	 */
+	public static final int DEFAULT_SUBSTRING_LENGTH = 16;
+
+	/** The requested number of substrings. 0 to derive it from the hash length */
+	private final int requestedSubstringCount;
+
+	/** Bit resolution of the indexed hashes. -1 if no hash was added yet */
+	private int hashLength = -1;
+
+	/** Number of long words required to store a single hash */
+	private int wordCount;
+
+	/** The bit index each substring starts at */
+	private int[] substringOffset;
+
+	/** The number of bits of each substring */
+	private int[] substringLength;
+
+	/** A hash table for each substring */
+	private SubstringTable[] tables;
+
+	/** The packed hashes. Entry i occupies the words [i * wordCount, (i+1) * wordCount) */
+	private long[] hashes;
+
+	/** The values associated with each entry */
+	private ArrayList<T> values = new ArrayList<>();
+
+	/**
+	 * Create a multi index hash table splitting hashes into substrings of
+	 * {@link #DEFAULT_SUBSTRING_LENGTH} bits.
+	 *
+	 * @param ensureHashConsistency If true adding and matching hashes will check
+	 *                              weather they are generated by the same
+	 *                              algorithms as the first hash added to the tree
+	 */
+	public MultiIndexHashTable(boolean ensureHashConsistency) {
+		this(ensureHashConsistency, 0);
+	}
+
+	/**
+	 * Create a multi index hash table.
+	 *
+	 * <p>
+	 * The number of substrings trades memory and insertion cost against search
+	 * cost. A good starting point is a substring length of roughly
+	 * <code>log2(n)</code> bits with n being the number of hashes in the index.
+	 *
+	 * @param ensureHashConsistency If true adding and matching hashes will check
+	 *                              weather they are generated by the same
+	 *                              algorithms as the first hash added to the tree
+	 * @param substringCount        the number of disjoint substrings each hash is
+	 *                              split into. If 0 the count is chosen based on
+	 *                              the {@link #DEFAULT_SUBSTRING_LENGTH}.
+	 * @throws IllegalArgumentException if the substring count is negative
+	 */
+	public MultiIndexHashTable(boolean ensureHashConsistency, int substringCount) {
+		if (substringCount < 0) {
+			throw new IllegalArgumentException("The substring count may not be negative");
+		}
+		this.ensureHashConsistency = ensureHashConsistency;
+		this.requestedSubstringCount = substringCount;
+	}
+
+	/**
+	 * Insert a value associated with the supplied hash in the index (similar to a
+	 * map). Saved values can be found by invoking
+	 * {@link #getElementsWithinHammingDistance}.
+	 *
+	 * <p>
+	 * If the index is configured to ensureHashConsistency this function will throw
+	 * an unchecked IlleglStateException if the added hash does not comply with the
+	 * first hash added to the index.
+	 *
+	 * @param hash  The hash used to save the value in the index
+	 * @param value The value which will be returned if the hash is matched
+	 * @throws IllegalArgumentException if the bit resolution of the hash does not
+	 *                                  match the previously added hashes
+	 */
+	@Override
+	public void addHash(Hash hash, T value) {
+
+		if (ensureHashConsistency) {
+			if (algoId == 0) {
+				algoId = hash.getAlgorithmId();
+			} else {
+				if (algoId != hash.getAlgorithmId())
+					throw new IllegalStateException("Tried to add an incompatible hash to the binary tree");
+			}
+		}
+
+		if (hashLength == -1) {
+			initSubstrings(hash.getBitResolution());
+		}
+		long[] words = getWords(hash);
+
+		int entryId = hashCount;
+		if ((entryId + 1) * wordCount > hashes.length) {
+			hashes = Arrays.copyOf(hashes, Math.max((entryId + 1) * wordCount, hashes.length * 2));
+		}
+		System.arraycopy(words, 0, hashes, entryId * wordCount, wordCount);
+
+		for (int i = 0; i < tables.length; i++) {
+			tables[i].add(substring(words, 0, i), entryId);
+		}
+		values.add(value);
+		hashCount++;
+	}
+
+	@Override
+	public PriorityQueue<Result<T>> getElementsWithinHammingDistance(Hash hash, int maxDistance) {
+
+		if (ensureHashConsistency && algoId != hash.getAlgorithmId()) {
+			throw new IllegalStateException("Tried to add an incompatible hash to the binary tree");
+		}
+
+		PriorityQueue<Result<T>> result = new PriorityQueue<Result<T>>();
+
+		if (hashCount == 0 || maxDistance < 0) {
+			return result;
+		}
+
+		long[] needle = getWords(hash);
+		int m = tables.length;
+
+		/*
+		 * Generalized pigeonhole principle. With maxDistance = q * m + a at least one
+		 * of the first a + 1 substrings is within distance q or one of the remaining
+		 * substrings is within q - 1.
+		 */
+		int q = maxDistance / m;
+		int a = maxDistance % m;
+		int[] radius = new int[m];
+		for (int i = 0; i < m; i++) {
+			radius[i] = Math.min(i <= a ? q : q - 1, substringLength[i]);
+		}
+
+		for (int i = 0; i < m; i++) {
+			if (radius[i] < 0) {
+				continue;
+			}
+			final int table = i;
+			probe(table, substring(needle, 0, table), 0, radius[table], entryId -> {
+				// Only accept the candidate if no previous table already reported it
+				for (int j = 0; j < table; j++) {
+					if (substringDistance(needle, entryId, j) <= radius[j]) {
+						return;
+					}
+				}
+				int distance = distance(needle, entryId);
+				if (distance <= maxDistance) {
+					result.add(new Result<T>(values.get(entryId), distance, distance / (double) hashLength));
+				}
+			});
+		}
+		return result;
+	}
+
+	/**
+	 * Retrieve the hash that is the most similar to the queried hash. The closest
+	 * hash is the hash with the smallest distance.
+	 *
+	 * <p>
+	 * The search radius of the substrings is increased step by step until no
+	 * closer hash can exist in the index.
+	 *
+	 * @param hash to search the neighbor for.
+	 * @return the closest hash saved in this index.
+	 */
+	@Override
+	public List<Result<T>> getNearestNeighbour(Hash hash) {
+
+		if (ensureHashConsistency && algoId != hash.getAlgorithmId()) {
+			throw new IllegalStateException("Tried to add an incompatible hash to the binary tree");
+		}
+
+		List<Result<T>> result = new ArrayList<>();
+
+		if (hashCount == 0) {
+			return result;
+		}
+
+		long[] needle = getWords(hash);
+		int m = tables.length;
+		int maxRadius = substringLength[0];
+
+		// Keep track of the current best distance
+		int[] best = new int[] { Integer.MAX_VALUE };
+
+		for (int r = 0; r <= maxRadius; r++) {
+			final int curRadius = r;
+			for (int i = 0; i < m; i++) {
+				if (curRadius > substringLength[i]) {
+					continue;
+				}
+				final int table = i;
+				probe(table, substring(needle, 0, table), curRadius, curRadius, entryId -> {
+					// Candidates are visited in (radius, table) order. Skip already seen entries
+					for (int j = 0; j < m; j++) {
+						if (j != table) {
+							int d = substringDistance(needle, entryId, j);
+							if (d < curRadius || (j < table && d == curRadius)) {
+								return;
+							}
+						}
+					}
+					int distance = distance(needle, entryId);
+					if (distance < best[0]) {
+						result.clear();
+						best[0] = distance;
+					}
+					if (distance == best[0]) {
+						result.add(new Result<T>(values.get(entryId), distance, distance / (double) hashLength));
+					}
+				});
+			}
+			// Every hash closer than m * (r + 1) has been found by now
+			if (best[0] < m * (r + 1)) {
+				break;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Retrieve the k hashes most similar to the queried hash.
+	 *
+	 * <p>
+	 * The search radius of the substrings is increased step by step until no hash
+	 * closer than the k-th best hash found so far can exist in the index.
+	 *
+	 * @param hash to search the neighbours for.
+	 * @param k    the maximum number of results
+	 * @return at most k results sorted by distance, closest first
+	 * @throws IllegalArgumentException if k is not positive
+	 */
+	@Override
+	public List<Result<T>> getNearestNeighbours(Hash hash, int k) {
+
+		if (ensureHashConsistency && algoId != hash.getAlgorithmId()) {
+			throw new IllegalStateException("Tried to add an incompatible hash to the binary tree");
+		}
+
+		BoundedResultQueue<T> result = new BoundedResultQueue<>(k);
+
+		if (hashCount == 0) {
+			return result.toSortedList();
+		}
+
+		long[] needle = getWords(hash);
+
+		// Every entry is part of the result. Probing would enumerate all radii
+		if (k >= hashCount) {
+			int[] distances = new int[hashCount];
+			KERNEL.distances(needle, hashes, wordCount, hashCount, distances);
+			for (int entryId = 0; entryId < hashCount; entryId++) {
+				int distance = distances[entryId];
+				result.offer(values.get(entryId), distance, distance / (double) hashLength);
+			}
+			return result.toSortedList();
+		}
+
+		int m = tables.length;
+		int maxRadius = substringLength[0];
+
+		for (int r = 0; r <= maxRadius; r++) {
+			final int curRadius = r;
+			for (int i = 0; i < m; i++) {
+				if (curRadius > substringLength[i]) {
+					continue;
+				}
+				final int table = i;
+				probe(table, substring(needle, 0, table), curRadius, curRadius, entryId -> {
+					// Candidates are visited in (radius, table) order. Skip already seen entries
+					for (int j = 0; j < m; j++) {
+						if (j != table) {
+							int d = substringDistance(needle, entryId, j);
+							if (d < curRadius || (j < table && d == curRadius)) {
+								return;
+							}
+						}
+					}
+					int distance = distance(needle, entryId);
+					if (result.accepts(distance)) {
+						result.offer(values.get(entryId), distance, distance / (double) hashLength);
+					}
+				});
+			}
+			// Every hash closer than m * (r + 1) has been found by now
+			if (result.getBound() <= m * (r + 1)) {
+				break;
+			}
+		}
+		return result.toSortedList();
+	}
+
+	/**
+	 * @return the number of substrings each hash is split into or 0 if no hash
+	 *         was added yet and the count is not known
+	 */
+	public int getSubstringCount() {
+		return tables == null ? requestedSubstringCount : tables.length;
+	}
+
+	/**
+	 * Print all hashes and values stored in the index.
+	 */
+	@Override
+	public void printTree() {
+		for (int i = 0; i < hashCount; i++) {
+			StringBuilder sb = new StringBuilder(hashLength);
+			for (int bit = hashLength - 1; bit >= 0; bit--) {
+				sb.append(((hashes[i * wordCount + (bit >>> 6)] >>> bit) & 1) == 1 ? '1' : '0');
+			}
+			System.out.println("Entry found: " + sb + " " + values.get(i));
+		}
+	}
+
+	/**
+	 * Visit all entries of a table whose substring differs from the key by at
+	 * least minRadius and at most maxRadius bits.
+	 *
+	 * @param table     the index of the substring table
+	 * @param key       the substring of the needle
+	 * @param minRadius the minimal substring distance
+	 * @param maxRadius the maximal substring distance
+	 * @param consumer  consumer accepting the entry ids
+	 */
+	private void probe(int table, long key, int minRadius, int maxRadius, IntConsumer consumer) {
+		SubstringTable t = tables[table];
+		int length = substringLength[table];
+
+		// If the neighbourhood is larger than the table, scanning all keys is cheaper
+		if (neighbourhoodSize(length, maxRadius) > t.getKeyCount()) {
+			for (int slot = 0; slot < t.capacity(); slot++) {
+				int entryId = t.headAt(slot);
+				if (entryId != SubstringTable.EMPTY) {
+					int d = Long.bitCount(t.keyAt(slot) ^ key);
+					if (d >= minRadius && d <= maxRadius) {
+						for (; entryId != SubstringTable.EMPTY; entryId = t.next(entryId)) {
+							consumer.accept(entryId);
+						}
+					}
+				}
+			}
+		} else {
+			enumerate(t, key, length, 0, 0, minRadius, maxRadius, consumer);
+		}
+	}
+
+	/**
+	 * Recursively flip the bits of the key to enumerate every key within the
+	 * radius exactly once.
+	 */
+	private void enumerate(SubstringTable t, long key, int length, int fromBit, int flipped, int minRadius,
+			int maxRadius, IntConsumer consumer) {
+		if (flipped >= minRadius) {
+			for (int entryId = t.head(key); entryId != SubstringTable.EMPTY; entryId = t.next(entryId)) {
+				consumer.accept(entryId);
+			}
+		}
+		if (flipped == maxRadius) {
+			return;
+		}
+		for (int bit = fromBit; bit < length; bit++) {
+			enumerate(t, key ^ (1L << bit), length, bit + 1, flipped + 1, minRadius, maxRadius, consumer);
+		}
+	}
+
+	/**
+	 * Compute the number of keys within the given radius of a substring of the
+	 * given length. The result saturates at Long.MAX_VALUE
+	 */
+	private static long neighbourhoodSize(int length, int radius) {
+		long sum = 0;
+		long binomial = 1;
+		for (int k = 0; k <= radius; k++) {
+			sum += binomial;
+			if (sum < 0 || binomial > Long.MAX_VALUE / (length - k + 1)) {
+				return Long.MAX_VALUE;
+			}
+			binomial = binomial * (length - k) / (k + 1);
+		}
+		return sum;
+	}
+
+	private void initSubstrings(int bitResolution) {
+		int m = requestedSubstringCount;
+		if (m == 0) {
+			m = Math.max(1, (bitResolution + DEFAULT_SUBSTRING_LENGTH - 1) / DEFAULT_SUBSTRING_LENGTH);
+		}
+		m = Math.min(m, Math.max(1, bitResolution));
+
+		int baseLength = bitResolution / m;
+		int remainder = bitResolution % m;
+		if (baseLength + (remainder > 0 ? 1 : 0) > 63) {
+			throw new IllegalArgumentException("Substrings may not be longer than 63 bits. Increase the substring count "
+					+ "for hashes with a bit resolution of " + bitResolution);
+		}
+
+		hashLength = bitResolution;
+		wordCount = Math.max(1, (bitResolution + 63) / 64);
+		substringOffset = new int[m];
+		substringLength = new int[m];
+		tables = new SubstringTable[m];
+		int offset = 0;
+		for (int i = 0; i < m; i++) {
+			// Longer substrings first
+			substringLength[i] = baseLength + (i < remainder ? 1 : 0);
+			substringOffset[i] = offset;
+			offset += substringLength[i];
+			tables[i] = new SubstringTable();
+		}
+		hashes = new long[wordCount * 16];
+	}
+
+	private long[] getWords(Hash hash) {
+		if (hash.getBitResolution() != hashLength) {
+			throw new IllegalArgumentException("Hash length " + hash.getBitResolution()
+					+ " does not match the bit resolution of the index " + hashLength);
+		}
+		long[] words = hash.getPackedHashValue();
+		if (words.length < wordCount) {
+			words = Arrays.copyOf(words, wordCount);
+		}
+		return words;
+	}
+
+	/**
+	 * Extract the substring of a packed hash
+	 *
+	 * @param words  the array holding the hash
+	 * @param base   the index of the first word of the hash
+	 * @param index the substring index
+	 * @return the bits of the substring
+	 */
+	private long substring(long[] words, int base, int index) {
+		int offset = substringOffset[index];
+		int length = substringLength[index];
+		int word = offset >>> 6;
+		int shift = offset & 63;
+		long value = words[base + word] >>> shift;
+		if (shift + length > 64) {
+			value |= words[base + word + 1] << (64 - shift);
+		}
+		return value & ((1L << length) - 1);
+	}
+
+	private int substringDistance(long[] needle, int entryId, int index) {
+		return Long.bitCount(substring(needle, 0, index) ^ substring(hashes, entryId * wordCount, index));
+	}
+
+	private int distance(long[] needle, int entryId) {
+		return KERNEL.distance(needle, 0, hashes, entryId * wordCount, wordCount);
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = super.hashCode();
+		result = prime * result + hashLength;
+		result = prime * result + values.hashCode();
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!super.equals(obj)) {
+			return false;
+		}
+		if (!(obj instanceof MultiIndexHashTable)) {
+			return false;
+		}
+		MultiIndexHashTable<?> other = (MultiIndexHashTable<?>) obj;
+		if (hashLength != other.hashLength || !values.equals(other.values)) {
+			return false;
+		}
+		return hashCount == 0 || Arrays.equals(Arrays.copyOf(hashes, hashCount * wordCount),
+				Arrays.copyOf(other.hashes, hashCount * wordCount));
+	}
+}
@@ -0,0 +1,135 @@
+package com.github.kilianB.datastructures.tree.multiIndex;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Open addressing hash table mapping the value of a hash substring to all
+ * entries sharing this substring. Entries with an identical key are chained
+ * by their entry id, resulting in a memory footprint of a single int per entry
+ * and no object allocation during insertion or lookup.
+ *
+ * @author Kilian
+ * @since 3.0.1
+ */
+class SubstringTable implements Serializable {
+
+	private static final long serialVersionUID = -4215622837474035373L;
+
+	/** Marker for empty slots and the end of a chain */
+	static final int EMPTY = -1;
+
+	/** The distinct substring values */
+	private long[] keys;
+
+	/** The most recently added entry id of each slot */
+	private int[] heads;
+
+	/** The next entry id in the chain. Indexed by entry id */
+	private int[] next;
+
+	/** Number of distinct keys */
+	private int keyCount;
+
+	SubstringTable() {
+		keys = new long[16];
+		heads = new int[16];
+		next = new int[16];
+		Arrays.fill(heads, EMPTY);
+	}
+
+	/**
+	 * Add an entry to the table.
+	 *
+	 * @param key     the substring value of the entry
+	 * @param entryId the id of the entry. Ids are expected to be handed out
+	 *                consecutively
+	 */
+	void add(long key, int entryId) {
+		if (entryId >= next.length) {
+			next = Arrays.copyOf(next, Math.max(entryId + 1, next.length * 2));
+		}
+
+		int slot = findSlot(key);
+		if (heads[slot] == EMPTY) {
+			keys[slot] = key;
+			keyCount++;
+		}
+		next[entryId] = heads[slot];
+		heads[slot] = entryId;
+
+		if (keyCount * 2 > keys.length) {
+			rehash(keys.length * 2);
+		}
+	}
+
+	/**
+	 * @param key the substring value
+	 * @return the first entry id stored with the given key or {@link #EMPTY} if no
+	 *         such entry exists. Subsequent entries can be retrieved by calling
+	 *         {@link #next(int)}
+	 */
+	int head(long key) {
+		return heads[findSlot(key)];
+	}
+
+	/**
+	 * @param entryId the current entry id
+	 * @return the next entry id sharing the same key or {@link #EMPTY}
+	 */
+	int next(int entryId) {
+		return next[entryId];
+	}
+
+	/**
+	 * @return the number of distinct keys present in this table
+	 */
+	int getKeyCount() {
+		return keyCount;
+	}
+
+	/**
+	 * @return the number of slots. Slots can be accessed via {@link #keyAt(int)}
+	 *         and {@link #headAt(int)}
+	 */
+	int capacity() {
+		return keys.length;
+	}
+
+	long keyAt(int slot) {
+		return keys[slot];
+	}
+
+	int headAt(int slot) {
+		return heads[slot];
+	}
+
+	private int findSlot(long key) {
+		int mask = keys.length - 1;
+		int slot = mix(key) & mask;
+		while (heads[slot] != EMPTY && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void rehash(int newCapacity) {
+		long[] oldKeys = keys;
+		int[] oldHeads = heads;
+		keys = new long[newCapacity];
+		heads = new int[newCapacity];
+		Arrays.fill(heads, EMPTY);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldHeads[i] != EMPTY) {
+				int slot = findSlot(oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				heads[slot] = oldHeads[i];
+			}
+		}
+	}
+
+	private static int mix(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+}
@@ -63,6 +63,13 @@ public class FuzzyHash extends Hash {
 	 */
 	protected int[] bits;
 
+	/**
+	 * The majority bit of each position packed into long words. Maintained while
+	 * hashes are merged and subtracted and published as the hash value once
+	 * requested. Lazily recreated from the counters after deserialization.
+	 */
+	private transient long[] majority;
+
 	/**
 	 * //@formatter:off
 	 * The probability of a bit being a 0 or 1
@@ -135,6 +142,7 @@ public class FuzzyHash extends Hash {
 		bits = new int[hashLength];
 		bitWeights = new double[hashLength];
 		bitDistance = new double[hashLength];
+		majority = new long[(hashLength + 63) / 64];
 	}
 
 	/**
@@ -219,14 +227,7 @@ public class FuzzyHash extends Hash {
 		if (algorithmId == Integer.MAX_VALUE) {
 			initHash(hash.getAlgorithmId(), hash.getBitResolution());
 		}
-
-		for (int i = 0; i < getBitResolution(); i++) {
-			bits[i] += hash.getBitUnsafe(i) ? 1 : -1;
-
-			if (bits[i] == -1 || bits[i] == 1 || bits[i] == 0) {
-				dirtyBits = true;
-			}
-		}
+		count(hash.getPackedHashValue(), 1);
 		numHashesAdded++;
 		dirtyWeights = true;
 		dirtyDistance = true;
@@ -254,6 +255,7 @@ public class FuzzyHash extends Hash {
 		for (int i = 0; i < getBitResolution(); i++) {
 			bits[i] += hash.bits[i];
 		}
+		majority = computeMajority();
 
 		if (hash.getAddedCount() > 0) {
 			numHashesAdded += hash.getAddedCount();
@@ -342,17 +344,38 @@ public class FuzzyHash extends Hash {
 		if (algorithmId == Integer.MAX_VALUE) {
 			initHash(hash.getAlgorithmId(), hash.getBitResolution());
 		}
+		count(hash.getPackedHashValue(), -1);
+		numHashesAdded--;
+		dirtyWeights = true;
+		dirtyDistance = true;
+	}
 
-		for (int i = 0; i < getBitResolution(); i++) {
-			bits[i] -= hash.getBitUnsafe(i) ? 1 : -1;
-
-			if (bits[i] == -1 || bits[i] == 1 || bits[i] == 0) {
+	/**
+	 * Add or remove the bits of a hash to the counters one word at a time and
+	 * update the majority bits of the word.
+	 * 
+	 * @param words the packed hash value of the hash
+	 * @param sign  1 if the hash is merged, -1 if it is subtracted
+	 */
+	private void count(long[] words, int sign) {
+		long[] majority = getMajority();
+		for (int w = 0; w < majority.length; w++) {
+			long word = w < words.length ? words[w] : 0;
+			int offset = w << 6;
+			int end = Math.min(64, hashLength - offset);
+			long majorityWord = 0;
+			for (int j = 0; j < end; j++) {
+				// +1 for a 1 bit, -1 for a 0 bit
+				int count = bits[offset + j] + sign * ((((int) (word >>> j)) & 1) * 2 - 1);
+				bits[offset + j] = count;
+				// The sign bit of -count is set if count > 0
+				majorityWord |= ((long) (-count >>> 31)) << j;
+			}
+			if (majorityWord != majority[w]) {
+				majority[w] = majorityWord;
 				dirtyBits = true;
 			}
 		}
-		numHashesAdded--;
-		dirtyWeights = true;
-		dirtyDistance = true;
 	}
 
 	/**
@@ -376,14 +399,11 @@ public class FuzzyHash extends Hash {
 
 		ensureUpToDateDistance();
 
+		long[] words = h.getPackedHashValue();
 		double hammingDistance = 0;
-		for (int bit = hashLength - 1; bit >= 0; bit--) {
-
-			if (h.getBitUnsafe(bit)) {
-				hammingDistance += bitDistance[bit];
-			} else {
-				hammingDistance += 1 - bitDistance[bit];
-			}
+		for (int bit = 0; bit < hashLength; bit++) {
+			double distance = bitDistance[bit];
+			hammingDistance += isSet(words, bit) ? distance : 1 - distance;
 		}
 		return hammingDistance / hashLength;
 	}
@@ -441,18 +461,20 @@ public class FuzzyHash extends Hash {
 
 		ensureUpToDateDistance();
 
+		long[] words = h.getPackedHashValue();
 		double hammingDistance = 0;
-		for (int bit = hashLength - 1; bit >= 0; bit--) {
-
-			if (h.getBitUnsafe(bit)) {
-				hammingDistance += bitDistance[bit] * bitDistance[bit];
-			} else {
-				hammingDistance += (1 - bitDistance[bit]) * (1 - bitDistance[bit]);
-			}
+		for (int bit = 0; bit < hashLength; bit++) {
+			double distance = isSet(words, bit) ? bitDistance[bit] : 1 - bitDistance[bit];
+			hammingDistance += distance * distance;
 		}
 		return hammingDistance / hashLength;
 	}
 
+	private static boolean isSet(long[] words, int bit) {
+		int wordIndex = bit >>> 6;
+		return wordIndex < words.length && (words[wordIndex] & (1L << bit)) != 0;
+	}
+
 	/**
 	 * Calculate the squared normalized weighted distance between two fuzzy hashes
 	 * 
@@ -575,8 +597,26 @@ public class FuzzyHash extends Hash {
 		computeDistance();
 	}
 
+	/**
+	 * Publish the majority bits as hash value. The words are copied as previously
+	 * returned hash values must not change.
+	 */
 	private void updateHash() {
-		hashValue = BigInteger.ZERO;
+		// The big integer is lazily recreated from the packed words if requested
+		packedHashValue = getMajority().clone();
+		hashValue = null;
+		dirtyBits = false;
+	}
+
+	private long[] getMajority() {
+		if (majority == null) {
+			majority = computeMajority();
+		}
+		return majority;
+	}
+
+	private long[] computeMajority() {
+		long[] words = new long[(hashLength + 63) / 64];
 		for (int i = hashLength - 1; i >= 0; i--) {
 			// XXX we only have a binary representation. A bit weight of 0 usually means
 			// that
@@ -584,12 +624,10 @@ public class FuzzyHash extends Hash {
 			// hamming distance
 			// and normalized hamming distance will be skewed for sparsely populated hashes
 			if (bits[i] > 0) {
-				hashValue = hashValue.shiftLeft(1).add(BigInteger.ONE);
-			} else {
-				hashValue = hashValue.shiftLeft(1);
+				words[i >>> 6] |= 1L << i;
 			}
 		}
-		dirtyBits = false;
+		return words;
 	}
 
 	/**
@@ -683,25 +721,30 @@ public class FuzzyHash extends Hash {
 	 */
 	public Hash toUncertaintyHash(Hash source, double certainty) {
 
-		ensureUpToDateWeights();
-
-		int bitCount = getBitResolution();
-		BigInteger hashValue = BigInteger.ZERO;
+		boolean[] uncertain = getUncertaintyMask(certainty);
 
 		int newBitCount = 0;
 		int hashCode = algorithmId;
-		for (int i = 0; i < bitCount; i++) {
-			if (!(bitWeights[i] > certainty || bitWeights[i] < -certainty)) {
-				if (source.getBitUnsafe(i)) {
-					hashValue = hashValue.shiftLeft(1).add(BigInteger.ONE);
-				} else {
-					hashValue = hashValue.shiftLeft(1);
-				}
+		for (int i = 0; i < uncertain.length; i++) {
+			if (uncertain[i]) {
 				newBitCount++;
 				hashCode = 31 * hashCode + i;
 			}
 		}
-		return new Hash(hashValue, newBitCount, 31 * hashCode + newBitCount);
+
+		// The first uncertain bit is the most significant bit of the new hash
+		long[] sourceWords = source.getPackedHashValue();
+		long[] words = new long[(newBitCount + 63) / 64];
+		int bit = newBitCount;
+		for (int i = 0; i < uncertain.length; i++) {
+			if (uncertain[i]) {
+				bit--;
+				if (isSet(sourceWords, i)) {
+					words[bit >>> 6] |= 1L << bit;
+				}
+			}
+		}
+		return new Hash(words, newBitCount, 31 * hashCode + newBitCount);
 	}
 
 	/**
@@ -745,6 +788,12 @@ public class FuzzyHash extends Hash {
 		return super.getHashValue();
 	}
 
+	@Override
+	public long[] getPackedHashValue() {
+		ensureUpToDateHash();
+		return super.getPackedHashValue();
+	}
+
 	@Override
 	public boolean getBitUnsafe(int position) {
 		return bits[position] > 0;
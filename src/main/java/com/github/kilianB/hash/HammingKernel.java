@@ -0,0 +1,190 @@
+package com.github.kilianB.hash;
+
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Computes the hamming distance of hashes packed into long words as returned by
+ * {@link Hash#getPackedHashValue()}.
+ *
+ * <p>
+ * The default implementation xors the words and counts the bits using
+ * {@link Long#bitCount(long)}. Faster implementations, e.g. utilizing the
+ * vector api of newer jdks, can be plugged in by placing them on the class path
+ * and registering them as a {@link ServiceLoader service} of this class. The
+ * first implementation which can be loaded is returned by
+ * {@link #getInstance()}. If no implementation is found or the implementation
+ * can not be used on the running jvm the scalar kernel is used.
+ *
+ * <p>
+ * Multiple hashes can be compared against a single needle by packing them
+ * into one contiguous array. Hash <code>i</code> occupies the words
+ * <code>[i * wordCount, (i+1) * wordCount)</code>.
+ *
+ * @author Kilian
+ * @since 3.0.1
+ */
+public abstract class HammingKernel {
+
+	private static final Logger LOGGER = Logger.getLogger(HammingKernel.class.getSimpleName());
+
+	private static final HammingKernel SCALAR = new ScalarHammingKernel();
+
+	/**
+	 * @return the fastest kernel available on this jvm
+	 */
+	public static HammingKernel getInstance() {
+		return Holder.INSTANCE;
+	}
+
+	/**
+	 * @return the kernel counting bits one word at a time. Available on all jvms
+	 */
+	public static HammingKernel scalar() {
+		return SCALAR;
+	}
+
+	private static HammingKernel load() {
+		try {
+			Iterator<HammingKernel> kernels = ServiceLoader.load(HammingKernel.class).iterator();
+			while (kernels.hasNext()) {
+				try {
+					return kernels.next();
+				} catch (ServiceConfigurationError | LinkageError e) {
+					// e.g. the vector module was not added to the jvm
+					LOGGER.log(Level.FINE, "Hamming kernel not available", e);
+				}
+			}
+		} catch (ServiceConfigurationError e) {
+			LOGGER.log(Level.FINE, "Hamming kernel not available", e);
+		}
+		return SCALAR;
+	}
+
+	/**
+	 * Calculate the hamming distance between two hashes.
+	 *
+	 * @param words     the array holding the first hash
+	 * @param offset    the index of the first word of the first hash
+	 * @param words1    the array holding the second hash
+	 * @param offset1   the index of the first word of the second hash
+	 * @param wordCount the number of words of each hash
+	 * @return the number of bits which differ between the hashes
+	 */
+	public abstract int distance(long[] words, int offset, long[] words1, int offset1, int wordCount);
+
+	/**
+	 * Calculate the hamming distance between two hashes of equal length.
+	 *
+	 * @param words  the packed hash value of the first hash
+	 * @param words1 the packed hash value of the second hash
+	 * @return the number of bits which differ between the hashes
+	 * @throws IllegalArgumentException if the arrays differ in length
+	 */
+	public int distance(long[] words, long[] words1) {
+		if (words.length != words1.length) {
+			throw new IllegalArgumentException(
+					"Hashes of different length. " + words.length + " vs " + words1.length + " words");
+		}
+		return distance(words, 0, words1, 0, words.length);
+	}
+
+	/**
+	 * Calculate the hamming distance between the needle and each hash packed into
+	 * the haystack.
+	 *
+	 * @param needle    the hash to compare. Only the first wordCount words are
+	 *                  used
+	 * @param haystack  the contiguously packed hashes
+	 * @param wordCount the number of words of each hash
+	 * @param count     the number of hashes to compare starting at the first hash
+	 *                  of the haystack
+	 * @param distances the array the distances are written to. The distance to
+	 *                  hash <code>i</code> is stored at index <code>i</code>
+	 * @throws IllegalArgumentException if the haystack holds less than count
+	 *                                  hashes or the distances array is too small
+	 */
+	public void distances(long[] needle, long[] haystack, int wordCount, int count, int[] distances) {
+		checkBounds(needle, haystack, wordCount, count, distances);
+		distancesUnchecked(needle, haystack, wordCount, count, distances);
+	}
+
+	/**
+	 * Implementation of {@link #distances(long[], long[], int, int, int[])}. The
+	 * arguments are already validated.
+	 *
+	 * @param needle    the hash to compare
+	 * @param haystack  the contiguously packed hashes
+	 * @param wordCount the number of words of each hash
+	 * @param count     the number of hashes to compare
+	 * @param distances the array the distances are written to
+	 */
+	protected abstract void distancesUnchecked(long[] needle, long[] haystack, int wordCount, int count,
+			int[] distances);
+
+	/**
+	 * @return true if the kernel processes multiple words per instruction
+	 */
+	public boolean isVectorized() {
+		return false;
+	}
+
+	private static void checkBounds(long[] needle, long[] haystack, int wordCount, int count, int[] distances) {
+		if (wordCount <= 0 || needle.length < wordCount) {
+			throw new IllegalArgumentException("Needle holds less than " + wordCount + " words");
+		}
+		if (count < 0 || (long) count * wordCount > haystack.length) {
+			throw new IllegalArgumentException("Haystack holds less than " + count + " hashes");
+		}
+		if (distances.length < count) {
+			throw new IllegalArgumentException("Distance array can not hold " + count + " distances");
+		}
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName();
+	}
+
+	/**
+	 * Lazily loads the kernel. Initializing a kernel implementation initializes
+	 * this class first, which must not instantiate the implementation again.
+	 */
+	private static class Holder {
+		private static final HammingKernel INSTANCE = load();
+	}
+
+	/**
+	 * Xor the words and count the bits using {@link Long#bitCount(long)} which is
+	 * an intrinsic on most platforms.
+	 */
+	static class ScalarHammingKernel extends HammingKernel {
+
+		@Override
+		public int distance(long[] words, int offset, long[] words1, int offset1, int wordCount) {
+			int distance = 0;
+			for (int i = 0; i < wordCount; i++) {
+				distance += Long.bitCount(words[offset + i] ^ words1[offset1 + i]);
+			}
+			return distance;
+		}
+
+		@Override
+		protected void distancesUnchecked(long[] needle, long[] haystack, int wordCount, int count,
+				int[] distances) {
+			if (wordCount == 1) {
+				long word = needle[0];
+				for (int i = 0; i < count; i++) {
+					distances[i] = Long.bitCount(word ^ haystack[i]);
+				}
+			} else {
+				for (int i = 0; i < count; i++) {
+					distances[i] = distance(needle, 0, haystack, i * wordCount, wordCount);
+				}
+			}
+		}
+	}
+}
@@ -9,6 +9,7 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.math.BigInteger;
+import java.util.Objects;
 
 import com.github.kilianB.Require;
 import com.github.kilianB.StringUtil;
@@ -36,6 +37,14 @@ public class Hash implements Serializable {
 
 	private static final long serialVersionUID = 3045682506632674223L;
 
+	private static final HammingKernel KERNEL = HammingKernel.getInstance();
+
+	/**
+	 * Hashes spanning at least this many words are compared using the
+	 * {@link HammingKernel}. Shorter hashes do not profit from vectorization.
+	 */
+	private static final int KERNEL_MIN_WORDS = 4;
+
 	/**
 	 * Unique identifier of the algorithm and settings used to create the hash
 	 */
@@ -52,6 +61,16 @@ public class Hash implements Serializable {
 	 */
 	protected BigInteger hashValue;
 
+	/**
+	 * Packed representation of the hash value. Bit n of the hash is stored in
+	 * word <code>n / 64</code> at position <code>n % 64</code>. Either this array
+	 * or {@link #hashValue} is populated at construction time, the other one is
+	 * lazily materialized once it's requested.
+	 * 
+	 * @since 3.0.1
+	 */
+	protected transient volatile long[] packedHashValue;
+
 	/**
 	 * How many bits does this hash represent. Necessary due to suffix 0 bits
 	 * beginning dropped.
@@ -76,6 +95,29 @@ public class Hash implements Serializable {
 		this.hashLength = hashLength;
 	}
 
+	/**
+	 * Creates a Hash object backed by packed long words. Opposed to the big integer
+	 * backed hash distance computations between packed hashes do not allocate any
+	 * objects. The big integer representation returned by {@link #getHashValue()}
+	 * is lazily created the first time it is requested.
+	 * 
+	 * <p>
+	 * The array is not copied and must not be altered after the hash was created.
+	 * 
+	 * @param packedHashValue The hash value describing the image. The bit at
+	 *                        position n is stored in word <code>n / 64</code> at
+	 *                        the bit index <code>n % 64</code>.
+	 * @param hashLength      the actual bit resolution of the hash.
+	 * @param algorithmId     Unique identifier of the algorithm used to create this
+	 *                        hash
+	 * @since 3.0.1
+	 */
+	public Hash(long[] packedHashValue, int hashLength, int algorithmId) {
+		this.packedHashValue = Objects.requireNonNull(packedHashValue);
+		this.algorithmId = algorithmId;
+		this.hashLength = hashLength;
+	}
+
 	/**
 	 * Calculate the hamming distance of 2 hash values. The distance of two hashes
 	 * is the difference of the individual bits found in the hash.
@@ -130,7 +172,7 @@ public class Hash implements Serializable {
 	 * @see #hammingDistance(Hash)
 	 */
 	public int hammingDistanceFast(Hash h) {
-		return this.hashValue.xor(h.getHashValue()).bitCount();
+		return hammingDistanceFast(getPackedHashValue(), h.getPackedHashValue());
 	}
 
 	/**
@@ -157,7 +199,38 @@ public class Hash implements Serializable {
 	 * @see #hammingDistance(Hash)
 	 */
 	public int hammingDistanceFast(BigInteger bInt) {
-		return this.hashValue.xor(bInt).bitCount();
+		return getHashValue().xor(bInt).bitCount();
+	}
+
+	/**
+	 * Calculate the hamming distance of 2 packed hash values as returned by
+	 * {@link #getPackedHashValue()}. This method does not allocate any objects.
+	 * 
+	 * <p>
+	 * If the arrays are of different length the missing words of the shorter array
+	 * are treated as 0.
+	 * 
+	 * @param words  the packed hash value of the first hash
+	 * @param words1 the packed hash value of the second hash
+	 * @return the number of bits which differ between the two values
+	 * @since 3.0.1
+	 */
+	public static int hammingDistanceFast(long[] words, long[] words1) {
+		if (words.length == words1.length && words.length >= KERNEL_MIN_WORDS) {
+			return KERNEL.distance(words, 0, words1, 0, words.length);
+		}
+		int common = Math.min(words.length, words1.length);
+		int distance = 0;
+		for (int i = 0; i < common; i++) {
+			distance += Long.bitCount(words[i] ^ words1[i]);
+		}
+		for (int i = common; i < words.length; i++) {
+			distance += Long.bitCount(words[i]);
+		}
+		for (int i = common; i < words1.length; i++) {
+			distance += Long.bitCount(words1[i]);
+		}
+		return distance;
 	}
 
 	/**
@@ -239,7 +312,15 @@ public class Hash implements Serializable {
 	 * @since 2.0.0
 	 */
 	public boolean getBitUnsafe(int position) {
-		return hashValue.testBit(position);
+		if (hashValue != null) {
+			return hashValue.testBit(position);
+		}
+		if (position < 0) {
+			throw new ArithmeticException("Negative bit address");
+		}
+		long[] words = packedHashValue;
+		int wordIndex = position >>> 6;
+		return wordIndex < words.length && (words[wordIndex] & (1L << position)) != 0;
 	}
 
 	/**
@@ -256,9 +337,68 @@ public class Hash implements Serializable {
 	 * @return the base BigInteger holding the hash value
 	 */
 	public BigInteger getHashValue() {
+		if (hashValue == null) {
+			hashValue = toBigInteger(packedHashValue);
+		}
 		return hashValue;
 	}
 
+	/**
+	 * Return the hash value packed into long words. Bit n of the hash is stored in
+	 * word <code>n / 64</code> at the bit index <code>n % 64</code>. The array
+	 * contains at least as many words as required to hold
+	 * {@link #getBitResolution()} bits.
+	 * 
+	 * <p>
+	 * The returned array is the internal representation of the hash and is cached
+	 * after the first call. It must not be modified.
+	 * 
+	 * @return the packed hash value
+	 * @since 3.0.1
+	 */
+	public long[] getPackedHashValue() {
+		long[] words = packedHashValue;
+		if (words == null) {
+			words = toLongArray(hashValue, hashLength);
+			packedHashValue = words;
+		}
+		return words;
+	}
+
+	/**
+	 * Pack a big integer into long words with the least significant word first.
+	 * 
+	 * @param value      the non negative value to pack
+	 * @param hashLength the minimum number of bits the packed array has to hold
+	 * @return the packed representation
+	 */
+	private static long[] toLongArray(BigInteger value, int hashLength) {
+		int bits = Math.max(hashLength, value.bitLength());
+		long[] words = new long[(bits + 63) / 64];
+		byte[] bytes = value.toByteArray();
+		// Big endian. The leading sign byte is 0 for positive values
+		int byteCount = Math.min(bytes.length, words.length * 8);
+		for (int i = 0; i < byteCount; i++) {
+			words[i >>> 3] |= (bytes[bytes.length - 1 - i] & 0xFFL) << ((i & 7) << 3);
+		}
+		return words;
+	}
+
+	/**
+	 * Convert packed long words back into a non negative big integer.
+	 * 
+	 * @param words the packed representation with the least significant word
+	 *              first
+	 * @return the big integer
+	 */
+	private static BigInteger toBigInteger(long[] words) {
+		byte[] bytes = new byte[words.length * 8];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[bytes.length - 1 - i] = (byte) (words[i >>> 3] >>> ((i & 7) << 3));
+		}
+		return new BigInteger(1, bytes);
+	}
+
 	/**
 	 * Creates a visual representation of the hash mapping the hash values to the
 	 * section of the rescaled image used to generate the hash assuming default bit
@@ -280,7 +420,7 @@ public class Hash implements Serializable {
 		int[] colorIndex = new int[hashLength];
 
 		for (int i = 0; i < hashLength; i++) {
-			colorIndex[i] = hashValue.testBit(i) ? 1 : 0;
+			colorIndex[i] = getBitUnsafe(i) ? 1 : 0;
 		}
 		return toImage(colorIndex, colorArr, blockSize);
 	}
@@ -404,7 +544,7 @@ public class Hash implements Serializable {
 	 *         byte.
 	 */
 	public byte[] toByteArray() {
-		byte[] bArray = hashValue.toByteArray();
+		byte[] bArray = getHashValue().toByteArray();
 
 		if (bArray[0] != 0) {
 			return bArray;
@@ -416,8 +556,15 @@ public class Hash implements Serializable {
 
 	}
 
+	// Serialization. Make sure the big integer is present since it's the
+	// persisted representation
+	private void writeObject(ObjectOutputStream oos) throws IOException {
+		getHashValue();
+		oos.defaultWriteObject();
+	}
+
 	public String toString() {
-		return "Hash: " + StringUtil.fillStringBeginning("0", hashLength, hashValue.toString(2)) + " [algoId: "
+		return "Hash: " + StringUtil.fillStringBeginning("0", hashLength, getHashValue().toString(2)) + " [algoId: "
 				+ algorithmId + "]";
 	}
 
@@ -426,7 +573,15 @@ public class Hash implements Serializable {
 		final int prime = 31;
 		int result = 1;
 		result = prime * result + algorithmId;
-		result = prime * result + ((hashValue == null) ? 0 : hashValue.hashCode());
+		// Trailing zero words are ignored to stay consistent with equals
+		long[] words = getPackedHashValue();
+		int length = words.length;
+		while (length > 0 && words[length - 1] == 0) {
+			length--;
+		}
+		for (int i = 0; i < length; i++) {
+			result = prime * result + Long.hashCode(words[i]);
+		}
 		return result;
 	}
 
@@ -441,12 +596,8 @@ public class Hash implements Serializable {
 		Hash other = (Hash) obj;
 		if (algorithmId != other.getAlgorithmId())
 			return false;
-		if (hashValue == null) {
-			if (other.hashValue != null)
-				return false;
-		} else if (!hashValue.equals(other.getHashValue()))
-			return false;
-		return true;
+		// Both hashes contain the same value if no bits differ
+		return hammingDistanceFast(getPackedHashValue(), other.getPackedHashValue()) == 0;
 	}
 
 }
@@ -50,9 +50,15 @@ public class AverageColorHash extends AverageHash {
 	@Override
 	protected BigInteger hash(BufferedImage image, HashBuilder hash) {
 		FastPixel fp = FastPixel.create(ImageUtil.getScaledInstance(image, width, height));
+		return hashGrayscale(fp.getAverageGrayscale(), hash);
+	}
 
-		int[][] grayscale = fp.getAverageGrayscale();
+	@Override
+	protected BigInteger hash(PreparedImage image, HashBuilder hash) {
+		return hashGrayscale(image.getFastPixel(width, height).getAverageGrayscale(), hash);
+	}
 
+	private BigInteger hashGrayscale(int[][] grayscale, HashBuilder hash) {
 		// Calculate the average color of the entire image
 		double avgPixelValue = ArrayUtil.average(grayscale);
 
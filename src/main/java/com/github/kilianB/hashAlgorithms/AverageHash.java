@@ -62,9 +62,25 @@ public class AverageHash extends HashingAlgorithm {
 	@Override
 	protected BigInteger hash(BufferedImage image, HashBuilder hash) {
 		FastPixel fp = FastPixel.create(ImageUtil.getScaledInstance(image, width, height));
+		return hash(fp.getLuma(), hash);
+	}
 
-		int[][] luminocity = fp.getLuma();
+	@Override
+	protected BigInteger hash(PreparedImage image, HashBuilder hash) {
+		return hash(image.getLuma(width, height), hash);
+	}
 
+	/**
+	 * Compute the hash from the luma values of the rescaled image.
+	 * 
+	 * @param luminocity the luma values of the image rescaled to width x height.
+	 *                   The array may be shared and must not be altered.
+	 * @param hash       the hash builder used to construct the hash
+	 * @return the hash encoded as a big integer or null if the hash builder holds
+	 *         the hash
+	 * @since 3.0.1
+	 */
+	protected BigInteger hash(int[][] luminocity, HashBuilder hash) {
 		// Calculate the average color of the entire image
 		double avgPixelValue = ArrayUtil.average(luminocity);
 
@@ -82,7 +98,8 @@ public class AverageHash extends HashingAlgorithm {
 				}
 			}
 		}
-		return hash.toBigInteger();
+		// The hash is packed by the builder
+		return null;
 	}
 	
 	protected BigInteger computeHash(HashBuilder hash, int[][] pixelValue, double compareAgainst) {
@@ -95,7 +112,8 @@ public class AverageHash extends HashingAlgorithm {
 				}
 			}
 		}
-		return hash.toBigInteger();
+		// The hash is packed by the builder
+		return null;
 	}
 
 	/**
@@ -1,6 +1,5 @@
 package com.github.kilianB.hashAlgorithms;
 
-import java.awt.image.BufferedImage;
 import java.io.Serializable;
 import java.math.BigInteger;
 import java.util.ArrayList;
@@ -10,8 +9,6 @@ import java.util.Objects;
 
 import com.github.kilianB.ArrayUtil;
 import com.github.kilianB.Require;
-import com.github.kilianB.graphics.FastPixel;
-import com.github.kilianB.graphics.ImageUtil;
 import com.github.kilianB.hashAlgorithms.filter.Kernel;
 
 /**
@@ -96,11 +93,7 @@ public class AverageKernelHash extends AverageHash implements Serializable {
 	}
 
 	@Override
-	protected BigInteger hash(BufferedImage image, HashBuilder hash) {
-
-		FastPixel fp = FastPixel.create(ImageUtil.getScaledInstance(image, width, height));
-
-		int[][] luminocity = fp.getLuma();
+	protected BigInteger hash(int[][] luminocity, HashBuilder hash) {
 
 		// Calculate the average color of the entire image
 
@@ -0,0 +1,127 @@
+package com.github.kilianB.hashAlgorithms;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Lazily submits the items of a batch to an executor and hands out the results.
+ * Each item passes the decode, filter and hash stage as individual tasks
+ * allowing the stages of different items to overlap.
+ * <p>
+ * New items are only submitted while less than <code>maxInFlight</code> items
+ * are pending. Items are pending from the moment they are submitted until
+ * their result is returned by {@link #next()}, bounding the memory consumed by
+ * decoded images even if the consumer is slow.
+ *
+ * @author Kilian
+ * @since 3.0.1
+ */
+class BatchHashIterator<T> implements Iterator<HashResult<T>> {
+
+	private final HashingAlgorithm hasher;
+	private final Iterator<? extends T> sources;
+	private final ImageLoader<? super T> loader;
+	private final Executor executor;
+	private final int maxInFlight;
+	private final boolean preserveOrder;
+
+	/** Pending items in submission order. Used if the order is preserved */
+	private final ArrayDeque<CompletableFuture<HashResult<T>>> inFlight = new ArrayDeque<>();
+
+	/** Items in completion order. Used if the order is not preserved */
+	private final LinkedBlockingQueue<HashResult<T>> completed = new LinkedBlockingQueue<>();
+
+	/** Number of submitted items whose result was not yet returned */
+	private int pending;
+
+	/** The index of the next item */
+	private int index;
+
+	BatchHashIterator(HashingAlgorithm hasher, Iterator<? extends T> sources, ImageLoader<? super T> loader,
+			Executor executor, int maxInFlight, boolean preserveOrder) {
+		if (maxInFlight <= 0) {
+			throw new IllegalArgumentException("At least 1 item has to be allowed in flight");
+		}
+		this.hasher = hasher;
+		this.sources = sources;
+		this.loader = loader;
+		this.executor = executor;
+		this.maxInFlight = maxInFlight;
+		this.preserveOrder = preserveOrder;
+	}
+
+	@Override
+	public boolean hasNext() {
+		submit();
+		return pending > 0;
+	}
+
+	@Override
+	public HashResult<T> next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		pending--;
+		if (preserveOrder) {
+			return inFlight.poll().join();
+		}
+		try {
+			return completed.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for hashes", e);
+		}
+	}
+
+	/**
+	 * Submit items until the window is full or no more items are available
+	 */
+	private void submit() {
+		while (pending < maxInFlight && sources.hasNext()) {
+			T source = sources.next();
+			int itemIndex = index++;
+
+			CompletableFuture<HashResult<T>> future;
+			try {
+				future = CompletableFuture.supplyAsync(() -> decode(source), executor)
+						.thenApplyAsync(hasher::applyFilters, executor)
+						.thenApplyAsync(hasher::hashFiltered, executor)
+						.thenApply(hash -> new HashResult<T>(source, itemIndex, hash, null))
+						.exceptionally(t -> new HashResult<T>(source, itemIndex, null, unwrap(t)));
+			} catch (RuntimeException e) {
+				// e.g. the executor rejected the task
+				future = CompletableFuture.completedFuture(new HashResult<T>(source, itemIndex, null, e));
+			}
+
+			if (preserveOrder) {
+				inFlight.add(future);
+			} else {
+				future.thenAccept(completed::add);
+			}
+			pending++;
+		}
+	}
+
+	private BufferedImage decode(T source) {
+		try {
+			BufferedImage image = loader.load(source);
+			if (image == null) {
+				throw new IOException("No suitable image reader found for " + source);
+			}
+			return image;
+		} catch (IOException e) {
+			throw new CompletionException(e);
+		}
+	}
+
+	private static Throwable unwrap(Throwable t) {
+		return t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+	}
+}
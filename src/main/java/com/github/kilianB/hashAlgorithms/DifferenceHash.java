@@ -95,9 +95,15 @@ public class DifferenceHash extends HashingAlgorithm {
 	@Override
 	protected BigInteger hash(BufferedImage image, HashBuilder hash) {
 		FastPixel fp = FastPixel.create(ImageUtil.getScaledInstance(image, width, height));
-		// Use data buffer for faster access
+		return hash(fp.getLuma(), hash);
+	}
+
+	@Override
+	protected BigInteger hash(PreparedImage image, HashBuilder hash) {
+		return hash(image.getLuma(width, height), hash);
+	}
 
-		int[][] lum = fp.getLuma();
+	private BigInteger hash(int[][] lum, HashBuilder hash) {
 
 		// Calculate the left to right gradient
 		for (int x = 1; x < width; x++) {
@@ -138,7 +144,8 @@ public class DifferenceHash extends HashingAlgorithm {
 				}
 			}
 		}
-		return hash.toBigInteger();
+		// The hash is packed by the builder
+		return null;
 	}
 
 	/**
@@ -201,7 +208,7 @@ public class DifferenceHash extends HashingAlgorithm {
 		private int height;
 
 		public DHash(Hash h, Precision precision, int width, int height) {
-			super(h.getHashValue(), h.getBitResolution(), h.getAlgorithmId());
+			super(h.getPackedHashValue(), h.getBitResolution(), h.getAlgorithmId());
 			this.precision = precision;
 			this.width = width;
 			this.height = height;
@@ -213,7 +220,7 @@ public class DifferenceHash extends HashingAlgorithm {
 			int[] colorIndex = new int[hashLength];
 
 			for (int i = 0; i < hashLength; i++) {
-				colorIndex[i] = hashValue.testBit(i) ? 1 : 0;
+				colorIndex[i] = getBitUnsafe(i) ? 1 : 0;
 			}
 			return toImage(colorIndex, colorArr, blockSize);
 		}
@@ -1,24 +1,28 @@
 package com.github.kilianB.hashAlgorithms;
 
 import java.math.BigInteger;
+import java.util.Arrays;
 
 /**
- * Helper class to quickly create a bitwise byte array representation which can
- * be converted to a big integer object.
- * 
+ * Helper class to quickly create a bitwise representation of a hash which can
+ * be converted to a big integer object or directly be packed into long words.
+ *
  * <p>
  * To maintain the capability to decode the created hash value back to an image
- * the order of the byte array is of utmost importance. Due to hashes ability to
- * contain non 8 compliment bit values and {@link java.math.BigInteger}
- * stripping leading zero bits the partial bit value has to be present at the 0
- * slot.
+ * the order of the bits is of utmost importance. The n-th bit added to the
+ * builder is the bit at position n of the hash. Due to hashes ability to
+ * contain non 64 compliment bit values and {@link java.math.BigInteger}
+ * stripping leading zero bits the partial word is the most significant one.
  * <p>
- * The hashbuilder systematically grows the base byte[] array as needed but
- * performs the best if the correct amount of bits are known beforehand.
- * 
+ * The bits are written into long words as used by
+ * {@link com.github.kilianB.hash.Hash#getPackedHashValue()}. The hashbuilder
+ * systematically grows the words as needed but performs the best if the correct
+ * amount of bits are known beforehand. After a hash was created the builder can
+ * be {@link #reset()} and reused without allocating new memory.
+ *
  * <p>
  * In other terms this class performs the same operation as
- * 
+ *
  * <pre>
  * <code>
  * 	StringBuilder sb = new StringBuilder();
@@ -26,31 +30,21 @@ import java.math.BigInteger;
  * 	BigInteger b = new BigInteger(sb.toString(),2);
  * </code>
  * </pre>
- * 
+ *
  * But scales much much better for higher hash values. The order of the bits are
  * flipped using the hashbuilder approach.
- * 
+ *
  * @author Kilian
- * 
- *         TODO we don't really need a Big Integer at all. We can use a byte
- *         array.
  * @since 3.0.0
  */
 public class HashBuilder {
 
-	/**
-	 * Mask used to add
-	 */
-	private static final byte[] MASK = { 1, 1 << 1, 1 << 2, 1 << 3, 1 << 4, 1 << 5, 1 << 6, (byte) (1 << 7) };
-
-	private byte[] bytes;
-	private int arrayIndex = 0;
-	private int bitIndex = 0;
+	private long[] words;
 	protected int length;
 
 	/**
 	 * Create a hashbuilder.
-	 * 
+	 *
 	 * @param bits the number of bits the hash will have [8 - Integer.MAX_VALUE]. If
 	 *             the builder requires more space than specified copy operations
 	 *             will take place to grow the builder automatically.
@@ -60,25 +54,14 @@ public class HashBuilder {
 	 *             penalty
 	 */
 	public HashBuilder(int bits) {
-		bytes = new byte[(int) Math.ceil(bits / 8d)];
-		arrayIndex = bytes.length - 1;
+		words = new long[Math.max(1, wordCount(bits))];
 	}
 
 	/**
 	 * Add a zero bit to the hash
 	 */
 	public void prependZero() {
-		if (bitIndex == 8) {
-			bitIndex = 0;
-			arrayIndex--;
-			if (arrayIndex == -1) {
-				byte[] temp = new byte[bytes.length + 1];
-				System.arraycopy(bytes, 0, temp, 1, bytes.length);
-				bytes = temp;
-				arrayIndex = 0;
-			}
-		}
-		bitIndex++;
+		ensureCapacity();
 		length++;
 	}
 
@@ -86,26 +69,79 @@ public class HashBuilder {
 	 * Add a one bit to the hash
 	 */
 	public void prependOne() {
-		if (bitIndex == 8) {
-			bitIndex = 0;
-			arrayIndex--;
-			if (arrayIndex == -1) {
-				byte[] temp = new byte[bytes.length + 1];
-				System.arraycopy(bytes, 0, temp, 1, bytes.length);
-				bytes = temp;
-				arrayIndex = 0;
-			}
-		}
-		bytes[arrayIndex] |= MASK[bitIndex++];
+		ensureCapacity();
+		words[length >>> 6] |= 1L << (length & 63);
 		length++;
 	}
 
+	private void ensureCapacity() {
+		if ((length >>> 6) == words.length) {
+			words = Arrays.copyOf(words, words.length * 2);
+		}
+	}
+
+	/**
+	 * Remove all bits from the builder. The allocated words are kept and reused for
+	 * the next hash.
+	 *
+	 * @since 3.0.1
+	 */
+	public void reset() {
+		Arrays.fill(words, 0, wordCount(length), 0);
+		length = 0;
+	}
+
+	/**
+	 * Remove all bits from the builder and make room for the given number of bits.
+	 * The allocated words are kept if they are sufficient.
+	 *
+	 * @param bits the number of bits the next hash will have
+	 * @since 3.0.1
+	 */
+	public void reset(int bits) {
+		reset();
+		int required = wordCount(bits);
+		if (words.length < required) {
+			words = new long[required];
+		}
+	}
+
+	/**
+	 * @return the number of bits added to the builder
+	 * @since 3.0.1
+	 */
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * Copy the bits of the builder into packed long words as expected by
+	 * {@link com.github.kilianB.hash.Hash#Hash(long[], int, int)}. Bit n of the
+	 * hash is stored in word <code>n / 64</code> at the bit index
+	 * <code>n % 64</code>.
+	 *
+	 * @return the packed hash value
+	 * @since 3.0.1
+	 */
+	public long[] toPackedWords() {
+		return Arrays.copyOf(words, wordCount(length));
+	}
+
 	/**
 	 * Convert the internal state of the hashbuilder to a big integer object
-	 * 
+	 *
 	 * @return a big integer object
 	 */
 	public BigInteger toBigInteger() {
+		// Big endian
+		byte[] bytes = new byte[(length + 7) >>> 3];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[bytes.length - 1 - i] = (byte) (words[i >>> 3] >>> ((i & 7) << 3));
+		}
 		return new BigInteger(1, bytes);
 	}
-}
\ No newline at end of file
+
+	private static int wordCount(int bits) {
+		return (int) ((bits + 63L) >>> 6);
+	}
+}
@@ -0,0 +1,94 @@
+package com.github.kilianB.hashAlgorithms;
+
+import java.util.Objects;
+
+import com.github.kilianB.hash.Hash;
+
+/**
+ * The outcome of hashing a single item of a batch. Failing items do not abort
+ * the batch but report the cause of the failure instead of a hash.
+ * 
+ * @author Kilian
+ * @param <T> the type of the source the hash was created from
+ * @since 3.0.1
+ */
+public class HashResult<T> {
+
+	private final T source;
+	private final int index;
+	private final Hash hash;
+	private final Throwable error;
+
+	/**
+	 * @param source the item the hash was computed for
+	 * @param index  the position of the item in the batch
+	 * @param hash   the hash or null if an error occurred
+	 * @param error  the error or null if the hash was computed successfully
+	 */
+	public HashResult(T source, int index, Hash hash, Throwable error) {
+		this.source = source;
+		this.index = index;
+		this.hash = hash;
+		this.error = error;
+	}
+
+	/**
+	 * @return the item the hash was computed for
+	 */
+	public T getSource() {
+		return source;
+	}
+
+	/**
+	 * @return the position of the item in the batch
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * @return the computed hash or null if the item failed
+	 */
+	public Hash getHash() {
+		return hash;
+	}
+
+	/**
+	 * @return the error which prevented the hash from being computed or null if
+	 *         the item succeeded
+	 */
+	public Throwable getError() {
+		return error;
+	}
+
+	/**
+	 * @return true if the hash was computed successfully
+	 */
+	public boolean isSuccess() {
+		return error == null;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(source, index, hash, error);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof HashResult)) {
+			return false;
+		}
+		HashResult<?> other = (HashResult<?>) obj;
+		return index == other.index && Objects.equals(source, other.source) && Objects.equals(hash, other.hash)
+				&& Objects.equals(error, other.error);
+	}
+
+	@Override
+	public String toString() {
+		return "HashResult [index=" + index + ", source=" + source
+				+ (isSuccess() ? ", hash=" + hash : ", error=" + error) + "]";
+	}
+}
@@ -6,8 +6,15 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import javax.imageio.ImageIO;
 
@@ -56,6 +63,12 @@ public abstract class HashingAlgorithm implements Serializable {
 	/** The actual bit resolution of produced hashes */
 	protected int keyResolution = -1;
 
+	/**
+	 * The hash builder of each thread, shared by all algorithms. The builder is
+	 * taken out while a hash is computed, so nested computations create their own.
+	 */
+	private static final ThreadLocal<HashBuilder> BUILDERS = new ThreadLocal<>();
+
 	/**
 	 * The algorithm id of this hashing algorithm. The algorithm id specifies a
 	 * unique identifier which allows to check if two distinct hashes are created by
@@ -144,6 +157,17 @@ public abstract class HashingAlgorithm implements Serializable {
 	 * @see Hash
 	 */
 	public Hash hash(BufferedImage image) {
+		return computeHash(applyFilters(image));
+	}
+
+	/**
+	 * Apply the filters added to this algorithm to the image.
+	 * 
+	 * @param image the image to filter
+	 * @return the filtered image or the image itself if no filters are present
+	 * @since 3.0.1
+	 */
+	protected BufferedImage applyFilters(BufferedImage image) {
 
 		BufferedImage bi = image;
 
@@ -159,17 +183,203 @@ public abstract class HashingAlgorithm implements Serializable {
 			}
 		}
 		immutableState = true;
+		return bi;
+	}
 
-		BigInteger hashValue;
+	/**
+	 * Calculate the hash of an image the filters were already applied to.
+	 * 
+	 * @param filteredImage the image returned by {@link #applyFilters}
+	 * @return The hash representing the image
+	 * @since 3.0.1
+	 */
+	private Hash computeHash(BufferedImage filteredImage) {
+		immutableState = true;
+		HashBuilder hb = createHashBuilder();
+		try {
+			return toHash(hash(filteredImage, hb), hb);
+		} finally {
+			BUILDERS.set(hb);
+		}
+	}
 
+	/**
+	 * Calculate a hash for the given prepared image. Rescaled images and luma
+	 * values are shared with all other algorithms hashing the same prepared image.
+	 * 
+	 * <p>
+	 * If the prepared image does not use a resolution pyramid the hash is
+	 * identical to the hash returned by {@link #hash(BufferedImage)} for the
+	 * source image. Algorithms using filters always hash the full resolution
+	 * source image, as the filters have to be applied before rescaling.
+	 * 
+	 * @param image the prepared image
+	 * @return The hash representing the image
+	 * @since 3.0.1
+	 */
+	public Hash hash(PreparedImage image) {
+		if (!preProcessing.isEmpty()) {
+			return hash(image.getSource());
+		}
+		immutableState = true;
+		HashBuilder hb = createHashBuilder();
+		try {
+			return createAlgorithmSpecificHash(toHash(hash(image, hb), hb));
+		} finally {
+			BUILDERS.set(hb);
+		}
+	}
+
+	/**
+	 * Calculate the hash of a prepared image. Implementations are encouraged to
+	 * overwrite this method and retrieve the rescaled image from the prepared
+	 * image instead of rescaling the source themselves. The default
+	 * implementation hashes the source image.
+	 * 
+	 * @param image       the prepared image
+	 * @param hashBuilder a hash builder used to construct the hash
+	 * @return the hash encoded as a big integer or null if the hash builder holds
+	 *         the hash
+	 * @since 3.0.1
+	 */
+	protected BigInteger hash(PreparedImage image, HashBuilder hashBuilder) {
+		return hash(image.getSource(), hashBuilder);
+	}
+
+	/**
+	 * Take the hash builder of the calling thread. The builder is reset and
+	 * reused for every hash computed by the thread and has to be handed back to
+	 * {@link #BUILDERS} once the hash was created.
+	 * 
+	 * @return an empty hash builder
+	 */
+	private HashBuilder createHashBuilder() {
+		int bits = keyResolution < 0 ? bitResolution : keyResolution;
+		HashBuilder hb = BUILDERS.get();
+		if (hb == null) {
+			return new HashBuilder(bits);
+		}
+		BUILDERS.set(null);
+		hb.reset(bits);
+		return hb;
+	}
+
+	private Hash toHash(BigInteger hashValue, HashBuilder hb) {
 		if (keyResolution < 0) {
-			HashBuilder hb = new HashBuilder(this.bitResolution);
-			hashValue = hash(bi, hb);
 			keyResolution = hb.length;
-		} else {
-			hashValue = hash(bi, new HashBuilder(getKeyResolution()));
 		}
-		return new Hash(hashValue, getKeyResolution(), algorithmId());
+		if (hashValue == null) {
+			// The hash was constructed in the builder. Skip the big integer
+			return new Hash(hb.toPackedWords(), keyResolution, algorithmId());
+		}
+		return new Hash(hashValue, keyResolution, algorithmId());
+	}
+
+	/**
+	 * Calculate the hash of an image the filters were already applied to and wrap
+	 * it into the algorithm specific hash class. The result is identical to
+	 * calling {@link #hash(BufferedImage)} with the unfiltered image.
+	 * 
+	 * @param filteredImage the image returned by {@link #applyFilters}
+	 * @return The hash representing the image
+	 * @since 3.0.1
+	 */
+	Hash hashFiltered(BufferedImage filteredImage) {
+		return createAlgorithmSpecificHash(computeHash(filteredImage));
+	}
+
+	/**
+	 * Calculate the hashes of the given image files in parallel.
+	 * 
+	 * @param imageFiles    the files pointing to the images
+	 * @param executor      the executor used to decode and hash the images
+	 * @param maxInFlight   the maximum number of images processed at the same
+	 *                      time. Bounds the number of decoded images held in
+	 *                      memory.
+	 * @param preserveOrder if true the results are returned in the order of the
+	 *                      input. If false results are returned as soon as they
+	 *                      are available.
+	 * @return a lazily evaluated stream of results
+	 * @see #hash(Iterator, ImageLoader, Executor, int, boolean)
+	 * @since 3.0.1
+	 */
+	public Stream<HashResult<File>> hashFiles(Iterable<File> imageFiles, Executor executor, int maxInFlight,
+			boolean preserveOrder) {
+		return hash(imageFiles.iterator(), ImageIO::read, executor, maxInFlight, preserveOrder);
+	}
+
+	/**
+	 * Calculate the hashes of the given images in parallel.
+	 * 
+	 * @param images        the images to hash
+	 * @param executor      the executor used to hash the images
+	 * @param maxInFlight   the maximum number of images processed at the same time
+	 * @param preserveOrder if true the results are returned in the order of the
+	 *                      input. If false results are returned as soon as they
+	 *                      are available.
+	 * @return a lazily evaluated stream of results
+	 * @see #hash(Iterator, ImageLoader, Executor, int, boolean)
+	 * @since 3.0.1
+	 */
+	public Stream<HashResult<BufferedImage>> hashImages(Iterable<BufferedImage> images, Executor executor,
+			int maxInFlight, boolean preserveOrder) {
+		return hash(images.iterator(), image -> image, executor, maxInFlight, preserveOrder);
+	}
+
+	/**
+	 * Calculate the hashes of the given sources in parallel.
+	 * 
+	 * <p>
+	 * Each source is decoded, filtered and hashed by individual tasks submitted to
+	 * the executor, allowing decoding and hashing of different images to overlap.
+	 * Any executor can be used, e.g. a fixed thread pool matching the number of
+	 * cores or a virtual thread executor if decoding is dominated by I/O.
+	 * 
+	 * <p>
+	 * The returned stream is lazy. Sources are only consumed and submitted while
+	 * less than <code>maxInFlight</code> results are pending. Failing sources do
+	 * not abort the batch but are reported as a {@link HashResult} carrying the
+	 * error.
+	 * 
+	 * @param <T>           the type of the source
+	 * @param sources       the sources to hash
+	 * @param loader        decodes a source into an image
+	 * @param executor      the executor used to decode and hash the images
+	 * @param maxInFlight   the maximum number of items processed at the same time
+	 * @param preserveOrder if true the results are returned in the order of the
+	 *                      input. If false results are returned as soon as they
+	 *                      are available.
+	 * @return a lazily evaluated stream of results
+	 * @throws IllegalArgumentException if maxInFlight is smaller than 1
+	 * @since 3.0.1
+	 */
+	public <T> Stream<HashResult<T>> hash(Iterator<? extends T> sources, ImageLoader<? super T> loader,
+			Executor executor, int maxInFlight, boolean preserveOrder) {
+		BatchHashIterator<T> iterator = new BatchHashIterator<>(this, sources, loader, executor, maxInFlight,
+				preserveOrder);
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+				preserveOrder ? Spliterator.ORDERED | Spliterator.NONNULL : Spliterator.NONNULL), false);
+	}
+
+	/**
+	 * Calculate the hashes of the given sources in parallel and pass each result to
+	 * the callback. The callback is invoked on the calling thread, which blocks
+	 * until all sources are processed.
+	 * 
+	 * @param <T>           the type of the source
+	 * @param sources       the sources to hash
+	 * @param loader        decodes a source into an image
+	 * @param executor      the executor used to decode and hash the images
+	 * @param maxInFlight   the maximum number of items processed at the same time
+	 * @param preserveOrder if true the results are passed in the order of the
+	 *                      input.
+	 * @param callback      consumer accepting the results
+	 * @see #hash(Iterator, ImageLoader, Executor, int, boolean)
+	 * @since 3.0.1
+	 */
+	public <T> void hash(Iterator<? extends T> sources, ImageLoader<? super T> loader, Executor executor,
+			int maxInFlight, boolean preserveOrder, Consumer<? super HashResult<T>> callback) {
+		this.<T>hash(sources, loader, executor, maxInFlight, preserveOrder).forEach(callback);
 	}
 
 	/**
@@ -188,6 +398,30 @@ public abstract class HashingAlgorithm implements Serializable {
 		return hash(ImageIO.read(imageFile));
 	}
 
+	/**
+	 * Calculate a hash for the image decoded by the given loader.
+	 * 
+	 * <p>
+	 * Combined with a {@link SubsampledImageLoader} images are decoded at a
+	 * resolution close to the size required by the algorithm instead of at full
+	 * resolution, e.g. <code>hash(file, new SubsampledImageLoader())</code>.
+	 * 
+	 * @param <T>    the type of the source
+	 * @param source the source of the image, e.g. a file or an input stream
+	 * @param loader decodes the source into an image
+	 * @return The hash representing the image
+	 * @throws IOException if an error occurs during loading the image or no
+	 *                     suitable image reader was found
+	 * @since 3.0.1
+	 */
+	public <T> Hash hash(T source, ImageLoader<? super T> loader) throws IOException {
+		BufferedImage image = loader.load(source);
+		if (image == null) {
+			throw new IOException("No suitable image reader found for " + source);
+		}
+		return hash(image);
+	}
+
 	/**
 	 * Calculate a hash for the given image. Invoking the hash function on the same
 	 * image has to return the same hash value. A comparison of the hashes relates
@@ -202,9 +436,15 @@ public abstract class HashingAlgorithm implements Serializable {
 	 * distance can be calculated due to xoring without issue the normalized
 	 * distance requires the potential length of the key to be known.
 	 * 
+	 * <p>
+	 * Implementations constructing the hash bit by bit using the supplied hash
+	 * builder may return <code>null</code>. The hash is then created from the
+	 * long words packed by the builder without materializing a big integer.
+	 * 
 	 * @param image       Image whose hash will be calculated
 	 * @param hashBuilder a hash builder used to construct the hash
-	 * @return the hash encoded as a big integer
+	 * @return the hash encoded as a big integer or null if the hash builder holds
+	 *         the hash
 	 */
 	protected abstract BigInteger hash(BufferedImage image, HashBuilder hashBuilder);
 
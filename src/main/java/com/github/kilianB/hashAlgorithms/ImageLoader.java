@@ -0,0 +1,27 @@
+package com.github.kilianB.hashAlgorithms;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * Decodes a source (e.g. a file, url or database blob) into an image. Used by
+ * the batch hashing methods of {@link HashingAlgorithm} to decode images in
+ * parallel.
+ * 
+ * @author Kilian
+ * @param <T> the type of the source
+ * @since 3.0.1
+ */
+@FunctionalInterface
+public interface ImageLoader<T> {
+
+	/**
+	 * Load the image described by the source.
+	 * 
+	 * @param source the source of the image
+	 * @return the decoded image
+	 * @throws IOException if the image can not be read
+	 */
+	BufferedImage load(T source) throws IOException;
+
+}
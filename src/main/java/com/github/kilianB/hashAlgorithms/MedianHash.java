@@ -1,11 +1,8 @@
 package com.github.kilianB.hashAlgorithms;
 
-import java.awt.image.BufferedImage;
 import java.math.BigInteger;
 
 import com.github.kilianB.ArrayUtil;
-import com.github.kilianB.graphics.FastPixel;
-import com.github.kilianB.graphics.ImageUtil;
 
 /**
  * Calculate a hash value based on the median luminosity in an image.
@@ -49,12 +46,12 @@ public class MedianHash extends AverageHash {
 	}
 
 	@Override
-	protected BigInteger hash(BufferedImage image, HashBuilder hash) {
-		FastPixel fp = FastPixel.create(ImageUtil.getScaledInstance(image, width, height));
+	protected BigInteger hash(int[][] luminocity, HashBuilder hash) {
 
-		int[] lum = fp.getLuma1D();
-
-		int[][] luminocity = fp.getLuma();
+		int[] lum = new int[width * height];
+		for (int x = 0; x < width; x++) {
+			System.arraycopy(luminocity[x], 0, lum, x * height, height);
+		}
 
 		// Create hash
 		return computeHash(hash, luminocity, ArrayUtil.median(lum));
@@ -44,6 +44,12 @@ public class PerceptiveHash extends HashingAlgorithm {
 	 */
 	private int height, width;
 
+	/**
+	 * The dct plan and scratch buffer of each thread. Lazily created to survive
+	 * deserialization.
+	 */
+	private transient ThreadLocal<DctWorkspace> workspace;
+
 	/**
 	 * 
 	 * @param bitResolution The bit resolution specifies the final length of the
@@ -70,11 +76,20 @@ public class PerceptiveHash extends HashingAlgorithm {
 	@Override
 	protected BigInteger hash(BufferedImage image, HashBuilder hash) {
 		FastPixel fp = FastPixel.create(ImageUtil.getScaledInstance(image, width, height));
+		return hash(fp.getLuma(), hash);
+	}
 
-		int[][] lum = fp.getLuma();
+	@Override
+	protected BigInteger hash(PreparedImage image, HashBuilder hash) {
+		return hash(image.getLuma(width, height), hash);
+	}
+
+	private BigInteger hash(int[][] lum, HashBuilder hash) {
+
+		DctWorkspace ws = getWorkspace();
 
 		// int to double conversion ...
-		double[][] lumAsDouble = new double[width][height];
+		double[][] lumAsDouble = ws.buffer;
 
 		for (int x = 0; x < width; x++) {
 			for (int y = 0; y < height; y++) {
@@ -82,9 +97,7 @@ public class PerceptiveHash extends HashingAlgorithm {
 			}
 		}
 
-		DoubleDCT_2D dct = new DoubleDCT_2D(width, height);
-
-		dct.forward(lumAsDouble, false);
+		ws.dct.forward(lumAsDouble, false);
 
 		// Average value of the (topmost) YxY low frequencies. Skip the first column as
 		// it might be too dominant. Solid color e.g.
@@ -116,7 +129,34 @@ public class PerceptiveHash extends HashingAlgorithm {
 				}
 			}
 		}
-		return hash.toBigInteger();
+		// The hash is packed by the builder
+		return null;
+	}
+
+	private DctWorkspace getWorkspace() {
+		ThreadLocal<DctWorkspace> local = workspace;
+		if (local == null) {
+			// Racing threads may create distinct thread locals. This only costs an
+			// additional workspace and does not affect the result.
+			local = ThreadLocal.withInitial(() -> new DctWorkspace(width, height));
+			workspace = local;
+		}
+		return local.get();
+	}
+
+	/**
+	 * The dct plan and the buffer the transformation is performed in. Creating
+	 * the plan is expensive and therefore reused for all hashes computed by the
+	 * same thread.
+	 */
+	private static class DctWorkspace {
+		private final DoubleDCT_2D dct;
+		private final double[][] buffer;
+
+		DctWorkspace(int width, int height) {
+			dct = new DoubleDCT_2D(width, height);
+			buffer = new double[width][height];
+		}
 	}
 
 	/**
@@ -0,0 +1,188 @@
+package com.github.kilianB.hashAlgorithms;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import com.github.kilianB.graphics.FastPixel;
+import com.github.kilianB.graphics.ImageUtil;
+
+/**
+ * An image prepared to be hashed by multiple hashing algorithms. Rescaled
+ * versions of the image and their luma values are computed once and shared
+ * between all algorithms requesting the same dimension.
+ *
+ * <p>
+ * Rescaling a full resolution image is usually the most expensive part of
+ * hashing. If a pyramid resolution is supplied, the image is first downscaled
+ * to an intermediate level whose longest side matches the pyramid resolution.
+ * Further levels are created by halving the previous level. Algorithms are
+ * then fed from the smallest level which is still at least twice as large as
+ * the requested dimension, decoupling the hashing cost from the size of the
+ * source image.
+ *
+ * <p>
+ * Since the rescaled images of the pyramid are computed from an intermediate
+ * image, hashes may differ in a few bits compared to hashes created from the
+ * full resolution image. Hashes which are compared against each other should
+ * therefore be created with the same pyramid resolution. A pyramid resolution
+ * of 0 disables the pyramid and produces hashes identical to
+ * {@link HashingAlgorithm#hash(BufferedImage)}.
+ *
+ * <p>
+ * Instances are intended to be used by a single thread and are not thread
+ * safe.
+ *
+ * @author Kilian
+ * @since 3.0.1
+ */
+public class PreparedImage {
+
+	/**
+	 * Do not create pyramid levels smaller than this size as they are of no use
+	 * for any hashing algorithm
+	 */
+	private static final int MIN_LEVEL_SIZE = 4;
+
+	private final BufferedImage source;
+
+	private final int pyramidResolution;
+
+	/** Lazily created downscaled versions of the source. Largest level first */
+	private List<BufferedImage> pyramid;
+
+	/** Rescaled images. Key: width and height */
+	private final Map<Long, FastPixel> scaled = new HashMap<>();
+
+	/** Luma values of the rescaled images. Key: width and height */
+	private final Map<Long, int[][]> luma = new HashMap<>();
+
+	/**
+	 * Prepare an image without using a resolution pyramid. Hashes computed from
+	 * this image are identical to hashes computed from the source image.
+	 *
+	 * @param source the image to hash
+	 */
+	public PreparedImage(BufferedImage source) {
+		this(source, 0);
+	}
+
+	/**
+	 * Prepare an image using a resolution pyramid.
+	 *
+	 * @param source            the image to hash
+	 * @param pyramidResolution the length of the longest side of the largest
+	 *                          pyramid level. 0 disables the pyramid.
+	 * @throws IllegalArgumentException if the pyramid resolution is negative
+	 */
+	public PreparedImage(BufferedImage source, int pyramidResolution) {
+		this.source = Objects.requireNonNull(source);
+		if (pyramidResolution < 0) {
+			throw new IllegalArgumentException("The pyramid resolution may not be negative");
+		}
+		this.pyramidResolution = pyramidResolution;
+	}
+
+	/**
+	 * @return the image this object was created from
+	 */
+	public BufferedImage getSource() {
+		return source;
+	}
+
+	/**
+	 * @return the length of the longest side of the largest pyramid level or 0
+	 *         if no pyramid is used
+	 */
+	public int getPyramidResolution() {
+		return pyramidResolution;
+	}
+
+	/**
+	 * Get pixel access to the image rescaled to the given dimension. The result is
+	 * cached and shared between all callers.
+	 *
+	 * @param width  the width of the rescaled image
+	 * @param height the height of the rescaled image
+	 * @return the rescaled image. The pixel values must not be altered.
+	 */
+	public FastPixel getFastPixel(int width, int height) {
+		return scaled.computeIfAbsent(key(width, height),
+				k -> FastPixel.create(ImageUtil.getScaledInstance(getBaseLevel(width, height), width, height)));
+	}
+
+	/**
+	 * Get the luma values of the image rescaled to the given dimension. The result
+	 * is cached and shared between all callers.
+	 *
+	 * @param width  the width of the rescaled image
+	 * @param height the height of the rescaled image
+	 * @return the luma values [x][y] of the rescaled image. The array must not be
+	 *         altered.
+	 */
+	public int[][] getLuma(int width, int height) {
+		long key = key(width, height);
+		int[][] values = luma.get(key);
+		if (values == null) {
+			values = getFastPixel(width, height).getLuma();
+			luma.put(key, values);
+		}
+		return values;
+	}
+
+	/**
+	 * Find the smallest image which is still at least twice as large as the
+	 * requested dimension.
+	 *
+	 * @param width  the target width
+	 * @param height the target height
+	 * @return the image to rescale
+	 */
+	private BufferedImage getBaseLevel(int width, int height) {
+		if (pyramidResolution == 0) {
+			return source;
+		}
+
+		if (pyramid == null) {
+			pyramid = new ArrayList<>();
+			int longestSide = Math.max(source.getWidth(), source.getHeight());
+			if (longestSide > pyramidResolution) {
+				double factor = pyramidResolution / (double) longestSide;
+				int levelWidth = Math.max(1, (int) Math.round(source.getWidth() * factor));
+				int levelHeight = Math.max(1, (int) Math.round(source.getHeight() * factor));
+				pyramid.add(ImageUtil.getScaledInstance(source, levelWidth, levelHeight));
+			}
+		}
+
+		BufferedImage base = source;
+		for (int i = 0;; i++) {
+			if (i == pyramid.size()) {
+				// Lazily create the next smaller level
+				if (i == 0) {
+					break;
+				}
+				BufferedImage previous = pyramid.get(i - 1);
+				int levelWidth = previous.getWidth() / 2;
+				int levelHeight = previous.getHeight() / 2;
+				if (levelWidth < Math.max(MIN_LEVEL_SIZE, 2 * width)
+						|| levelHeight < Math.max(MIN_LEVEL_SIZE, 2 * height)) {
+					break;
+				}
+				pyramid.add(ImageUtil.getScaledInstance(previous, levelWidth, levelHeight));
+			}
+			BufferedImage level = pyramid.get(i);
+			if (level.getWidth() < 2 * width || level.getHeight() < 2 * height) {
+				break;
+			}
+			base = level;
+		}
+		return base;
+	}
+
+	private static long key(int width, int height) {
+		return ((long) width << 32) | (height & 0xFFFFFFFFL);
+	}
+}
@@ -84,8 +84,16 @@ public class RotAverageHash extends HashingAlgorithm {
 
 	@Override
 	protected BigInteger hash(BufferedImage image, HashBuilder hash) {
-
 		FastPixel fp = FastPixel.create(ImageUtil.getScaledInstance(image, width, height));
+		return hash(fp.getLuma(), hash);
+	}
+
+	@Override
+	protected BigInteger hash(PreparedImage image, HashBuilder hash) {
+		return hash(image.getLuma(width, height), hash);
+	}
+
+	private BigInteger hash(int[][] lum, HashBuilder hash) {
 
 		// We need 2 more bucket since we compare to n-1 and no values are mapped to 0
 		// bucket
@@ -110,9 +118,9 @@ public class RotAverageHash extends HashingAlgorithm {
 
 				if (initCount) {
 					count[bucket]++;
-					hashArr[bucket] += fp.getLuma(x, y);
+					hashArr[bucket] += lum[x][y];
 				} else {
-					hashArr[bucket] += (fp.getLuma(x, y) / (double) count[bucket]);
+					hashArr[bucket] += (lum[x][y] / (double) count[bucket]);
 				}
 			}
 		}
@@ -133,7 +141,8 @@ public class RotAverageHash extends HashingAlgorithm {
 			}
 		}
 
-		return hash.toBigInteger();
+		// The hash is packed by the builder
+		return null;
 	}
 
 	/**
@@ -2,9 +2,7 @@ package com.github.kilianB.hashAlgorithms;
 
 import java.awt.image.BufferedImage;
 import java.math.BigInteger;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.Arrays;
 import java.util.Objects;
 
 import org.jtransforms.dct.DoubleDCT_1D;
@@ -49,6 +47,12 @@ public class RotPHash extends HashingAlgorithm {
 	/** The number of circles the pixels will be mapped to */
 	private int buckets;
 
+	/**
+	 * The dct plans and scratch buffers of each thread. Lazily created to survive
+	 * deserialization.
+	 */
+	private transient ThreadLocal<DctWorkspace> workspace;
+
 	/**
 	 * Create a Rotational Invariant Perceptive Hasher
 	 * 
@@ -102,24 +106,33 @@ public class RotPHash extends HashingAlgorithm {
 		BufferedImage transformed = ImageUtil.getScaledInstance(image, width, height);
 		// Fast pixel access. Order 10x faster than jdk internal
 		FastPixel fp = FastPixel.create(transformed);
+		return hash(fp.getLuma(), hash);
+	}
 
-		@SuppressWarnings("unchecked")
-		List<Integer>[] values = new List[buckets];
-		for (int i = 0; i < buckets; i++) {
-			values[i] = new ArrayList<Integer>();
-		}
+	@Override
+	protected BigInteger hash(PreparedImage image, HashBuilder hash) {
+		return hash(image.getLuma(width, height), hash);
+	}
+
+	private BigInteger hash(int[][] lum, HashBuilder hash) {
+
+		DctWorkspace ws = getWorkspace();
+		double[][] values = ws.values;
+		int[] fill = ws.fill;
+		Arrays.fill(fill, 0);
 
 		// 1. Map each pixel into a circle bucket. (Currently we ignore parts of the
 		// image if they do not fit inside a cropped circle)
+		int pixel = 0;
 		for (int x = 0; x < width; x++) {
 			for (int y = 0; y < height; y++) {
-				// Wrap pixel around center. Return the bucket whose center is the closest to
-				// this pixel
-				int bucket = computePartition(x, y);
+				// Wrap pixel around center. The bucket whose center is the closest to
+				// this pixel was computed up front
+				int bucket = ws.partition[pixel++];
 				if (bucket >= buckets) {
 					continue;
 				}
-				values[bucket].add(fp.getLuma(x, y));
+				values[bucket][fill[bucket]++] = lum[x][y];
 			}
 		}
 
@@ -131,16 +144,13 @@ public class RotPHash extends HashingAlgorithm {
 		int length = 0;
 		for (int i = 0; i < buckets; i++) {
 			// Sort lum values to get a dct independent of initial rotation
-			Collections.sort(values[i]);
-
-			double[] arr = new double[values[i].size()];
-			for (int j = 0; j < arr.length; j++) {
-				arr[j] = values[i].get(j);
-			}
+			double[] arr = values[i];
+			Arrays.sort(arr);
 
 			// Compute dct of each bucket and calculate the average
-			DoubleDCT_1D dct = new DoubleDCT_1D(arr.length);
-			dct.forward(arr, false);
+			if (arr.length > 0) {
+				ws.dct[i].forward(arr, false);
+			}
 
 			double avg = 0;
 			int count = arr.length / 4 - 1;
@@ -167,7 +177,66 @@ public class RotPHash extends HashingAlgorithm {
 				length++;
 			}
 		}
-		return hash.toBigInteger();
+		// The hash is packed by the builder
+		return null;
+	}
+
+	private DctWorkspace getWorkspace() {
+		ThreadLocal<DctWorkspace> local = workspace;
+		if (local == null) {
+			// Racing threads may create distinct thread locals. This only costs an
+			// additional workspace and does not affect the result.
+			int[] partition = new int[width * height];
+			int pixel = 0;
+			for (int x = 0; x < width; x++) {
+				for (int y = 0; y < height; y++) {
+					partition[pixel++] = computePartition(x, y);
+				}
+			}
+			local = ThreadLocal.withInitial(() -> new DctWorkspace(partition, buckets));
+			workspace = local;
+		}
+		return local.get();
+	}
+
+	/**
+	 * The ring partition of each pixel as well as the dct plans and buffers of each
+	 * bucket. Reused for all hashes computed by the same thread.
+	 */
+	private static class DctWorkspace {
+
+		/** The bucket of each pixel in x major order */
+		private final int[] partition;
+
+		/** The luma values of each bucket */
+		private final double[][] values;
+
+		/** Number of values added to each bucket */
+		private final int[] fill;
+
+		/** The dct plan of each bucket */
+		private final DoubleDCT_1D[] dct;
+
+		DctWorkspace(int[] partition, int buckets) {
+			// The partition is immutable and shared by all threads
+			this.partition = partition;
+			int[] bucketSize = new int[buckets];
+			for (int bucket : partition) {
+				if (bucket < buckets) {
+					bucketSize[bucket]++;
+				}
+			}
+
+			values = new double[buckets][];
+			fill = new int[buckets];
+			dct = new DoubleDCT_1D[buckets];
+			for (int i = 0; i < buckets; i++) {
+				values[i] = new double[bucketSize[i]];
+				if (bucketSize[i] > 0) {
+					dct[i] = new DoubleDCT_1D(bucketSize[i]);
+				}
+			}
+		}
 	}
 
 	/**
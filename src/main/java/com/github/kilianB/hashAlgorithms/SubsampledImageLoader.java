@@ -0,0 +1,195 @@
+package com.github.kilianB.hashAlgorithms;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+import javax.imageio.IIOException;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Image loader decoding images at a reduced resolution close to the size
+ * required by hashing algorithms.
+ *
+ * <p>
+ * Hashing algorithms rescale images to at most a few dozen pixels per side.
+ * Decoding a multi megapixel photo at full resolution just to throw away most of
+ * the information is the most expensive part of hashing an image file. This
+ * loader uses the source subsampling of the {@link ImageReadParam} to only
+ * materialize every n-th pixel, choosing the largest factor which keeps the
+ * shorter side of the decoded image at or above the minimum size. Optionally,
+ * embedded thumbnails are used if they are large enough.
+ *
+ * <p>
+ * Subsampling skips pixels instead of averaging them. Hashes computed from
+ * subsampled images may therefore differ in a few bits from hashes computed
+ * from the full resolution image. The larger the minimum size the smaller the
+ * deviation. Use {@link com.github.kilianB.benchmark.SubsampledDecodeReport} to
+ * quantify the drift for a given set of images and hashing algorithms.
+ *
+ * <p>
+ * Accepted sources are files, input streams and every other object supported
+ * by {@link ImageIO#createImageInputStream(Object)}. Input streams are not
+ * closed.
+ *
+ * @author Kilian
+ * @since 3.0.1
+ */
+public class SubsampledImageLoader implements ImageLoader<Object> {
+
+	/** The default minimum length of the shorter side of the decoded image */
+	public static final int DEFAULT_MINIMUM_SIZE = 256;
+
+	/**
+	 * Maximum relative deviation of the aspect ratio of a thumbnail. Thumbnails
+	 * with a different aspect ratio usually are cropped or padded.
+	 */
+	private static final double ASPECT_RATIO_TOLERANCE = 0.02;
+
+	private final int minimumSize;
+
+	private final boolean useThumbnails;
+
+	/**
+	 * Create a loader decoding images with a shorter side of at least
+	 * {@link #DEFAULT_MINIMUM_SIZE} pixels. Embedded thumbnails are not used.
+	 */
+	public SubsampledImageLoader() {
+		this(DEFAULT_MINIMUM_SIZE, false);
+	}
+
+	/**
+	 * @param minimumSize   the minimum length of the shorter side of the decoded
+	 *                      image. Images smaller than this size are decoded at
+	 *                      full resolution.
+	 * @param useThumbnails if true embedded thumbnails are returned if their
+	 *                      shorter side is at least minimumSize pixels long and
+	 *                      their aspect ratio matches the image
+	 * @throws IllegalArgumentException if the minimum size is not positive
+	 */
+	public SubsampledImageLoader(int minimumSize, boolean useThumbnails) {
+		if (minimumSize <= 0) {
+			throw new IllegalArgumentException("The minimum size has to be positive");
+		}
+		this.minimumSize = minimumSize;
+		this.useThumbnails = useThumbnails;
+	}
+
+	/**
+	 * Decode the image at a reduced resolution.
+	 *
+	 * @param source a file, input stream or any other object supported by
+	 *               {@link ImageIO#createImageInputStream(Object)}
+	 * @return the decoded image or null if no suitable image reader is registered
+	 * @throws IOException if an error occurs during reading the image
+	 */
+	@Override
+	public BufferedImage load(Object source) throws IOException {
+		if (source instanceof File && !((File) source).canRead()) {
+			throw new IIOException("Can't read input file " + source);
+		}
+		try (ImageInputStream iis = ImageIO.createImageInputStream(source)) {
+			if (iis == null) {
+				throw new IIOException("Can't create an ImageInputStream for " + source);
+			}
+			return read(iis);
+		}
+	}
+
+	private BufferedImage read(ImageInputStream iis) throws IOException {
+		Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+		if (!readers.hasNext()) {
+			return null;
+		}
+		ImageReader reader = readers.next();
+		try {
+			reader.setInput(iis, true, false);
+			int width = reader.getWidth(0);
+			int height = reader.getHeight(0);
+
+			if (useThumbnails) {
+				BufferedImage thumbnail = readThumbnail(reader, width, height);
+				if (thumbnail != null) {
+					return thumbnail;
+				}
+			}
+
+			ImageReadParam param = reader.getDefaultReadParam();
+			int factor = getSubsamplingFactor(width, height);
+			if (factor > 1) {
+				param.setSourceSubsampling(factor, factor, 0, 0);
+			}
+			return reader.read(0, param);
+		} finally {
+			reader.dispose();
+		}
+	}
+
+	/**
+	 * Return the smallest thumbnail satisfying the minimum size and aspect ratio
+	 *
+	 * @return the thumbnail or null if no suitable thumbnail is embedded
+	 */
+	private BufferedImage readThumbnail(ImageReader reader, int width, int height) throws IOException {
+		if (!reader.readerSupportsThumbnails() || !reader.hasThumbnails(0)) {
+			return null;
+		}
+
+		double aspectRatio = width / (double) height;
+		int bestIndex = -1;
+		long bestPixels = Long.MAX_VALUE;
+
+		for (int i = 0; i < reader.getNumThumbnails(0); i++) {
+			int thumbWidth = reader.getThumbnailWidth(0, i);
+			int thumbHeight = reader.getThumbnailHeight(0, i);
+			if (Math.min(thumbWidth, thumbHeight) < minimumSize) {
+				continue;
+			}
+			double thumbRatio = thumbWidth / (double) thumbHeight;
+			if (Math.abs(thumbRatio - aspectRatio) > aspectRatio * ASPECT_RATIO_TOLERANCE) {
+				continue;
+			}
+			long pixels = thumbWidth * (long) thumbHeight;
+			if (pixels < bestPixels) {
+				bestPixels = pixels;
+				bestIndex = i;
+			}
+		}
+		return bestIndex < 0 ? null : reader.readThumbnail(0, bestIndex);
+	}
+
+	/**
+	 * Compute the subsampling factor applied to an image of the given size.
+	 *
+	 * @param width  the width of the full resolution image
+	 * @param height the height of the full resolution image
+	 * @return the largest factor keeping the shorter side at or above the minimum
+	 *         size. 1 if the image is decoded at full resolution.
+	 */
+	public int getSubsamplingFactor(int width, int height) {
+		return Math.max(1, Math.min(width, height) / minimumSize);
+	}
+
+	/**
+	 * @return the minimum length of the shorter side of decoded images
+	 */
+	public int getMinimumSize() {
+		return minimumSize;
+	}
+
+	/**
+	 * @return true if embedded thumbnails are used
+	 */
+	public boolean isUseThumbnails() {
+		return useThumbnails;
+	}
+
+	@Override
+	public String toString() {
+		return "SubsampledImageLoader [minimumSize=" + minimumSize + ", useThumbnails=" + useThumbnails + "]";
+	}
+}
@@ -64,8 +64,15 @@ public class WaveletHash extends HashingAlgorithm {
 
 		// Rescale
 		FastPixel fp = FastPixel.create(ImageUtil.getScaledInstance(image, width, height));
+		return hash(fp.getLuma(), hashBuilder);
+	}
+
+	@Override
+	protected BigInteger hash(PreparedImage image, HashBuilder hashBuilder) {
+		return hash(image.getLuma(width, height), hashBuilder);
+	}
 
-		int[][] luma = fp.getLuma();
+	private BigInteger hash(int[][] luma, HashBuilder hashBuilder) {
 
 		// Compute wavelet
 
@@ -96,7 +103,8 @@ public class WaveletHash extends HashingAlgorithm {
 		}
 
 		// Lets do only 1 cycle for now
-		return hashBuilder.toBigInteger();
+		// The hash is packed by the builder
+		return null;
 	}
 
 	// Code taken and modified from
@@ -201,7 +201,8 @@ public class HogHash extends HashingAlgorithm {
 				}
 			}
 		}
-		return hash.toBigInteger();
+		// The hash is packed by the builder
+		return null;
 	}
 
 	protected int[][][] computeHogFeatures(int[][] lum) {
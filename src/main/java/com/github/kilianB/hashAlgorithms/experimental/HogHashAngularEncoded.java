@@ -96,7 +96,8 @@ public class HogHashAngularEncoded extends HogHash {
 			}
 		}
 
-		return hash.toBigInteger();
+		// The hash is packed by the builder
+		return null;
 	}
 
 }
@@ -109,6 +109,7 @@ public class HogHashDual extends HogHash {
 			}
 		}
 
-		return hash.toBigInteger();
+		// The hash is packed by the builder
+		return null;
 	}
 }
@@ -0,0 +1,451 @@
+package com.github.kilianB.matcher;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import com.github.kilianB.datastructures.tree.BoundedResultQueue;
+import com.github.kilianB.datastructures.tree.Result;
+import com.github.kilianB.hash.Hash;
+import com.github.kilianB.hashAlgorithms.HashingAlgorithm;
+import com.github.kilianB.hashAlgorithms.PreparedImage;
+import com.github.kilianB.matcher.TypedImageMatcher.AlgoSettings;
+
+/**
+ * Evaluates the hashing algorithms of a matcher requiring all algorithms to
+ * agree for two images to be considered a match.
+ * <p>
+ * Only the first algorithm of the plan, the most selective one, searches its
+ * index. The candidates found are verified by the remaining algorithms by
+ * comparing the stored hashes of the candidates directly. If the index of an
+ * algorithm can not look up stored hashes it is searched as well and the
+ * results are intersected using a hash map. The remaining algorithms are
+ * ordered by their cost of hashing an image divided by the fraction of
+ * candidates they reject. As soon as no candidate is left the evaluation stops
+ * and the remaining algorithms do not hash the query image at all.
+ * <p>
+ * The selectivity and cost of each algorithm are estimated from previous
+ * queries. Algorithms without statistics are evaluated right after the first
+ * algorithm in the order they were added to the matcher. The evaluation order
+ * does not alter the result. Matches are always reported with the distance of
+ * the last algorithm added to the matcher.
+ * <p>
+ * If an executor is supplied the query image is hashed by all algorithms up
+ * front. Algorithms which have to search their index do so in parallel. Early
+ * termination is not possible in this mode.
+ * <p>
+ * This class is thread safe.
+ *
+ * @author Kilian
+ * @since 3.0.1
+ */
+public class QueryPlanner {
+
+	/** Weight of a new observation in the running averages */
+	private static final double SMOOTHING = 0.1;
+
+	private final ConcurrentHashMap<HashingAlgorithm, Statistics> statistics = new ConcurrentHashMap<>();
+
+	/**
+	 * The hashes of the images added to a matcher for each of its algorithms.
+	 *
+	 * @param <T> the type of the values identifying an image
+	 * @param <E> the exception thrown while accessing the index
+	 */
+	public interface Source<T, E extends Exception> {
+
+		/**
+		 * @param algorithm the index of the algorithm
+		 * @return the number of hashes stored for the algorithm
+		 * @throws E if the index can not be accessed
+		 */
+		int size(int algorithm) throws E;
+
+		/**
+		 * Search all values whose hash is within the distance of the needle.
+		 *
+		 * @param algorithm   the index of the algorithm
+		 * @param needle      the hash to search for
+		 * @param maxDistance the maximum hamming distance
+		 * @return the matching values
+		 * @throws E if the index can not be accessed
+		 */
+		Collection<Result<T>> search(int algorithm, Hash needle, int maxDistance) throws E;
+
+		/**
+		 * @param algorithm the index of the algorithm
+		 * @return true if stored hashes of the algorithm can be retrieved by
+		 *         {@link #lookup(int, Collection)}
+		 */
+		boolean supportsLookup(int algorithm);
+
+		/**
+		 * Retrieve the stored hashes of the candidates.
+		 *
+		 * @param algorithm  the index of the algorithm
+		 * @param candidates the values whose hashes are requested
+		 * @return the hashes mapped to their values or null if the index should be
+		 *         searched instead. Candidates without a stored hash may be absent.
+		 * @throws E if the index can not be accessed
+		 */
+		Map<T, Hash> lookup(int algorithm, Collection<T> candidates) throws E;
+
+		/**
+		 * Retrieve the values whose hashes are the closest to the needle regardless
+		 * of their distance.
+		 *
+		 * @param algorithm the index of the algorithm
+		 * @param needle    the hash to search for
+		 * @param k         the maximum number of values
+		 * @return at most k values closest to the needle or null if the index does
+		 *         not support nearest neighbour queries
+		 * @throws E if the index can not be accessed
+		 * @since 3.0.1
+		 */
+		default Collection<Result<T>> nearest(int algorithm, Hash needle, int k) throws E {
+			return null;
+		}
+	}
+
+	/**
+	 * Find all values matching the query image by all algorithms.
+	 *
+	 * @param <T>        the type of the values identifying an image
+	 * @param <E>        the exception thrown while accessing the index
+	 * @param algorithms the algorithms in the order they were added to the matcher
+	 * @param settings   the settings of each algorithm
+	 * @param needles    the hashes of the query image. Null or containing null
+	 *                   entries for hashes still to be computed
+	 * @param image      the query image. May be null if all needles are supplied
+	 * @param source     the hashes of the images added to the matcher
+	 * @param executor   the executor used to evaluate the algorithms in parallel or
+	 *                   null to evaluate them sequentially in the calling thread
+	 * @return the matches sorted by the distance of the last algorithm
+	 * @throws E if the index can not be accessed
+	 */
+	public <T, E extends Exception> PriorityQueue<Result<T>> execute(HashingAlgorithm[] algorithms,
+			AlgoSettings[] settings, Hash[] needles, PreparedImage image, Source<T, E> source, Executor executor)
+			throws E {
+		return execute(algorithms, settings, needles, image, source, executor, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Find the closest values matching the query image by all algorithms.
+	 * <p>
+	 * If the matcher consists of a single algorithm and the source supports
+	 * {@link Source#nearest(int, Hash, int) nearest neighbour} queries the index
+	 * is searched for the closest values directly. Otherwise all matches are
+	 * collected and the closest ones retained.
+	 *
+	 * @param <T>        the type of the values identifying an image
+	 * @param <E>        the exception thrown while accessing the index
+	 * @param algorithms the algorithms in the order they were added to the matcher
+	 * @param settings   the settings of each algorithm
+	 * @param needles    the hashes of the query image. Null or containing null
+	 *                   entries for hashes still to be computed
+	 * @param image      the query image. May be null if all needles are supplied
+	 * @param source     the hashes of the images added to the matcher
+	 * @param executor   the executor used to evaluate the algorithms in parallel or
+	 *                   null to evaluate them sequentially in the calling thread
+	 * @param limit      the maximum number of matches returned
+	 * @return at most limit matches with the smallest distance of the last
+	 *         algorithm, sorted by this distance
+	 * @throws E                        if the index can not be accessed
+	 * @throws IllegalArgumentException if the limit is not positive
+	 * @since 3.0.1
+	 */
+	public <T, E extends Exception> PriorityQueue<Result<T>> execute(HashingAlgorithm[] algorithms,
+			AlgoSettings[] settings, Hash[] needles, PreparedImage image, Source<T, E> source, Executor executor,
+			int limit) throws E {
+
+		if (limit <= 0) {
+			throw new IllegalArgumentException("The limit has to be positive. Found: " + limit);
+		}
+
+		int n = algorithms.length;
+		int last = n - 1;
+		int[] order = plan(algorithms);
+
+		Step<T>[] parallel = null;
+		if (executor != null && n > 1) {
+			parallel = evaluateParallel(algorithms, settings, needles, image, source, executor, order[0]);
+		}
+
+		Map<T, Result<T>> candidates = null;
+		for (int i = 0; i < n; i++) {
+			if (candidates != null && candidates.isEmpty()) {
+				break;
+			}
+			int k = order[i];
+
+			Hash needle;
+			Collection<Result<T>> matches = null;
+			if (parallel != null) {
+				needle = parallel[k].needle;
+				matches = parallel[k].matches;
+			} else {
+				needle = hash(algorithms[k], needles, image, k);
+			}
+			int maxDistance = getThreshold(settings[k], needle);
+
+			if (candidates == null) {
+				if (matches == null && n == 1 && limit != Integer.MAX_VALUE) {
+					matches = source.nearest(k, needle, limit);
+				}
+				if (matches == null) {
+					matches = source.search(k, needle, maxDistance);
+				}
+				candidates = new HashMap<>((int) (matches.size() / 0.75) + 1);
+				for (Result<T> r : matches) {
+					// Nearest neighbours are not bound by the threshold
+					if (r.distance <= maxDistance) {
+						candidates.put(r.value, r);
+					}
+				}
+
+				record(algorithms[k]).selectivity(candidates.size(), source.size(k));
+				continue;
+			}
+
+			int before = candidates.size();
+			Map<T, Hash> stored = null;
+			if (matches == null && source.supportsLookup(k)) {
+				stored = source.lookup(k, candidates.keySet());
+			}
+
+			if (stored != null) {
+				Iterator<Entry<T, Result<T>>> iter = candidates.entrySet().iterator();
+				while (iter.hasNext()) {
+					Entry<T, Result<T>> entry = iter.next();
+					Hash hash = stored.get(entry.getKey());
+					int distance = hash == null ? Integer.MAX_VALUE : needle.hammingDistanceFast(hash);
+					if (distance > maxDistance) {
+						iter.remove();
+					} else if (k == last) {
+						Result<T> r = entry.getValue();
+						r.distance = distance;
+						r.normalizedHammingDistance = distance / (double) needle.getBitResolution();
+					}
+				}
+			} else {
+				if (matches == null) {
+					matches = source.search(k, needle, maxDistance);
+				}
+				Map<T, Result<T>> survivors = new HashMap<>((int) (Math.min(before, matches.size()) / 0.75) + 1);
+				for (Result<T> r : matches) {
+					Result<T> candidate = candidates.get(r.value);
+					if (candidate != null) {
+						survivors.put(r.value, k == last ? r : candidate);
+					}
+				}
+				candidates = survivors;
+			}
+			record(algorithms[k]).selectivity(candidates.size(), before);
+		}
+
+		if (candidates.size() <= limit) {
+			return new PriorityQueue<>(candidates.values());
+		}
+		BoundedResultQueue<T> closest = new BoundedResultQueue<>(limit);
+		for (Result<T> r : candidates.values()) {
+			closest.offer(r);
+		}
+		return new PriorityQueue<>(closest.toSortedList());
+	}
+
+	/**
+	 * Hash the image and search the index of all algorithms which can not verify
+	 * candidates using stored hashes. The prepared image is not thread safe,
+	 * therefore the hashes are computed on the calling thread and only the
+	 * searches are distributed.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T, E extends Exception> Step<T>[] evaluateParallel(HashingAlgorithm[] algorithms,
+			AlgoSettings[] settings, Hash[] needles, PreparedImage image, Source<T, E> source, Executor executor,
+			int driver) throws E {
+
+		int n = algorithms.length;
+		Hash[] hashes = new Hash[n];
+		for (int k = 0; k < n; k++) {
+			hashes[k] = hash(algorithms[k], needles, image, k);
+		}
+
+		CompletableFuture<Step<T>>[] futures = new CompletableFuture[n];
+		for (int k = 0; k < n; k++) {
+			int algorithm = k;
+			boolean search = k == driver || !source.supportsLookup(k);
+			futures[k] = CompletableFuture.supplyAsync(() -> {
+				Step<T> step = new Step<>();
+				step.needle = hashes[algorithm];
+				if (search) {
+					try {
+						step.matches = source.search(algorithm, step.needle,
+								getThreshold(settings[algorithm], step.needle));
+					} catch (Exception e) {
+						throw new CompletionException(e);
+					}
+				}
+				return step;
+			}, executor);
+		}
+
+		Step<T>[] steps = new Step[n];
+		try {
+			for (int k = 0; k < n; k++) {
+				steps[k] = futures[k].join();
+			}
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw (E) cause;
+		}
+		return steps;
+	}
+
+	private Hash hash(HashingAlgorithm algorithm, Hash[] needles, PreparedImage image, int k) {
+		if (needles != null && needles[k] != null) {
+			return needles[k];
+		}
+		if (image == null) {
+			throw new IllegalStateException("No hash and buffered image supplied. Can't retrieve hash");
+		}
+		long start = System.nanoTime();
+		Hash hash = algorithm.hash(image);
+		record(algorithm).cost(System.nanoTime() - start);
+		return hash;
+	}
+
+	/**
+	 * Compute the order in which the algorithms are evaluated.
+	 *
+	 * @param algorithms the algorithms in the order they were added to the matcher
+	 * @return the indices of the algorithms in evaluation order
+	 */
+	public int[] plan(HashingAlgorithm[] algorithms) {
+		int n = algorithms.length;
+		double[] rank = new double[n];
+		// The most selective algorithm searches its index
+		int driver = 0;
+		double driverSelectivity = Double.MAX_VALUE;
+		for (int k = 0; k < n; k++) {
+			Statistics stats = statistics.get(algorithms[k]);
+			double selectivity = stats == null ? Double.NaN : stats.getSelectivity();
+			double cost = stats == null ? Double.NaN : stats.getCost();
+			if (selectivity < driverSelectivity) {
+				driver = k;
+				driverSelectivity = selectivity;
+			}
+			// Unknown algorithms are evaluated first to gather statistics
+			rank[k] = Double.isNaN(selectivity) || Double.isNaN(cost) ? 0
+					: cost / (1 - Math.min(selectivity, 0.99));
+		}
+
+		Integer[] order = new Integer[n];
+		for (int k = 0; k < n; k++) {
+			order[k] = k;
+		}
+		order[driver] = 0;
+		order[0] = driver;
+		// Stable sort keeps the insertion order of unknown algorithms
+		Arrays.sort(order, 1, n, (a, b) -> Double.compare(rank[a], rank[b]));
+
+		int[] result = new int[n];
+		for (int k = 0; k < n; k++) {
+			result[k] = order[k];
+		}
+		return result;
+	}
+
+	/**
+	 * @param algorithm the hashing algorithm
+	 * @return the estimated fraction of candidates passing the algorithm or NaN if
+	 *         the algorithm was not evaluated yet
+	 */
+	public double getSelectivity(HashingAlgorithm algorithm) {
+		Statistics stats = statistics.get(algorithm);
+		return stats == null ? Double.NaN : stats.getSelectivity();
+	}
+
+	/**
+	 * @param algorithm the hashing algorithm
+	 * @return the estimated time in nanoseconds required to hash an image or NaN
+	 *         if the algorithm did not hash an image yet
+	 */
+	public double getCost(HashingAlgorithm algorithm) {
+		Statistics stats = statistics.get(algorithm);
+		return stats == null ? Double.NaN : stats.getCost();
+	}
+
+	/**
+	 * Discard all statistics gathered so far.
+	 */
+	public void reset() {
+		statistics.clear();
+	}
+
+	private Statistics record(HashingAlgorithm algorithm) {
+		return statistics.computeIfAbsent(algorithm, a -> new Statistics());
+	}
+
+	/**
+	 * Compute the maximum hamming distance permitted by the settings.
+	 *
+	 * @param settings the settings of the algorithm
+	 * @param needle   the hash of the query image
+	 * @return the maximum hamming distance
+	 */
+	public static int getThreshold(AlgoSettings settings, Hash needle) {
+		if (settings.isNormalized()) {
+			return (int) Math.round(settings.getThreshold() * needle.getBitResolution());
+		} else {
+			return (int) settings.getThreshold();
+		}
+	}
+
+	/**
+	 * Result of hashing and optionally searching the index of an algorithm
+	 */
+	private static class Step<T> {
+		Hash needle;
+		Collection<Result<T>> matches;
+	}
+
+	/**
+	 * Running averages of the cost and selectivity of an algorithm
+	 */
+	private static class Statistics {
+		private double cost = Double.NaN;
+		private double selectivity = Double.NaN;
+
+		synchronized void cost(long nanos) {
+			cost = Double.isNaN(cost) ? nanos : cost + SMOOTHING * (nanos - cost);
+		}
+
+		synchronized void selectivity(int passed, int total) {
+			if (total > 0) {
+				double s = passed / (double) total;
+				selectivity = Double.isNaN(selectivity) ? s : selectivity + SMOOTHING * (s - selectivity);
+			}
+		}
+
+		synchronized double getCost() {
+			return cost;
+		}
+
+		synchronized double getSelectivity() {
+			return selectivity;
+		}
+	}
+}
@@ -4,9 +4,13 @@ import java.io.Serializable;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.Executor;
+
+import java.awt.image.BufferedImage;
 
 import com.github.kilianB.hash.Hash;
 import com.github.kilianB.hashAlgorithms.HashingAlgorithm;
+import com.github.kilianB.hashAlgorithms.PreparedImage;
 
 /**
  * Image matchers are a collection of classes which bundle the hashing operation
@@ -28,6 +32,25 @@ public abstract class TypedImageMatcher {
 	 */
 	protected LinkedHashMap<HashingAlgorithm, AlgoSettings> steps = new LinkedHashMap<>();
 
+	/**
+	 * The length of the longest side of the largest level of the image pyramid
+	 * shared by all hashing algorithms. 0 if every algorithm rescales the full
+	 * resolution image.
+	 */
+	protected int pyramidResolution = 0;
+
+	/**
+	 * Orders the hashing algorithms during queries by their observed cost and
+	 * selectivity. Statistics are not persisted.
+	 */
+	protected QueryPlanner queryPlanner = new QueryPlanner();
+
+	/**
+	 * Executor used to evaluate the hashing algorithms of a query in parallel or
+	 * null to evaluate them in the calling thread.
+	 */
+	protected Executor queryExecutor;
+
 	/**
 	 * Append a new hashing algorithm which will be executed after all hash
 	 * algorithms passed the test.
@@ -105,6 +128,85 @@ public abstract class TypedImageMatcher {
 		return Collections.unmodifiableMap(new LinkedHashMap<HashingAlgorithm, AlgoSettings>(steps));
 	}
 
+	/**
+	 * Set the resolution of the image pyramid shared by all hashing algorithms.
+	 * 
+	 * <p>
+	 * Images are decoded and prepared once and all hashing algorithms of this
+	 * matcher are fed from the same prepared image. If a pyramid resolution is set,
+	 * the image is downscaled once to an intermediate image whose longest side
+	 * matches the resolution instead of every algorithm rescaling the full
+	 * resolution image, considerably reducing the hashing cost of large images.
+	 * Resulting hashes may differ in a few bits from hashes created without the
+	 * pyramid. Images added to and queried against the matcher should therefore
+	 * be hashed with the same setting.
+	 * 
+	 * @param pyramidResolution the length of the longest side of the largest
+	 *                          pyramid level. 0 disables the pyramid (default).
+	 * @throws IllegalArgumentException if the resolution is negative
+	 * @see PreparedImage
+	 * @since 3.0.1
+	 */
+	public void setPyramidResolution(int pyramidResolution) {
+		if (pyramidResolution < 0) {
+			throw new IllegalArgumentException("The pyramid resolution may not be negative");
+		}
+		this.pyramidResolution = pyramidResolution;
+	}
+
+	/**
+	 * @return the length of the longest side of the largest level of the image
+	 *         pyramid or 0 if no pyramid is used.
+	 * @since 3.0.1
+	 */
+	public int getPyramidResolution() {
+		return pyramidResolution;
+	}
+
+	/**
+	 * Set the executor used to evaluate the hashing algorithms of a query in
+	 * parallel.
+	 * 
+	 * <p>
+	 * By default all algorithms are evaluated by the calling thread one after
+	 * another, skipping the remaining algorithms as soon as no candidate is left.
+	 * If an executor is set the query image is hashed by all algorithms at the same
+	 * time, lowering the latency of a single query at the cost of the work saved by
+	 * skipping algorithms. Matchers only evaluating a single algorithm ignore the
+	 * executor. The executor is not serialized.
+
+	 * 
+	 * @param queryExecutor the executor or null to evaluate queries in the calling
+	 *                      thread (default)
+	 * @see QueryPlanner
+	 * @since 3.0.1
+	 */
+	public void setQueryExecutor(Executor queryExecutor) {
+		this.queryExecutor = queryExecutor;
+	}
+
+	/**
+	 * @return the executor used to evaluate the hashing algorithms of a query in
+	 *         parallel or null if queries are evaluated in the calling thread.
+	 * @since 3.0.1
+	 */
+	public Executor getQueryExecutor() {
+		return queryExecutor;
+	}
+
+	/**
+	 * Prepare an image to be hashed by all hashing algorithms of this matcher.
+
+	 * 
+	 * @param image the image to prepare
+	 * @return the prepared image
+	 * @since 3.0.1
+	 */
+	protected PreparedImage prepare(BufferedImage image) {
+		return new PreparedImage(image, pyramidResolution);
+	}
+
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
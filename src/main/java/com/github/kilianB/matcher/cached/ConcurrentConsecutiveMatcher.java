@@ -0,0 +1,349 @@
+package com.github.kilianB.matcher.cached;
+
+import java.awt.image.BufferedImage;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.github.kilianB.datastructures.tree.Result;
+import com.github.kilianB.datastructures.tree.binaryTree.ConcurrentBinaryTree;
+import com.github.kilianB.hash.Hash;
+import com.github.kilianB.hashAlgorithms.HashingAlgorithm;
+import com.github.kilianB.hashAlgorithms.PreparedImage;
+import com.github.kilianB.matcher.QueryPlanner;
+import com.github.kilianB.matcher.TypedImageMatcher;
+
+/**
+ * Thread safe version of the {@link ConsecutiveMatcher} allowing images to be
+ * added and queried by multiple threads at the same time.
+ * <p>
+ * Queries never block. The hashing algorithms, their binary trees and hashes
+ * are published as an immutable configuration snapshot and each algorithm
+ * stores its hashes in a {@link ConcurrentBinaryTree}. Images are hashed without
+ * holding an exclusive lock and only the insertion into the individual trees is
+ * serialized per algorithm. Adding or removing hashing algorithms or images waits
+ * for all pending insertions to complete.
+ * <p>
+ * An image becomes visible to queries once it was added to the trees of all
+ * algorithms. Queries running while an image is added may or may not return
+ * the image.
+ *
+ * @author Kilian
+ * @since 3.0.1
+ */
+public class ConcurrentConsecutiveMatcher extends TypedImageMatcher {
+
+	/** keep track of images already added. No reason to rehash */
+	protected Set<BufferedImage> addedImages = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Shared by threads adding images, exclusively held while the algorithms are
+	 * altered
+	 */
+	private final ReadWriteLock configurationLock = new ReentrantReadWriteLock();
+
+	/** The algorithms and trees used by queries */
+	@SuppressWarnings("unchecked")
+	private volatile Configuration configuration = new Configuration(new LinkedHashMap<>(),
+			new ConcurrentBinaryTree[0], new ConcurrentHashMap[0]);
+
+	/**
+	 * Append a new hashing algorithm which will be executed after all hash
+	 * algorithms passed the test. Images already added to the matcher are hashed
+	 * by the new algorithm.
+	 *
+	 * @param algo       The algorithms to be added
+	 * @param threshold  the threshold the hamming distance may be in order to pass
+	 *                   as identical image.
+	 * @param normalized Weather the normalized or default hamming distance shall be
+	 *                   used. The normalized hamming distance will be in range of
+	 *                   [0-1] while the hamming distance depends on the length of
+	 *                   the hash
+	 */
+	@Override
+	public void addHashingAlgorithm(HashingAlgorithm algo, double threshold, boolean normalized) {
+		configurationLock.writeLock().lock();
+		try {
+			super.addHashingAlgorithm(algo, threshold, normalized);
+
+			if (configuration.indexOf(algo) < 0) {
+				ConcurrentBinaryTree<BufferedImage> binTree = new ConcurrentBinaryTree<>(true);
+				ConcurrentHashMap<BufferedImage, Hash> hashes = new ConcurrentHashMap<>();
+				for (BufferedImage image : addedImages) {
+					Hash hash = algo.hash(prepare(image));
+					hashes.put(image, hash);
+					binTree.addHash(hash, image);
+				}
+				publish(algo, binTree, hashes);
+			} else {
+				publish(null, null, null);
+			}
+		} finally {
+			configurationLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes the hashing algorithms from the image matcher.
+	 *
+	 * @param algo the algorithm to be removed
+	 * @return true if the algorithms was removed, false otherwise
+	 */
+	@Override
+	public boolean removeHashingAlgo(HashingAlgorithm algo) {
+		configurationLock.writeLock().lock();
+		try {
+			boolean removed = super.removeHashingAlgo(algo);
+			publish(null, null, null);
+			return removed;
+		} finally {
+			configurationLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Remove all hashing algorithms used by this image matcher instance. At least
+	 * one algorithm has to be supplied before imaages can be checked for similarity
+	 */
+	@Override
+	public void clearHashingAlgorithms() {
+		configurationLock.writeLock().lock();
+		try {
+			super.clearHashingAlgorithms();
+			publish(null, null, null);
+		} finally {
+			configurationLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Publish a new configuration reflecting the current steps.
+	 *
+	 * @param algo    an algorithm which is not yet part of the configuration or
+	 *                null
+	 * @param binTree the tree of the algorithm
+	 * @param hashes  the hashes of the added images of the algorithm
+	 */
+	@SuppressWarnings("unchecked")
+	private void publish(HashingAlgorithm algo, ConcurrentBinaryTree<BufferedImage> binTree,
+			ConcurrentHashMap<BufferedImage, Hash> hashes) {
+		Configuration old = configuration;
+		ConcurrentBinaryTree<BufferedImage>[] trees = new ConcurrentBinaryTree[steps.size()];
+		ConcurrentHashMap<BufferedImage, Hash>[] hashMaps = new ConcurrentHashMap[steps.size()];
+		int i = 0;
+		for (HashingAlgorithm step : steps.keySet()) {
+			if (step.equals(algo)) {
+				trees[i] = binTree;
+				hashMaps[i] = hashes;
+			} else {
+				int oldIndex = old.indexOf(step);
+				trees[i] = old.trees[oldIndex];
+				hashMaps[i] = old.hashes[oldIndex];
+			}
+			i++;
+		}
+		configuration = new Configuration(new LinkedHashMap<>(steps), trees, hashMaps);
+	}
+
+	@Override
+	public Map<HashingAlgorithm, AlgoSettings> getAlgorithms() {
+		return Collections.unmodifiableMap(configuration.steps);
+	}
+
+	/**
+	 * Add the image to the matcher allowing the image to be found in future
+	 * searches. This method may be called by multiple threads at the same time.
+	 *
+	 * @param image The image whose hash will be added to the matcher
+	 */
+	public void addImage(BufferedImage image) {
+		configurationLock.readLock().lock();
+		try {
+			Configuration config = configuration;
+			if (config.algorithms.length == 0)
+				throw new IllegalStateException(
+						"Please supply at least one hashing algorithm prior to invoking the match method");
+
+			if (!addedImages.add(image)) {
+				return;
+			}
+
+			Hash[] hashes;
+			try {
+				PreparedImage prepared = prepare(image);
+				hashes = new Hash[config.algorithms.length];
+				for (int i = 0; i < hashes.length; i++) {
+					hashes[i] = config.algorithms[i].hash(prepared);
+				}
+			} catch (RuntimeException e) {
+				addedImages.remove(image);
+				throw e;
+			}
+
+			for (int i = 0; i < hashes.length; i++) {
+				config.hashes[i].put(image, hashes[i]);
+				config.trees[i].addHash(hashes[i], image);
+			}
+		} finally {
+			configurationLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Remove a previously added image from the matcher. The cached hashes of the
+	 * image are removed from the binary trees of all hashing algorithms. Queries
+	 * started after this method returns no longer find the image.
+	 *
+	 * @param image The image to remove
+	 * @return true if the image was removed, false if the image was not added
+	 * @since 3.0.1
+	 */
+	public boolean removeImage(BufferedImage image) {
+		configurationLock.writeLock().lock();
+		try {
+			if (!addedImages.remove(image)) {
+				return false;
+			}
+			Configuration config = configuration;
+			for (int i = 0; i < config.algorithms.length; i++) {
+				Hash hash = config.hashes[i].remove(image);
+				config.trees[i].removeHash(hash, image);
+			}
+			return true;
+		} finally {
+			configurationLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Add the images to the matcher allowing the image to be found in future
+	 * searches.
+	 *
+	 * @param imagesToAdd The images whose hash will be added to the matcher
+	 */
+
+	public void addImages(BufferedImage... imagesToAdd) {
+		for (BufferedImage img : imagesToAdd) {
+			this.addImage(img);
+		}
+	}
+
+	/**
+	 * Search for all similar images passing the algorithm filters supplied to this
+	 * matcher. If the image itself was added to the tree it will be returned with a
+	 * distance of 0. This method may be called by multiple threads at the same time
+	 * and does not block.
+	 *
+	 * @param image The image other images will be matched against
+	 * @return Similar images Return all images sorted by the
+	 *         <a href="https://en.wikipedia.org/wiki/Hamming_distance">hamming
+	 *         distance</a> of the last applied algorithms
+	 */
+	public PriorityQueue<Result<BufferedImage>> getMatchingImages(BufferedImage image) {
+		return getMatchingImages(image, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Search for the k most similar images passing the algorithm filters supplied
+	 * to this matcher. This method may be called by multiple threads at the same
+	 * time and does not block.
+	 *
+	 * @param image The image other images will be matched against
+	 * @param k     the maximum number of images returned
+	 * @return At most k similar images sorted by the
+	 *         <a href="https://en.wikipedia.org/wiki/Hamming_distance">hamming
+	 *         distance</a> of the last applied algorithms
+	 * @throws IllegalArgumentException if k is not positive
+	 * @since 3.0.1
+	 */
+	public PriorityQueue<Result<BufferedImage>> getMatchingImages(BufferedImage image, int k) {
+
+		Configuration config = configuration;
+
+		if (config.algorithms.length == 0)
+			throw new IllegalStateException(
+					"Please supply at least one hashing algorithm prior to invoking the match method");
+
+		return queryPlanner.execute(config.algorithms, config.settings, null, prepare(image),
+				new QueryPlanner.Source<BufferedImage, RuntimeException>() {
+					@Override
+					public int size(int algorithm) {
+						return config.trees[algorithm].getHashCount();
+					}
+
+					@Override
+					public Collection<Result<BufferedImage>> search(int algorithm, Hash needle, int maxDistance) {
+						return config.trees[algorithm].getElementsWithinHammingDistance(needle, maxDistance);
+					}
+
+					@Override
+					public boolean supportsLookup(int algorithm) {
+						return true;
+					}
+
+					@Override
+					public Map<BufferedImage, Hash> lookup(int algorithm, Collection<BufferedImage> candidates) {
+						return config.hashes[algorithm];
+					}
+
+					@Override
+					public Collection<Result<BufferedImage>> nearest(int algorithm, Hash needle, int limit) {
+						return config.trees[algorithm].getNearestNeighbours(needle, limit);
+					}
+				}, queryExecutor, k);
+
+	}
+
+	/**
+	 * @return the number of images added to the matcher
+	 */
+	public int getImageCount() {
+		return addedImages.size();
+	}
+
+	/**
+	 * Print all binary trees currently in use by this image matcher. This gives an
+	 * internal view of the saved images
+	 */
+	public void printAllTrees() {
+		for (ConcurrentBinaryTree<BufferedImage> binTree : configuration.trees) {
+			binTree.printTree();
+		}
+	}
+
+	/**
+	 * Immutable snapshot of the hashing algorithms, their trees and hashes
+	 */
+	private static class Configuration {
+		final Map<HashingAlgorithm, AlgoSettings> steps;
+		final HashingAlgorithm[] algorithms;
+		final AlgoSettings[] settings;
+		final ConcurrentBinaryTree<BufferedImage>[] trees;
+		final ConcurrentHashMap<BufferedImage, Hash>[] hashes;
+
+		Configuration(LinkedHashMap<HashingAlgorithm, AlgoSettings> steps,
+				ConcurrentBinaryTree<BufferedImage>[] trees, ConcurrentHashMap<BufferedImage, Hash>[] hashes) {
+			this.steps = steps;
+			this.algorithms = steps.keySet().toArray(new HashingAlgorithm[steps.size()]);
+			this.settings = steps.values().toArray(new AlgoSettings[steps.size()]);
+			this.trees = trees;
+			this.hashes = hashes;
+		}
+
+		int indexOf(HashingAlgorithm algo) {
+			for (int i = 0; i < algorithms.length; i++) {
+				if (algorithms[i].equals(algo)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+	}
+
+}
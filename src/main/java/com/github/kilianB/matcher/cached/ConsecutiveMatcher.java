@@ -1,6 +1,7 @@
 package com.github.kilianB.matcher.cached;
 
 import java.awt.image.BufferedImage;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -10,9 +11,12 @@ import java.util.Map.Entry;
 import java.util.PriorityQueue;
 
 import com.github.kilianB.datastructures.tree.Result;
+import com.github.kilianB.datastructures.tree.binaryTree.AdaptiveBinaryTree;
 import com.github.kilianB.datastructures.tree.binaryTree.BinaryTree;
 import com.github.kilianB.hash.Hash;
 import com.github.kilianB.hashAlgorithms.HashingAlgorithm;
+import com.github.kilianB.hashAlgorithms.PreparedImage;
+import com.github.kilianB.matcher.QueryPlanner;
 import com.github.kilianB.matcher.TypedImageMatcher;
 
 /**
@@ -28,8 +32,13 @@ import com.github.kilianB.matcher.TypedImageMatcher;
  * requiring all algorithms added to agree to produce a match, discarding the
  * result fast if one of the algorithms does not consider the images similar.
  * <p>
- * This means that the order of the hashing algorithms supplied hash has an
- * impact on the performance, the fastest algorithm should be added first.
+ * The order in which the algorithms are evaluated is determined by the
+ * {@link QueryPlanner} based on their observed cost and selectivity. Only the
+ * most selective algorithm searches its binary tree, the remaining algorithms
+ * compare the cached hashes of the candidates.
+ * <p>
+ * Until a tree holds {@link AdaptiveBinaryTree#DEFAULT_THRESHOLD} hashes it is
+ * searched by scanning all hashes which is faster for small collections.
  * 
  * @author Kilian
  */
@@ -41,6 +50,12 @@ public class ConsecutiveMatcher extends TypedImageMatcher {
 	/** Binary Tree holding results for each individual hashing algorithm */
 	protected HashMap<HashingAlgorithm, BinaryTree<BufferedImage>> binTreeMap = new HashMap<>();
 
+	/**
+	 * The hashes of the added images for each individual hashing algorithm. Used
+	 * to verify candidates without searching the tree.
+	 */
+	protected HashMap<HashingAlgorithm, Map<BufferedImage, Hash>> hashMap = new HashMap<>();
+
 	/**
 	 * Append a new hashing algorithm which will be executed after all hash
 	 * algorithms passed the test.
@@ -56,12 +71,16 @@ public class ConsecutiveMatcher extends TypedImageMatcher {
 	public void addHashingAlgorithm(HashingAlgorithm algo, double threshold, boolean normalized) {
 		super.addHashingAlgorithm(algo, threshold, normalized);
 
-		BinaryTree<BufferedImage> binTree = new BinaryTree<>(true);
+		BinaryTree<BufferedImage> binTree = new AdaptiveBinaryTree<>(true);
 		binTreeMap.put(algo, binTree);
+		Map<BufferedImage, Hash> hashes = new HashMap<>();
+		hashMap.put(algo, hashes);
 
 		// Also add all images which were added to the image matcher earlier
-		if (!addedImages.isEmpty()) {
-			addedImages.forEach(image -> binTree.addHash(algo.hash(image), image));
+		for (BufferedImage image : addedImages) {
+			Hash hash = algo.hash(prepare(image));
+			binTree.addHash(hash, image);
+			hashes.put(image, hash);
 		}
 	}
 
@@ -73,6 +92,7 @@ public class ConsecutiveMatcher extends TypedImageMatcher {
 	 */
 	public boolean removeHashingAlgo(HashingAlgorithm algo) {
 		binTreeMap.remove(algo);
+		hashMap.remove(algo);
 		return super.removeHashingAlgo(algo);
 	}
 
@@ -82,6 +102,7 @@ public class ConsecutiveMatcher extends TypedImageMatcher {
 	 */
 	public void clearHashingAlgorithms() {
 		binTreeMap.clear();
+		hashMap.clear();
 		super.clearHashingAlgorithms();
 	}
 
@@ -111,14 +132,36 @@ public class ConsecutiveMatcher extends TypedImageMatcher {
 			return;
 		}
 
+		PreparedImage prepared = prepare(image);
 		for (Entry<HashingAlgorithm, AlgoSettings> entry : steps.entrySet()) {
 			HashingAlgorithm algo = entry.getKey();
-			BinaryTree<BufferedImage> binTree = binTreeMap.get(algo);
-			binTree.addHash(algo.hash(image), image);
+			Hash hash = algo.hash(prepared);
+			binTreeMap.get(algo).addHash(hash, image);
+			hashMap.get(algo).put(image, hash);
 		}
 		addedImages.add(image);
 	}
 
+	/**
+	 * Remove a previously added image from the matcher. The cached hashes of the
+	 * image are removed from the binary trees of all hashing algorithms and
+	 * branches no longer leading to any image are released.
+	 * 
+	 * @param image The image to remove
+	 * @return true if the image was removed, false if the image was not added
+	 * @since 3.0.1
+	 */
+	public boolean removeImage(BufferedImage image) {
+		if (!addedImages.remove(image)) {
+			return false;
+		}
+		for (HashingAlgorithm algo : steps.keySet()) {
+			Hash hash = hashMap.get(algo).remove(image);
+			binTreeMap.get(algo).removeHash(hash, image);
+		}
+		return true;
+	}
+
 	/**
 	 * Add the images to the matcher allowing the image to be found in future
 	 * searches.
@@ -142,41 +185,64 @@ public class ConsecutiveMatcher extends TypedImageMatcher {
 	 *         distance</a> of the last applied algorithms
 	 */
 	public PriorityQueue<Result<BufferedImage>> getMatchingImages(BufferedImage image) {
+		return getMatchingImages(image, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Search for the k most similar images passing the algorithm filters supplied
+	 * to this matcher. If only a single algorithm is used the binary tree is
+	 * searched for the k closest hashes directly instead of collecting all
+	 * matches.
+	 * 
+	 * @param image The image other images will be matched against
+	 * @param k     the maximum number of images returned
+	 * @return At most k similar images sorted by the
+	 *         <a href="https://en.wikipedia.org/wiki/Hamming_distance">hamming
+	 *         distance</a> of the last applied algorithms
+	 * @throws IllegalArgumentException if k is not positive
+	 * @since 3.0.1
+	 */
+	public PriorityQueue<Result<BufferedImage>> getMatchingImages(BufferedImage image, int k) {
 
 		if (steps.isEmpty())
 			throw new IllegalStateException(
 					"Please supply at least one hashing algorithm prior to invoking the match method");
 
-		PriorityQueue<Result<BufferedImage>> returnValues = null;
-
-		for (Entry<HashingAlgorithm, AlgoSettings> entry : steps.entrySet()) {
-			HashingAlgorithm algo = entry.getKey();
-
-			BinaryTree<BufferedImage> binTree = binTreeMap.get(algo);
-			AlgoSettings settings = entry.getValue();
-
-			Hash needleHash = algo.hash(image);
-
-			int threshold = 0;
-			if (settings.isNormalized()) {
-				int hashLength = needleHash.getBitResolution();
-				threshold = (int) Math.round(settings.getThreshold() * hashLength);
-			} else {
-				threshold = (int) settings.getThreshold();
-			}
+		HashingAlgorithm[] algorithms = steps.keySet().toArray(new HashingAlgorithm[steps.size()]);
+		AlgoSettings[] settings = steps.values().toArray(new AlgoSettings[steps.size()]);
+
+		return queryPlanner.execute(algorithms, settings, null, prepare(image),
+				new QueryPlanner.Source<BufferedImage, RuntimeException>() {
+					@Override
+					public int size(int algorithm) {
+						return binTreeMap.get(algorithms[algorithm]).getHashCount();
+					}
+
+					@Override
+					public Collection<Result<BufferedImage>> search(int algorithm, Hash needle, int maxDistance) {
+						return binTreeMap.get(algorithms[algorithm]).getElementsWithinHammingDistance(needle,
+								maxDistance);
+					}
+
+					@Override
+					public boolean supportsLookup(int algorithm) {
+						return true;
+					}
+
+					@Override
+					public Map<BufferedImage, Hash> lookup(int algorithm, Collection<BufferedImage> candidates) {
+						return hashMap.get(algorithms[algorithm]);
+					}
+
+					@Override
+					public Collection<Result<BufferedImage>> nearest(int algorithm, Hash needle, int limit) {
+						return binTreeMap.get(algorithms[algorithm]).getNearestNeighbours(needle, limit);
+					}
+				}, queryExecutor, k);
 
-			PriorityQueue<Result<BufferedImage>> temp = binTree.getElementsWithinHammingDistance(needleHash, threshold);
-
-			if (returnValues == null) {
-				returnValues = temp;
-			} else {
-				temp.retainAll(returnValues);
-				returnValues = temp;
-			}
-		}
-		return returnValues;
 	}
 
+
 	/**
 	 * Print all binary trees currently in use by this image matcher. This gives an
 	 * internal view of the saved images
@@ -12,6 +12,8 @@ import com.github.kilianB.datastructures.tree.Result;
 import com.github.kilianB.datastructures.tree.binaryTree.BinaryTree;
 import com.github.kilianB.hash.Hash;
 import com.github.kilianB.hashAlgorithms.HashingAlgorithm;
+import com.github.kilianB.hashAlgorithms.PreparedImage;
+
 
 /**
  * Convenience class allowing to chain multiple hashing algorithms to find
@@ -158,6 +160,8 @@ public class CumulativeMatcher extends ConsecutiveMatcher {
 		// https://stackoverflow.com/a/31401836/3244464 TODO jmh benchmark
 		float optimalLoadFactor = (float) Math.log(2);
 
+		PreparedImage prepared = prepare(image);
+
 		// For each hashing algorithm
 		for (Entry<HashingAlgorithm, AlgoSettings> entry : steps.entrySet()) {
 			HashingAlgorithm algo = entry.getKey();
@@ -171,7 +175,8 @@ public class CumulativeMatcher extends ConsecutiveMatcher {
 					.ceil((first ? binTree.getHashCount() : distanceMap.size()) / optimalLoadFactor) + 1);
 			temporaryMap = new HashMap<>(optimalCapacity, optimalLoadFactor);
 
-			Hash needleHash = algo.hash(image);
+			Hash needleHash = algo.hash(prepared);
+
 
 			int bitRes = algo.getKeyResolution();
 
@@ -0,0 +1,432 @@
+package com.github.kilianB.matcher.categorize.supervised.randomForest;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import com.github.kilianB.MathUtil;
+import com.github.kilianB.datastructures.ParallelRange;
+import com.github.kilianB.hash.FuzzyHash;
+import com.github.kilianB.hash.Hash;
+import com.github.kilianB.hashAlgorithms.HashingAlgorithm;
+import com.github.kilianB.hashAlgorithms.PreparedImage;
+import com.github.kilianB.matcher.categorize.supervised.LabeledImage;
+import com.github.kilianB.pcg.fast.PcgRSFast;
+
+/**
+ * Builds the decision trees of a random forest.
+ *
+ * <p>
+ * Every labeled image is hashed once by each hashing algorithm. Only the hamming
+ * distances of the hashes to the variables of the forest are kept in a feature
+ * matrix. Building the trees accesses the matrix and never hashes an image
+ * again.
+ *
+ * <p>
+ * Each tree is trained on a bootstrapped sample of the images. It draws all
+ * random numbers from its own generator, seeded by the seed and the index of
+ * the tree. Trees are built in parallel and the forest only depends on the
+ * seed. The images not drawn for a tree are used to compute the out of bag
+ * error.
+ *
+ * <p>
+ * The split points of a variable are found by sorting the images of a node by
+ * their distance to the variable with a counting sort. The possible cutoffs are
+ * then swept while updating the category counts of both sides.
+ *
+ * @author Kilian
+ * @since 3.0.1
+ */
+class ForestTrainer {
+
+	/** Number of images evaluated by a single task when computing the errors */
+	private static final int CHUNK_SIZE = 1 << 8;
+
+	/** Hamming distance of each image to each variable [variable][image] */
+	private final int[][] distances;
+
+	/** Bit resolution of each variable */
+	private final int[] bits;
+
+	/** Category index of each image */
+	private final int[] labels;
+
+	/** The categories in ascending order */
+	private final List<Integer> categories;
+
+	/** The variables the distances are computed to */
+	private final Hash[] variables;
+
+	/** The variables as referenced by inner nodes */
+	private final FuzzyHash[] fuzzyVariables;
+
+	/** The hashing algorithms of the hash vector */
+	private final HashingAlgorithm[] algorithms;
+
+	/** Index of the hashing algorithm of each variable in the hash vector */
+	private final int[] variableAlgorithm;
+
+	/** Pool used to hash images and build trees. May be null */
+	private final ForkJoinPool pool;
+
+	/**
+	 * Hash the labeled images and compute the feature matrix.
+	 *
+	 * @param images            the labeled images
+	 * @param categories        the categories of the images in ascending order
+	 * @param algorithms        the hashing algorithms of the hash vector
+	 * @param variables         the variables
+	 * @param variableAlgorithm the index of the hashing algorithm of each
+	 *                          variable
+	 * @param pool              the pool used to hash the images and build the
+	 *                          trees. If null all work is done on the calling
+	 *                          thread
+	 */
+	ForestTrainer(List<LabeledImage> images, List<Integer> categories, HashingAlgorithm[] algorithms,
+			Hash[] variables, int[] variableAlgorithm, ForkJoinPool pool) {
+		this.categories = categories;
+		this.algorithms = algorithms;
+		this.variables = variables;
+		this.variableAlgorithm = variableAlgorithm;
+		this.pool = pool;
+
+		bits = new int[variables.length];
+		fuzzyVariables = new FuzzyHash[variables.length];
+		for (int i = 0; i < variables.length; i++) {
+			bits[i] = variables[i].getBitResolution();
+			fuzzyVariables[i] = new FuzzyHash(variables[i]);
+			// Variables are shared by all trees. Compute the lazy hash before the trees
+			// are built concurrently
+			fuzzyVariables[i].getPackedHashValue();
+		}
+
+		int n = images.size();
+		labels = new int[n];
+		distances = new int[variables.length][n];
+		ParallelRange.forEach(pool, 0, n, 1, (from, to) -> {
+			for (int i = from; i < to; i++) {
+				LabeledImage image = images.get(i);
+				labels[i] = Collections.binarySearch(categories, image.getCategory());
+				PreparedImage prepared = new PreparedImage(image.getbImage());
+				Hash[] hashes = new Hash[algorithms.length];
+				for (int j = 0; j < hashes.length; j++) {
+					hashes[j] = algorithms[j].hash(prepared);
+				}
+				for (int v = 0; v < variables.length; v++) {
+					distances[v][i] = variables[v].hammingDistanceFast(hashes[variableAlgorithm[v]]);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Train a forest
+	 *
+	 * @param trees      number of trees to create
+	 * @param numVars    number of variables to try at each node
+	 * @param numVarsRep number of times the same variable may be used in a single
+	 *                   branch
+	 * @param seed       the seed of the random number generators
+	 * @return the trained forest
+	 */
+	TrainedForest train(int trees, int numVars, int numVarsRep, long seed) {
+		int n = labels.length;
+		TreeNode[] roots = new TreeNode[trees];
+		boolean[][] inBag = new boolean[trees][n];
+
+		ParallelRange.forEach(pool, 0, trees, 1, (from, to) -> {
+			for (int t = from; t < to; t++) {
+				// Stream 0 is reserved for the variables
+				Random rng = new PcgRSFast(seed, t + 1);
+
+				// Bootstrap. Draw a sample of the same size with replacement
+				int[] samples = new int[n];
+				for (int i = 0; i < n; i++) {
+					samples[i] = rng.nextInt(n);
+					inBag[t][samples[i]] = true;
+				}
+
+				int[] remaining = new int[variables.length];
+				Arrays.fill(remaining, numVarsRep);
+				roots[t] = buildTree(samples, remaining, numVars, rng, Double.MAX_VALUE);
+			}
+		});
+
+		PackedForest packed = new PackedForest(Arrays.asList(roots), categories, variables, variableAlgorithm);
+
+		// 0 correct, 1 wrong and -1 if the image was in the bag of every tree
+		int[] outOfBag = new int[n];
+		int[] all = new int[n];
+		int categoryCount = categories.size();
+		ParallelRange.forEach(pool, 0, n, CHUNK_SIZE, (from, to) -> {
+			double[] features = new double[variables.length];
+			int[] votes = new int[categoryCount];
+			int[] outOfBagVotes = new int[categoryCount];
+			for (int i = from; i < to; i++) {
+				for (int v = 0; v < features.length; v++) {
+					features[v] = distances[v][i] / (double) bits[v];
+				}
+				Arrays.fill(votes, 0);
+				Arrays.fill(outOfBagVotes, 0);
+				boolean voted = false;
+				for (int t = 0; t < trees; t++) {
+					int category = packed.predict(t, features);
+					votes[category]++;
+					if (!inBag[t][i]) {
+						outOfBagVotes[category]++;
+						voted = true;
+					}
+				}
+				all[i] = maximumIndex(votes) == labels[i] ? 0 : 1;
+				outOfBag[i] = !voted ? -1 : maximumIndex(outOfBagVotes) == labels[i] ? 0 : 1;
+			}
+		});
+
+		int wrong = 0;
+		int outOfBagWrong = 0;
+		int outOfBagCount = 0;
+		for (int i = 0; i < n; i++) {
+			wrong += all[i];
+			if (outOfBag[i] != -1) {
+				outOfBagWrong += outOfBag[i];
+				outOfBagCount++;
+			}
+		}
+		// Without out of bag votes the forest can't be assessed. Rank it last
+		double outOfBagError = outOfBagCount == 0 ? 1 : outOfBagWrong / (double) outOfBagCount;
+		return new TrainedForest(Arrays.asList(roots), packed, outOfBagError, wrong / (double) n);
+	}
+
+	private TreeNode buildTree(int[] samples, int[] remaining, int numVars, Random rng, double qualityThreshold) {
+
+		Split split = findSplit(samples, remaining, numVars, rng);
+
+		if (split == null || split.gini >= qualityThreshold
+				|| MathUtil.isDoubleEquals(split.giniLeft, qualityThreshold, 1e-8)) {
+			return new LeafNode(categories.get(maximumIndex(countCategories(samples))));
+		}
+
+		// Limit how often the variable appears in this branch
+		int[] branchRemaining = remaining.clone();
+		branchRemaining[split.variable]--;
+
+		int[] column = distances[split.variable];
+		double bitResolution = bits[split.variable];
+		int leftSize = 0;
+		for (int sample : samples) {
+			if (column[sample] / bitResolution < split.cutoff) {
+				leftSize++;
+			}
+		}
+		int[] left = new int[leftSize];
+		int[] right = new int[samples.length - leftSize];
+		int l = 0;
+		int r = 0;
+		for (int sample : samples) {
+			if (column[sample] / bitResolution < split.cutoff) {
+				left[l++] = sample;
+			} else {
+				right[r++] = sample;
+			}
+		}
+
+		int v = split.variable;
+		InnerNode node = new InnerNode(fuzzyVariables[v], algorithms[variableAlgorithm[v]], v, split.cutoff,
+				split.gini, split.giniLeft, split.giniRight);
+
+		if (left.length > 0 && !MathUtil.isDoubleEquals(split.giniLeft, 0, 1e-8)) {
+			node.leftNode = buildTree(left, branchRemaining, numVars, rng, split.giniLeft);
+		} else {
+			node.leftNode = new LeafNode(categories.get(split.categoryLeft));
+		}
+
+		if (right.length > 0 && !MathUtil.isDoubleEquals(split.giniRight, 0, 1e-8)) {
+			node.rightNode = buildTree(right, branchRemaining, numVars, rng, split.giniRight);
+		} else {
+			node.rightNode = new LeafNode(categories.get(split.categoryRight));
+		}
+		return node;
+	}
+
+	/**
+	 * Find the cutoff minimizing the weighted gini impurity of a randomly chosen
+	 * subset of the variables. The impurity of each side is computed between the
+	 * dominant category of the side and all other categories.
+	 *
+	 * @param samples   the images reaching the node
+	 * @param remaining the number of times each variable may still be used
+	 * @param numVars   the number of variables to try
+	 * @param rng       the random number generator of the tree
+	 * @return the best split or null if no variable separates the images
+	 */
+	private Split findSplit(int[] samples, int[] remaining, int numVars, Random rng) {
+
+		int candidateCount = 0;
+		int[] candidates = new int[remaining.length];
+		for (int v = 0; v < remaining.length; v++) {
+			if (remaining[v] > 0) {
+				candidates[candidateCount++] = v;
+			}
+		}
+
+		int n = samples.length;
+		int[] total = countCategories(samples);
+		int[] left = new int[total.length];
+
+		Split best = null;
+
+		for (int i = 0; i < numVars && i < candidateCount; i++) {
+
+			// Partial fisher yates shuffle
+			int swap = i + rng.nextInt(candidateCount - i);
+			int v = candidates[swap];
+			candidates[swap] = candidates[i];
+			candidates[i] = v;
+
+			int[] column = distances[v];
+			int[] sorted = sortByDistance(samples, column, bits[v]);
+			Arrays.fill(left, 0);
+
+			for (int k = 0; k < n - 1; k++) {
+				left[labels[sorted[k]]]++;
+				int distance = column[sorted[k]];
+				int next = column[sorted[k + 1]];
+				if (distance == next) {
+					continue;
+				}
+
+				int leftSize = k + 1;
+				int rightSize = n - leftSize;
+
+				int categoryLeft = maximumIndex(left);
+				int categoryRight = 0;
+				for (int c = 1; c < total.length; c++) {
+					if (total[c] - left[c] > total[categoryRight] - left[categoryRight]) {
+						categoryRight = c;
+					}
+				}
+
+				double giniLeft = gini(left[categoryLeft], leftSize);
+				double giniRight = gini(total[categoryRight] - left[categoryRight], rightSize);
+				double gini = leftSize / (double) n * giniLeft + rightSize / (double) n * giniRight;
+
+				if (best == null || gini < best.gini || gini == best.gini && leftSize > best.leftSize) {
+					if (best == null) {
+						best = new Split();
+					}
+					best.variable = v;
+					best.cutoff = (distance / (double) bits[v] + next / (double) bits[v]) / 2;
+					best.gini = gini;
+					best.giniLeft = giniLeft;
+					best.giniRight = giniRight;
+					best.categoryLeft = categoryLeft;
+					best.categoryRight = categoryRight;
+					best.leftSize = leftSize;
+				}
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Gini impurity of a node distinguishing between the dominant category and all
+	 * other categories
+	 *
+	 * @param dominant the number of images of the dominant category
+	 * @param size     the number of images
+	 * @return the gini impurity
+	 */
+	private static double gini(int dominant, int size) {
+		double match = dominant / (double) size;
+		double mismatch = (size - dominant) / (double) size;
+		return 1 - match * match - mismatch * mismatch;
+	}
+
+	private int[] countCategories(int[] samples) {
+		int[] count = new int[categories.size()];
+		for (int sample : samples) {
+			count[labels[sample]]++;
+		}
+		return count;
+	}
+
+	/**
+	 * Stable counting sort of the samples by their distance to a variable
+	 *
+	 * @param samples     the samples to sort
+	 * @param column      the distances of all images to the variable
+	 * @param maxDistance the largest possible distance
+	 * @return the sorted samples
+	 */
+	private static int[] sortByDistance(int[] samples, int[] column, int maxDistance) {
+		int[] offsets = new int[maxDistance + 2];
+		for (int sample : samples) {
+			offsets[column[sample] + 1]++;
+		}
+		for (int i = 1; i < offsets.length; i++) {
+			offsets[i] += offsets[i - 1];
+		}
+		int[] sorted = new int[samples.length];
+		for (int sample : samples) {
+			sorted[offsets[column[sample]]++] = sample;
+		}
+		return sorted;
+	}
+
+	/**
+	 * @return the index of the largest value. Ties resolve to the smaller index
+	 */
+	private static int maximumIndex(int[] values) {
+		int index = 0;
+		for (int i = 1; i < values.length; i++) {
+			if (values[i] > values[index]) {
+				index = i;
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * The best split found for a node
+	 */
+	private static class Split {
+		int variable;
+		double cutoff;
+		double gini;
+		double giniLeft;
+		double giniRight;
+		int categoryLeft;
+		int categoryRight;
+		int leftSize;
+	}
+
+	/**
+	 * A forest and its classification errors
+	 */
+	static class TrainedForest {
+
+		/** The root nodes of the trees */
+		final List<TreeNode> roots;
+
+		/** The trees packed for classification */
+		final PackedForest packed;
+
+		/**
+		 * The fraction of images misclassified by the trees which did not see them
+		 * during training. 1 if every image was used by every tree
+		 */
+		final double outOfBagError;
+
+		/** The fraction of labeled images misclassified by the forest */
+		final double trainingError;
+
+		TrainedForest(List<TreeNode> roots, PackedForest packed, double outOfBagError, double trainingError) {
+			this.roots = roots;
+			this.packed = packed;
+			this.outOfBagError = outOfBagError;
+			this.trainingError = trainingError;
+		}
+	}
+}
@@ -1,16 +1,15 @@
 package com.github.kilianB.matcher.categorize.supervised.randomForest;
 
-import java.awt.image.BufferedImage;
-
 import com.github.kilianB.StringUtil;
 import com.github.kilianB.hash.FuzzyHash;
-import com.github.kilianB.hash.Hash;
 import com.github.kilianB.hashAlgorithms.HashingAlgorithm;
 
 class InnerNode extends TreeNode {
 
 	private FuzzyHash internalHash;
 	private HashingAlgorithm hasher;
+	/** Index of the internal hash in the variables of the forest */
+	private int variableIndex;
 	private double threshold;
 
 	// Not really entropy in all cases
@@ -26,35 +25,37 @@ class InnerNode extends TreeNode {
 
 	/**
 	 * @param hasher
+	 * @param variableIndex the index of the internal hash in the variables
 	 * @param bestCutoff
 	 */
-	public InnerNode(FuzzyHash internalHash, HashingAlgorithm hasher, double bestCutoff, double quality, double qualityLeft,
-			double qualityRight) {
+	public InnerNode(FuzzyHash internalHash, HashingAlgorithm hasher, int variableIndex, double bestCutoff,
+			double quality, double qualityLeft, double qualityRight) {
 		super();
 		this.internalHash = internalHash;
+		// Bring the lazily computed hash up to date. Predictions only read it and may
+		// run concurrently
+		internalHash.getPackedHashValue();
 		this.hasher = hasher;
+		this.variableIndex = variableIndex;
 		this.threshold = bestCutoff;
 		this.quality = quality;
 		this.qualityLeft = qualityLeft;
 		this.qualityRight = qualityRight;
 	}
 
-	
-
-	public int[] predictAgainstAll(BufferedImage bi) {
-
-		Hash targetHash = hasher.hash(bi);
-
-		double distance = internalHash.normalizedHammingDistance(targetHash);
-	
-		if (distance < threshold) {
-			return leftNode.predictAgainstAll(bi);
-		} else {
-			return rightNode.predictAgainstAll(bi);
-		}
+	/**
+	 * @return the index of the internal hash in the variables of the forest
+	 */
+	int getVariableIndex() {
+		return variableIndex;
 	}
 
-	
+	/**
+	 * @return the cutoff. Images closer to the internal hash go left
+	 */
+	double getThreshold() {
+		return threshold;
+	}
 
 	@Override
 	public String toString() {
@@ -74,4 +75,4 @@ class InnerNode extends TreeNode {
 			rightNode.printTree(depth);
 	}
 
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -1,6 +1,5 @@
 package com.github.kilianB.matcher.categorize.supervised.randomForest;
 
-import java.awt.image.BufferedImage;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import com.github.kilianB.StringUtil;
@@ -37,12 +36,7 @@ class LeafNode extends TreeNode {
 		System.out.println(StringUtil.multiplyChar("\t", depth) + this);
 	}
 
-	@Override
-	public int[] predictAgainstAll(BufferedImage bi) {
-		return new int[]{category,id};
-	}
-	
 	public String toString() {
 		return "LeafNode " + this.hashCode() + " [Category:" + category + "] ";
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
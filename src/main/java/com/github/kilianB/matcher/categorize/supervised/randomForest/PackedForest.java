@@ -0,0 +1,194 @@
+package com.github.kilianB.matcher.categorize.supervised.randomForest;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.github.kilianB.hash.Hash;
+
+/**
+ * The decision trees of a trained random forest packed into flat arrays.
+ *
+ * <p>
+ * The nodes of all trees are stored in pre order. The left child of an inner
+ * node directly follows its parent, only the index of the right child is
+ * stored. Classifying an image walks the arrays instead of chasing node
+ * objects.
+ *
+ * <p>
+ * The features of an image are the normalized hamming distances of its hashes
+ * to the variables of the forest. A packed forest is immutable and can be
+ * queried concurrently.
+ *
+ * @author Kilian
+ * @since 3.0.1
+ */
+class PackedForest {
+
+	/** Index of the root node of each tree */
+	private final int[] roots;
+
+	/**
+	 * Variable index of inner nodes or the bitwise complement of the category
+	 * index of leaf nodes
+	 */
+	private final int[] nodes;
+
+	/** Cutoff of inner nodes. Features smaller than the cutoff go left */
+	private final double[] thresholds;
+
+	/** Index of the right child of inner nodes */
+	private final int[] rightChild;
+
+	/** The categories, ascending */
+	private final List<Integer> categories;
+
+	/** The variables the distances are computed to */
+	private final Hash[] variables;
+
+	/** Index of the hashing algorithm of each variable in the hash vector */
+	private final int[] variableAlgorithm;
+
+	/** Indicates if the variable is used by any inner node */
+	private final boolean[] usedVariables;
+
+	/**
+	 * @param trees             the root nodes of the trees
+	 * @param categories        the categories in ascending order
+	 * @param variables         the variables referenced by the inner nodes
+	 * @param variableAlgorithm the index of the hashing algorithm of each variable
+	 *                          in the hash vector
+	 */
+	PackedForest(List<TreeNode> trees, List<Integer> categories, Hash[] variables, int[] variableAlgorithm) {
+		this.categories = categories;
+		this.variables = variables;
+		this.variableAlgorithm = variableAlgorithm;
+
+		int size = 0;
+		for (TreeNode root : trees) {
+			size += countNodes(root);
+		}
+		roots = new int[trees.size()];
+		nodes = new int[size];
+		thresholds = new double[size];
+		rightChild = new int[size];
+		usedVariables = new boolean[variables.length];
+
+		int offset = 0;
+		for (int i = 0; i < roots.length; i++) {
+			roots[i] = offset;
+			offset = pack(trees.get(i), offset);
+		}
+	}
+
+	private static int countNodes(TreeNode node) {
+		if (node instanceof InnerNode) {
+			InnerNode inner = (InnerNode) node;
+			return 1 + countNodes(inner.leftNode) + countNodes(inner.rightNode);
+		}
+		return 1;
+	}
+
+	/**
+	 * Pack the subtree into the arrays
+	 *
+	 * @param node   the root of the subtree
+	 * @param offset the index of the node
+	 * @return the index following the last node of the subtree
+	 */
+	private int pack(TreeNode node, int offset) {
+		if (node instanceof InnerNode) {
+			InnerNode inner = (InnerNode) node;
+			nodes[offset] = inner.getVariableIndex();
+			thresholds[offset] = inner.getThreshold();
+			usedVariables[inner.getVariableIndex()] = true;
+			int right = pack(inner.leftNode, offset + 1);
+			rightChild[offset] = right;
+			return pack(inner.rightNode, right);
+		}
+		nodes[offset] = ~Collections.binarySearch(categories, ((LeafNode) node).category);
+		return offset + 1;
+	}
+
+	/**
+	 * Compute the features of an image. Features of variables not used by the
+	 * forest are not computed.
+	 *
+	 * @param hashes the hashes of the image indexed by the algorithm index
+	 * @return the normalized distance of the image to each variable
+	 */
+	double[] features(Hash[] hashes) {
+		double[] features = new double[variables.length];
+		for (int i = 0; i < features.length; i++) {
+			if (usedVariables[i]) {
+				features[i] = variables[i].normalizedHammingDistanceFast(hashes[variableAlgorithm[i]]);
+			}
+		}
+		return features;
+	}
+
+	/**
+	 * Walk a single tree
+	 *
+	 * @param tree     the index of the tree
+	 * @param features the features of the image
+	 * @return the category index of the leaf the image ends up in
+	 */
+	int predict(int tree, double[] features) {
+		int node = roots[tree];
+		while (nodes[node] >= 0) {
+			node = features[nodes[node]] < thresholds[node] ? node + 1 : rightChild[node];
+		}
+		return ~nodes[node];
+	}
+
+	/**
+	 * Let every tree vote for a category
+	 *
+	 * @param features the features of the image
+	 * @return the number of votes per category index
+	 */
+	int[] vote(double[] features) {
+		int[] votes = new int[categories.size()];
+		for (int i = 0; i < roots.length; i++) {
+			votes[predict(i, features)]++;
+		}
+		return votes;
+	}
+
+	/**
+	 * @param algorithmCount the number of hashing algorithms in the hash vector
+	 * @return an array indicating which algorithms are used by at least one inner
+	 *         node
+	 */
+	boolean[] usedAlgorithms(int algorithmCount) {
+		boolean[] used = new boolean[algorithmCount];
+		for (int i = 0; i < usedVariables.length; i++) {
+			if (usedVariables[i]) {
+				used[variableAlgorithm[i]] = true;
+			}
+		}
+		return used;
+	}
+
+	/**
+	 * @param index the category index
+	 * @return the category
+	 */
+	int getCategory(int index) {
+		return categories.get(index);
+	}
+
+	/**
+	 * @return the number of trees
+	 */
+	int size() {
+		return roots.length;
+	}
+
+	/**
+	 * @return the number of nodes of all trees
+	 */
+	int nodeCount() {
+		return nodes.length;
+	}
+}
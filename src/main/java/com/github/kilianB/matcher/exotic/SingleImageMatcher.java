@@ -9,6 +9,7 @@ import javax.imageio.ImageIO;
 
 import com.github.kilianB.hash.Hash;
 import com.github.kilianB.hashAlgorithms.HashingAlgorithm;
+import com.github.kilianB.hashAlgorithms.PreparedImage;
 import com.github.kilianB.matcher.TypedImageMatcher;
 
 /**
@@ -48,9 +49,13 @@ public class SingleImageMatcher extends TypedImageMatcher {
 			throw new IllegalStateException(
 					"Please supply at least one hashing algorithm prior to invoking the match method");
 
+		PreparedImage prepared = prepare(image);
+		PreparedImage prepared1 = prepare(image1);
+
 		for (Entry<HashingAlgorithm, AlgoSettings> entry : steps.entrySet()) {
-			Hash hash = entry.getKey().hash(image);
-			Hash hash1 = entry.getKey().hash(image1);
+			Hash hash = entry.getKey().hash(prepared);
+			Hash hash1 = entry.getKey().hash(prepared1);
+
 
 			// Check if the hashing algo is within the threshold. If it's not return early
 			if (!entry.getValue().apply(hash, hash1)) {
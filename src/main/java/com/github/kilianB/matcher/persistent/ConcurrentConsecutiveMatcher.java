@@ -0,0 +1,477 @@
+package com.github.kilianB.matcher.persistent;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+
+import javax.imageio.ImageIO;
+
+import com.github.kilianB.datastructures.tree.Result;
+import com.github.kilianB.datastructures.tree.binaryTree.ConcurrentBinaryTree;
+import com.github.kilianB.hash.Hash;
+import com.github.kilianB.hashAlgorithms.HashingAlgorithm;
+import com.github.kilianB.hashAlgorithms.PreparedImage;
+import com.github.kilianB.matcher.QueryPlanner;
+
+/**
+ * Thread safe version of the {@link ConsecutiveMatcher} allowing images to be
+ * added and queried by multiple threads at the same time.
+ * <p>
+ * Queries never block. The hashing algorithms, their binary trees and hash
+ * caches are published as an immutable configuration snapshot and each
+ * algorithm stores its hashes in a {@link ConcurrentBinaryTree}. Images are
+ * hashed without holding an exclusive lock and only the insertion into the
+ * individual trees is serialized per algorithm.
+ * <p>
+ * An image becomes visible to queries once it was added to the trees of all
+ * algorithms. Queries running while an image is added may or may not return
+ * the image. Removing images and serializing the matcher wait for pending
+ * insertions to complete.
+ *
+ * @author Kilian
+ * @since 3.0.1
+ */
+public class ConcurrentConsecutiveMatcher extends PersistentImageMatcher {
+
+	private static final long serialVersionUID = -2318826203416547014L;
+
+	private static final Logger LOGGER = Logger.getLogger(ConcurrentConsecutiveMatcher.class.getSimpleName());
+
+	/** keep track of images already added. No reason to rehash */
+	protected Set<String> addedImages = ConcurrentHashMap.newKeySet();
+
+	/** Binary Tree holding results for each individual hashing algorithm */
+	protected LinkedHashMap<HashingAlgorithm, ConcurrentBinaryTree<String>> binTreeMap = new LinkedHashMap<>();
+
+	protected boolean cacheAddedHashes;
+
+	/**
+	 * Save the hashes of added images mapped to their unique id for fast retrieval.
+	 */
+	protected LinkedHashMap<HashingAlgorithm, ConcurrentHashMap<String, Hash>> cachedHashes;
+
+	/**
+	 * Shared by threads adding images, exclusively held while the algorithms are
+	 * altered or the matcher is serialized
+	 */
+	private final ReentrantReadWriteLock configurationLock = new ReentrantReadWriteLock();
+
+	/** The algorithms, trees and caches used by queries */
+	private transient volatile Configuration configuration;
+
+	/**
+	 * @param cacheAddedHashes Additionally to the binary tree, hashes of added
+	 *                         images will be mapped to their uniqueId allowing to
+	 *                         retrieve matches of added images without loading the
+	 *                         image file from disk. This setting increases memory
+	 *                         overhead in exchange for performance.
+	 *                         <p>
+	 *                         Use this setting if calls to
+	 *                         {@link #getMatchingImages(java.io.File)} likely
+	 *                         contains an image already added to the match prior.
+	 */
+	public ConcurrentConsecutiveMatcher(boolean cacheAddedHashes) {
+		this.cacheAddedHashes = cacheAddedHashes;
+		if (cacheAddedHashes) {
+			cachedHashes = new LinkedHashMap<>();
+		}
+		publish();
+	}
+
+	/**
+	 * Append a new hashing algorithm which will be executed after all hash
+	 * algorithms passed the test.
+	 *
+	 * @param algo       The algorithms to be added
+	 * @param threshold  the threshold the hamming distance may be in order to pass
+	 *                   as identical image.
+	 * @param normalized Weather the normalized or default hamming distance shall be
+	 *                   used. The normalized hamming distance will be in range of
+	 *                   [0-1] while the hamming distance depends on the length of
+	 *                   the hash
+	 */
+	@Override
+	public void addHashingAlgorithm(HashingAlgorithm algo, double threshold, boolean normalized) {
+		configurationLock.writeLock().lock();
+		try {
+			super.addHashingAlgorithm(algo, threshold, normalized);
+			binTreeMap.put(algo, new ConcurrentBinaryTree<>(true));
+			if (cacheAddedHashes) {
+				cachedHashes.put(algo, new ConcurrentHashMap<>());
+			}
+			publish();
+		} finally {
+			configurationLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes the hashing algorithms from the image matcher.
+	 *
+	 * @param algo the algorithm to be removed
+	 * @return true if the algorithms was removed, false otherwise
+	 */
+	@Override
+	public boolean removeHashingAlgo(HashingAlgorithm algo) {
+		configurationLock.writeLock().lock();
+		try {
+			binTreeMap.remove(algo);
+			if (cacheAddedHashes) {
+				cachedHashes.remove(algo);
+			}
+			boolean removed = super.removeHashingAlgo(algo);
+			publish();
+			return removed;
+		} finally {
+			configurationLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Remove all hashing algorithms used by this image matcher instance. At least
+	 * one algorithm has to be supplied before imaages can be checked for similarity
+	 */
+	@Override
+	public void clearHashingAlgorithms() {
+		configurationLock.writeLock().lock();
+		try {
+			super.clearHashingAlgorithms();
+			binTreeMap.clear();
+			if (cacheAddedHashes) {
+				cachedHashes.clear();
+			}
+			publish();
+		} finally {
+			configurationLock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void setPyramidResolution(int pyramidResolution) {
+		configurationLock.writeLock().lock();
+		try {
+			super.setPyramidResolution(pyramidResolution);
+		} finally {
+			configurationLock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public Map<HashingAlgorithm, AlgoSettings> getAlgorithms() {
+		return Collections.unmodifiableMap(configuration.steps);
+	}
+
+	/**
+	 * Publish a new configuration reflecting the current steps. Has to be called
+	 * while holding the write lock.
+	 */
+	@SuppressWarnings("unchecked")
+	private void publish() {
+		int size = steps.size();
+		ConcurrentBinaryTree<String>[] trees = new ConcurrentBinaryTree[size];
+		ConcurrentHashMap<String, Hash>[] caches = new ConcurrentHashMap[size];
+		int i = 0;
+		for (HashingAlgorithm algo : steps.keySet()) {
+			trees[i] = binTreeMap.get(algo);
+			if (cacheAddedHashes) {
+				caches[i] = cachedHashes.get(algo);
+			}
+			i++;
+		}
+		configuration = new Configuration(new LinkedHashMap<>(steps), trees, caches);
+	}
+
+	/**
+	 * Add the image to the matcher. This method may be called by multiple threads
+	 * at the same time.
+	 *
+	 * @param uniqueId a unique identifier describing the image
+	 * @param image    The image whose hash will be added to the matcher
+	 */
+	@Override
+	public void addImage(String uniqueId, BufferedImage image) {
+		configurationLock.readLock().lock();
+		try {
+			addImageInternal(uniqueId, image);
+			lockedState = true;
+		} finally {
+			configurationLock.readLock().unlock();
+		}
+	}
+
+	@Override
+	protected void addImageInternal(String uniqueId, BufferedImage image) {
+		Configuration config = configuration;
+		if (config.algorithms.length == 0)
+			throw new IllegalStateException(
+					"Please supply at least one hashing algorithm prior to invoking the match method");
+
+		if (!addedImages.add(uniqueId)) {
+			LOGGER.info("An image with uniqueId already exists. Skip request");
+			return;
+		}
+
+		Hash[] hashes;
+		try {
+			PreparedImage prepared = prepare(image);
+			hashes = new Hash[config.algorithms.length];
+			for (int i = 0; i < hashes.length; i++) {
+				hashes[i] = config.algorithms[i].hash(prepared);
+			}
+		} catch (RuntimeException e) {
+			addedImages.remove(uniqueId);
+			throw e;
+		}
+
+		for (int i = 0; i < hashes.length; i++) {
+			if (cacheAddedHashes) {
+				config.caches[i].put(uniqueId, hashes[i]);
+			}
+			config.trees[i].addHash(hashes[i], uniqueId);
+		}
+	}
+
+	@Override
+	public PriorityQueue<Result<String>> getMatchingImages(File image) throws IOException {
+		if (cacheAddedHashes && addedImages.contains(image.getAbsolutePath())) {
+			// Quick retrieval possible. We don't need to read the file since the hashes are
+			// cached
+			return getMatchingImagesInternal(null, image.getAbsolutePath());
+		} else {
+			return super.getMatchingImages(image);
+		}
+	}
+
+	@Override
+	public PriorityQueue<Result<String>> getMatchingImages(BufferedImage image) {
+		return getMatchingImagesInternal(image, null);
+	}
+
+	/**
+	 * Return a list of images that are considered matching by the definition of
+	 * this matcher. This method does not block.
+	 *
+	 * @param image    the buffered image to match or null
+	 * @param uniqueId the uniqueId of a previously cached image or null
+	 * @return a list of unique id's identifying the previously matched images
+	 *         sorted by distance of the last applied algorithm.
+	 */
+	protected PriorityQueue<Result<String>> getMatchingImagesInternal(BufferedImage image, String uniqueId) {
+
+		Configuration config = configuration;
+
+		if (config.algorithms.length == 0)
+			throw new IllegalStateException(
+					"Please supply at least one hashing algorithm prior to invoking the match method");
+
+		Hash[] needles = null;
+		if (uniqueId != null && cacheAddedHashes) {
+			needles = new Hash[config.algorithms.length];
+			for (int i = 0; i < needles.length; i++) {
+				needles[i] = config.caches[i].get(uniqueId);
+			}
+		}
+
+		return queryPlanner.execute(config.algorithms, config.settings, needles,
+				image == null ? null : prepare(image), new QueryPlanner.Source<String, RuntimeException>() {
+					@Override
+					public int size(int algorithm) {
+						return config.trees[algorithm].getHashCount();
+					}
+
+					@Override
+					public Collection<Result<String>> search(int algorithm, Hash needle, int maxDistance) {
+						return config.trees[algorithm].getElementsWithinHammingDistance(needle, maxDistance);
+					}
+
+					@Override
+					public boolean supportsLookup(int algorithm) {
+						return cacheAddedHashes;
+					}
+
+					@Override
+					public Map<String, Hash> lookup(int algorithm, Collection<String> candidates) {
+						return config.caches[algorithm];
+					}
+				}, queryExecutor);
+	}
+
+	/**
+	 * Remove a previously added image from the matcher. The hashes of the image
+	 * are removed from the binary trees of all hashing algorithms. Queries started
+	 * after this method returns no longer find the image.
+	 *
+	 * <p>
+	 * If the matcher caches added hashes the image is not required and may be
+	 * null. Otherwise the image has to be supplied to recompute the hashes it was
+	 * added with.
+	 *
+	 * @param uniqueId the unique id the image was added with
+	 * @param image    the image which was added or null if hashes are cached
+	 * @return true if the image was removed, false if no image with this id was
+	 *         added
+	 * @throws IllegalStateException if the hashes are not cached and no image is
+	 *                               supplied
+	 * @since 3.0.1
+	 */
+	public boolean removeImage(String uniqueId, BufferedImage image) {
+		configurationLock.writeLock().lock();
+		try {
+			if (!addedImages.contains(uniqueId)) {
+				return false;
+			}
+			Configuration config = configuration;
+			PreparedImage prepared = null;
+			if (!cacheAddedHashes) {
+				if (image == null) {
+					throw new IllegalStateException("No hash and buffered image supplied. Can't retrieve hash");
+				}
+				prepared = prepare(image);
+			}
+			for (int i = 0; i < config.algorithms.length; i++) {
+				Hash hash = cacheAddedHashes ? config.caches[i].remove(uniqueId)
+						: config.algorithms[i].hash(prepared);
+				config.trees[i].removeHash(hash, uniqueId);
+			}
+			addedImages.remove(uniqueId);
+			return true;
+		} finally {
+			configurationLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Remove a previously added image file from the matcher. The absolute path
+	 * of the file is used as unique id. If the hashes of the image are cached the
+	 * file is not read.
+	 *
+	 * @param imageFile the image file which was added to the matcher
+	 * @return true if the image was removed, false if the image was not added
+	 * @throws IOException if an error exists reading the file
+	 * @since 3.0.1
+	 */
+	public boolean removeImage(File imageFile) throws IOException {
+		String uniqueId = imageFile.getAbsolutePath();
+		if (!addedImages.contains(uniqueId)) {
+			return false;
+		}
+		if (cacheAddedHashes) {
+			return removeImage(uniqueId, null);
+		}
+		return removeImage(uniqueId, ImageIO.read(imageFile));
+	}
+
+	/**
+	 * @return the number of images added to the matcher
+	 */
+
+	public int getImageCount() {
+		return addedImages.size();
+	}
+
+	/**
+	 * Serialize this image matcher to a file. Images can not be added while the
+	 * matcher is serialized.
+	 *
+	 * @param saveLocation the location to save the matcher object to
+	 * @throws IOException if an io error occurs during serialzation.
+	 */
+	@Override
+	public void serializeState(File saveLocation) throws IOException {
+		configurationLock.writeLock().lock();
+		try {
+			super.serializeState(saveLocation);
+		} finally {
+			configurationLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Print all binary trees currently in use by this image matcher. This gives an
+	 * internal view of the saved images
+	 */
+	public void printAllTrees() {
+		for (ConcurrentBinaryTree<String> binTree : configuration.trees) {
+			binTree.printTree();
+		}
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = super.hashCode();
+		result = prime * result + addedImages.hashCode();
+		result = prime * result + binTreeMap.hashCode();
+		result = prime * result + (cacheAddedHashes ? 1231 : 1237);
+		result = prime * result + ((cachedHashes == null) ? 0 : cachedHashes.hashCode());
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!super.equals(obj)) {
+			return false;
+		}
+		if (!(obj instanceof ConcurrentConsecutiveMatcher)) {
+			return false;
+		}
+		ConcurrentConsecutiveMatcher other = (ConcurrentConsecutiveMatcher) obj;
+		if (!addedImages.equals(other.addedImages)) {
+			return false;
+		}
+		if (!binTreeMap.equals(other.binTreeMap)) {
+			return false;
+		}
+		if (cacheAddedHashes != other.cacheAddedHashes) {
+			return false;
+		}
+		if (cachedHashes == null) {
+			if (other.cachedHashes != null) {
+				return false;
+			}
+		} else if (!cachedHashes.equals(other.cachedHashes)) {
+			return false;
+		}
+		return true;
+	}
+
+	// Serialization
+	private void readObject(ObjectInputStream ois) throws ClassNotFoundException, IOException {
+		ois.defaultReadObject();
+		publish();
+	}
+
+	/**
+	 * Immutable snapshot of the hashing algorithms, their trees and hash caches
+	 */
+	private static class Configuration {
+		final Map<HashingAlgorithm, AlgoSettings> steps;
+		final HashingAlgorithm[] algorithms;
+		final AlgoSettings[] settings;
+		final ConcurrentBinaryTree<String>[] trees;
+		/** The cached hashes of each algorithm. Null entries if hashes are not cached */
+		final ConcurrentHashMap<String, Hash>[] caches;
+
+		Configuration(LinkedHashMap<HashingAlgorithm, AlgoSettings> steps, ConcurrentBinaryTree<String>[] trees,
+				ConcurrentHashMap<String, Hash>[] caches) {
+			this.steps = steps;
+			this.algorithms = steps.keySet().toArray(new HashingAlgorithm[steps.size()]);
+			this.settings = steps.values().toArray(new AlgoSettings[steps.size()]);
+			this.trees = trees;
+			this.caches = caches;
+		}
+	}
+}
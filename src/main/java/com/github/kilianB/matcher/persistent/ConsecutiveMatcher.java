@@ -1,19 +1,31 @@
 package com.github.kilianB.matcher.persistent;
 
 import java.awt.image.BufferedImage;
-import java.util.Map.Entry;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
 import java.util.PriorityQueue;
 
+import javax.imageio.ImageIO;
+
+
 import com.github.kilianB.datastructures.tree.Result;
-import com.github.kilianB.datastructures.tree.binaryTree.BinaryTree;
 import com.github.kilianB.hash.Hash;
 import com.github.kilianB.hashAlgorithms.HashingAlgorithm;
+import com.github.kilianB.matcher.QueryPlanner;
 
 /**
  * Convenience class allowing to chain multiple hashing algorithms to find
  * similar images. The ConsecutiveMatcher keeps the hashes and buffered images
  * in cache.
  * 
+ * <p>
+ * The order in which the algorithms are evaluated is determined by the
+ * {@link QueryPlanner}. If added hashes are cached only the most selective
+ * algorithm searches its binary tree while the remaining algorithms compare the
+ * cached hashes of the candidates.
+ * 
  * @author Kilian
  *
  */
@@ -36,41 +48,97 @@ public class ConsecutiveMatcher extends PersitentBinaryTreeMatcher {
 
 	private static final long serialVersionUID = 831914616034052308L;
 
+	/**
+	 * Search for the k most similar images passing the algorithm filters supplied
+	 * to this matcher. If only a single algorithm is used the binary tree is
+	 * searched for the k closest hashes directly instead of collecting all
+	 * matches.
+	 * 
+	 * @param image The image other images will be matched against
+	 * @param k     the maximum number of images returned
+	 * @return the unique ids of at most k similar images sorted by the distance of
+	 *         the last applied algorithm
+	 * @throws IOException              if the image can not be read
+	 * @throws IllegalArgumentException if k is not positive
+	 * @since 3.0.1
+	 */
+	public PriorityQueue<Result<String>> getMatchingImages(File image, int k) throws IOException {
+		if (cacheAddedHashes && addedImages.contains(image.getAbsolutePath())) {
+			return getMatchingImagesInternal(null, image.getAbsolutePath(), k);
+		} else {
+			return getMatchingImages(ImageIO.read(image), k);
+		}
+	}
+
+	/**
+	 * Search for the k most similar images passing the algorithm filters supplied
+	 * to this matcher. If only a single algorithm is used the binary tree is
+	 * searched for the k closest hashes directly instead of collecting all
+	 * matches.
+	 * 
+	 * @param image The image other images will be matched against
+	 * @param k     the maximum number of images returned
+	 * @return the unique ids of at most k similar images sorted by the distance of
+	 *         the last applied algorithm
+	 * @throws IllegalArgumentException if k is not positive
+	 * @since 3.0.1
+	 */
+	public PriorityQueue<Result<String>> getMatchingImages(BufferedImage image, int k) {
+		return getMatchingImagesInternal(image, null, k);
+	}
+
 	protected PriorityQueue<Result<String>> getMatchingImagesInternal(BufferedImage image, String uniqueId) {
+		return getMatchingImagesInternal(image, uniqueId, Integer.MAX_VALUE);
+	}
+
+	private PriorityQueue<Result<String>> getMatchingImagesInternal(BufferedImage image, String uniqueId,
+			int limit) {
 
 		if (steps.isEmpty())
 			throw new IllegalStateException(
 					"Please supply at least one hashing algorithm prior to invoking the match method");
 
-		PriorityQueue<Result<String>> returnValues = null;
+		HashingAlgorithm[] algorithms = steps.keySet().toArray(new HashingAlgorithm[steps.size()]);
+		AlgoSettings[] settings = steps.values().toArray(new AlgoSettings[steps.size()]);
 
-		for (Entry<HashingAlgorithm, AlgoSettings> entry : steps.entrySet()) {
-			HashingAlgorithm algo = entry.getKey();
+		Hash[] needles = null;
+		if (uniqueId != null && cacheAddedHashes) {
+			needles = new Hash[algorithms.length];
+			for (int i = 0; i < algorithms.length; i++) {
+				needles[i] = cachedHashes.get(algorithms[i]).get(uniqueId);
+			}
+		}
 
-			BinaryTree<String> binTree = binTreeMap.get(algo);
-			AlgoSettings settings = entry.getValue();
+		return queryPlanner.execute(algorithms, settings, needles, image == null ? null : prepare(image),
+				new QueryPlanner.Source<String, RuntimeException>() {
+					@Override
+					public int size(int algorithm) {
+						return binTreeMap.get(algorithms[algorithm]).getHashCount();
+					}
 
-			Hash needleHash = getHash(algo, uniqueId, image);
+					@Override
+					public Collection<Result<String>> search(int algorithm, Hash needle, int maxDistance) {
+						return binTreeMap.get(algorithms[algorithm]).getElementsWithinHammingDistance(needle,
+								maxDistance);
+					}
 
-			int threshold = 0;
-			if (settings.isNormalized()) {
-				int hashLength = needleHash.getBitResolution();
-				threshold = (int) Math.round(settings.getThreshold() * hashLength);
-			} else {
-				threshold = (int) settings.getThreshold();
-			}
+					@Override
+					public boolean supportsLookup(int algorithm) {
+						return cacheAddedHashes;
+					}
 
-			PriorityQueue<Result<String>> temp = binTree.getElementsWithinHammingDistance(needleHash, threshold);
+					@Override
+					public Map<String, Hash> lookup(int algorithm, Collection<String> candidates) {
+						return cachedHashes.get(algorithms[algorithm]);
+					}
 
-			if (returnValues == null) {
-				returnValues = temp;
-			} else {
-				temp.retainAll(returnValues);
-				returnValues = temp;
-			}
-		}
-		return returnValues;
+					@Override
+					public Collection<Result<String>> nearest(int algorithm, Hash needle, int k) {
+						return binTreeMap.get(algorithms[algorithm]).getNearestNeighbours(needle, k);
+					}
+				}, queryExecutor, limit);
 	}
 
+
 	// Don't keep a reference to the image so the garbage collector can release it
 }
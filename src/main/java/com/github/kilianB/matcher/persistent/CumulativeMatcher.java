@@ -12,6 +12,7 @@ import com.github.kilianB.datastructures.tree.Result;
 import com.github.kilianB.datastructures.tree.binaryTree.BinaryTree;
 import com.github.kilianB.hash.Hash;
 import com.github.kilianB.hashAlgorithms.HashingAlgorithm;
+import com.github.kilianB.hashAlgorithms.PreparedImage;
 
 /**
  * Instead of early aborting if one algorithm fails like the
@@ -187,6 +188,9 @@ public class CumulativeMatcher extends PersitentBinaryTreeMatcher {
 		// https://stackoverflow.com/a/31401836/3244464 TODO jmh benchmark
 		float optimalLoadFactor = (float) Math.log(2);
 
+		PreparedImage prepared = image == null ? null : prepare(image);
+
+
 		// For each hashing algorithm
 		for (Entry<HashingAlgorithm, AlgoSettings> entry : steps.entrySet()) {
 			HashingAlgorithm algo = entry.getKey();
@@ -200,7 +204,8 @@ public class CumulativeMatcher extends PersitentBinaryTreeMatcher {
 					.ceil((first ? binTree.getHashCount() : distanceMap.size()) / optimalLoadFactor) + 1);
 			temporaryMap = new HashMap<>(optimalCapacity, optimalLoadFactor);
 
-			Hash needleHash = getHash(algo, uniqueId, image);
+			Hash needleHash = getHash(algo, uniqueId, prepared);
+
 
 			int bitRes = algo.getKeyResolution();
 
@@ -0,0 +1,391 @@
+package com.github.kilianB.matcher.persistent;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import javax.imageio.ImageIO;
+
+import com.github.kilianB.datastructures.tree.Result;
+import com.github.kilianB.hash.Hash;
+import com.github.kilianB.hashAlgorithms.HashingAlgorithm;
+import com.github.kilianB.hashAlgorithms.PreparedImage;
+import com.github.kilianB.matcher.QueryPlanner;
+import com.github.kilianB.matcher.TypedImageMatcher;
+
+/**
+ * Consecutive matcher storing its hashes in a memory mapped
+ * {@link MappedHashFile} instead of serializing binary trees.
+ *
+ * <p>
+ * Every image added is appended to the file right away. Reopening the matcher
+ * only reads the header of the file, independent of the number of images it
+ * contains, and searches the hashes directly from the mapped file. Compared to
+ * {@link PersistentImageMatcher#reconstructState(File, boolean)} no object
+ * graph has to be rebuilt on the heap.
+ *
+ * <p>
+ * The hashing algorithms and their settings are stored in the header of the
+ * file when the first image is added. From then on the algorithms can no longer
+ * be altered. Searches scan the hashes of the most selective algorithm and
+ * verify the remaining algorithms for the candidates found as determined by the
+ * {@link QueryPlanner}.
+ *
+ * <p>
+ * Images may be added and searched by multiple threads once the hashing
+ * algorithms are configured. Unique ids are not checked for duplicates. Adding
+ * an id twice stores it twice.
+ *
+ * @author Kilian
+ * @since 3.0.1
+ */
+public class MappedConsecutiveMatcher extends TypedImageMatcher implements AutoCloseable {
+
+	private final File file;
+
+	/** The hashes of the matcher. Null until the first image is added */
+	private volatile MappedHashFile hashFile;
+
+	/**
+	 * Open the matcher stored in the file. If the file does not exist an empty
+	 * matcher is created. The file is written once the first image is added.
+	 *
+	 * @param file the index file of the matcher. The unique ids are stored in a
+	 *             second file next to it
+	 * @throws IOException if the file exists but can not be read
+	 */
+	public MappedConsecutiveMatcher(File file) throws IOException {
+		this.file = file;
+		if (file.exists() && file.length() > 0) {
+			MappedHashFile hashes = MappedHashFile.open(file);
+			try {
+				readConfiguration(hashes.getMetadata());
+				if (steps.size() != hashes.getAlgorithmCount()) {
+					throw new IOException("Hash file " + file + " does not match the stored hashing algorithms");
+				}
+			} catch (IOException | RuntimeException e) {
+				hashes.close();
+				throw e;
+			}
+			hashFile = hashes;
+		}
+	}
+
+	/**
+	 * Write all hashes of a consecutive matcher to a new mapped matcher.
+	 *
+	 * @param matcher the matcher to convert. The matcher has to cache the hashes
+	 *                of added images
+	 * @param file    the index file of the new matcher. Must not exist
+	 * @return the mapped matcher containing all images of the matcher
+	 * @throws IOException if an IO error occurs
+	 */
+	public static MappedConsecutiveMatcher convert(ConsecutiveMatcher matcher, File file) throws IOException {
+		if (!matcher.cacheAddedHashes) {
+			throw new IllegalArgumentException(
+					"Only matchers caching the added hashes can be converted. The binary tree does not retain the hashes");
+		}
+		if (file.exists()) {
+			throw new IOException("File already exists: " + file);
+		}
+		MappedConsecutiveMatcher mapped = new MappedConsecutiveMatcher(file);
+		for (Map.Entry<HashingAlgorithm, AlgoSettings> entry : matcher.getAlgorithms().entrySet()) {
+			AlgoSettings settings = entry.getValue();
+			mapped.addHashingAlgorithm(entry.getKey(), settings.getThreshold(), settings.isNormalized());
+		}
+		mapped.setPyramidResolution(matcher.getPyramidResolution());
+
+		HashingAlgorithm[] algorithms = mapped.getAlgorithmArray();
+		for (String uniqueId : matcher.addedImages) {
+			Hash[] hashes = new Hash[algorithms.length];
+			for (int i = 0; i < hashes.length; i++) {
+				hashes[i] = matcher.cachedHashes.get(algorithms[i]).get(uniqueId);
+			}
+			mapped.getHashFile(hashes).append(uniqueId, hashes);
+		}
+		mapped.flush();
+		return mapped;
+	}
+
+	@Override
+	public void addHashingAlgorithm(HashingAlgorithm algo, double threshold, boolean normalized) {
+		checkLockedState();
+		super.addHashingAlgorithm(algo, threshold, normalized);
+	}
+
+	@Override
+	public boolean removeHashingAlgo(HashingAlgorithm algo) {
+		checkLockedState();
+		return super.removeHashingAlgo(algo);
+	}
+
+	@Override
+	public void clearHashingAlgorithms() {
+		checkLockedState();
+		super.clearHashingAlgorithms();
+	}
+
+	@Override
+	public void setPyramidResolution(int pyramidResolution) {
+		checkLockedState();
+		super.setPyramidResolution(pyramidResolution);
+	}
+
+	/**
+	 * Index the image. The path of the file is used as unique id.
+	 *
+	 * @param imageFile The image whose hash will be added to the matcher
+	 * @throws IOException if an error exists reading the file or writing the hash
+	 *                     file
+	 */
+	public void addImage(File imageFile) throws IOException {
+		addImage(imageFile.getAbsolutePath(), imageFile);
+	}
+
+	/**
+	 * Add the images to the matcher allowing the image to be found in future
+	 * searches.
+	 *
+	 * @param imagesToAdd The images whose hash will be added to the matcher
+	 * @throws IOException if an error exists reading the image files or writing
+	 *                     the hash file
+	 */
+	public void addImages(File... imagesToAdd) throws IOException {
+		for (File img : imagesToAdd) {
+			addImage(img);
+		}
+	}
+
+	/**
+	 * Index the image. This enables the image matcher to find the image in future
+	 * searches.
+	 *
+	 * @param uniqueId  a unique identifier returned if querying for the image
+	 * @param imageFile The image whose hash will be added to the matcher
+	 * @throws IOException if an error exists reading the file or writing the hash
+	 *                     file
+	 */
+	public void addImage(String uniqueId, File imageFile) throws IOException {
+		if (!imageFile.isFile()) {
+			throw new IllegalArgumentException(
+					"Please make sure you add an image to the matcher. Directories are not supported");
+		}
+		addImage(uniqueId, ImageIO.read(imageFile));
+	}
+
+	/**
+	 * Index the image. This enables the image matcher to find the image in future
+	 * searches.
+	 *
+	 * @param uniqueId a unique identifier returned if querying for the image
+	 * @param image    The image whose hash will be added to the matcher
+	 * @throws IOException if the hash file can not be written
+	 */
+	public void addImage(String uniqueId, BufferedImage image) throws IOException {
+		HashingAlgorithm[] algorithms = getAlgorithmArray();
+		PreparedImage prepared = prepare(image);
+		Hash[] hashes = new Hash[algorithms.length];
+		for (int i = 0; i < hashes.length; i++) {
+			hashes[i] = algorithms[i].hash(prepared);
+		}
+		getHashFile(hashes).append(uniqueId, hashes);
+	}
+
+	/**
+	 * Search for all similar images passing the algorithm filters supplied to this
+	 * matcher. If the image itself was added to the matcher it will be returned
+	 * with a distance of 0
+	 *
+	 * @param image the image to check all saved images against
+	 * @return a list of unique id's identifying the previously matched images
+	 *         sorted by distance of the last applied algorithm
+	 * @throws IOException if an error occurs reading the file or the hash file
+	 */
+	public PriorityQueue<Result<String>> getMatchingImages(File image) throws IOException {
+		return getMatchingImages(ImageIO.read(image));
+	}
+
+	/**
+	 * Search for all similar images passing the algorithm filters supplied to this
+	 * matcher. If the image itself was added to the matcher it will be returned
+	 * with a distance of 0
+	 *
+	 * @param image the image to check all saved images against
+	 * @return a list of unique id's identifying the previously matched images
+	 *         sorted by distance of the last applied algorithm
+	 * @throws IOException if the hash file can not be read
+	 */
+	public PriorityQueue<Result<String>> getMatchingImages(BufferedImage image) throws IOException {
+		return getMatchingImages(image, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Search for the k most similar images passing the algorithm filters supplied
+	 * to this matcher. If only a single algorithm is used the closest records are
+	 * retained while scanning the file instead of collecting all matches.
+	 *
+	 * @param image the image to check all saved images against
+	 * @param k     the maximum number of images returned
+	 * @return the unique ids of at most k matching images sorted by distance of
+	 *         the last applied algorithm
+	 * @throws IOException              if the hash file can not be read
+	 * @throws IllegalArgumentException if k is not positive
+	 * @since 3.0.1
+	 */
+	public PriorityQueue<Result<String>> getMatchingImages(BufferedImage image, int k) throws IOException {
+		HashingAlgorithm[] algorithms = getAlgorithmArray();
+		MappedHashFile hashes = hashFile;
+		if (hashes == null) {
+			return new PriorityQueue<>();
+		}
+
+		AlgoSettings[] settings = steps.values().toArray(new AlgoSettings[steps.size()]);
+		PriorityQueue<Result<Long>> records = queryPlanner.execute(algorithms, settings, null, prepare(image),
+				new QueryPlanner.Source<Long, IOException>() {
+					@Override
+					public int size(int algorithm) {
+						return (int) Math.min(hashes.size(), Integer.MAX_VALUE);
+					}
+
+					@Override
+					public Collection<Result<Long>> search(int algorithm, Hash needle, int maxDistance)
+							throws IOException {
+						return hashes.search(algorithm, needle, maxDistance);
+					}
+
+					@Override
+					public boolean supportsLookup(int algorithm) {
+						return true;
+					}
+
+					@Override
+					public Map<Long, Hash> lookup(int algorithm, Collection<Long> candidates) throws IOException {
+						Map<Long, Hash> stored = new HashMap<>((int) (candidates.size() / 0.75) + 1);
+						for (Long record : candidates) {
+							stored.put(record, hashes.getHash(record, algorithm));
+						}
+						return stored;
+					}
+
+					@Override
+					public Collection<Result<Long>> nearest(int algorithm, Hash needle, int limit) throws IOException {
+						return hashes.nearest(algorithm, needle, limit);
+					}
+				}, queryExecutor, k);
+
+		PriorityQueue<Result<String>> matches = new PriorityQueue<>(Math.max(1, records.size()));
+		for (Result<Long> r : records) {
+			matches.add(new Result<>(hashes.getId(r.value), r.distance, r.normalizedHammingDistance));
+		}
+		return matches;
+	}
+
+	/**
+	 * @return the number of images added to the matcher
+	 */
+	public long getImageCount() {
+		MappedHashFile hashes = hashFile;
+		return hashes == null ? 0 : hashes.size();
+	}
+
+	/**
+	 * @return the index file of the matcher
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Force all added images to be written to the storage device.
+	 *
+	 * @throws IOException if an IO error occurs
+	 */
+	public void flush() throws IOException {
+		MappedHashFile hashes = hashFile;
+		if (hashes != null) {
+			hashes.flush();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		MappedHashFile hashes = hashFile;
+		if (hashes != null) {
+			hashes.close();
+		}
+	}
+
+	protected void checkLockedState() {
+		if (hashFile != null) {
+			throw new IllegalStateException(
+					"Images have already been added to the matcher. Changing hashing algorithms would invalidate the internal state.");
+		}
+	}
+
+	private HashingAlgorithm[] getAlgorithmArray() {
+		if (steps.isEmpty())
+			throw new IllegalStateException(
+					"Please supply at least one hashing algorithm prior to invoking the match method");
+		return steps.keySet().toArray(new HashingAlgorithm[steps.size()]);
+	}
+
+	/**
+	 * Return the hash file, creating it on the first invocation.
+	 *
+	 * @param hashes the hashes of the first image used to determine the layout of
+	 *               the file
+	 */
+	private MappedHashFile getHashFile(Hash[] hashes) throws IOException {
+		MappedHashFile current = hashFile;
+		if (current != null) {
+			return current;
+		}
+
+		synchronized (this) {
+			if (hashFile == null) {
+				int[] bitResolutions = new int[hashes.length];
+				int[] algorithmIds = new int[hashes.length];
+				for (int i = 0; i < hashes.length; i++) {
+					bitResolutions[i] = hashes[i].getBitResolution();
+					algorithmIds[i] = hashes[i].getAlgorithmId();
+				}
+				hashFile = MappedHashFile.create(file, bitResolutions, algorithmIds, writeConfiguration());
+			}
+			return hashFile;
+		}
+	}
+
+	private byte[] writeConfiguration() throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+			oos.writeObject(steps);
+			oos.writeInt(pyramidResolution);
+		}
+		return bos.toByteArray();
+	}
+
+	@SuppressWarnings("unchecked")
+	private void readConfiguration(byte[] metadata) throws IOException {
+		try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(metadata))) {
+			steps = (LinkedHashMap<HashingAlgorithm, AlgoSettings>) ois.readObject();
+			pyramidResolution = ois.readInt();
+		} catch (ClassNotFoundException e) {
+			throw new IOException("Can't restore the hashing algorithms of " + file, e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "MappedConsecutiveMatcher [file=" + file + ", imageCount=" + getImageCount() + ", steps=" + steps
+				+ "]";
+	}
+}
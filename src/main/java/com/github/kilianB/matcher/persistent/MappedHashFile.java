@@ -0,0 +1,553 @@
+package com.github.kilianB.matcher.persistent;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.github.kilianB.datastructures.tree.BoundedResultQueue;
+import com.github.kilianB.datastructures.tree.Result;
+import com.github.kilianB.hash.Hash;
+
+/**
+ * Append only file storing the packed hashes of multiple hashing algorithms
+ * alongside the unique id of each image. Hashes are searched directly from a
+ * memory mapping of the file. Opening a file only reads its header regardless
+ * of the number of hashes it contains.
+ *
+ * <p>
+ * The index file starts with a header followed by one fixed size record per
+ * image. All values are stored in big endian byte order.
+ *
+ * <pre>
+ * header: magic (int) | version (int) | record count (long)
+ *         algorithm count (int) | metadata length (int)
+ *         per algorithm: bit resolution (int) | algorithm id (int)
+ *         metadata (byte[]) | padding to a multiple of 8 bytes
+ * record: per algorithm: packed hash words (long[])
+ *         offset of the unique id in the id file (long)
+ * </pre>
+ *
+ * The unique ids are stored as length prefixed UTF-8 strings in a second file
+ * named after the index file with the suffix {@value #ID_FILE_SUFFIX}.
+ *
+ * <p>
+ * The record count of the header is updated after the record was written.
+ * Records of an append interrupted by a crash of the process are ignored and
+ * overwritten by the next append. The records and the count are not forced to
+ * the storage device in order. After a power failure the header may count
+ * records appended after the last {@link #flush()} which never reached the
+ * disk. Appends are serialized while searches do not block and take all
+ * records into account appended before the search started.
+ *
+ * <p>
+ * Records are written through the mapping. The mapping is grown ahead of the
+ * record count, doubling its capacity up to the size of a segment, so a new
+ * region is only mapped once the appends exceed the capacity. The index file
+ * may therefore be longer than the records it contains.
+ *
+ * @author Kilian
+ * @since 3.0.1
+ */
+public class MappedHashFile implements AutoCloseable {
+
+	/** The current version of the file format */
+	public static final int VERSION = 1;
+
+	/** Suffix appended to the index file name to resolve the id file */
+	public static final String ID_FILE_SUFFIX = ".ids";
+
+	/** Minimum number of records the mapping grows by */
+	private static final int MIN_GROWTH = 1024;
+
+	/** File signature "JIHF" */
+	private static final int MAGIC = 0x4A494846;
+
+	/** Position of the record count in the header */
+	private static final int COUNT_OFFSET = 8;
+
+	private final File file;
+
+	private final FileChannel indexChannel;
+
+	private final FileChannel idChannel;
+
+	private final int[] bitResolutions;
+
+	private final int[] algorithmIds;
+
+	/** Position of the hash words of each algorithm within a record */
+	private final int[] wordOffsets;
+
+	/** Length of a record in long words */
+	private final int recordLongs;
+
+	private final long dataOffset;
+
+	private final byte[] metadata;
+
+	/** Maximum number of records covered by a single mapping */
+	private final int recordsPerSegment;
+
+	/** Number of records appended. Only altered while holding the lock */
+	private volatile long count;
+
+	/** Length of the id file. Guarded by this */
+	private long idFileLength;
+
+	private volatile Mapping mapping = new Mapping(0, new MappedByteBuffer[0], new LongBuffer[0]);
+
+	private MappedHashFile(File file, FileChannel indexChannel, FileChannel idChannel, int[] bitResolutions,
+			int[] algorithmIds, byte[] metadata, long count) throws IOException {
+		this.file = file;
+		this.indexChannel = indexChannel;
+		this.idChannel = idChannel;
+		this.bitResolutions = bitResolutions;
+		this.algorithmIds = algorithmIds;
+		this.metadata = metadata;
+		this.count = count;
+
+		wordOffsets = new int[bitResolutions.length];
+		int offset = 0;
+		for (int i = 0; i < bitResolutions.length; i++) {
+			wordOffsets[i] = offset;
+			offset += (bitResolutions[i] + 63) / 64;
+		}
+		recordLongs = offset + 1;
+		dataOffset = headerLength(bitResolutions.length, metadata.length);
+		recordsPerSegment = Integer.MAX_VALUE / (recordLongs * Long.BYTES);
+		idFileLength = idChannel.size();
+	}
+
+	/**
+	 * Create a new hash file.
+	 *
+	 * @param file           the index file. The id file is created next to it
+	 * @param bitResolutions the bit resolution of the hashes of each algorithm
+	 * @param algorithmIds   the algorithm id of the hashes of each algorithm
+	 * @param metadata       arbitrary data stored in the header
+	 * @return the empty hash file
+	 * @throws IOException if the index file already exists or can not be written
+	 */
+	public static MappedHashFile create(File file, int[] bitResolutions, int[] algorithmIds, byte[] metadata)
+			throws IOException {
+		if (bitResolutions.length == 0 || bitResolutions.length != algorithmIds.length) {
+			throw new IllegalArgumentException("Supply the bit resolution and algorithm id of at least one algorithm");
+		}
+		for (int bits : bitResolutions) {
+			if (bits <= 0) {
+				throw new IllegalArgumentException("Bit resolution has to be positive. Found: " + bits);
+			}
+		}
+
+		FileChannel indexChannel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			ByteBuffer header = ByteBuffer.allocate((int) headerLength(bitResolutions.length, metadata.length));
+			header.putInt(MAGIC).putInt(VERSION).putLong(0);
+			header.putInt(bitResolutions.length).putInt(metadata.length);
+			for (int i = 0; i < bitResolutions.length; i++) {
+				header.putInt(bitResolutions[i]).putInt(algorithmIds[i]);
+			}
+			header.put(metadata).rewind();
+			writeFully(indexChannel, header, 0);
+
+			FileChannel idChannel = FileChannel.open(idFile(file).toPath(), StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			return new MappedHashFile(file, indexChannel, idChannel, bitResolutions.clone(), algorithmIds.clone(),
+					metadata.clone(), 0);
+		} catch (IOException | RuntimeException e) {
+			indexChannel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Open an existing hash file.
+	 *
+	 * @param file the index file
+	 * @return the hash file
+	 * @throws IOException if the file is not a hash file, was written by a newer
+	 *                     version or can not be read
+	 */
+	public static MappedHashFile open(File file) throws IOException {
+		FileChannel indexChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			ByteBuffer fixed = ByteBuffer.allocate(24);
+			readFully(indexChannel, fixed, 0);
+			fixed.flip();
+			if (fixed.getInt() != MAGIC) {
+				throw new IOException(file + " is not a hash file");
+			}
+			int version = fixed.getInt();
+			if (version > VERSION) {
+				throw new IOException("Unsupported hash file version " + version + ". Supported up to " + VERSION);
+			}
+			long count = fixed.getLong();
+			int algorithmCount = fixed.getInt();
+			int metadataLength = fixed.getInt();
+			if (count < 0 || algorithmCount <= 0 || metadataLength < 0) {
+				throw new IOException("Corrupted header of hash file " + file);
+			}
+
+			ByteBuffer variable = ByteBuffer.allocate(algorithmCount * 8 + metadataLength);
+			readFully(indexChannel, variable, 24);
+			variable.flip();
+			int[] bitResolutions = new int[algorithmCount];
+			int[] algorithmIds = new int[algorithmCount];
+			for (int i = 0; i < algorithmCount; i++) {
+				bitResolutions[i] = variable.getInt();
+				algorithmIds[i] = variable.getInt();
+			}
+			byte[] metadata = new byte[metadataLength];
+			variable.get(metadata);
+
+			FileChannel idChannel = FileChannel.open(idFile(file).toPath(), StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+			MappedHashFile hashFile = new MappedHashFile(file, indexChannel, idChannel, bitResolutions,
+					algorithmIds, metadata, count);
+			if (indexChannel.size() < hashFile.dataOffset + count * hashFile.recordLongs * Long.BYTES) {
+				hashFile.close();
+				throw new IOException("Hash file " + file + " is truncated");
+			}
+			return hashFile;
+		} catch (IOException | RuntimeException e) {
+			indexChannel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @param file the index file
+	 * @return the file storing the unique ids of the index file
+	 */
+	public static File idFile(File file) {
+		return new File(file.getPath() + ID_FILE_SUFFIX);
+	}
+
+	/**
+	 * Append the hashes of an image.
+	 *
+	 * @param uniqueId the unique id of the image
+	 * @param hashes   the hash of each algorithm in the order of the header
+	 * @return the index of the record
+	 * @throws IOException if an IO error occurs
+	 */
+	public synchronized long append(String uniqueId, Hash[] hashes) throws IOException {
+		if (hashes.length != bitResolutions.length) {
+			throw new IllegalArgumentException(
+					"Expected " + bitResolutions.length + " hashes. Found: " + hashes.length);
+		}
+
+		for (int i = 0; i < hashes.length; i++) {
+			if (hashes[i].getBitResolution() != bitResolutions[i]) {
+				throw new IllegalArgumentException("Can't add hash with different length. Expected "
+						+ bitResolutions[i] + " found: " + hashes[i].getBitResolution());
+			}
+		}
+
+		byte[] id = uniqueId.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer idBuffer = ByteBuffer.allocate(Integer.BYTES + id.length);
+		idBuffer.putInt(id.length).put(id).rewind();
+
+		long index = count;
+		writeFully(idChannel, idBuffer, idFileLength);
+
+		LongBuffer segment = covering(index + 1).segments[(int) (index / recordsPerSegment)];
+		int base = (int) (index % recordsPerSegment) * recordLongs;
+		for (int i = 0; i < hashes.length; i++) {
+			long[] words = hashes[i].getPackedHashValue();
+			for (int w = 0; w < words.length; w++) {
+				segment.put(base + wordOffsets[i] + w, words[w]);
+			}
+		}
+		segment.put(base + recordLongs - 1, idFileLength);
+
+		ByteBuffer newCount = ByteBuffer.allocate(Long.BYTES);
+		newCount.putLong(index + 1).rewind();
+		writeFully(indexChannel, newCount, COUNT_OFFSET);
+
+		idFileLength += idBuffer.capacity();
+		count = index + 1;
+		return index;
+	}
+
+	/**
+	 * Search all records whose hash is within the distance of the needle.
+	 *
+	 * @param algorithm   the index of the algorithm
+	 * @param needle      the hash to search for
+	 * @param maxDistance the maximum hamming distance
+	 * @return the index of each matching record and its distance to the needle
+	 * @throws IOException if the file can not be mapped
+	 */
+	public List<Result<Long>> search(int algorithm, Hash needle, int maxDistance) throws IOException {
+		int bits = bitResolutions[algorithm];
+		long[] words = getWords(algorithm, needle);
+		int offset = wordOffsets[algorithm];
+
+		List<Result<Long>> results = new ArrayList<>();
+		long records = count;
+		long first = 0;
+		for (LongBuffer segment : covering(records).segments) {
+			int end = (int) Math.min(segment.limit(), (records - first) * recordLongs);
+			int record = 0;
+			for (int base = offset; base < end; base += recordLongs, record++) {
+				int distance = 0;
+				for (int w = 0; w < words.length && distance <= maxDistance; w++) {
+					distance += Long.bitCount(segment.get(base + w) ^ words[w]);
+				}
+				if (distance <= maxDistance) {
+					results.add(new Result<>(first + record, distance, distance / (double) bits));
+				}
+			}
+			first += record;
+		}
+		return results;
+	}
+
+	/**
+	 * Search the k records whose hashes are the closest to the needle. Once k
+	 * records are found computing the distance of a record stops as soon as it
+	 * exceeds the distance of the k-th closest record.
+	 *
+	 * @param algorithm the index of the algorithm
+	 * @param needle    the hash to search for
+	 * @param k         the maximum number of records
+	 * @return the index of at most k records and their distance to the needle
+	 *         sorted by distance, closest first
+	 * @throws IOException              if the file can not be mapped
+	 * @throws IllegalArgumentException if k is not positive
+	 */
+	public List<Result<Long>> nearest(int algorithm, Hash needle, int k) throws IOException {
+		BoundedResultQueue<Long> results = new BoundedResultQueue<>(k);
+		int bits = bitResolutions[algorithm];
+		long[] words = getWords(algorithm, needle);
+		int offset = wordOffsets[algorithm];
+
+		long records = count;
+		long first = 0;
+		for (LongBuffer segment : covering(records).segments) {
+			int end = (int) Math.min(segment.limit(), (records - first) * recordLongs);
+			int record = 0;
+			for (int base = offset; base < end; base += recordLongs, record++) {
+				double bound = results.getBound();
+				int distance = 0;
+				for (int w = 0; w < words.length && distance < bound; w++) {
+					distance += Long.bitCount(segment.get(base + w) ^ words[w]);
+				}
+				if (distance < bound) {
+					results.offer(first + record, distance, distance / (double) bits);
+				}
+			}
+			first += record;
+		}
+		return results.toSortedList();
+	}
+
+	private long[] getWords(int algorithm, Hash needle) {
+		int bits = bitResolutions[algorithm];
+		if (needle.getBitResolution() != bits) {
+			throw new IllegalArgumentException("Can't search hash with different length. Expected " + bits
+					+ " found: " + needle.getBitResolution());
+		}
+		return needle.getPackedHashValue();
+	}
+
+	/**
+	 * Read the hash of a record.
+	 *
+	 * @param record    the index of the record
+	 * @param algorithm the index of the algorithm
+	 * @return the hash
+	 * @throws IOException if the file can not be mapped
+	 */
+	public Hash getHash(long record, int algorithm) throws IOException {
+		Mapping m = mapping(record);
+		LongBuffer segment = m.segments[(int) (record / recordsPerSegment)];
+		int base = (int) (record % recordsPerSegment) * recordLongs + wordOffsets[algorithm];
+		long[] words = new long[(bitResolutions[algorithm] + 63) / 64];
+		for (int w = 0; w < words.length; w++) {
+			words[w] = segment.get(base + w);
+		}
+		return new Hash(words, bitResolutions[algorithm], algorithmIds[algorithm]);
+	}
+
+	/**
+	 * Read the unique id of a record.
+	 *
+	 * @param record the index of the record
+	 * @return the unique id
+	 * @throws IOException if an IO error occurs
+	 */
+	public String getId(long record) throws IOException {
+		Mapping m = mapping(record);
+		LongBuffer segment = m.segments[(int) (record / recordsPerSegment)];
+		long position = segment.get((int) (record % recordsPerSegment) * recordLongs + recordLongs - 1);
+
+		ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+		readFully(idChannel, length, position);
+		length.flip();
+		ByteBuffer id = ByteBuffer.allocate(length.getInt());
+		readFully(idChannel, id, position + Integer.BYTES);
+		return new String(id.array(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Force all appended records to be written to the storage device. Records
+	 * appended before this method returned survive a power failure.
+	 *
+	 * @throws IOException if an IO error occurs
+	 */
+	public void flush() throws IOException {
+		idChannel.force(false);
+		for (MappedByteBuffer buffer : mapping.buffers) {
+			buffer.force();
+		}
+		indexChannel.force(false);
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			idChannel.close();
+		} finally {
+			indexChannel.close();
+		}
+	}
+
+	/**
+	 * @return the number of records in the file
+	 */
+	public long size() {
+		return count;
+	}
+
+	/**
+	 * @return the number of algorithms stored per record
+	 */
+	public int getAlgorithmCount() {
+		return bitResolutions.length;
+	}
+
+	/**
+	 * @param algorithm the index of the algorithm
+	 * @return the bit resolution of the hashes of the algorithm
+	 */
+	public int getBitResolution(int algorithm) {
+		return bitResolutions[algorithm];
+	}
+
+	/**
+	 * @param algorithm the index of the algorithm
+	 * @return the algorithm id of the hashes of the algorithm
+	 */
+	public int getAlgorithmId(int algorithm) {
+		return algorithmIds[algorithm];
+	}
+
+	/**
+	 * @return a copy of the metadata stored in the header
+	 */
+	public byte[] getMetadata() {
+		return metadata.clone();
+	}
+
+	/**
+	 * @return the index file
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	private Mapping mapping(long record) throws IOException {
+		long records = count;
+		if (record < 0 || record >= records) {
+			throw new IndexOutOfBoundsException("Record: " + record + " Size: " + records);
+		}
+		return covering(records);
+	}
+
+	/**
+	 * @param records the number of records
+	 * @return a mapping covering at least the given number of records
+	 */
+	private Mapping covering(long records) throws IOException {
+		Mapping m = mapping;
+		if (m.capacity < records) {
+			m = remap(records);
+		}
+		return m;
+	}
+
+	private synchronized Mapping remap(long records) throws IOException {
+		Mapping m = mapping;
+		if (m.capacity >= records) {
+			return m;
+		}
+		long growth = Math.max(MIN_GROWTH, Math.min(m.capacity, recordsPerSegment));
+		long capacity = Math.max(records, m.capacity + growth);
+		int segmentCount = (int) ((capacity + recordsPerSegment - 1) / recordsPerSegment);
+		MappedByteBuffer[] buffers = Arrays.copyOf(m.buffers, segmentCount);
+		LongBuffer[] segments = Arrays.copyOf(m.segments, segmentCount);
+		long recordBytes = recordLongs * Long.BYTES;
+		// The last segment of the previous mapping may be incomplete. Mapping
+		// beyond the end of the file extends it
+		for (int s = (int) (m.capacity / recordsPerSegment); s < segmentCount; s++) {
+			long first = (long) s * recordsPerSegment;
+			long length = Math.min(recordsPerSegment, capacity - first) * recordBytes;
+			buffers[s] = indexChannel.map(MapMode.READ_WRITE, dataOffset + first * recordBytes, length);
+			segments[s] = buffers[s].asLongBuffer();
+		}
+		m = new Mapping(capacity, buffers, segments);
+		mapping = m;
+		return m;
+	}
+
+	private static long headerLength(int algorithmCount, int metadataLength) {
+		long length = 24 + algorithmCount * 8L + metadataLength;
+		return (length + 7) & ~7L;
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position);
+			if (read < 0) {
+				throw new EOFException();
+			}
+			position += read;
+		}
+	}
+
+	/**
+	 * Immutable set of mapped segments covering the first records of the file
+	 */
+	private static class Mapping {
+		/** Number of records the segments have room for */
+		final long capacity;
+		final MappedByteBuffer[] buffers;
+		final LongBuffer[] segments;
+
+		Mapping(long capacity, MappedByteBuffer[] buffers, LongBuffer[] segments) {
+			this.capacity = capacity;
+			this.buffers = buffers;
+			this.segments = segments;
+		}
+	}
+}
@@ -1,8 +1,10 @@
 package com.github.kilianB.matcher.persistent;
 
 import java.awt.image.BufferedImage;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
+
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
@@ -223,6 +225,22 @@ public abstract class PersistentImageMatcher extends TypedImageMatcher implement
 		return pImageMatcher;
 	}
 
+	/**
+	 * Set the resolution of the image pyramid shared by all hashing algorithms.
+	 * The resolution can only be changed as long as no image was added to the
+	 * matcher.
+	 * 
+	 * @param pyramidResolution the length of the longest side of the largest
+	 *                          pyramid level. 0 disables the pyramid (default).
+	 * @throws IllegalStateException if an image was already added to the matcher
+	 * @since 3.0.1
+	 */
+	@Override
+	public void setPyramidResolution(int pyramidResolution) {
+		checkLockedState();
+		super.setPyramidResolution(pyramidResolution);
+	}
+
 	protected void checkLockedState() {
 		if (lockedState) {
 			throw new IllegalStateException(
@@ -234,12 +252,19 @@ public abstract class PersistentImageMatcher extends TypedImageMatcher implement
 	private void writeObject(ObjectOutputStream oos) throws IOException {
 		oos.defaultWriteObject();
 		oos.writeObject(this.steps);
+		oos.writeInt(pyramidResolution);
 	}
 
 	@SuppressWarnings("unchecked")
 	private void readObject(ObjectInputStream ois) throws ClassNotFoundException, IOException {
 		ois.defaultReadObject();
 		this.steps = (LinkedHashMap<HashingAlgorithm, AlgoSettings>) ois.readObject();
+		try {
+			this.pyramidResolution = ois.readInt();
+		} catch (EOFException e) {
+			// Matcher was serialized before the pyramid resolution was introduced
+		}
 	}
 
+
 }
@@ -10,10 +10,14 @@ import java.util.Map.Entry;
 import java.util.PriorityQueue;
 import java.util.logging.Logger;
 
+import javax.imageio.ImageIO;
+
 import com.github.kilianB.datastructures.tree.Result;
+import com.github.kilianB.datastructures.tree.binaryTree.AdaptiveBinaryTree;
 import com.github.kilianB.datastructures.tree.binaryTree.BinaryTree;
 import com.github.kilianB.hash.Hash;
 import com.github.kilianB.hashAlgorithms.HashingAlgorithm;
+import com.github.kilianB.hashAlgorithms.PreparedImage;
 
 /**
  * * Persistent image matchers are a subset of
@@ -35,6 +39,10 @@ import com.github.kilianB.hashAlgorithms.HashingAlgorithm;
  * hashing algorithms used to created hashes as soon as a single hash was
  * created.
  * 
+ * <p>
+ * Until a tree holds {@link AdaptiveBinaryTree#DEFAULT_THRESHOLD} hashes it is
+ * searched by scanning all hashes which is faster for small collections.
+ * 
  * @author Kilian
  * @since 3.0.0
  */
@@ -125,7 +133,7 @@ public abstract class PersitentBinaryTreeMatcher extends PersistentImageMatcher
 	 */
 	public void addHashingAlgorithm(HashingAlgorithm algo, double threshold, boolean normalized) {
 		super.addHashingAlgorithm(algo, threshold, normalized);
-		BinaryTree<String> binTree = new BinaryTree<>(true);
+		BinaryTree<String> binTree = new AdaptiveBinaryTree<>(true);
 		binTreeMap.put(algo, binTree);
 		if (cacheAddedHashes) {
 			cachedHashes.put(algo, new HashMap<>());
@@ -163,11 +171,12 @@ public abstract class PersitentBinaryTreeMatcher extends PersistentImageMatcher
 		if (addedImages.contains(uniqueId)) {
 			LOGGER.info("An image with uniqueId already exists. Skip request");
 		}
+		PreparedImage prepared = prepare(image);
 		for (Entry<HashingAlgorithm, AlgoSettings> entry : steps.entrySet()) {
 			HashingAlgorithm algo = entry.getKey();
 			BinaryTree<String> binTree = binTreeMap.get(algo);
-			Hash hash = algo.hash(image);
-			binTree.addHash(algo.hash(image), uniqueId);
+			Hash hash = algo.hash(prepared);
+			binTree.addHash(hash, uniqueId);
 			if (cacheAddedHashes) {
 				cachedHashes.get(algo).put(uniqueId, hash);
 			}
@@ -175,6 +184,64 @@ public abstract class PersitentBinaryTreeMatcher extends PersistentImageMatcher
 		addedImages.add(uniqueId);
 	}
 
+	/**
+	 * Remove a previously added image from the matcher. The hashes of the image
+	 * are removed from the binary trees of all hashing algorithms and branches
+	 * no longer leading to any image are released.
+	 * 
+	 * <p>
+	 * If the matcher caches added hashes the image is not required and may be
+	 * null. Otherwise the image has to be supplied to recompute the hashes it was
+	 * added with.
+	 * 
+	 * @param uniqueId the unique id the image was added with
+	 * @param image    the image which was added or null if hashes are cached
+	 * @return true if the image was removed, false if no image with this id was
+	 *         added
+	 * @throws IllegalStateException if the hashes are not cached and no image is
+	 *                               supplied
+	 * @since 3.0.1
+	 */
+	public boolean removeImage(String uniqueId, BufferedImage image) {
+		if (!addedImages.contains(uniqueId)) {
+			return false;
+		}
+		PreparedImage prepared = null;
+		if (!cacheAddedHashes) {
+			if (image == null) {
+				throw new IllegalStateException("No hash and buffered image supplied. Can't retrieve hash");
+			}
+			prepared = prepare(image);
+		}
+		for (HashingAlgorithm algo : steps.keySet()) {
+			Hash hash = cacheAddedHashes ? cachedHashes.get(algo).remove(uniqueId) : algo.hash(prepared);
+			binTreeMap.get(algo).removeHash(hash, uniqueId);
+		}
+		addedImages.remove(uniqueId);
+		return true;
+	}
+
+	/**
+	 * Remove a previously added image file from the matcher. The absolute path
+	 * of the file is used as unique id. If the hashes of the image are cached the
+	 * file is not read.
+	 * 
+	 * @param imageFile the image file which was added to the matcher
+	 * @return true if the image was removed, false if the image was not added
+	 * @throws IOException if an error exists reading the file
+	 * @since 3.0.1
+	 */
+	public boolean removeImage(File imageFile) throws IOException {
+		String uniqueId = imageFile.getAbsolutePath();
+		if (!addedImages.contains(uniqueId)) {
+			return false;
+		}
+		if (cacheAddedHashes) {
+			return removeImage(uniqueId, null);
+		}
+		return removeImage(uniqueId, ImageIO.read(imageFile));
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
@@ -225,12 +292,12 @@ public abstract class PersitentBinaryTreeMatcher extends PersistentImageMatcher
 		return true;
 	}
 
-	protected Hash getHash(HashingAlgorithm algo, String uniqueId, BufferedImage bImage) {
+	protected Hash getHash(HashingAlgorithm algo, String uniqueId, PreparedImage image) {
 		if (uniqueId != null && cachedHashes.get(algo).containsKey(uniqueId)) {
 			return cachedHashes.get(algo).get(uniqueId);
 		}
-		if (bImage != null) {
-			return algo.hash(bImage);
+		if (image != null) {
+			return algo.hash(image);
 		}
 		throw new IllegalStateException("No hash and buffered image supplied. Can't retrieve hash");
 	}
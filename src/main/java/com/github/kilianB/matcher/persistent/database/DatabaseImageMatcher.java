@@ -1,6 +1,7 @@
 package com.github.kilianB.matcher.persistent.database;
 
 import java.awt.image.BufferedImage;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.ObjectInputStream;
@@ -8,6 +9,7 @@ import java.io.ObjectOutputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
 import java.math.BigInteger;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
@@ -17,12 +19,18 @@ import java.sql.SQLException;
 import java.sql.SQLTimeoutException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.Logger;
 
 import javax.imageio.ImageIO;
@@ -30,6 +38,8 @@ import javax.imageio.ImageIO;
 import com.github.kilianB.datastructures.tree.Result;
 import com.github.kilianB.hash.Hash;
 import com.github.kilianB.hashAlgorithms.HashingAlgorithm;
+import com.github.kilianB.hashAlgorithms.PreparedImage;
+import com.github.kilianB.matcher.QueryPlanner;
 import com.github.kilianB.matcher.TypedImageMatcher;
 import com.github.kilianB.matcher.persistent.ConsecutiveMatcher;
 
@@ -91,12 +101,26 @@ import com.github.kilianB.matcher.persistent.ConsecutiveMatcher;
  * </ol>
  * 
  * <p>
+ * Besides the hash itself each hash table stores the hash split into chunks of
+ * {@link #HASH_CHUNK_BITS} bits in separate indexed columns. A hash within
+ * distance <code>r</code> of the needle has to match at least one chunk within
+ * distance <code>r / chunkCount</code> (pigeonhole principle) allowing the
+ * database to narrow down the candidates before the exact distance is verified.
+ * Tables created by earlier versions can be upgraded by calling
+ * {@link #migrateHashTable(HashingAlgorithm)}.
+ * 
+ * <p>
  * For each and every match the hashes have to be read from the database. This
  * allows to persistently stores hashes but might not be as efficient as the
  * {@link ConsecutiveMatcher}. Optimizations may include to store 0 or 1 level
  * hashes (hashes created by the first invoked hashing algorithms at a memory
  * level and only retrieve the later hashes from the database.
  * 
+ * <p>
+ * Queries are evaluated by the {@link QueryPlanner}. Only the most selective
+ * algorithm searches its table, the remaining algorithms fetch the hashes of
+ * the surviving candidates by their url.
+ * 
  * @author Kilian
  * @since 2.0.2 added
  * @since 3.0.0 extract h2 database image matcher into it's own class
@@ -108,9 +132,35 @@ public class DatabaseImageMatcher extends TypedImageMatcher implements Serializa
 
 	private static final long serialVersionUID = 1L;
 
+	/**
+	 * The number of bits stored in each indexed hash chunk column.
+	 * 
+	 * @since 3.0.1
+	 */
+	protected static final int HASH_CHUNK_BITS = 16;
+
+	/**
+	 * The maximum number of chunk values probed per chunk column. If a search
+	 * radius requires more values the table is scanned instead.
+	 * 
+	 * @since 3.0.1
+	 */
+	protected static final int MAX_CHUNK_PROBES = 1024;
+
+	/**
+	 * The maximum number of candidates whose hashes are fetched by url. Larger
+	 * candidate sets are verified by searching the hash table instead.
+	 * 
+	 * @since 3.0.1
+	 */
+	protected static final int MAX_LOOKUP_CANDIDATES = 1000;
+
 	/** Database connection. Maybe use connection pooling? */
 	protected transient Connection conn;
 
+	/** Tables known to contain the hash chunk columns */
+	private transient Set<String> chunkedTables;
+
 	/**
 	 * Attempts to establish a connection to the given database using the supplied
 	 * connection object. If the database does not yet exist an empty db will be
@@ -188,6 +238,8 @@ public class DatabaseImageMatcher extends TypedImageMatcher implements Serializa
 		try {
 			if (!doesTableExist(resolveTableName(algo))) {
 				createHashTable(algo);
+			} else {
+				ensureHashChunkColumns(algo);
 			}
 		} catch (SQLException e) {
 			/*
@@ -209,6 +261,8 @@ public class DatabaseImageMatcher extends TypedImageMatcher implements Serializa
 		try {
 			if (!doesTableExist(resolveTableName(algo))) {
 				createHashTable(algo);
+			} else {
+				ensureHashChunkColumns(algo);
 			}
 		} catch (SQLException e) {
 			/*
@@ -265,13 +319,13 @@ public class DatabaseImageMatcher extends TypedImageMatcher implements Serializa
 	public void addImage(String uniqueId, File imageFile) throws IOException, SQLException {
 
 		// Only load if necessary.
-		BufferedImage img = null;
+		PreparedImage img = null;
 
 		for (HashingAlgorithm algo : steps.keySet()) {
 			if (!doesEntryExist(uniqueId, algo)) {
 				// Lazily load
 				if (img == null) {
-					img = ImageIO.read(imageFile);
+					img = prepare(ImageIO.read(imageFile));
 				}
 				addImage(algo, uniqueId, img);
 			}
@@ -355,10 +409,11 @@ public class DatabaseImageMatcher extends TypedImageMatcher implements Serializa
 	 * @throws SQLException if an SQL error occurs
 	 */
 	public void addImage(String uniqueId, BufferedImage image) throws SQLException {
+		PreparedImage prepared = prepare(image);
 		for (Entry<HashingAlgorithm, AlgoSettings> entry : steps.entrySet()) {
 			HashingAlgorithm algo = entry.getKey();
 			if (!doesEntryExist(uniqueId, algo)) {
-				addImage(algo, uniqueId, image);
+				addImage(algo, uniqueId, prepared);
 			}
 		}
 	}
@@ -391,12 +446,7 @@ public class DatabaseImageMatcher extends TypedImageMatcher implements Serializa
 		}
 
 		for (int i = 0; i < uniqueIds.length; i++) {
-			for (Entry<HashingAlgorithm, AlgoSettings> entry : steps.entrySet()) {
-				HashingAlgorithm algo = entry.getKey();
-				if (!doesEntryExist(uniqueIds[i], algo)) {
-					addImage(algo, uniqueIds[i], images[i]);
-				}
-			}
+			addImage(uniqueIds[i], images[i]);
 		}
 
 	}
@@ -452,6 +502,7 @@ public class DatabaseImageMatcher extends TypedImageMatcher implements Serializa
 				try (Statement stmt = conn.createStatement()) {
 					stmt.execute("DROP TABLE " + tableName);
 				}
+				getChunkedTables().remove(tableName);
 			}
 		}
 		return removed;
@@ -490,8 +541,11 @@ public class DatabaseImageMatcher extends TypedImageMatcher implements Serializa
 	 * other images in the database.
 	 * 
 	 * <p>
-	 * Be careful that depending on the number of images in the database this
-	 * operation can be very expensive.
+	 * The hashes of all images are loaded into memory once. Images lacking a hash
+	 * of one of the hashing algorithms are not part of the result. Be careful that
+	 * the entire result is kept in memory. For large databases use
+	 * {@link #getAllMatchingImages(MatchConsumer, boolean, Executor, File)}
+	 * instead.
 	 * 
 	 * @return A Map containing a queue which points to matched images
 	 * 
@@ -511,62 +565,167 @@ public class DatabaseImageMatcher extends TypedImageMatcher implements Serializa
 
 		Map<String, PriorityQueue<Result<String>>> returnVal = new HashMap<>();
 
-		// Get any hashing algorithm
-		HashingAlgorithm hasher = steps.keySet().iterator().next();
-
-		String tableName = resolveTableName(hasher);
+		HashJoin join = loadHashJoin();
+		for (int i = 0; i < join.size(); i++) {
+			if (join.isComplete(i)) {
+				returnVal.put(join.getId(i), new PriorityQueue<Result<String>>(join.match(i, false, true)));
+			}
+		}
+		return returnVal;
+	}
 
-		// Get all unique id's from this database
-		ResultSet rs = conn.createStatement().executeQuery("SELECT url FROM " + tableName);
+	/**
+	 * Find all pairs of images stored in the database which are considered
+	 * matches and stream them to the consumer. Each pair is reported once and
+	 * the matches of an image are computed using all available processors.
+	 * 
+	 * @param consumer the consumer receiving the matches
+	 * @throws SQLException if an SQL error occurs
+	 * @see #getAllMatchingImages(MatchConsumer, boolean, Executor, File)
+	 * @since 3.0.1
+	 */
+	public void getAllMatchingImages(MatchConsumer consumer) throws SQLException {
+		try {
+			getAllMatchingImages(consumer, true, ForkJoinPool.commonPool(), null);
+		} catch (IOException e) {
+			// Only thrown when accessing the checkpoint
+			throw new UncheckedIOException(e);
+		}
+	}
 
-		Map<HashingAlgorithm, PreparedStatement> cachedStatements = new HashMap<>();
+	/**
+	 * Find all images stored in the database which are considered matches to
+	 * other images in the database and stream them to the consumer.
+	 * 
+	 * <p>
+	 * Opposed to {@link #getAllMatchingImages()} the hashes of each hashing
+	 * algorithm are read with a single query into a compact in memory index and
+	 * the search is performed without accessing the database again. Results are
+	 * handed to the consumer as soon as they are available instead of being
+	 * collected. Images without any match besides themselves are not reported.
+	 * 
+	 * <p>
+	 * Images are processed in blocks in ascending order of their unique ids. The
+	 * images of a block are matched in parallel by the executor. The consumer is
+	 * invoked by the calling thread only. If a checkpoint file is supplied the
+	 * progress is written to the file after each block. A search interrupted by
+	 * an exception or a crash resumes after the last completed block if it is
+	 * started again with the same checkpoint file. The matches of the interrupted
+	 * block may be reported a second time. Once the search completes the
+	 * checkpoint file is deleted.
+	 * 
+	 * @param consumer    the consumer receiving the matches
+	 * @param uniquePairs if true each pair of matching images is only reported
+	 *                    once, as a match of the image with the smaller unique
+	 *                    id. If false the matches of every image are reported.
+	 * @param executor    the executor used to match the images
+	 * @param checkpoint  the file used to store the progress. If null the search
+	 *                    can not be resumed.
+	 * @throws SQLException          if an SQL error occurs
+	 * @throws IOException           if the checkpoint can not be read or written
+	 * @throws IllegalStateException if the checkpoint was created for different
+	 *                               images, hashing algorithms or settings
+	 * @since 3.0.1
+	 */
+	public void getAllMatchingImages(MatchConsumer consumer, boolean uniquePairs, Executor executor,
+			File checkpoint) throws SQLException, IOException {
+		getAllMatchingImages(consumer, uniquePairs, executor, checkpoint, HashJoin.DEFAULT_BLOCK_SIZE);
+	}
 
-		for (HashingAlgorithm hashAlgo : steps.keySet()) {
-			cachedStatements.put(hashAlgo,
-					conn.prepareStatement("SELECT hash FROM " + resolveTableName(hashAlgo) + " WHERE url = ?"));
-		}
+	void getAllMatchingImages(MatchConsumer consumer, boolean uniquePairs, Executor executor, File checkpoint,
+			int blockSize) throws SQLException, IOException {
+		loadHashJoin().run(consumer, uniquePairs, executor, checkpoint, blockSize);
+	}
 
-		// Check for each unique id stored in the database how far away the resulting
-		// hashes are
-		while (rs.next()) {
-			// For each target hash
-			String id = rs.getString(1);
-			// Get target hash
+	/**
+	 * Read the hashes of all images into memory.
+	 * 
+	 * @return the join containing all images with a hash of the first hashing
+	 *         algorithm
+	 * @throws SQLException if an SQL error occurs
+	 */
+	private HashJoin loadHashJoin() throws SQLException {
 
-			PriorityQueue<Result<String>> returnValues = null;
+		if (steps.isEmpty())
+			throw new IllegalStateException(
+					"Please supply at least one hashing algorithm prior to invoking the match method");
 
-			for (Entry<HashingAlgorithm, AlgoSettings> entry1 : steps.entrySet()) {
-				HashingAlgorithm algo = entry1.getKey();
+		int algorithmCount = steps.size();
+		int[] bitResolution = new int[algorithmCount];
+		int[] threshold = new int[algorithmCount];
+		long[][] words = new long[algorithmCount][];
+		boolean[][] present = new boolean[algorithmCount][];
 
-				PreparedStatement ps = cachedStatements.get(algo);
-				ps.setString(1, id);
+		String[] ids = null;
+		Map<String, Integer> idIndex = null;
 
-				ResultSet targetHashRs = ps.executeQuery();
-				targetHashRs.next();
-				Hash targetHash = reconstructHashFromDatabase(algo, targetHashRs.getBytes(1));
-				AlgoSettings settings = entry1.getValue();
+		int k = 0;
+		try (Statement stmt = conn.createStatement()) {
+			for (Entry<HashingAlgorithm, AlgoSettings> entry : steps.entrySet()) {
+				HashingAlgorithm algo = entry.getKey();
+				AlgoSettings settings = entry.getValue();
+				String tableName = resolveTableName(algo);
 
-				int threshold = 0;
+				bitResolution[k] = algo.getKeyResolution();
 				if (settings.isNormalized()) {
-					int hashLength = targetHash.getBitResolution();
-					threshold = (int) Math.round(settings.getThreshold() * hashLength);
+					threshold[k] = (int) Math.round(settings.getThreshold() * bitResolution[k]);
 				} else {
-					threshold = (int) settings.getThreshold();
+					threshold[k] = (int) settings.getThreshold();
 				}
-				PriorityQueue<Result<String>> temp = new PriorityQueue<Result<String>>(
-						getSimilarImages(targetHash, threshold, algo));
-
-				if (returnValues == null) {
-					returnValues = temp;
+				int wordCount = (bitResolution[k] + 63) / 64;
+				boolean tableExists = doesTableExist(tableName);
+
+				if (ids == null) {
+					// The first algorithm defines the images taking part in the join
+					int count = 0;
+					if (tableExists) {
+						ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + tableName);
+						rs.next();
+						count = rs.getInt(1);
+					}
+					ids = new String[count];
+					words[k] = new long[count * wordCount];
+					present[k] = new boolean[count];
+					idIndex = new HashMap<>();
+					if (tableExists) {
+						ResultSet rs = stmt.executeQuery("SELECT url,hash FROM " + tableName + " ORDER BY url");
+						int i = 0;
+						for (; i < count && rs.next(); i++) {
+							ids[i] = rs.getString(1);
+							idIndex.put(ids[i], i);
+							copyHash(algo, rs.getBytes(2), words[k], i * wordCount, wordCount);
+							present[k][i] = true;
+						}
+						if (i < count) {
+							// Rows were deleted in the meantime
+							ids = Arrays.copyOf(ids, i);
+							words[k] = Arrays.copyOf(words[k], i * wordCount);
+							present[k] = Arrays.copyOf(present[k], i);
+						}
+					}
 				} else {
-					temp.retainAll(returnValues);
-					returnValues = temp;
+					words[k] = new long[ids.length * wordCount];
+					present[k] = new boolean[ids.length];
+					if (tableExists) {
+						ResultSet rs = stmt.executeQuery("SELECT url,hash FROM " + tableName);
+						while (rs.next()) {
+							Integer image = idIndex.get(rs.getString(1));
+							if (image != null) {
+								copyHash(algo, rs.getBytes(2), words[k], image * wordCount, wordCount);
+								present[k][image] = true;
+							}
+						}
+					}
 				}
+				k++;
 			}
-
-			returnVal.put(id, returnValues);
 		}
-		return returnVal;
+		return new HashJoin(ids, bitResolution, threshold, words, present);
+	}
+
+	private void copyHash(HashingAlgorithm algo, byte[] bytes, long[] target, int offset, int wordCount) {
+		long[] hashWords = reconstructHashFromDatabase(algo, bytes).getPackedHashValue();
+		System.arraycopy(hashWords, 0, target, offset, Math.min(wordCount, hashWords.length));
 	}
 
 	/**
@@ -595,28 +754,11 @@ public class DatabaseImageMatcher extends TypedImageMatcher implements Serializa
 			throw new IllegalStateException(
 					"Please supply at least one hashing algorithm prior to invoking the match method");
 
-		PriorityQueue<Result<String>> returnValues = null;
-
-		@SuppressWarnings("unchecked")
-		Entry<HashingAlgorithm, AlgoSettings>[] entries = steps.entrySet().toArray(new Entry[steps.size()]);
-
-		for (int i = 0; i < steps.size(); i++) {
-			HashingAlgorithm algo = entries[i].getKey();
-			Hash targetHash = algo.hash(image);
-
-			int threshold = (int) Math.round(normalizedDistance[i] * targetHash.getBitResolution());
-
-			PriorityQueue<Result<String>> temp = new PriorityQueue<Result<String>>(
-					getSimilarImages(targetHash, threshold, algo));
-
-			if (returnValues == null) {
-				returnValues = temp;
-			} else {
-				temp.retainAll(returnValues);
-				returnValues = temp;
-			}
+		AlgoSettings[] settings = new AlgoSettings[steps.size()];
+		for (int i = 0; i < settings.length; i++) {
+			settings[i] = new AlgoSettings(normalizedDistance[i], true);
 		}
-		return returnValues;
+		return getMatchingImages(image, settings);
 	}
 
 	/**
@@ -652,32 +794,88 @@ public class DatabaseImageMatcher extends TypedImageMatcher implements Serializa
 			throw new IllegalStateException(
 					"Please supply at least one hashing algorithm prior to invoking the match method");
 
-		PriorityQueue<Result<String>> returnValues = null;
+		return getMatchingImages(image, steps.values().toArray(new AlgoSettings[steps.size()]));
+	}
 
-		for (Entry<HashingAlgorithm, AlgoSettings> entry : steps.entrySet()) {
-			HashingAlgorithm algo = entry.getKey();
-			Hash targetHash = algo.hash(image);
-			AlgoSettings settings = entry.getValue();
+	/**
+	 * Search for all similar images passing the algorithms of this matcher using
+	 * the supplied settings.
+	 * 
+	 * @param image    The image other images will be matched against
+	 * @param settings the settings of each algorithm in insertion order
+	 * @return all unique ids/file paths sorted by the hamming distance of the last
+	 *         applied algorithms
+	 * @throws SQLException if an SQL error occurs
+	 */
+	private PriorityQueue<Result<String>> getMatchingImages(BufferedImage image, AlgoSettings[] settings)
+			throws SQLException {
+		HashingAlgorithm[] algorithms = steps.keySet().toArray(new HashingAlgorithm[steps.size()]);
+		return queryPlanner.execute(algorithms, settings, null, prepare(image),
+				new QueryPlanner.Source<String, SQLException>() {
+					@Override
+					public int size(int algorithm) throws SQLException {
+						try (Statement stmt = conn.createStatement()) {
+							ResultSet rs = stmt
+									.executeQuery("SELECT COUNT(*) FROM " + resolveTableName(algorithms[algorithm]));
+							return rs.next() ? rs.getInt(1) : 0;
+						}
+					}
+
+					@Override
+					public Collection<Result<String>> search(int algorithm, Hash needle, int maxDistance)
+							throws SQLException {
+						return getSimilarImages(needle, maxDistance, algorithms[algorithm]);
+					}
+
+					@Override
+					public boolean supportsLookup(int algorithm) {
+						return true;
+					}
+
+					@Override
+					public Map<String, Hash> lookup(int algorithm, Collection<String> candidates) throws SQLException {
+						if (candidates.size() > MAX_LOOKUP_CANDIDATES) {
+							return null;
+						}
+						return getHashes(candidates, algorithms[algorithm]);
+					}
+				}, queryExecutor);
+	}
 
-			int threshold = 0;
-			if (settings.isNormalized()) {
-				int hashLength = targetHash.getBitResolution();
-				threshold = (int) Math.round(settings.getThreshold() * hashLength);
-			} else {
-				threshold = (int) settings.getThreshold();
-			}
+	/**
+	 * Retrieve the hashes of the supplied urls.
+	 * 
+	 * @param urls   the unique ids of the images
+	 * @param hasher the hashing algorithm used to identify the table
+	 * @return the hashes mapped to their url. Urls not present in the table are
+	 *         absent
+	 * @throws SQLException if an SQL error occurs
+	 * @since 3.0.1
+	 */
+	protected Map<String, Hash> getHashes(Collection<String> urls, HashingAlgorithm hasher) throws SQLException {
+		Map<String, Hash> hashes = new HashMap<>();
+		if (urls.isEmpty()) {
+			return hashes;
+		}
 
-			PriorityQueue<Result<String>> temp = new PriorityQueue<Result<String>>(
-					getSimilarImages(targetHash, threshold, algo));
+		StringBuilder query = new StringBuilder("SELECT url,hash FROM ").append(resolveTableName(hasher))
+				.append(" WHERE url IN (?");
+		for (int i = 1; i < urls.size(); i++) {
+			query.append(",?");
+		}
+		query.append(")");
 
-			if (returnValues == null) {
-				returnValues = temp;
-			} else {
-				temp.retainAll(returnValues);
-				returnValues = temp;
+		try (PreparedStatement stmt = conn.prepareStatement(query.toString())) {
+			int index = 1;
+			for (String url : urls) {
+				stmt.setString(index++, url);
+			}
+			ResultSet rs = stmt.executeQuery();
+			while (rs.next()) {
+				hashes.put(rs.getString(1), reconstructHashFromDatabase(hasher, rs.getBytes(2)));
 			}
 		}
-		return returnValues;
+		return hashes;
 	}
 
 	/**
@@ -695,8 +893,18 @@ public class DatabaseImageMatcher extends TypedImageMatcher implements Serializa
 
 		String tableName = resolveTableName(hasher);
 		List<Result<String>> urls = new ArrayList<>();
+
+		String query = null;
+		if (hasHashChunkColumns(tableName)) {
+			query = buildChunkFilterQuery(tableName, targetHash, maxDistance);
+		}
+		if (query == null) {
+			// The search radius is too large to benefit from the index
+			query = "SELECT url,hash FROM " + tableName;
+		}
+
 		try (Statement stmt = conn.createStatement()) {
-			ResultSet rs = stmt.executeQuery("SELECT url,hash FROM " + tableName);
+			ResultSet rs = stmt.executeQuery(query);
 			while (rs.next()) {
 				// Url
 				byte[] bytes = rs.getBytes(2);
@@ -713,17 +921,52 @@ public class DatabaseImageMatcher extends TypedImageMatcher implements Serializa
 	}
 
 	protected void addImage(HashingAlgorithm hashAlgo, String url, BufferedImage image) throws SQLException {
+		addImage(hashAlgo, url, prepare(image));
+	}
+
+	/**
+	 * Hash the prepared image and insert the hash into the table of the hashing
+	 * algorithm.
+	 * 
+	 * @param hashAlgo the hashing algorithm
+	 * @param url      the unique id of the image
+	 * @param image    the image prepared by {@link #prepare(BufferedImage)}
+	 * @throws SQLException if an SQL error occurs
+	 * @since 3.0.1
+	 */
+	protected void addImage(HashingAlgorithm hashAlgo, String url, PreparedImage image) throws SQLException {
 		String tableName = resolveTableName(hashAlgo);
 
 		if (!doesTableExist(tableName)) {
 			createHashTable(hashAlgo);
 		}
-		try (PreparedStatement insertHash = conn
-				.prepareStatement("MERGE INTO " + tableName + " (url,hash) VALUES(?,?)")) {
-			Hash hash = hashAlgo.hash(image);
-			insertHash.setString(1, url);
-			insertHash.setBytes(2, hash.toByteArray());
-			insertHash.execute();
+		Hash hash = hashAlgo.hash(image);
+
+		if (hasHashChunkColumns(tableName)) {
+			int[] chunks = computeHashChunks(hash);
+			StringBuilder sql = new StringBuilder("MERGE INTO ").append(tableName).append(" (url,hash");
+			StringBuilder values = new StringBuilder("VALUES(?,?");
+			for (int i = 0; i < chunks.length; i++) {
+				sql.append(",chunk").append(i);
+				values.append(",?");
+			}
+			sql.append(") ").append(values).append(")");
+
+			try (PreparedStatement insertHash = conn.prepareStatement(sql.toString())) {
+				insertHash.setString(1, url);
+				insertHash.setBytes(2, hash.toByteArray());
+				for (int i = 0; i < chunks.length; i++) {
+					insertHash.setInt(3 + i, chunks[i]);
+				}
+				insertHash.execute();
+			}
+		} else {
+			try (PreparedStatement insertHash = conn
+					.prepareStatement("MERGE INTO " + tableName + " (url,hash) VALUES(?,?)")) {
+				insertHash.setString(1, url);
+				insertHash.setBytes(2, hash.toByteArray());
+				insertHash.execute();
+			}
 		}
 	}
 
@@ -747,9 +990,244 @@ public class DatabaseImageMatcher extends TypedImageMatcher implements Serializa
 			BufferedImage bi = new BufferedImage(1, 1, BufferedImage.TYPE_3BYTE_BGR);
 			Hash sampleHash = hasher.hash(bi);
 			int bytes = (int) Math.ceil(sampleHash.getBitResolution() / 8d);
+			int chunkCount = getHashChunkCount(sampleHash.getBitResolution());
+
+			StringBuilder sql = new StringBuilder("CREATE TABLE ").append(tableName)
+					.append(" (url VARCHAR(260) PRIMARY KEY, hash BINARY(").append(bytes).append(")");
+			for (int i = 0; i < chunkCount; i++) {
+				sql.append(", chunk").append(i).append(" INTEGER");
+			}
+			stmt.execute(sql.append(")").toString());
+
+			for (int i = 0; i < chunkCount; i++) {
+				stmt.execute("CREATE INDEX " + tableName + "_chunk" + i + " ON " + tableName + " (chunk" + i + ")");
+			}
+		}
+		getChunkedTables().add(tableName);
+	}
+
+	/**
+	 * Upgrade a hash table created by a previous version of this matcher to
+	 * support indexed hamming distance searches. Missing hash chunk columns and
+	 * indices are created and the chunks of all hashes lacking them are computed.
+	 * 
+	 * <p>
+	 * Tables which are not migrated remain fully functional, but searches will
+	 * have to take every hash without chunk information into account. Depending
+	 * on the number of hashes stored this operation may take a while.
+	 * 
+	 * @param hasher the hashing algorithm whose table should be migrated
+	 * @return the number of hashes whose chunks were computed
+	 * @throws SQLException if an SQL error occurs
+	 * @since 3.0.1
+	 */
+	public int migrateHashTable(HashingAlgorithm hasher) throws SQLException {
+
+		String tableName = resolveTableName(hasher);
+
+		if (!doesTableExist(tableName)) {
+			createHashTable(hasher);
+			return 0;
+		}
+
+		ensureHashChunkColumns(hasher);
+
+		int chunkCount = getHashChunkCount(hasher.getKeyResolution());
+		StringBuilder update = new StringBuilder("UPDATE ").append(tableName).append(" SET ");
+		for (int i = 0; i < chunkCount; i++) {
+			update.append(i == 0 ? "" : ",").append("chunk").append(i).append(" = ?");
+		}
+		update.append(" WHERE url = ?");
+
+		int migrated = 0;
+		try (Statement stmt = conn.createStatement();
+				PreparedStatement ps = conn.prepareStatement(update.toString())) {
+			ResultSet rs = stmt.executeQuery("SELECT url,hash FROM " + tableName + " WHERE chunk0 IS NULL");
+			while (rs.next()) {
+				int[] chunks = computeHashChunks(reconstructHashFromDatabase(hasher, rs.getBytes(2)));
+				for (int i = 0; i < chunks.length; i++) {
+					ps.setInt(i + 1, chunks[i]);
+				}
+				ps.setString(chunks.length + 1, rs.getString(1));
+				ps.addBatch();
+				if (++migrated % 1000 == 0) {
+					ps.executeBatch();
+				}
+			}
+			ps.executeBatch();
+		}
+		LOG.info("Computed hash chunks of " + migrated + " hashes in table " + tableName);
+		return migrated;
+	}
+
+	/**
+	 * Add the hash chunk columns and indices to an existing hash table if they are
+	 * not yet present. Existing hashes are not updated.
+	 * 
+	 * @param hasher the hashing algorithm whose table should be checked
+	 * @throws SQLException if an SQL error occurs
+	 * @see #migrateHashTable(HashingAlgorithm)
+	 * @since 3.0.1
+	 */
+	protected void ensureHashChunkColumns(HashingAlgorithm hasher) throws SQLException {
+		String tableName = resolveTableName(hasher);
+		if (hasHashChunkColumns(tableName)) {
+			return;
+		}
+		int chunkCount = getHashChunkCount(hasher.getKeyResolution());
+		try (Statement stmt = conn.createStatement()) {
+			for (int i = 0; i < chunkCount; i++) {
+				stmt.execute("ALTER TABLE " + tableName + " ADD COLUMN chunk" + i + " INTEGER");
+				stmt.execute("CREATE INDEX " + tableName + "_chunk" + i + " ON " + tableName + " (chunk" + i + ")");
+			}
+		}
+		getChunkedTables().add(tableName);
+		LOG.info("Added hash chunk columns to table " + tableName
+				+ ". Call migrateHashTable to index the already present hashes");
+	}
+
+	/**
+	 * Check if the hash table contains the hash chunk columns used to narrow down
+	 * hamming distance searches.
+	 * 
+	 * @param tableName the name of the hash table
+	 * @return true if the chunk columns are present
+	 * @throws SQLException if an SQL error occurs
+	 * @since 3.0.1
+	 */
+	protected boolean hasHashChunkColumns(String tableName) throws SQLException {
+		if (getChunkedTables().contains(tableName)) {
+			return true;
+		}
+		DatabaseMetaData metadata = conn.getMetaData();
+		try (ResultSet res = metadata.getColumns(null, null, tableName.toUpperCase(), "CHUNK0")) {
+			if (res.next()) {
+				getChunkedTables().add(tableName);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Build a query returning all hashes which may be within the given distance of
+	 * the target hash. Hashes whose chunks were not yet computed are always
+	 * returned.
+	 * 
+	 * @param tableName   the name of the hash table
+	 * @param targetHash  the hash to search for
+	 * @param maxDistance the maximum distance
+	 * @return the query or null if the search radius requires too many chunk
+	 *         values to be probed
+	 * @since 3.0.1
+	 */
+	protected String buildChunkFilterQuery(String tableName, Hash targetHash, int maxDistance) {
+
+		int[] chunks = computeHashChunks(targetHash);
+		int[] chunkLength = getHashChunkLengths(targetHash.getBitResolution());
+		int m = chunks.length;
+
+		/*
+		 * Generalized pigeonhole principle. With maxDistance = q * m + a at least one
+		 * of the first a + 1 chunks is within distance q or one of the remaining chunks
+		 * is within q - 1.
+		 */
+		int q = maxDistance / m;
+		int a = maxDistance % m;
+
+		StringBuilder sql = new StringBuilder();
+		for (int i = 0; i < m; i++) {
+			int radius = Math.min(i <= a ? q : q - 1, chunkLength[i]);
+			if (radius < 0) {
+				continue;
+			}
+			if (neighbourhoodSize(chunkLength[i], radius) > MAX_CHUNK_PROBES) {
+				return null;
+			}
+			sql.append("SELECT url,hash FROM ").append(tableName).append(" WHERE chunk").append(i).append(" IN (");
+			appendNeighbours(sql, chunks[i], chunkLength[i], 0, radius);
+			// Remove trailing comma
+			sql.setLength(sql.length() - 1);
+			sql.append(") UNION ");
+		}
+		return sql.append("SELECT url,hash FROM ").append(tableName).append(" WHERE chunk0 IS NULL").toString();
+	}
+
+	/**
+	 * Split the hash into the chunks stored in the chunk columns of the hash table.
+	 * 
+	 * @param hash the hash to split
+	 * @return the chunk values. Chunk i contains the bits following chunk i - 1
+	 *         starting at bit 0.
+	 * @since 3.0.1
+	 */
+	protected int[] computeHashChunks(Hash hash) {
+		int[] chunkLength = getHashChunkLengths(hash.getBitResolution());
+		int[] chunks = new int[chunkLength.length];
+		int offset = 0;
+		for (int i = 0; i < chunks.length; i++) {
+			int value = 0;
+			for (int bit = chunkLength[i] - 1; bit >= 0; bit--) {
+				value = (value << 1) | (hash.getBitUnsafe(offset + bit) ? 1 : 0);
+			}
+			chunks[i] = value;
+			offset += chunkLength[i];
+		}
+		return chunks;
+	}
+
+	/**
+	 * @param bitResolution the bit resolution of the hashes
+	 * @return the number of chunk columns used for hashes of the given resolution
+	 * @since 3.0.1
+	 */
+	protected int getHashChunkCount(int bitResolution) {
+		return Math.max(1, (bitResolution + HASH_CHUNK_BITS - 1) / HASH_CHUNK_BITS);
+	}
+
+	private int[] getHashChunkLengths(int bitResolution) {
+		int m = getHashChunkCount(bitResolution);
+		int[] lengths = new int[m];
+		for (int i = 0; i < m; i++) {
+			// Longer chunks first
+			lengths[i] = bitResolution / m + (i < bitResolution % m ? 1 : 0);
+		}
+		return lengths;
+	}
+
+	/**
+	 * Append all values within the given hamming distance of the value followed by
+	 * a comma.
+	 */
+	private static void appendNeighbours(StringBuilder sb, int value, int length, int fromBit, int remaining) {
+		sb.append(value).append(",");
+		if (remaining == 0) {
+			return;
+		}
+		for (int bit = fromBit; bit < length; bit++) {
+			appendNeighbours(sb, value ^ (1 << bit), length, bit + 1, remaining - 1);
+		}
+	}
+
+	/**
+	 * @return the number of values within the radius of a value with the given bit
+	 *         length
+	 */
+	private static long neighbourhoodSize(int length, int radius) {
+		long sum = 0;
+		long binomial = 1;
+		for (int k = 0; k <= radius; k++) {
+			sum += binomial;
+			binomial = binomial * (length - k) / (k + 1);
+		}
+		return sum;
+	}
 
-			stmt.execute("CREATE TABLE " + tableName + " (url VARCHAR(260) PRIMARY KEY, hash BINARY(" + bytes + "))");
+	private Set<String> getChunkedTables() {
+		if (chunkedTables == null) {
+			chunkedTables = new HashSet<>();
 		}
+		return chunkedTables;
 	}
 
 	/**
@@ -823,12 +1301,18 @@ public class DatabaseImageMatcher extends TypedImageMatcher implements Serializa
 	private void writeObject(ObjectOutputStream oos) throws IOException {
 		oos.defaultWriteObject();
 		oos.writeObject(this.steps);
+		oos.writeInt(pyramidResolution);
 	}
 
 	@SuppressWarnings("unchecked")
 	private void readObject(ObjectInputStream ois) throws ClassNotFoundException, IOException {
 		ois.defaultReadObject();
 		this.steps = (LinkedHashMap<HashingAlgorithm, AlgoSettings>) ois.readObject();
+		try {
+			this.pyramidResolution = ois.readInt();
+		} catch (EOFException e) {
+			// Matcher was serialized before the pyramid resolution was introduced
+		}
 	}
 
 	@Override
@@ -0,0 +1,318 @@
+package com.github.kilianB.matcher.persistent.database;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import com.github.kilianB.datastructures.tree.Result;
+import com.github.kilianB.datastructures.tree.binaryTree.CompactBinaryTree;
+import com.github.kilianB.hash.Hash;
+
+/**
+ * In memory self join of all hashes stored in the tables of a
+ * {@link DatabaseImageMatcher}.
+ * <p>
+ * The hashes of each algorithm are kept in a single flat long array. Candidates
+ * are retrieved from a {@link CompactBinaryTree} built from the hashes of the
+ * first algorithm and verified against the remaining algorithms in the order
+ * they were added to the matcher. Images lacking a hash of any algorithm never
+ * match.
+ * <p>
+ * The join is processed in blocks of consecutive images. All images of a block
+ * are matched in parallel before the results are handed to the consumer in
+ * order. After each block the number of completed images can be written to a
+ * checkpoint file allowing an interrupted join to be resumed.
+ *
+ * @author Kilian
+ * @since 3.0.1
+ */
+class HashJoin {
+
+	/** Default number of images processed between two checkpoints */
+	static final int DEFAULT_BLOCK_SIZE = 4096;
+
+	/** Number of images matched by a single task */
+	private static final int SLICE_SIZE = 64;
+
+	private static final int CHECKPOINT_VERSION = 1;
+
+	/** The unique ids of the images in ascending order */
+	private final String[] ids;
+
+	private final int[] bitResolution;
+	private final int[] wordCount;
+	private final int[] threshold;
+
+	/** The hash of image i of algorithm k is located at words[k][i * wordCount[k]] */
+	private final long[][] words;
+
+	/** Images lacking a hash of at least one algorithm */
+	private final boolean[] incomplete;
+
+	private final CompactBinaryTree<Integer> index;
+
+	/**
+	 * @param ids           the unique ids of the images in ascending order
+	 * @param bitResolution the bit resolution of the hashes of each algorithm
+	 * @param threshold     the maximum hamming distance of each algorithm
+	 * @param words         the flat hash values of each algorithm
+	 * @param present       for each algorithm true if the image has a hash. May be
+	 *                      null if all images are hashed.
+	 */
+	HashJoin(String[] ids, int[] bitResolution, int[] threshold, long[][] words, boolean[][] present) {
+		this.ids = ids;
+		this.bitResolution = bitResolution;
+		this.threshold = threshold;
+		this.words = words;
+
+		wordCount = new int[bitResolution.length];
+		for (int k = 0; k < bitResolution.length; k++) {
+			wordCount[k] = (bitResolution[k] + 63) / 64;
+		}
+
+		incomplete = new boolean[ids.length];
+		for (boolean[] p : present) {
+			if (p != null) {
+				for (int i = 0; i < ids.length; i++) {
+					incomplete[i] |= !p[i];
+				}
+			}
+		}
+
+		List<Hash> hashes = new ArrayList<>();
+		List<Integer> values = new ArrayList<>();
+		for (int i = 0; i < ids.length; i++) {
+			if (!incomplete[i]) {
+				hashes.add(getHash(0, i));
+				values.add(i);
+			}
+		}
+		index = new CompactBinaryTree<>(hashes, values, false);
+	}
+
+	/**
+	 * @return the number of images
+	 */
+	int size() {
+		return ids.length;
+	}
+
+	/**
+	 * @param image the index of the image
+	 * @return the unique id of the image
+	 */
+	String getId(int image) {
+		return ids[image];
+	}
+
+	/**
+	 * @param image the index of the image
+	 * @return true if the image has a hash of each algorithm
+	 */
+	boolean isComplete(int image) {
+		return !incomplete[image];
+	}
+
+	/**
+	 * Find all images matching the image. This method is thread safe.
+	 *
+	 * @param image       the index of the image
+	 * @param uniquePairs if true only images with a greater index are returned
+	 * @param includeSelf if true the image itself is part of the result
+	 * @return the matches sorted by the distance of the last algorithm
+	 */
+	List<Result<String>> match(int image, boolean uniquePairs, boolean includeSelf) {
+		if (incomplete[image]) {
+			return Collections.emptyList();
+		}
+
+		int last = bitResolution.length - 1;
+		List<Result<String>> matches = new ArrayList<>();
+		for (Result<Integer> candidate : index.getElementsWithinHammingDistance(getHash(0, image), threshold[0])) {
+			int other = candidate.value;
+			if (other == image) {
+				if (!includeSelf) {
+					continue;
+				}
+			} else if (uniquePairs && other < image) {
+				continue;
+			}
+
+			int distance = (int) candidate.distance;
+			for (int k = 1; k <= last && distance >= 0; k++) {
+				distance = distance(k, image, other);
+				if (distance > threshold[k]) {
+					distance = -1;
+				}
+			}
+			if (distance >= 0) {
+				matches.add(new Result<String>(ids[other], distance, distance / (double) bitResolution[last]));
+			}
+		}
+		Collections.sort(matches);
+		return matches;
+	}
+
+	/**
+	 * Match all images and hand the results to the consumer.
+	 *
+	 * @param consumer    the consumer receiving the matches of each image with at
+	 *                    least one match. Invoked by the calling thread in
+	 *                    ascending order of the unique ids.
+	 * @param uniquePairs if true each pair of matching images is only reported
+	 *                    once
+	 * @param executor    the executor used to match the images of a block
+	 * @param checkpoint  the file storing the progress or null if the join should
+	 *                    not be resumable
+	 * @param blockSize   the number of images matched between two checkpoints
+	 * @throws IOException           if the checkpoint can not be read or written
+	 * @throws IllegalStateException if the checkpoint was created for a different
+	 *                               set of images or settings
+	 */
+	void run(MatchConsumer consumer, boolean uniquePairs, Executor executor, File checkpoint, int blockSize)
+			throws IOException {
+
+		if (blockSize <= 0) {
+			throw new IllegalArgumentException("The block size has to be positive");
+		}
+
+		long fingerprint = fingerprint(uniquePairs);
+		int start = checkpoint == null ? 0 : readCheckpoint(checkpoint, fingerprint);
+
+		for (int blockStart = start; blockStart < ids.length; blockStart += blockSize) {
+			int from = blockStart;
+			int to = Math.min(ids.length, blockStart + blockSize);
+
+			@SuppressWarnings("unchecked")
+			List<Result<String>>[] results = new List[to - from];
+			List<CompletableFuture<Void>> tasks = new ArrayList<>();
+			for (int sliceStart = from; sliceStart < to; sliceStart += SLICE_SIZE) {
+				int sliceFrom = sliceStart;
+				int sliceTo = Math.min(to, sliceStart + SLICE_SIZE);
+				tasks.add(CompletableFuture.runAsync(() -> {
+					for (int i = sliceFrom; i < sliceTo; i++) {
+						results[i - from] = match(i, uniquePairs, false);
+					}
+				}, executor));
+			}
+			try {
+				CompletableFuture.allOf(tasks.toArray(new CompletableFuture[tasks.size()])).join();
+			} catch (CompletionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				} else if (cause instanceof Error) {
+					throw (Error) cause;
+				}
+				throw e;
+			}
+
+			for (int i = 0; i < results.length; i++) {
+				if (!results[i].isEmpty()) {
+					consumer.accept(ids[from + i], results[i]);
+				}
+			}
+
+			if (checkpoint != null) {
+				writeCheckpoint(checkpoint, fingerprint, to);
+			}
+		}
+
+		if (checkpoint != null) {
+			Files.deleteIfExists(checkpoint.toPath());
+		}
+	}
+
+	/**
+	 * Compute a value identifying the images, hashes and settings of this join.
+	 * Used to detect checkpoints belonging to a different join.
+	 *
+	 * @param uniquePairs the unique pairs setting of the join
+	 * @return the fingerprint
+	 */
+	long fingerprint(boolean uniquePairs) {
+		long h = ids.length;
+		for (String id : ids) {
+			h = 31 * h + id.hashCode();
+		}
+		for (int k = 0; k < words.length; k++) {
+			h = 31 * h + bitResolution[k];
+			h = 31 * h + threshold[k];
+			h = 31 * h + Arrays.hashCode(words[k]);
+		}
+		h = 31 * h + Arrays.hashCode(incomplete);
+		return 31 * h + (uniquePairs ? 1 : 0);
+	}
+
+	/**
+	 * @return the number of completed images stored in the checkpoint or 0 if the
+	 *         checkpoint does not exist
+	 */
+	private int readCheckpoint(File checkpoint, long fingerprint) throws IOException {
+		if (!checkpoint.exists()) {
+			return 0;
+		}
+		try (DataInputStream in = new DataInputStream(new FileInputStream(checkpoint))) {
+			int version = in.readInt();
+			if (version != CHECKPOINT_VERSION) {
+				throw new IOException("Unsupported checkpoint version " + version);
+			}
+			long storedFingerprint = in.readLong();
+			int completed = in.readInt();
+			if (storedFingerprint != fingerprint || completed < 0 || completed > ids.length) {
+				throw new IllegalStateException("The checkpoint " + checkpoint
+						+ " was created for different images or settings. Delete it to restart the search");
+			}
+			return completed;
+		}
+	}
+
+	/**
+	 * Atomically replace the checkpoint
+	 */
+	private void writeCheckpoint(File checkpoint, long fingerprint, int completed) throws IOException {
+		File temp = new File(checkpoint.getPath() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new FileOutputStream(temp))) {
+			out.writeInt(CHECKPOINT_VERSION);
+			out.writeLong(fingerprint);
+			out.writeInt(completed);
+		}
+		try {
+			Files.move(temp.toPath(), checkpoint.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp.toPath(), checkpoint.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private Hash getHash(int algorithm, int image) {
+		int offset = image * wordCount[algorithm];
+		return new Hash(Arrays.copyOfRange(words[algorithm], offset, offset + wordCount[algorithm]),
+				bitResolution[algorithm], 0);
+	}
+
+	private int distance(int algorithm, int image, int other) {
+		long[] w = words[algorithm];
+		int count = wordCount[algorithm];
+		int offset = image * count;
+		int otherOffset = other * count;
+		int distance = 0;
+		for (int i = 0; i < count; i++) {
+			distance += Long.bitCount(w[offset + i] ^ w[otherOffset + i]);
+		}
+		return distance;
+	}
+}
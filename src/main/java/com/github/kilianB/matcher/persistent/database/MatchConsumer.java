@@ -0,0 +1,29 @@
+package com.github.kilianB.matcher.persistent.database;
+
+import java.util.List;
+
+import com.github.kilianB.datastructures.tree.Result;
+
+/**
+ * Receives the matches found by the all pairs search of the
+ * {@link DatabaseImageMatcher}.
+ *
+ * @author Kilian
+ * @since 3.0.1
+ * @see DatabaseImageMatcher#getAllMatchingImages(MatchConsumer, boolean,
+ *      java.util.concurrent.Executor, java.io.File)
+ */
+@FunctionalInterface
+public interface MatchConsumer {
+
+	/**
+	 * Accept the matches of a single image. The consumer is always invoked by the
+	 * thread which started the search.
+	 *
+	 * @param uniqueId the unique id of the image
+	 * @param matches  the unique ids of all images matching the image sorted by
+	 *                 the hamming distance of the last applied algorithm. Never
+	 *                 empty.
+	 */
+	void accept(String uniqueId, List<Result<String>> matches);
+}
@@ -1,11 +1,21 @@
 package com.github.kilianB.dataStrorage.tree;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
@@ -14,6 +24,7 @@ import org.junit.jupiter.api.Test;
 import com.github.kilianB.TestResources;
 import com.github.kilianB.datastructures.tree.Result;
 import com.github.kilianB.datastructures.tree.binaryTree.BinaryTree;
+import com.github.kilianB.datastructures.tree.binaryTree.Node;
 import com.github.kilianB.hash.Hash;
 
 @SuppressWarnings({ "rawtypes", "unchecked" })
@@ -183,6 +194,132 @@ public class BinaryTreeTest {
 		assertEquals(3, binTree.getHashCount());
 	}
 
+	@Test
+	public void batchQuery() {
+		Random rng = new Random(0);
+		List<Hash> hashes = new ArrayList<>();
+		for (int i = 0; i < 500; i++) {
+			Hash hash = new Hash(new BigInteger(70, rng), 70, 0);
+			if (i % 2 == 1) {
+				hash = new Hash(hashes.get(i - 1).getHashValue().flipBit(rng.nextInt(70)), 70, 0);
+			}
+			hashes.add(hash);
+			binTree.addHash(hash, i);
+		}
+
+		// Needles contain duplicates and hashes without matches
+		List<Hash> needles = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			needles.add(i % 10 == 0 ? new Hash(new BigInteger(70, rng), 70, 0) : hashes.get(rng.nextInt(50)));
+		}
+
+		for (int radius : new int[] { 0, 2, 6 }) {
+			List<PriorityQueue<Result>> results = binTree.getElementsWithinHammingDistance(needles, radius);
+			assertEquals(needles.size(), results.size());
+			for (int i = 0; i < needles.size(); i++) {
+				assertEquals(toMap(binTree.getElementsWithinHammingDistance(needles.get(i), radius)),
+						toMap(results.get(i)));
+			}
+		}
+	}
+
+	@Nested
+	class BulkLoad {
+
+		private List<Hash> hashes = new ArrayList<>();
+		private List<Integer> values = new ArrayList<>();
+
+		private void populate(int count, int bits) {
+			Random rng = new Random(1);
+			for (int i = 0; i < count; i++) {
+				Hash hash = new Hash(new BigInteger(bits, rng), bits, 3);
+				// Exact duplicates keep the insertion order in the leaf
+				if (i % 3 == 2) {
+					hash = hashes.get(rng.nextInt(i));
+				}
+				hashes.add(hash);
+				values.add(i);
+				binTree.addHash(hash, i);
+			}
+		}
+
+		@Test
+		public void identicalToSequentialInsertion() {
+			populate(3000, 70);
+			BinaryTree<Integer> bulk = new BinaryTree<>(hashes, values, true);
+			assertEquals(binTree.getRoot(), bulk.getRoot());
+			assertEquals(binTree.getHashCount(), bulk.getHashCount());
+			assertEquals(binTree.getAlgorithmId(), bulk.getAlgorithmId());
+		}
+
+		@Test
+		public void parallel() {
+			populate(40000, 64);
+			ForkJoinPool pool = new ForkJoinPool(4);
+			try {
+				BinaryTree<Integer> bulk = new BinaryTree<>(hashes, values, true, pool);
+				assertEquals(binTree.getRoot(), bulk.getRoot());
+				assertEquals(binTree.getHashCount(), bulk.getHashCount());
+			} finally {
+				pool.shutdown();
+			}
+		}
+
+		@Test
+		public void empty() {
+			BinaryTree<Integer> bulk = new BinaryTree<>(new ArrayList<>(), new ArrayList<>(), true);
+			assertEquals(0, bulk.getHashCount());
+			assertTrue(bulk.getElementsWithinHammingDistance(TestResources.createHash("1010", 0), 4).isEmpty());
+		}
+
+		@Test
+		public void incompatibleAlgorithm() {
+			List<Hash> mixed = Arrays.asList(TestResources.createHash("1010", 1), TestResources.createHash("1010", 2));
+			assertThrows(IllegalStateException.class, () -> {
+				new BinaryTree<>(mixed, Arrays.asList(1, 2), true);
+			});
+		}
+
+		@Test
+		public void mismatchingValues() {
+			List<Hash> single = Arrays.asList(TestResources.createHash("1010", 0));
+			assertThrows(IllegalArgumentException.class, () -> {
+				new BinaryTree<>(single, Arrays.asList(1, 2), true);
+			});
+		}
+	}
+
+	@Test
+	public void batchQueryIncompatibleLength() {
+		binTree.addHash(TestResources.createHash("101010100011", 0), 1);
+		List<Hash> needles = Arrays.asList(TestResources.createHash("101010100011", 0),
+				TestResources.createHash("1010101000110", 0));
+		assertThrows(IllegalArgumentException.class, () -> {
+			binTree.getElementsWithinHammingDistance(needles, 2);
+		});
+	}
+
+	@Test
+	public void batchQueryPaddedNeedle() {
+		Hash hash = TestResources.createHash("101010100011", 0);
+		binTree.addHash(hash, 1);
+		// Packed values may carry more words than the bit resolution requires
+		Hash padded = new Hash(new long[] { hash.getPackedHashValue()[0], 0 }, 12, 0);
+		List<Hash> needles = Arrays.asList(padded, TestResources.createHash("101010100010", 0), padded);
+		List<PriorityQueue<Result>> results = binTree.getElementsWithinHammingDistance(needles, 2);
+		for (int i = 0; i < needles.size(); i++) {
+			assertEquals(toMap(binTree.getElementsWithinHammingDistance(needles.get(i), 2)), toMap(results.get(i)));
+		}
+	}
+
+	private Map<Object, Double> toMap(Iterable<Result> results) {
+		Map<Object, Double> map = new HashMap<>();
+		for (Result r : results) {
+			assertEquals(null, map.put(r.value, r.distance));
+		}
+		return map;
+	}
+
 	@Nested
 	class NearestNeightbour {
 
@@ -264,4 +401,154 @@ public class BinaryTreeTest {
 			assertTrue(((int) r2.value == 0 || (int) r2.value == 2));
 		}
 	}
+
+	@Nested
+	class NearestNeighbours {
+
+		@Test
+		public void sortedByDistance() {
+			Hash needle = TestResources.createHash("00001", 0);
+
+			binTree.addHash(TestResources.createHash("11111", 0), 0);
+			binTree.addHash(TestResources.createHash("00011", 0), 1);
+			binTree.addHash(TestResources.createHash("10000", 0), 2);
+			binTree.addHash(TestResources.createHash("00001", 0), 3);
+
+			List<Result> results = binTree.getNearestNeighbours(needle, 3);
+
+			assertEquals(3, results.size());
+			assertEquals(3, results.get(0).value);
+			assertEquals(0, results.get(0).distance);
+			assertEquals(1, results.get(1).value);
+			assertEquals(1, results.get(1).distance);
+			assertEquals(2, results.get(2).value);
+			assertEquals(2, results.get(2).distance);
+		}
+
+		@Test
+		public void fewerHashesThanK() {
+			Hash needle = TestResources.createHash("00001", 0);
+			binTree.addHash(TestResources.createHash("10000", 0), 0);
+			binTree.addHash(TestResources.createHash("10000", 0), 1);
+
+			assertEquals(2, binTree.getNearestNeighbours(needle, 5).size());
+		}
+
+		@Test
+		public void emptyTree() {
+			assertTrue(binTree.getNearestNeighbours(TestResources.createHash("00001", 0), 5).isEmpty());
+		}
+
+		@Test
+		public void invalidK() {
+			assertThrows(IllegalArgumentException.class, () -> {
+				binTree.getNearestNeighbours(TestResources.createHash("00001", 0), 0);
+			});
+		}
+	}
+	@Nested
+	class Remove {
+
+		private int countNodes(Node node) {
+			if (node == null) {
+				return 0;
+			}
+			return 1 + countNodes(node.getChild(true)) + countNodes(node.getChild(false));
+		}
+
+		@Test
+		public void removeValue() {
+			Hash hash = TestResources.createHash("101010100011", 0);
+			binTree.addHash(hash, 1);
+			assertTrue(binTree.removeHash(hash, 1));
+			assertEquals(0, binTree.getHashCount());
+			assertTrue(binTree.getElementsWithinHammingDistance(hash, 100).isEmpty());
+		}
+
+		@Test
+		public void pruneEmptyBranches() {
+			Hash hash = TestResources.createHash("101010100011", 0);
+			Hash hash1 = TestResources.createHash("101010100000", 0);
+			binTree.addHash(hash, 1);
+			binTree.addHash(hash1, 2);
+			binTree.removeHash(hash, 1);
+
+			BinaryTree<Integer> expected = new BinaryTree<>(true);
+			expected.addHash(hash1, 2);
+			assertEquals(expected.getRoot(), binTree.getRoot());
+
+			binTree.removeHash(hash1, 2);
+			assertEquals(new BinaryTree<>(true).getRoot(), binTree.getRoot());
+		}
+
+		@Test
+		public void duplicateValues() {
+			Hash hash = TestResources.createHash("101010100011", 0);
+			binTree.addHash(hash, 1);
+			binTree.addHash(hash, 1);
+			binTree.addHash(hash, 2);
+			assertTrue(binTree.removeHash(hash, 1));
+			assertEquals(2, binTree.getHashCount());
+			assertEquals(2, binTree.getElementsWithinHammingDistance(hash, 0).size());
+		}
+
+		@Test
+		public void absentValue() {
+			Hash hash = TestResources.createHash("101010100011", 0);
+			binTree.addHash(hash, 1);
+			assertFalse(binTree.removeHash(hash, 2));
+			assertFalse(binTree.removeHash(TestResources.createHash("101010100000", 0), 1));
+			assertEquals(1, binTree.getHashCount());
+		}
+
+		@Test
+		public void incompatibleHash() {
+			binTree.addHash(TestResources.createHash("101010100011", 250), 1);
+			assertThrows(IllegalStateException.class, () -> {
+				binTree.removeHash(TestResources.createHash("101010100011", 251), 1);
+			});
+		}
+
+		@Test
+		public void update() {
+			Hash hash = TestResources.createHash("101010100011", 0);
+			Hash hash1 = TestResources.createHash("010101011100", 0);
+			binTree.addHash(hash, 1);
+			assertTrue(binTree.updateHash(hash, hash1, 1));
+			assertEquals(1, binTree.getHashCount());
+			assertTrue(binTree.getElementsWithinHammingDistance(hash, 0).isEmpty());
+			assertEquals(1, ((Result) binTree.getElementsWithinHammingDistance(hash1, 0).peek()).value);
+		}
+
+		@Test
+		public void churn() {
+			Random rng = new Random(2);
+			Hash[] hashes = new Hash[500];
+			int[] values = new int[hashes.length];
+			for (int i = 0; i < hashes.length; i++) {
+				hashes[i] = new Hash(new BigInteger(16, rng), 16, 0);
+				values[i] = i;
+				binTree.addHash(hashes[i], i);
+			}
+			for (int i = 0; i < 5000; i++) {
+				int slot = rng.nextInt(hashes.length);
+				assertTrue(binTree.removeHash(hashes[slot], values[slot]));
+				hashes[slot] = new Hash(new BigInteger(16, rng), 16, 0);
+				values[slot] = hashes.length + i;
+				binTree.addHash(hashes[slot], values[slot]);
+			}
+
+			// The order of values within a leaf depends on the insertion order
+			BinaryTree<Integer> live = new BinaryTree<>(true);
+			for (int i = 0; i < hashes.length; i++) {
+				live.addHash(hashes[i], values[i]);
+			}
+			assertEquals(live.getHashCount(), binTree.getHashCount());
+			assertEquals(countNodes(live.getRoot()), countNodes(binTree.getRoot()));
+			for (int i = 0; i < hashes.length; i++) {
+				assertEquals(live.getElementsWithinHammingDistance(hashes[i], 3).size(),
+						binTree.getElementsWithinHammingDistance(hashes[i], 3).size());
+			}
+		}
+	}
 }
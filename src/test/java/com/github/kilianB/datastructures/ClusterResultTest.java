@@ -1,7 +1,22 @@
 package com.github.kilianB.datastructures;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
 import org.junit.jupiter.api.Test;
 
+import com.github.kilianB.hash.FuzzyHash;
+import com.github.kilianB.hash.Hash;
+
 /**
  * @author Kilian
  *
@@ -20,4 +35,162 @@ class ClusterResultTest {
 		
 	}
 
+	/**
+	 * Hashes scattered around a few random centers. The cluster of each hash is
+	 * the center it was created from
+	 */
+	private static ClusterResult clusteredResult(int count, int k, int bits, long seed, ForkJoinPool pool) {
+		Random rng = new Random(seed);
+		BigInteger[] centers = new BigInteger[k];
+		for (int i = 0; i < k; i++) {
+			centers[i] = new BigInteger(bits, rng);
+		}
+		Hash[] hashes = new Hash[count];
+		int[] cluster = new int[count];
+		for (int i = 0; i < count; i++) {
+			cluster[i] = i < k ? i : rng.nextInt(k);
+			BigInteger value = centers[cluster[i]];
+			for (int flip = rng.nextInt(bits / 3); flip > 0; flip--) {
+				value = value.flipBit(rng.nextInt(bits));
+			}
+			hashes[i] = new Hash(value, bits, 0);
+		}
+		return new ClusterResult(cluster, hashes, pool);
+	}
+
+	/**
+	 * Compare every hash to every other hash
+	 */
+	private static double[] bruteForceSilhouette(ClusterResult result, int k) {
+		double[] coefficients = new double[k + 1];
+		double total = 0;
+		int count = 0;
+		for (int c = 0; c < k; c++) {
+			List<Hash> own = result.getCluster(c);
+			double sum = 0;
+			for (Hash h : own) {
+				if (own.size() == 1) {
+					continue;
+				}
+				double a = 0;
+				for (Hash h1 : own) {
+					a += h.hammingDistance(h1);
+				}
+				a /= own.size() - 1;
+				double b = Double.MAX_VALUE;
+				for (int c1 = 0; c1 < k; c1++) {
+					List<Hash> other = result.getCluster(c1);
+					if (c1 != c && !other.isEmpty()) {
+						double mean = 0;
+						for (Hash h1 : other) {
+							mean += h.hammingDistance(h1);
+						}
+						b = Math.min(b, mean / other.size());
+					}
+				}
+				sum += Math.max(a, b) == 0 ? 0 : (b - a) / Math.max(a, b);
+			}
+			coefficients[c] = sum / own.size();
+			total += sum;
+			count += own.size();
+		}
+		coefficients[k] = total / count;
+		return coefficients;
+	}
+
+	@Test
+	void silhouetteMatchesBruteForce() {
+		int k = 6;
+		for (ForkJoinPool pool : new ForkJoinPool[] { null, new ForkJoinPool(4) }) {
+			ClusterResult result = clusteredResult(600, k, 96, 0, pool);
+			double[] expected = bruteForceSilhouette(result, k);
+			for (int c = 0; c < k; c++) {
+				assertEquals(expected[c], result.getSilhouetteCoef(c), 1e-9);
+			}
+			assertEquals(expected[k], result.getSilhouetteCoef(), 1e-9);
+		}
+	}
+
+	@Test
+	void approximateSilhouette() {
+		int k = 8;
+		ClusterResult result = clusteredResult(4000, k, 64, 1, null);
+		double approximated = result.getApproximateSilhouetteCoef(100);
+		assertEquals(bruteForceSilhouette(result, k)[k], approximated, 0.05);
+		// The exact coefficient replaces the approximation
+		assertEquals(result.getSilhouetteCoef(), result.getApproximateSilhouetteCoef(100));
+	}
+
+	@Test
+	void approximateSilhouetteLargeSample() {
+		int k = 5;
+		ClusterResult result = clusteredResult(500, k, 64, 2, null);
+		double[] expected = bruteForceSilhouette(result, k);
+		for (int c = 0; c < k; c++) {
+			assertEquals(expected[c], result.getApproximateSilhouetteCoef(c, 1000), 1e-9);
+		}
+	}
+
+	@Test
+	void singletonCluster() {
+		Hash[] hashes = { new Hash(BigInteger.valueOf(0b0000), 4, 0), new Hash(BigInteger.valueOf(0b0001), 4, 0),
+				new Hash(BigInteger.valueOf(0b1111), 4, 0) };
+		ClusterResult result = new ClusterResult(new int[] { 0, 0, 1 }, hashes);
+		assertEquals(0, result.getSilhouetteCoef(1));
+		// a = 1 for both hashes, b = 4 and 3
+		assertEquals(((4 - 1) / 4d + (3 - 1) / 3d) / 2, result.getSilhouetteCoef(0), 1e-9);
+	}
+
+	/**
+	 * The linear scan over the fuzzy hashes
+	 */
+	private static Map<Integer, Double> bruteForcePotentialFits(ClusterResult result, int k, Hash testHash,
+			double sigma) {
+		Map<Integer, Double> resultValue = new LinkedHashMap<>();
+		int bestCategory = -2;
+		double bestFitness = Double.MAX_VALUE;
+		for (int c = 0; c < k; c++) {
+			double dist = result.getCenteroid(c).weightedDistance(testHash);
+			if (dist <= result.getStats(c).getMax() * sigma) {
+				resultValue.put(c, dist);
+			}
+			if (dist < bestFitness) {
+				bestFitness = dist;
+				bestCategory = c;
+			}
+		}
+		if (!resultValue.containsKey(bestCategory)) {
+			resultValue.put(bestCategory, 1d);
+		}
+		List<Entry<Integer, Double>> entries = new ArrayList<>(resultValue.entrySet());
+		return entries.stream().sorted(Map.Entry.comparingByValue())
+				.collect(Collectors.toMap(e -> e.getKey(), e -> e.getValue(), (u, v) -> u, LinkedHashMap::new));
+	}
+
+	@Test
+	void bestFitMatchesLinearScan() {
+		int k = 20;
+		ClusterResult result = clusteredResult(2000, k, 100, 3, null);
+		Random rng = new Random(4);
+		for (int i = 0; i < 200; i++) {
+			Hash testHash = i % 2 == 0 ? result.getCluster(rng.nextInt(k)).get(0)
+					: new Hash(new BigInteger(100, rng), 100, 0);
+			int expected = -2;
+			double bestFitness = Double.MAX_VALUE;
+			for (int c = 0; c < k; c++) {
+				FuzzyHash centroid = result.getCenteroid(c);
+				double dist = centroid.weightedDistance(testHash);
+				if (dist < bestFitness) {
+					bestFitness = dist;
+					expected = c;
+				}
+			}
+			assertEquals(expected, result.getBestFitCluster(testHash));
+			for (double sigma : new double[] { 0.5, 1, 2 }) {
+				Map<Integer, Double> expectedFits = bruteForcePotentialFits(result, k, testHash, sigma);
+				Map<Integer, Double> fits = result.getPotentialFits(testHash, sigma);
+				assertEquals(new ArrayList<>(expectedFits.entrySet()), new ArrayList<>(fits.entrySet()));
+			}
+		}
+	}
 }
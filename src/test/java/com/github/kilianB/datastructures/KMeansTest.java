@@ -1,10 +1,16 @@
 package com.github.kilianB.datastructures;
 
 import static com.github.kilianB.TestResources.createHash;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
 import org.junit.jupiter.api.Test;
 
+import com.github.kilianB.hash.FuzzyHash;
 import com.github.kilianB.hash.Hash;
 
 /**
@@ -37,6 +43,144 @@ class KMeansTest {
 		//-1 for the noise cluster
 		assertEquals(2,clusterResult.getClusters().keySet().size()-1);
 	}
+
+	/**
+	 * Clustered random hashes. Each hash differs from one of the seeds in a few
+	 * bits
+	 */
+	private static Hash[] clusteredHashes(int count, int seeds, int bits, long seed) {
+		Random rng = new Random(seed);
+		BigInteger[] centers = new BigInteger[seeds];
+		for (int i = 0; i < seeds; i++) {
+			centers[i] = new BigInteger(bits, rng);
+		}
+		Hash[] hashes = new Hash[count];
+		for (int i = 0; i < count; i++) {
+			BigInteger value = centers[rng.nextInt(seeds)];
+			for (int flip = rng.nextInt(bits / 4); flip > 0; flip--) {
+				value = value.flipBit(rng.nextInt(bits));
+			}
+			hashes[i] = new Hash(value, bits, 0);
+		}
+		return hashes;
+	}
+
+	/**
+	 * The clustering compares every point to every center and recomputes the
+	 * centers using fuzzy hashes
+	 */
+	private static int[] bruteForce(Hash[] hashes, int[] startIndices, int maxIter) {
+		FuzzyHash[] clusterMeans = new FuzzyHash[startIndices.length];
+		for (int i = 0; i < clusterMeans.length; i++) {
+			clusterMeans[i] = new FuzzyHash(hashes[startIndices[i]]);
+		}
+		int[] cluster = new int[hashes.length];
+		int iter = 0;
+		boolean dirty;
+		do {
+			dirty = false;
+			for (int dataIndex = 0; dataIndex < hashes.length; dataIndex++) {
+				double minDistance = Double.MAX_VALUE;
+				int bestCluster = -1;
+				for (int clusterIndex = 0; clusterIndex < clusterMeans.length; clusterIndex++) {
+					double distToCluster = clusterMeans[clusterIndex].normalizedHammingDistanceFast(hashes[dataIndex]);
+					if (distToCluster < minDistance) {
+						bestCluster = clusterIndex;
+						minDistance = distToCluster;
+					}
+				}
+				if (cluster[dataIndex] != bestCluster) {
+					cluster[dataIndex] = bestCluster;
+					dirty = true;
+				}
+			}
+			if (dirty) {
+				for (int i = 0; i < clusterMeans.length; i++) {
+					clusterMeans[i] = new FuzzyHash();
+				}
+				for (int dataIndex = 0; dataIndex < hashes.length; dataIndex++) {
+					clusterMeans[cluster[dataIndex]].mergeFast(hashes[dataIndex]);
+				}
+			}
+			if (iter++ > maxIter) {
+				break;
+			}
+		} while (dirty);
+		return cluster;
+	}
+
+	/**
+	 * KMeans starting with the given hashes as cluster centers
+	 */
+	private static class FixedStart extends KMeans {
+
+		private final int[] startIndices;
+
+		FixedStart(int[] startIndices, ForkJoinPool pool) {
+			super(startIndices.length, pool);
+			this.startIndices = startIndices;
+		}
+
+		@Override
+		protected FuzzyHash[] computeStartingClusters(Hash[] hashes) {
+			FuzzyHash[] clusterMeans = new FuzzyHash[k];
+			for (int i = 0; i < k; i++) {
+				clusterMeans[i] = new FuzzyHash(hashes[startIndices[i]]);
+			}
+			return clusterMeans;
+		}
+
+		int[] assignments(Hash[] hashes, int maxIter) {
+			int[] cluster = new int[hashes.length];
+			computeKMeans(cluster, computeStartingClusters(hashes), hashes, maxIter);
+			return cluster;
+		}
+	}
+
+	private static int[] startIndices(int k, int count) {
+		int[] indices = new int[k];
+		for (int i = 0; i < k; i++) {
+			indices[i] = i * (count / k);
+		}
+		return indices;
+	}
+
+	@Test
+	void matchesBruteForce() {
+		for (int bits : new int[] { 64, 100 }) {
+			Hash[] hashes = clusteredHashes(2000, 12, bits, bits);
+			int[] start = startIndices(8, hashes.length);
+			int[] expected = bruteForce(hashes, start, Integer.MAX_VALUE);
+			assertArrayEquals(expected, new FixedStart(start, null).assignments(hashes, Integer.MAX_VALUE));
+		}
+	}
+
+	@Test
+	void parallelMatchesSequential() {
+		Hash[] hashes = clusteredHashes(30000, 40, 128, 0);
+		int[] start = startIndices(25, hashes.length);
+		int[] expected = new FixedStart(start, null).assignments(hashes, Integer.MAX_VALUE);
+		assertArrayEquals(expected, new FixedStart(start, new ForkJoinPool(4)).assignments(hashes, Integer.MAX_VALUE));
+		assertArrayEquals(bruteForce(hashes, start, Integer.MAX_VALUE), expected);
+	}
+
+	@Test
+	void maxIterations() {
+		Hash[] hashes = clusteredHashes(2000, 12, 64, 1);
+		int[] start = startIndices(8, hashes.length);
+		for (int maxIter = 0; maxIter < 3; maxIter++) {
+			assertArrayEquals(bruteForce(hashes, start, maxIter),
+					new FixedStart(start, new ForkJoinPool(2)).assignments(hashes, maxIter));
+		}
+	}
+
+	@Test
+	void plusPlusClusterCount() {
+		Hash[] hashes = clusteredHashes(10000, 5, 64, 2);
+		ClusterResult clusterResult = new KMeansPlusPlus(5).cluster(hashes);
+		// -1 for the noise cluster
+		assertEquals(5, clusterResult.getClusters().keySet().size() - 1);
+	}
 	
 
 }
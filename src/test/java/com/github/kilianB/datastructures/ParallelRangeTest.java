@@ -0,0 +1,48 @@
+package com.github.kilianB.datastructures;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author Kilian
+ *
+ */
+class ParallelRangeTest {
+
+	@Test
+	void visitsEveryIndexOnce() {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			AtomicIntegerArray visits = new AtomicIntegerArray(1000);
+			ParallelRange.forEach(pool, 10, 990, 1, (from, to) -> {
+				for (int i = from; i < to; i++) {
+					visits.incrementAndGet(i);
+				}
+			});
+			for (int i = 0; i < visits.length(); i++) {
+				assertEquals(i >= 10 && i < 990 ? 1 : 0, visits.get(i));
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	void sequentialWithoutPool() {
+		Thread caller = Thread.currentThread();
+		int[] visits = new int[100];
+		ParallelRange.forEach(null, 0, visits.length, 1, (from, to) -> {
+			assertEquals(caller, Thread.currentThread());
+			for (int i = from; i < to; i++) {
+				visits[i]++;
+			}
+		});
+		for (int visit : visits) {
+			assertEquals(1, visit);
+		}
+	}
+}
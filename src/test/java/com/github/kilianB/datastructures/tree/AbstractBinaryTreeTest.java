@@ -0,0 +1,67 @@
+package com.github.kilianB.datastructures.tree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.kilianB.datastructures.tree.binaryTree.BinaryTree;
+import com.github.kilianB.hash.Hash;
+
+class AbstractBinaryTreeTest {
+
+	/**
+	 * A tree relying on the default nearest neighbours search
+	 */
+	private static class RadiusTree extends AbstractBinaryTree<Integer> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final BinaryTree<Integer> tree = new BinaryTree<>(true);
+
+		@Override
+		public void addHash(Hash hash, Integer value) {
+			tree.addHash(hash, value);
+		}
+
+		@Override
+		public PriorityQueue<Result<Integer>> getElementsWithinHammingDistance(Hash hash, int maxDistance) {
+			return tree.getElementsWithinHammingDistance(hash, maxDistance);
+		}
+
+		@Override
+		public List<Result<Integer>> getNearestNeighbour(Hash hash) {
+			return tree.getNearestNeighbour(hash);
+		}
+	}
+
+	@Test
+	public void defaultNearestNeighbours() {
+		Random rng = new Random(0);
+		RadiusTree radiusTree = new RadiusTree();
+		BinaryTree<Integer> binTree = new BinaryTree<>(true);
+		for (int i = 0; i < 500; i++) {
+			Hash hash = new Hash(new long[] { rng.nextLong() }, 64, 0);
+			radiusTree.addHash(hash, i);
+			binTree.addHash(hash, i);
+		}
+		for (int q = 0; q < 20; q++) {
+			Hash needle = new Hash(new long[] { rng.nextLong() }, 64, 0);
+			for (int k : new int[] { 1, 5, 500, 1000 }) {
+				List<Result<Integer>> expected = binTree.getNearestNeighbours(needle, k);
+				List<Result<Integer>> actual = radiusTree.getNearestNeighbours(needle, k);
+				assertEquals(expected.size(), actual.size());
+				for (int i = 0; i < expected.size(); i++) {
+					assertEquals(expected.get(i).distance, actual.get(i).distance);
+				}
+			}
+		}
+		assertThrows(IllegalArgumentException.class, () -> {
+			radiusTree.getNearestNeighbours(new Hash(new long[] { 0 }, 64, 0), 0);
+		});
+	}
+}
@@ -0,0 +1,52 @@
+package com.github.kilianB.datastructures.tree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class BoundedResultQueueTest {
+
+	@Test
+	public void retainsClosest() {
+		BoundedResultQueue<Integer> queue = new BoundedResultQueue<>(3);
+		int[] distances = { 7, 3, 9, 1, 5, 2 };
+		for (int i = 0; i < distances.length; i++) {
+			queue.offer(i, distances[i], distances[i] / 10d);
+		}
+		List<Result<Integer>> results = queue.toSortedList();
+		assertEquals(3, results.size());
+		assertEquals(3, (int) results.get(0).value);
+		assertEquals(5, (int) results.get(1).value);
+		assertEquals(1, (int) results.get(2).value);
+	}
+
+	@Test
+	public void bound() {
+		BoundedResultQueue<Integer> queue = new BoundedResultQueue<>(2);
+		assertEquals(Double.MAX_VALUE, queue.getBound());
+		assertTrue(queue.offer(0, 4, 0.4));
+		assertFalse(queue.isFull());
+		assertTrue(queue.offer(1, 6, 0.6));
+		assertTrue(queue.isFull());
+		assertEquals(6, queue.getBound());
+
+		// Ties with the bound are rejected
+		assertFalse(queue.accepts(6));
+		assertFalse(queue.offer(2, 6, 0.6));
+		assertTrue(queue.offer(3, 5, 0.5));
+		assertEquals(5, queue.getBound());
+		assertEquals(2, queue.size());
+	}
+
+	@Test
+	public void invalidK() {
+		assertThrows(IllegalArgumentException.class, () -> {
+			new BoundedResultQueue<>(0);
+		});
+	}
+}
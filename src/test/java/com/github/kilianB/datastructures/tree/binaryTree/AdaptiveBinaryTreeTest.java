@@ -0,0 +1,117 @@
+package com.github.kilianB.datastructures.tree.binaryTree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.kilianB.datastructures.tree.AbstractBinaryTree;
+import com.github.kilianB.datastructures.tree.Result;
+import com.github.kilianB.hash.Hash;
+
+class AdaptiveBinaryTreeTest {
+
+	private static List<Hash> createHashes(int count) {
+		Random rng = new Random(0);
+		List<Hash> hashes = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			hashes.add(new Hash(new BigInteger(32, rng), 32, 5));
+		}
+		return hashes;
+	}
+
+	@Test
+	public void switchesAtThreshold() {
+		AdaptiveBinaryTree<Integer> tree = new AdaptiveBinaryTree<>(true, 100);
+		BinaryTree<Integer> binTree = new BinaryTree<>(true);
+		List<Hash> hashes = createHashes(150);
+
+		for (int i = 0; i < 99; i++) {
+			tree.addHash(hashes.get(i), i);
+			binTree.addHash(hashes.get(i), i);
+		}
+		assertTrue(tree.isFlat());
+		assertEquals(99, tree.getHashCount());
+		assertEquals(5, tree.getAlgorithmId());
+		assertEqualResults(binTree, tree, hashes);
+
+		for (int i = 99; i < hashes.size(); i++) {
+			tree.addHash(hashes.get(i), i);
+			binTree.addHash(hashes.get(i), i);
+		}
+		assertFalse(tree.isFlat());
+		assertEquals(binTree.getRoot(), tree.getRoot());
+		assertEquals(150, tree.getHashCount());
+		assertEqualResults(binTree, tree, hashes);
+	}
+
+	@Test
+	public void removeFlat() {
+		AdaptiveBinaryTree<Integer> tree = new AdaptiveBinaryTree<>(true, 100);
+		List<Hash> hashes = createHashes(10);
+		for (int i = 0; i < hashes.size(); i++) {
+			tree.addHash(hashes.get(i), i);
+		}
+		assertTrue(tree.removeHash(hashes.get(3), 3));
+		assertFalse(tree.removeHash(hashes.get(3), 3));
+		assertEquals(9, tree.getHashCount());
+		assertTrue(tree.getElementsWithinHammingDistance(hashes.get(3), 0).isEmpty());
+	}
+
+	@Test
+	public void treeRightAway() {
+		AdaptiveBinaryTree<Integer> tree = new AdaptiveBinaryTree<>(true, 0);
+		assertFalse(tree.isFlat());
+		List<Hash> hashes = createHashes(10);
+		BinaryTree<Integer> binTree = new BinaryTree<>(true);
+		for (int i = 0; i < hashes.size(); i++) {
+			tree.addHash(hashes.get(i), i);
+			binTree.addHash(hashes.get(i), i);
+		}
+		assertEquals(binTree, tree);
+	}
+
+	@Test
+	public void compactCopyOfFlatTree() {
+		AdaptiveBinaryTree<Integer> tree = new AdaptiveBinaryTree<>(true, 100);
+		BinaryTree<Integer> binTree = new BinaryTree<>(true);
+		List<Hash> hashes = createHashes(50);
+		for (int i = 0; i < hashes.size(); i++) {
+			tree.addHash(hashes.get(i), i);
+			binTree.addHash(hashes.get(i), i);
+		}
+		assertTrue(tree.isFlat());
+
+		CompactBinaryTree<Integer> compact = new CompactBinaryTree<>(tree);
+		assertFalse(tree.isFlat());
+		assertEquals(50, compact.getHashCount());
+		assertEqualResults(binTree, compact, hashes);
+		assertEqualResults(binTree, tree, hashes);
+	}
+
+	private static void assertEqualResults(BinaryTree<Integer> expected, AbstractBinaryTree<Integer> actual,
+			List<Hash> hashes) {
+		for (int i = 0; i < 10; i++) {
+			Hash needle = hashes.get(i);
+			assertEquals(toMap(expected.getElementsWithinHammingDistance(needle, 6)),
+					toMap(actual.getElementsWithinHammingDistance(needle, 6)));
+			assertEquals(toMap(expected.getNearestNeighbour(needle)), toMap(actual.getNearestNeighbour(needle)));
+		}
+	}
+
+	private static Map<Integer, Double> toMap(Iterable<Result<Integer>> results) {
+		Map<Integer, Double> map = new HashMap<>();
+		for (Result<Integer> r : results) {
+			map.put(r.value, r.distance);
+		}
+		return map;
+	}
+}
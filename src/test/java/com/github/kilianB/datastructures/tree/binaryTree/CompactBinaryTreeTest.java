@@ -0,0 +1,198 @@
+package com.github.kilianB.datastructures.tree.binaryTree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import com.github.kilianB.TestResources;
+import com.github.kilianB.datastructures.tree.Result;
+import com.github.kilianB.hash.Hash;
+
+class CompactBinaryTreeTest {
+
+	@Test
+	public void searchExactItem() {
+		Hash hash = TestResources.createHash("101010100011", 0);
+		CompactBinaryTree<Integer> tree = new CompactBinaryTree<>(Arrays.asList(hash), Arrays.asList(1), true);
+
+		PriorityQueue<Result<Integer>> results = tree.getElementsWithinHammingDistance(hash, 0);
+		Result<Integer> r = results.peek();
+		assertEquals(1, results.size());
+		assertEquals(1, (int) r.value);
+		assertEquals(0, r.distance);
+	}
+
+	@Test
+	public void searchDistantItem() {
+		Hash hash = TestResources.createHash("101010100011", 0);
+		Hash needle = TestResources.createHash("101010101111", 0);
+		CompactBinaryTree<Integer> tree = new CompactBinaryTree<>(Arrays.asList(hash), Arrays.asList(1), true);
+
+		assertTrue(tree.getElementsWithinHammingDistance(needle, 1).isEmpty());
+		Result<Integer> r = tree.getElementsWithinHammingDistance(needle, 2).peek();
+		assertEquals(1, (int) r.value);
+		assertEquals(2, r.distance);
+	}
+
+	@Test
+	public void emptyTree() {
+		Hash hash = TestResources.createHash("101010100011", 0);
+		CompactBinaryTree<Integer> tree = new CompactBinaryTree<>(new BinaryTree<Integer>(true));
+		assertTrue(tree.getElementsWithinHammingDistance(hash, 5).isEmpty());
+		assertTrue(tree.getNearestNeighbour(hash).isEmpty());
+		assertTrue(tree.getNearestNeighbours(hash, 3).isEmpty());
+	}
+
+	@Test
+	public void duplicateHashes() {
+
+		Hash hash = TestResources.createHash("101010100011", 0);
+		CompactBinaryTree<Integer> tree = new CompactBinaryTree<>(Arrays.asList(hash, hash), Arrays.asList(1, 2),
+				true);
+		assertEquals(1, tree.getLeafCount());
+		assertEquals(2, tree.getElementsWithinHammingDistance(hash, 0).size());
+	}
+
+	@Test
+	public void mismatchingValues() {
+		Hash hash = TestResources.createHash("101010100011", 0);
+		assertThrows(IllegalArgumentException.class, () -> {
+			new CompactBinaryTree<>(Arrays.asList(hash), Collections.emptyList(), true);
+		});
+	}
+
+	@Test
+	public void incompatibleLength() {
+		Hash hash = TestResources.createHash("101010100011", 0);
+		Hash hash1 = TestResources.createHash("1010101000110", 0);
+		assertThrows(IllegalArgumentException.class, () -> {
+			new CompactBinaryTree<>(Arrays.asList(hash, hash1), Arrays.asList(1, 2), true);
+		});
+	}
+
+	@Test
+	public void shortPackedWords() {
+		// 130 bits require 3 words. The hashes only store the words up to their
+		// most significant set bit
+		Hash low = new Hash(new long[] { 0b1011 }, 130, 0);
+		Hash high = new Hash(new long[] { 0b1011, 0, 1L << 1 }, 130, 0);
+		CompactBinaryTree<Integer> tree = new CompactBinaryTree<>(Arrays.asList(low, high), Arrays.asList(1, 2),
+				true);
+
+		Result<Integer> r = tree.getElementsWithinHammingDistance(new Hash(new long[] { 0b1011 }, 130, 0), 0)
+				.peek();
+		assertEquals(1, (int) r.value);
+		assertEquals(2, tree.getElementsWithinHammingDistance(low, 1).size());
+		assertEquals(2, (int) tree.getNearestNeighbour(high).get(0).value);
+	}
+
+	/**
+	 * Compare the results against the binary tree
+	 */
+	@Nested
+	class BinaryTreeEquivalence {
+
+		private List<Hash> hashes = new ArrayList<>();
+		private List<Integer> values = new ArrayList<>();
+
+		private BinaryTree<Integer> binTree = new BinaryTree<>(true);
+
+		@BeforeEach
+		public void populate() {
+			Random rng = new Random(0);
+			for (int i = 0; i < 300; i++) {
+				Hash hash = new Hash(new BigInteger(70, rng), 70, 0);
+				// Add near duplicates and exact duplicates
+				if (i % 3 == 1) {
+					hash = new Hash(hashes.get(i - 1).getHashValue().flipBit(rng.nextInt(70)), 70, 0);
+				} else if (i % 3 == 2) {
+					hash = hashes.get(i - 1);
+				}
+				hashes.add(hash);
+				values.add(i);
+				binTree.addHash(hash, i);
+			}
+		}
+
+		@Test
+		public void sameStructure() {
+			assertEquals(new CompactBinaryTree<>(binTree), new CompactBinaryTree<>(hashes, values, true));
+		}
+
+		@Test
+		public void withinDistance() {
+			CompactBinaryTree<Integer> compact = new CompactBinaryTree<>(binTree);
+			for (int radius : new int[] { 0, 1, 3, 8 }) {
+				for (int i = 0; i < 20; i++) {
+					Hash needle = hashes.get(i);
+					assertEquals(toMap(binTree.getElementsWithinHammingDistance(needle, radius)),
+							toMap(compact.getElementsWithinHammingDistance(needle, radius)));
+				}
+			}
+		}
+
+		@Test
+		public void nearestNeighbour() {
+			CompactBinaryTree<Integer> compact = new CompactBinaryTree<>(hashes, values, true);
+			Random rng = new Random(1);
+			for (int i = 0; i < 20; i++) {
+				Hash needle = new Hash(new BigInteger(70, rng), 70, 0);
+				assertEquals(toMap(binTree.getNearestNeighbour(needle)), toMap(compact.getNearestNeighbour(needle)));
+			}
+		}
+
+		@Test
+		public void nearestNeighbours() {
+			CompactBinaryTree<Integer> compact = new CompactBinaryTree<>(hashes, values, true);
+			Random rng = new Random(2);
+			for (int k : new int[] { 1, 4, 25, 300, 400 }) {
+				for (int i = 0; i < 10; i++) {
+					Hash needle = new Hash(new BigInteger(70, rng), 70, 0);
+					List<Double> expected = new ArrayList<>();
+					for (Hash hash : hashes) {
+						expected.add((double) needle.hammingDistance(hash));
+					}
+					Collections.sort(expected);
+					expected = expected.subList(0, Math.min(k, expected.size()));
+
+					assertEquals(expected, distances(needle, binTree.getNearestNeighbours(needle, k)));
+					assertEquals(expected, distances(needle, compact.getNearestNeighbours(needle, k)));
+				}
+			}
+		}
+
+		/**
+		 * Verify the reported distances and return them in order
+		 */
+		private List<Double> distances(Hash needle, List<Result<Integer>> results) {
+			List<Double> distances = new ArrayList<>();
+			for (Result<Integer> r : results) {
+				assertEquals(needle.hammingDistance(hashes.get(r.value)), r.distance);
+				distances.add(r.distance);
+			}
+			return distances;
+		}
+
+		private Map<Integer, Double> toMap(Iterable<Result<Integer>> results) {
+			Map<Integer, Double> map = new HashMap<>();
+			for (Result<Integer> r : results) {
+				assertEquals(null, map.put(r.value, r.distance));
+			}
+			return map;
+		}
+	}
+}
@@ -0,0 +1,429 @@
+package com.github.kilianB.datastructures.tree.binaryTree;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.kilianB.TestResources;
+import com.github.kilianB.datastructures.tree.Result;
+import com.github.kilianB.hash.Hash;
+
+class ConcurrentBinaryTreeTest {
+
+	private static List<Hash> createHashes(int count, long seed) {
+		Random rng = new Random(seed);
+		List<Hash> hashes = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			if (i > 0 && rng.nextInt(4) == 0) {
+				// Near duplicate of a previous hash
+				long word = hashes.get(rng.nextInt(i)).getPackedHashValue()[0];
+				word ^= 1L << rng.nextInt(64);
+				hashes.add(new Hash(new long[] { word }, 64, 0));
+			} else {
+				hashes.add(new Hash(new long[] { rng.nextLong() }, 64, 0));
+			}
+		}
+		return hashes;
+	}
+
+	@Test
+	public void searchExactItem() {
+		Hash hash = TestResources.createHash("101010100011", 0);
+		ConcurrentBinaryTree<Integer> tree = new ConcurrentBinaryTree<>(true);
+		tree.addHash(hash, 1);
+
+		Result<Integer> r = tree.getElementsWithinHammingDistance(hash, 0).peek();
+		assertEquals(1, (int) r.value);
+		assertEquals(0, r.distance);
+		assertEquals(1, tree.getHashCount());
+	}
+
+	@Test
+	public void emptyTree() {
+		Hash hash = TestResources.createHash("101010100011", 0);
+		ConcurrentBinaryTree<Integer> tree = new ConcurrentBinaryTree<>(true);
+		assertTrue(tree.getElementsWithinHammingDistance(hash, 5).isEmpty());
+		assertTrue(tree.getNearestNeighbour(hash).isEmpty());
+	}
+
+	@Test
+	public void materializedRoot() {
+		ConcurrentBinaryTree<Integer> tree = new ConcurrentBinaryTree<>(true);
+		BinaryTree<Integer> binTree = new BinaryTree<>(true);
+		// Enough hashes to merge the buffer
+		List<Hash> hashes = createHashes(600, 3);
+		for (int i = 0; i < hashes.size(); i++) {
+			tree.addHash(hashes.get(i), i);
+			binTree.addHash(hashes.get(i), i);
+		}
+		for (int i = 0; i < hashes.size(); i += 7) {
+			tree.removeHash(hashes.get(i), i);
+			binTree.removeHash(hashes.get(i), i);
+		}
+		assertEquals(binTree.getRoot(), tree.getRoot());
+	}
+
+	@Test
+	public void incompatibleLength() {
+		ConcurrentBinaryTree<Integer> tree = new ConcurrentBinaryTree<>(true);
+		tree.addHash(TestResources.createHash("101010100011", 0), 1);
+		assertThrows(IllegalArgumentException.class, () -> {
+			tree.addHash(TestResources.createHash("1010101000110", 0), 2);
+		});
+	}
+
+	@Test
+	public void incompatibleAlgorithm() {
+		ConcurrentBinaryTree<Integer> tree = new ConcurrentBinaryTree<>(true);
+		tree.addHash(TestResources.createHash("101010100011", 1), 1);
+		assertThrows(IllegalStateException.class, () -> {
+			tree.addHash(TestResources.createHash("101010100011", 2), 2);
+		});
+	}
+
+	@Test
+	public void matchesBruteForce() {
+		// Enough hashes to merge the buffer multiple times
+		List<Hash> hashes = createHashes(3000, 0);
+		ConcurrentBinaryTree<Integer> tree = new ConcurrentBinaryTree<>(true);
+		for (int i = 0; i < hashes.size(); i++) {
+			tree.addHash(hashes.get(i), i);
+		}
+		assertEquals(hashes.size(), tree.getHashCount());
+
+		for (int q = 0; q < 100; q++) {
+			Hash needle = hashes.get(q * 29);
+			Set<Integer> expected = new HashSet<>();
+			for (int i = 0; i < hashes.size(); i++) {
+				int distance = needle.hammingDistanceFast(hashes.get(i));
+				if (distance <= 10) {
+					expected.add(i);
+				}
+			}
+			Set<Integer> actual = new HashSet<>();
+			for (Result<Integer> r : tree.getElementsWithinHammingDistance(needle, 10)) {
+				actual.add(r.value);
+			}
+			assertEquals(expected, actual);
+
+			List<Result<Integer>> nearest = tree.getNearestNeighbour(needle);
+			assertEquals(0, nearest.get(0).distance);
+		}
+	}
+
+	@Test
+	public void removeHash() {
+		Hash hash = TestResources.createHash("101010100011", 0);
+		ConcurrentBinaryTree<Integer> tree = new ConcurrentBinaryTree<>(true);
+		tree.addHash(hash, 1);
+		tree.addHash(hash, 1);
+		tree.addHash(hash, 2);
+
+		assertFalse(tree.removeHash(hash, 3));
+		assertFalse(tree.removeHash(TestResources.createHash("101010100010", 0), 1));
+		assertTrue(tree.removeHash(hash, 1));
+		assertEquals(2, tree.getHashCount());
+		assertEquals(2, tree.getElementsWithinHammingDistance(hash, 0).size());
+
+		assertTrue(tree.removeHash(hash, 1));
+		assertFalse(tree.removeHash(hash, 1));
+		List<Result<Integer>> nearest = tree.getNearestNeighbour(hash);
+		assertEquals(1, nearest.size());
+		assertEquals(2, (int) nearest.get(0).value);
+	}
+
+	@Test
+	public void removeMatchesBruteForce() {
+		// Enough hashes to merge the buffer and the removed hashes multiple times
+		List<Hash> hashes = createHashes(4000, 4);
+		ConcurrentBinaryTree<Integer> tree = new ConcurrentBinaryTree<>(true);
+		Set<Integer> live = new HashSet<>();
+		Random rng = new Random(5);
+		for (int i = 0; i < hashes.size(); i++) {
+			tree.addHash(hashes.get(i), i);
+			live.add(i);
+			if (rng.nextInt(3) == 0) {
+				int removed = rng.nextInt(i + 1);
+				assertEquals(live.remove(removed), tree.removeHash(hashes.get(removed), removed));
+			}
+
+			if (i % 97 == 0) {
+				Hash needle = hashes.get(rng.nextInt(i + 1));
+				Set<Integer> expected = new HashSet<>();
+				int bestDistance = Integer.MAX_VALUE;
+				List<Integer> distances = new ArrayList<>();
+				for (int index : live) {
+					int distance = needle.hammingDistanceFast(hashes.get(index));
+					if (distance <= 10) {
+						expected.add(index);
+					}
+					bestDistance = Math.min(bestDistance, distance);
+					distances.add(distance);
+				}
+				Collections.sort(distances);
+
+				Set<Integer> actual = new HashSet<>();
+				for (Result<Integer> r : tree.getElementsWithinHammingDistance(needle, 10)) {
+					assertTrue(actual.add(r.value));
+				}
+				assertEquals(expected, actual);
+
+				for (Result<Integer> r : tree.getNearestNeighbour(needle)) {
+					assertTrue(live.contains(r.value));
+					assertEquals(bestDistance, (int) r.distance);
+				}
+
+				List<Result<Integer>> nearest = tree.getNearestNeighbours(needle, 20);
+				assertEquals(Math.min(20, live.size()), nearest.size());
+				for (int j = 0; j < nearest.size(); j++) {
+					assertTrue(live.contains(nearest.get(j).value));
+					assertEquals((int) distances.get(j), (int) nearest.get(j).distance);
+				}
+			}
+		}
+		assertEquals(live.size(), tree.getHashCount());
+	}
+
+	@Test
+	public void nearestNeighbourInBuffer() {
+		ConcurrentBinaryTree<Integer> tree = new ConcurrentBinaryTree<>(true);
+		tree.addHash(TestResources.createHash("101010100011", 0), 1);
+		tree.addHash(TestResources.createHash("101010100010", 0), 2);
+		tree.addHash(TestResources.createHash("101010100000", 0), 3);
+
+		List<Result<Integer>> nearest = tree.getNearestNeighbour(TestResources.createHash("101010100001", 0));
+		assertEquals(2, nearest.size());
+		assertEquals(1, nearest.get(0).distance);
+	}
+
+	@Test
+	public void nearestNeighbours() {
+		List<Hash> hashes = createHashes(3000, 2);
+		ConcurrentBinaryTree<Integer> tree = new ConcurrentBinaryTree<>(true);
+		for (int i = 0; i < hashes.size(); i++) {
+			tree.addHash(hashes.get(i), i);
+		}
+
+		Random rng = new Random(3);
+		for (int k : new int[] { 1, 10, 100 }) {
+			Hash needle = new Hash(new long[] { rng.nextLong() }, 64, 0);
+			List<Integer> expected = new ArrayList<>();
+			for (Hash hash : hashes) {
+				expected.add(needle.hammingDistanceFast(hash));
+			}
+			Collections.sort(expected);
+
+			List<Result<Integer>> nearest = tree.getNearestNeighbours(needle, k);
+			assertEquals(k, nearest.size());
+			for (int i = 0; i < k; i++) {
+				Result<Integer> r = nearest.get(i);
+				assertEquals(needle.hammingDistanceFast(hashes.get(r.value)), (int) r.distance);
+				assertEquals((int) expected.get(i), (int) r.distance);
+			}
+		}
+	}
+
+	@Test
+	public void nearestNeighboursInBuffer() {
+		ConcurrentBinaryTree<Integer> tree = new ConcurrentBinaryTree<>(true);
+		tree.addHash(TestResources.createHash("101010100011", 0), 1);
+		tree.addHash(TestResources.createHash("101010100000", 0), 2);
+		tree.addHash(TestResources.createHash("111010100010", 0), 3);
+
+		List<Result<Integer>> nearest = tree.getNearestNeighbours(TestResources.createHash("101010100001", 0), 2);
+		assertEquals(2, nearest.size());
+		assertEquals(1, nearest.get(0).distance);
+		assertEquals(1, nearest.get(1).distance);
+		assertThrows(IllegalArgumentException.class, () -> {
+			tree.getNearestNeighbours(TestResources.createHash("101010100001", 0), 0);
+		});
+	}
+
+	@Test
+	public void concurrentAddAndSearch() throws Exception {
+		List<Hash> hashes = createHashes(20000, 1);
+		ConcurrentBinaryTree<Integer> tree = new ConcurrentBinaryTree<>(true);
+
+		int writers = 4;
+		int readers = 4;
+		// One past the index of the last hash added by each writer
+		AtomicInteger[] progress = new AtomicInteger[writers];
+		ExecutorService executor = Executors.newFixedThreadPool(writers + readers);
+		try {
+			List<Future<?>> tasks = new ArrayList<>();
+			for (int w = 0; w < writers; w++) {
+				int writer = w;
+				progress[w] = new AtomicInteger();
+				tasks.add(executor.submit(() -> {
+					for (int i = writer; i < hashes.size(); i += writers) {
+						tree.addHash(hashes.get(i), i);
+						progress[writer].set(i + 1);
+					}
+				}));
+			}
+			for (int r = 0; r < readers; r++) {
+				long seed = r;
+				tasks.add(executor.submit(() -> {
+					Random rng = new Random(seed);
+					for (int q = 0; q < 2000; q++) {
+						int writer = rng.nextInt(writers);
+						int added = progress[writer].get();
+						if (added == 0) {
+							continue;
+						}
+						// Any value added before the search started has to be found
+						int index = writer + writers * rng.nextInt((added - writer - 1) / writers + 1);
+						boolean found = false;
+						for (Result<Integer> res : tree.getElementsWithinHammingDistance(hashes.get(index), 0)) {
+							found |= res.value == index;
+						}
+						assertTrue(found, "Value " + index + " not found");
+					}
+				}));
+			}
+			for (Future<?> task : tasks) {
+				task.get();
+			}
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(1, TimeUnit.MINUTES);
+		}
+
+		assertEquals(hashes.size(), tree.getHashCount());
+		Set<Integer> values = new HashSet<>();
+		for (int i = 0; i < hashes.size(); i++) {
+			for (Result<Integer> res : tree.getElementsWithinHammingDistance(hashes.get(i), 0)) {
+				values.add(res.value);
+			}
+		}
+		assertEquals(hashes.size(), values.size());
+	}
+
+	@Test
+	public void concurrentRemoveAndSearch() throws Exception {
+		List<Hash> hashes = createHashes(20000, 6);
+		ConcurrentBinaryTree<Integer> tree = new ConcurrentBinaryTree<>(true);
+		// Values below the half are never removed
+		int kept = hashes.size() / 2;
+		for (int i = 0; i < hashes.size(); i++) {
+			tree.addHash(hashes.get(i), i);
+		}
+
+		int writers = 4;
+		int readers = 4;
+		ExecutorService executor = Executors.newFixedThreadPool(writers + readers);
+		try {
+			List<Future<?>> tasks = new ArrayList<>();
+			for (int w = 0; w < writers; w++) {
+				int writer = w;
+				tasks.add(executor.submit(() -> {
+					for (int i = kept + writer; i < hashes.size(); i += writers) {
+						assertTrue(tree.removeHash(hashes.get(i), i));
+					}
+				}));
+			}
+			for (int r = 0; r < readers; r++) {
+				long seed = r;
+				tasks.add(executor.submit(() -> {
+					Random rng = new Random(seed);
+					for (int q = 0; q < 2000; q++) {
+						int index = rng.nextInt(kept);
+						boolean found = false;
+						for (Result<Integer> res : tree.getElementsWithinHammingDistance(hashes.get(index), 0)) {
+							found |= res.value == index;
+						}
+						assertTrue(found, "Value " + index + " not found");
+					}
+				}));
+			}
+			for (Future<?> task : tasks) {
+				task.get();
+			}
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(1, TimeUnit.MINUTES);
+		}
+
+		assertEquals(kept, tree.getHashCount());
+		for (int i = 0; i < hashes.size(); i++) {
+			boolean found = false;
+			for (Result<Integer> res : tree.getElementsWithinHammingDistance(hashes.get(i), 0)) {
+				found |= res.value == i;
+			}
+			assertEquals(i < kept, found);
+		}
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void serialization() throws IOException, ClassNotFoundException {
+		List<Hash> hashes = createHashes(500, 2);
+		ConcurrentBinaryTree<Integer> tree = new ConcurrentBinaryTree<>(true);
+		for (int i = 0; i < hashes.size(); i++) {
+			tree.addHash(hashes.get(i), i);
+		}
+
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+			oos.writeObject(tree);
+		}
+		ConcurrentBinaryTree<Integer> copy;
+		try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()))) {
+			copy = (ConcurrentBinaryTree<Integer>) ois.readObject();
+		}
+
+		assertEquals(tree, copy);
+		assertEquals(tree.getElementsWithinHammingDistance(hashes.get(7), 8).size(),
+				copy.getElementsWithinHammingDistance(hashes.get(7), 8).size());
+		copy.addHash(hashes.get(0), -1);
+		assertEquals(hashes.size() + 1, copy.getHashCount());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void serializationAfterRemoval() throws IOException, ClassNotFoundException {
+		List<Hash> hashes = createHashes(500, 3);
+		ConcurrentBinaryTree<Integer> tree = new ConcurrentBinaryTree<>(true);
+		for (int i = 0; i < hashes.size(); i++) {
+			tree.addHash(hashes.get(i), i);
+		}
+		for (int i = 0; i < hashes.size(); i += 3) {
+			tree.removeHash(hashes.get(i), i);
+		}
+
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try (ObjectOutputStream oos = new ObjectOutputStream(bos)) {
+			oos.writeObject(tree);
+		}
+		ConcurrentBinaryTree<Integer> copy;
+		try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()))) {
+			copy = (ConcurrentBinaryTree<Integer>) ois.readObject();
+		}
+
+		assertEquals(tree, copy);
+		assertEquals(tree.hashCode(), copy.hashCode());
+		assertEquals(tree.getHashCount(), copy.getHashCount());
+		assertTrue(copy.getElementsWithinHammingDistance(hashes.get(3), 0).stream().noneMatch(r -> r.value == 3));
+	}
+
+}
@@ -1,11 +1,20 @@
 package com.github.kilianB.datastructures.tree.binaryTreeFuzzy;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
 
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 
 import com.github.kilianB.TestResources;
+import com.github.kilianB.datastructures.tree.NodeInfo;
+import com.github.kilianB.datastructures.tree.Result;
+import com.github.kilianB.datastructures.tree.binaryTree.Node;
 import com.github.kilianB.hash.FuzzyHash;
 import com.github.kilianB.hash.Hash;
 /**
@@ -62,6 +71,88 @@ class FuzzyBinaryTreeTest {
 	}
 	
 	
+	@Test
+	void nearestNeighbours() {
+		FuzzyBinaryTree fuzzyTree = new FuzzyBinaryTree(true);
+
+		FuzzyHash fuzzy = new FuzzyHash(TestResources.createHash("10000100", 0));
+		fuzzy.merge(TestResources.createHash("11100100", 0));
+
+		FuzzyHash fuzzy1 = new FuzzyHash(TestResources.createHash("00101100", 0));
+		fuzzy1.merge(TestResources.createHash("00101101", 0));
+
+		FuzzyHash fuzzy2 = new FuzzyHash(TestResources.createHash("01111011", 0));
+
+		fuzzyTree.addHashes(fuzzy, fuzzy1, fuzzy2);
+
+		Hash needle = TestResources.createHash("10100100", 0);
+		List<Result<FuzzyHash>> results = fuzzyTree.getNearestNeighbours(needle, 2);
+		assertEquals(2, results.size());
+		assertEquals(fuzzy, results.get(0).value);
+		assertEquals(fuzzy1, results.get(1).value);
+		for (Result<FuzzyHash> r : results) {
+			assertEquals(r.value.weightedDistance(needle), r.normalizedHammingDistance, 1e-8);
+		}
+		assertEquals(3, fuzzyTree.getNearestNeighbours(needle, 5).size());
+	}
+
+	@Test
+	void closestNodeExpandedFirst() {
+		PriorityQueue<NodeInfo<FuzzyHash>> queue = new PriorityQueue<>(FuzzyBinaryTree.CLOSEST_FIRST);
+		NodeInfo<FuzzyHash> farDeep = new NodeInfo<>(null, 3, 1);
+		NodeInfo<FuzzyHash> closeShallow = new NodeInfo<>(null, 0.5, 10);
+		NodeInfo<FuzzyHash> closeDeep = new NodeInfo<>(null, 0.5, 2);
+		queue.add(farDeep);
+		queue.add(closeShallow);
+		queue.add(closeDeep);
+		assertEquals(closeDeep, queue.poll());
+		assertEquals(closeShallow, queue.poll());
+		assertEquals(farDeep, queue.poll());
+	}
+
+	@Test
+	void bulkLoad() {
+		Random rng = new Random(0);
+		List<FuzzyHash> fuzzyHashs = new ArrayList<>();
+		FuzzyBinaryTree sequential = new FuzzyBinaryTree(true);
+		for (int i = 0; i < 200; i++) {
+			FuzzyHash fuzzy = new FuzzyHash();
+			long word = rng.nextLong() & 0xFFFFF;
+			for (int j = 0; j < 3; j++) {
+				fuzzy.merge(new Hash(new long[] { word ^ (1L << rng.nextInt(20)) }, 20, 0));
+			}
+			fuzzyHashs.add(fuzzy);
+			sequential.addHash(fuzzy);
+		}
+
+		FuzzyBinaryTree bulk = new FuzzyBinaryTree(fuzzyHashs, true, null);
+		assertEquals(sequential.getHashCount(), bulk.getHashCount());
+		assertSameStructure(sequential.getRoot(), bulk.getRoot(), 20);
+
+		Hash needle = new Hash(new long[] { rng.nextLong() & 0xFFFFF }, 20, 0);
+		assertEquals(sequential.getNearestNeighbour(needle).get(0).value,
+				bulk.getNearestNeighbour(needle).get(0).value);
+	}
+
+	private void assertSameStructure(Node expected, Node actual, int depth) {
+		if (depth == 0) {
+			assertEquals(expected, actual);
+			return;
+		}
+		FuzzyNode expectedFuzzy = (FuzzyNode) expected;
+		FuzzyNode actualFuzzy = (FuzzyNode) actual;
+		assertEquals(expectedFuzzy.lowerDistance, actualFuzzy.lowerDistance);
+		assertEquals(expectedFuzzy.uppderDistance, actualFuzzy.uppderDistance);
+		for (boolean left : new boolean[] { true, false }) {
+			Node child = expected.getChild(left);
+			if (child == null) {
+				assertNull(actual.getChild(left));
+			} else {
+				assertSameStructure(child, actual.getChild(left), depth - 1);
+			}
+		}
+	}
+
 	@Test
 	@Disabled
 	void test() {
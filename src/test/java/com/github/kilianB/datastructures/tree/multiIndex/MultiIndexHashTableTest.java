@@ -0,0 +1,172 @@
+package com.github.kilianB.datastructures.tree.multiIndex;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import com.github.kilianB.TestResources;
+import com.github.kilianB.datastructures.tree.Result;
+import com.github.kilianB.datastructures.tree.binaryTree.BinaryTree;
+import com.github.kilianB.hash.Hash;
+
+class MultiIndexHashTableTest {
+
+	private MultiIndexHashTable<Integer> index;
+
+	@BeforeEach
+	public void createIndex() {
+		index = new MultiIndexHashTable<>(true);
+	}
+
+	@Test
+	public void searchExactItem() {
+		Hash hash = TestResources.createHash("101010100011", 0);
+
+		index.addHash(hash, 1);
+		PriorityQueue<Result<Integer>> results = index.getElementsWithinHammingDistance(hash, 0);
+
+		Result<Integer> r = results.peek();
+		assertEquals(1, results.size());
+		assertEquals(1, (int) r.value);
+		assertEquals(0, r.distance);
+	}
+
+	@Test
+	public void searchDistantItem() {
+		Hash hash = TestResources.createHash("101010100011", 0);
+		Hash needle = TestResources.createHash("101010101111", 0);
+
+		index.addHash(hash, 1);
+		assertEquals(0, index.getElementsWithinHammingDistance(needle, 1).size());
+		Result<Integer> r = index.getElementsWithinHammingDistance(needle, 2).peek();
+		assertEquals(1, (int) r.value);
+		assertEquals(2, r.distance);
+	}
+
+	@Test
+	public void emptyIndex() {
+		Hash hash = TestResources.createHash("101010100011", 0);
+		assertTrue(index.getElementsWithinHammingDistance(hash, 5).isEmpty());
+		assertTrue(index.getNearestNeighbour(hash).isEmpty());
+		assertTrue(index.getNearestNeighbours(hash, 3).isEmpty());
+	}
+
+
+	@Test
+	public void incompatibleAlgorithm() {
+		index.addHash(TestResources.createHash("101010100011", 1), 1);
+		assertThrows(IllegalStateException.class, () -> {
+			index.addHash(TestResources.createHash("101010100011", 2), 1);
+		});
+	}
+
+	@Test
+	public void incompatibleLength() {
+		index.addHash(TestResources.createHash("101010100011", 0), 1);
+		assertThrows(IllegalArgumentException.class, () -> {
+			index.addHash(TestResources.createHash("1010101000110", 0), 1);
+		});
+	}
+
+	@Test
+	public void negativeSubstringCount() {
+		assertThrows(IllegalArgumentException.class, () -> {
+			new MultiIndexHashTable<>(true, -1);
+		});
+	}
+
+	/**
+	 * Compare the results against the binary tree
+	 */
+	@Nested
+	class BinaryTreeEquivalence {
+
+		private List<Hash> hashes = new ArrayList<>();
+
+		private BinaryTree<Integer> binTree = new BinaryTree<>(true);
+
+		@BeforeEach
+		public void populate() {
+			Random rng = new Random(0);
+			index = new MultiIndexHashTable<>(true, 5);
+			for (int i = 0; i < 500; i++) {
+				Hash hash = new Hash(new BigInteger(72, rng), 72, 0);
+				// Add near duplicates to create distances in the interesting range
+				if (i % 2 == 1) {
+					hash = new Hash(hashes.get(i - 1).getHashValue().flipBit(rng.nextInt(72)).flipBit(rng.nextInt(72)),
+							72, 0);
+				}
+				hashes.add(hash);
+				index.addHash(hash, i);
+				binTree.addHash(hash, i);
+			}
+		}
+
+		@Test
+		public void withinDistance() {
+			for (int radius : new int[] { 0, 1, 4, 9, 17, 30 }) {
+				for (int i = 0; i < 20; i++) {
+					Hash needle = hashes.get(i);
+					assertEquals(toMap(binTree.getElementsWithinHammingDistance(needle, radius)),
+							toMap(index.getElementsWithinHammingDistance(needle, radius)));
+				}
+			}
+		}
+
+		@Test
+		public void nearestNeighbour() {
+			Random rng = new Random(1);
+			for (int i = 0; i < 20; i++) {
+				Hash needle = new Hash(new BigInteger(72, rng), 72, 0);
+				assertEquals(toMap(binTree.getNearestNeighbour(needle)), toMap(index.getNearestNeighbour(needle)));
+			}
+		}
+
+		@Test
+		public void nearestNeighbours() {
+			Random rng = new Random(2);
+			for (int k : new int[] { 1, 3, 20, 499, 600 }) {
+				for (int i = 0; i < 10; i++) {
+					// Near and far needles
+					Hash needle = i % 2 == 0 ? new Hash(hashes.get(i).getHashValue().flipBit(rng.nextInt(72)), 72, 0)
+							: new Hash(new BigInteger(72, rng), 72, 0);
+					assertEquals(distances(needle, binTree.getNearestNeighbours(needle, k)),
+							distances(needle, index.getNearestNeighbours(needle, k)));
+				}
+			}
+		}
+
+		/**
+		 * Verify the reported distances and return them in order
+		 */
+		private List<Double> distances(Hash needle, List<Result<Integer>> results) {
+			List<Double> distances = new ArrayList<>();
+			for (Result<Integer> r : results) {
+				assertEquals(needle.hammingDistance(hashes.get(r.value)), r.distance);
+				distances.add(r.distance);
+			}
+			return distances;
+		}
+
+		private Map<Integer, Double> toMap(Iterable<Result<Integer>> results) {
+			Map<Integer, Double> map = new HashMap<>();
+			for (Result<Integer> r : results) {
+				// No duplicates
+				assertEquals(null, map.put(r.value, r.distance));
+			}
+			return map;
+		}
+	}
+}
@@ -13,6 +13,7 @@ import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodType;
 import java.math.BigInteger;
 import java.util.Arrays;
+import java.util.Random;
 
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
@@ -800,6 +801,96 @@ class FuzzyHashTest{
 			assertEquals(0,fuzzy.hammingDistance(fuzzy2));
 		}
 	}
+
+	@Nested
+	class IncrementalHash {
+
+		private Hash[] randomHashes(int count, int bits) {
+			Random rng = new Random(0);
+			Hash[] hashes = new Hash[count];
+			for (int i = 0; i < count; i++) {
+				hashes[i] = new Hash(new BigInteger(bits, rng), bits, 0);
+			}
+			return hashes;
+		}
+
+		private BigInteger majority(FuzzyHash fuzzy) {
+			BigInteger expected = BigInteger.ZERO;
+			for (int i = 0; i < fuzzy.getBitResolution(); i++) {
+				if (fuzzy.bits[i] > 0) {
+					expected = expected.setBit(i);
+				}
+			}
+			return expected;
+		}
+
+		@Test
+		public void mergeAndSubtract() {
+			Hash[] hashes = randomHashes(20, 200);
+			FuzzyHash fuzzy = new FuzzyHash();
+			for (Hash h : hashes) {
+				fuzzy.merge(h);
+				assertEquals(majority(fuzzy), fuzzy.getHashValue());
+			}
+			for (int i = 0; i < 15; i++) {
+				fuzzy.subtract(hashes[i]);
+				assertEquals(majority(fuzzy), fuzzy.getHashValue());
+			}
+			assertEquals(0, fuzzy.hammingDistance(new FuzzyHash(Arrays.copyOfRange(hashes, 15, 20))));
+		}
+
+		@Test
+		public void publishedHashUnchanged() {
+			Hash[] hashes = randomHashes(10, 100);
+			FuzzyHash fuzzy = new FuzzyHash(hashes[0]);
+			long[] packed = fuzzy.getPackedHashValue();
+			long[] copy = packed.clone();
+			for (int i = 1; i < hashes.length; i++) {
+				fuzzy.merge(hashes[i]);
+			}
+			assertNotEquals(0, fuzzy.hammingDistance(hashes[0]));
+			assertArrayEquals(copy, packed);
+		}
+
+		@Test
+		public void weightedDistance() {
+			Hash[] hashes = randomHashes(7, 130);
+			FuzzyHash fuzzy = new FuzzyHash(hashes);
+			Hash h = new Hash(new BigInteger(130, new Random(1)), 130, 0);
+			double expected = 0;
+			double expectedSquared = 0;
+			for (int i = 0; i < 130; i++) {
+				double distance = fuzzy.getWeightedDistance(i, h.getBitUnsafe(i));
+				expected += distance;
+				expectedSquared += distance * distance;
+			}
+			assertEquals(expected / 130, fuzzy.weightedDistance(h), 1e-10);
+			assertEquals(expectedSquared / 130, fuzzy.squaredWeightedDistance(h), 1e-10);
+		}
+
+		@Test
+		public void uncertaintyHash() {
+			Hash[] hashes = randomHashes(5, 90);
+			FuzzyHash fuzzy = new FuzzyHash(hashes);
+			Hash source = hashes[0];
+			boolean[] mask = fuzzy.getUncertaintyMask(0.5);
+			// The first uncertain bit is the most significant bit
+			BigInteger expected = BigInteger.ZERO;
+			int bitCount = 0;
+			for (int i = 0; i < mask.length; i++) {
+				if (mask[i]) {
+					expected = expected.shiftLeft(1);
+					if (source.getBitUnsafe(i)) {
+						expected = expected.add(BigInteger.ONE);
+					}
+					bitCount++;
+				}
+			}
+			Hash uncertain = fuzzy.toUncertaintyHash(source, 0.5);
+			assertEquals(bitCount, uncertain.getBitResolution());
+			assertEquals(expected, uncertain.getHashValue());
+		}
+	}
 	
 	//
 //	class UncertainHash{
@@ -0,0 +1,84 @@
+package com.github.kilianB.hash;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class HammingKernelTest {
+
+	private final HammingKernel kernel = HammingKernel.scalar();
+
+	@Test
+	public void instanceAvailable() {
+		assertNotNull(HammingKernel.getInstance());
+	}
+
+	@Test
+	public void distanceMatchesBigInteger() {
+		Random rng = new Random(0);
+		for (int bits : new int[] { 64, 256, 1024 }) {
+			Hash hash = new Hash(new BigInteger(bits, rng), bits, 0);
+			Hash hash1 = new Hash(new BigInteger(bits, rng), bits, 0);
+			int expected = hash.getHashValue().xor(hash1.getHashValue()).bitCount();
+			assertEquals(expected, kernel.distance(hash.getPackedHashValue(), hash1.getPackedHashValue()));
+			assertEquals(expected, HammingKernel.getInstance().distance(hash.getPackedHashValue(),
+					hash1.getPackedHashValue()));
+			assertEquals(expected, hash.hammingDistanceFast(hash1));
+		}
+	}
+
+	@Test
+	public void distanceWithOffset() {
+		long[] words = { -1L, 0b1011L, 0 };
+		long[] words1 = { 0b0001L, -1L };
+		assertEquals(2, kernel.distance(words, 1, words1, 0, 1));
+		assertEquals(64, kernel.distance(words, 2, words1, 1, 1));
+	}
+
+	@Test
+	public void distancesOneToMany() {
+		Random rng = new Random(1);
+		for (int wordCount : new int[] { 1, 3 }) {
+			int count = 37;
+			long[] needle = new long[wordCount];
+			long[] haystack = new long[count * wordCount];
+			for (int i = 0; i < needle.length; i++) {
+				needle[i] = rng.nextLong();
+			}
+			for (int i = 0; i < haystack.length; i++) {
+				haystack[i] = rng.nextLong();
+			}
+			int[] distances = new int[count];
+			kernel.distances(needle, haystack, wordCount, count, distances);
+			for (int i = 0; i < count; i++) {
+				assertEquals(kernel.distance(needle, 0, haystack, i * wordCount, wordCount), distances[i]);
+			}
+		}
+	}
+
+	@Test
+	public void differentLength() {
+		assertThrows(IllegalArgumentException.class, () -> {
+			kernel.distance(new long[2], new long[3]);
+		});
+	}
+
+	@Test
+	public void haystackTooShort() {
+		assertThrows(IllegalArgumentException.class, () -> {
+			kernel.distances(new long[2], new long[5], 2, 3, new int[3]);
+		});
+	}
+
+	@Test
+	public void distanceArrayTooShort() {
+		assertThrows(IllegalArgumentException.class, () -> {
+			kernel.distances(new long[1], new long[5], 1, 5, new int[4]);
+		});
+	}
+}
@@ -217,6 +217,75 @@ class HashTest {
 		}		
 	}
 
+	@Nested
+	class PackedRepresentation {
+
+		@Test
+		@DisplayName("Round Trip")
+		public void roundTrip() {
+			BigInteger value = new BigInteger("1101000000000000000000000000000000000000000000000000000000000000011", 2);
+			Hash hash0 = new Hash(value, 67, 0);
+			Hash hash1 = new Hash(hash0.getPackedHashValue(), 67, 0);
+			assertAll(() -> {
+				assertEquals(2, hash0.getPackedHashValue().length);
+			}, () -> {
+				assertEquals(value, hash1.getHashValue());
+			});
+		}
+
+		@Test
+		@DisplayName("Distance Equals BigInteger Distance")
+		public void distance() {
+			String bits = "1000110010101010101011111111111111110000000000000000010101010101000111";
+			String bits1 = "1111110010101010100000000000000000000011110000000000010101010101000100";
+			Hash hash0 = new Hash(new BigInteger(bits, 2), bits.length(), 0);
+			Hash hash1 = new Hash(new BigInteger(bits1, 2), bits1.length(), 0);
+			int expected = new BigInteger(bits, 2).xor(new BigInteger(bits1, 2)).bitCount();
+			assertAll(() -> {
+				assertEquals(expected, hash0.hammingDistanceFast(hash1));
+			}, () -> {
+				assertEquals(expected, Hash.hammingDistanceFast(hash0.getPackedHashValue(), hash1.getPackedHashValue()));
+			});
+		}
+
+		@Test
+		@DisplayName("Different Word Count")
+		public void differentWordCount() {
+			long[] words = new long[] { 0b101L };
+			long[] words1 = new long[] { 0b100L, 0b11L };
+			assertAll(() -> {
+				assertEquals(3, Hash.hammingDistanceFast(words, words1));
+			}, () -> {
+				assertEquals(3, Hash.hammingDistanceFast(words1, words));
+			});
+		}
+
+		@Test
+		@DisplayName("Equality Across Representations")
+		public void equality() {
+			Hash hash0 = new Hash(BigInteger.valueOf(5121), 16, 0);
+			Hash hash1 = new Hash(new long[] { 5121 }, 16, 0);
+			assertAll(() -> {
+				assertEquals(hash0, hash1);
+			}, () -> {
+				assertEquals(hash0.hashCode(), hash1.hashCode());
+			});
+		}
+
+		@Test
+		@DisplayName("Test Bit")
+		public void testBit() {
+			Hash hash = new Hash(new long[] { 0, 1L << 63 }, 128, 0);
+			assertAll(() -> {
+				assertTrue(hash.getBitUnsafe(127));
+			}, () -> {
+				assertFalse(hash.getBitUnsafe(126));
+			}, () -> {
+				assertFalse(hash.getBitUnsafe(200));
+			});
+		}
+	}
+
 	@Nested
 	class Serialization{
 		
@@ -8,6 +8,7 @@ import static com.github.kilianB.TestResources.thumbnail;
 import static org.junit.jupiter.api.Assertions.assertAll;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.awt.image.BufferedImage;
@@ -28,6 +29,7 @@ import org.junit.jupiter.params.provider.MethodSource;
 
 import com.github.kilianB.TestResources;
 import com.github.kilianB.hash.Hash;
+import com.github.kilianB.hashAlgorithms.DifferenceHash.DHash;
 import com.github.kilianB.hashAlgorithms.DifferenceHash.Precision;
 
 //TODO  move difference hash to the default test scenarios
@@ -125,6 +127,19 @@ class DifferenceHashTest {
 		assertTrue(ballonHash.normalizedHammingDistance(hashedImage) > 0.8d);
 	}
 
+	/**
+	 * Wrapping a hash must not convert the packed value to a big integer and back
+	 */
+	@Test
+	void keepsPackedHashValue() {
+		Hash hash = new Hash(new long[] { 0x5DEECE66DL, 0x2F }, 70, 5);
+		DHash dHash = new DHash(hash, Precision.Simple, 10, 7);
+		assertSame(hash.getPackedHashValue(), dHash.getPackedHashValue());
+		assertEquals(hash.getHashValue(), dHash.getHashValue());
+		assertEquals(70, dHash.getBitResolution());
+		assertEquals(5, dHash.getAlgorithmId());
+	}
+
 	@Nested
 	@DisplayName("Serialization")
 	class Serizalization {
@@ -0,0 +1,134 @@
+package com.github.kilianB.hashAlgorithms;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.math.BigInteger;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.kilianB.TestResources;
+import com.github.kilianB.hash.Hash;
+
+class HashBuilderTest {
+
+	/**
+	 * Fill the builder with random bits and return the big integer the bits
+	 * represent. The first bit added is the least significant bit.
+	 */
+	private static BigInteger fill(HashBuilder hb, Random rng, int bits) {
+		StringBuilder sb = new StringBuilder("0");
+		for (int i = 0; i < bits; i++) {
+			if (rng.nextBoolean()) {
+				hb.prependOne();
+				sb.insert(1, '1');
+			} else {
+				hb.prependZero();
+				sb.insert(1, '0');
+			}
+		}
+		return new BigInteger(sb.toString(), 2);
+	}
+
+	@Test
+	public void bitOrder() {
+		Random rng = new Random(0);
+		for (int bits : new int[] { 1, 8, 63, 64, 65, 200, 1024 }) {
+			HashBuilder hb = new HashBuilder(bits);
+			BigInteger expected = fill(hb, rng, bits);
+			assertEquals(bits, hb.length());
+			assertEquals(expected, hb.toBigInteger());
+		}
+	}
+
+	@Test
+	public void packedWordsMatchBigInteger() {
+		Random rng = new Random(1);
+		for (int bits : new int[] { 1, 63, 64, 65, 200, 1024 }) {
+			HashBuilder hb = new HashBuilder(bits);
+			BigInteger expected = fill(hb, rng, bits);
+			long[] words = hb.toPackedWords();
+			assertArrayEquals(new Hash(expected, bits, 0).getPackedHashValue(), words);
+			assertEquals(expected, new Hash(words, bits, 0).getHashValue());
+		}
+	}
+
+	@Test
+	public void grow() {
+		HashBuilder hb = new HashBuilder(8);
+		BigInteger expected = fill(hb, new Random(2), 300);
+		assertEquals(expected, hb.toBigInteger());
+		assertEquals(5, hb.toPackedWords().length);
+	}
+
+	@Test
+	public void reset() {
+		Random rng = new Random(3);
+		HashBuilder hb = new HashBuilder(64);
+		fill(hb, rng, 130);
+		hb.reset();
+		assertEquals(0, hb.length());
+		assertEquals(BigInteger.ZERO, hb.toBigInteger());
+		BigInteger expected = fill(hb, rng, 70);
+		assertEquals(expected, hb.toBigInteger());
+		assertEquals(2, hb.toPackedWords().length);
+	}
+
+	@Test
+	public void resetToResolution() {
+		Random rng = new Random(4);
+		HashBuilder hb = new HashBuilder(8);
+		fill(hb, rng, 20);
+		hb.reset(200);
+		assertEquals(0, hb.length());
+		BigInteger expected = fill(hb, rng, 200);
+		assertEquals(expected, hb.toBigInteger());
+		assertEquals(4, hb.toPackedWords().length);
+	}
+
+	@Test
+	public void nestedHashing() {
+		HashingAlgorithm inner = new AverageHash(64);
+		@SuppressWarnings("serial")
+		HashingAlgorithm outer = new AverageHash(64) {
+			@Override
+			protected BigInteger hash(BufferedImage image, HashBuilder hash) {
+				hash.prependOne();
+				// Must not reuse the builder of the outer hash
+				inner.hash(image);
+				return super.hash(image, hash);
+			}
+		};
+		Hash innerHash = inner.hash(TestResources.ballon);
+		Hash outerHash = outer.hash(TestResources.ballon);
+		assertEquals(innerHash.getBitResolution() + 1, outerHash.getBitResolution());
+		assertEquals(innerHash.getHashValue().shiftLeft(1).setBit(0), outerHash.getHashValue());
+	}
+
+	@Test
+	public void bigIntegerHook() {
+		HashingAlgorithm packed = new AverageHash(64);
+		@SuppressWarnings("serial")
+		HashingAlgorithm legacy = new AverageHash(64) {
+			@Override
+			protected BigInteger hash(BufferedImage image, HashBuilder hash) {
+				// Algorithms written against the big integer hook
+				super.hash(image, hash);
+				return hash.toBigInteger();
+			}
+		};
+		assertEquals(packed.hash(TestResources.ballon).getHashValue(),
+				legacy.hash(TestResources.ballon).getHashValue());
+	}
+
+	@Test
+	public void reusedBuilderConsistent() {
+		HashingAlgorithm hasher = new PerceptiveHash(128);
+		Hash ballon = hasher.hash(TestResources.ballon);
+		hasher.hash(TestResources.lenna);
+		assertEquals(ballon, hasher.hash(TestResources.ballon));
+		assertEquals(ballon.getHashValue(), new PerceptiveHash(128).hash(TestResources.ballon).getHashValue());
+	}
+}
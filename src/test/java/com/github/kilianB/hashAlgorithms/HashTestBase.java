@@ -7,6 +7,7 @@ import static com.github.kilianB.TestResources.lowQuality;
 import static com.github.kilianB.TestResources.thumbnail;
 import static org.junit.jupiter.api.Assertions.assertAll;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -18,6 +19,13 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.junit.jupiter.api.BeforeEach;
@@ -269,9 +277,109 @@ public abstract class HashTestBase {
 		}
 	}
 
+	@Nested
+	class BatchHashing {
+
+		@Test
+		public void preserveOrder() {
+			HashingAlgorithm h = getInstance(32 + offsetBitResolution());
+			List<BufferedImage> images = Arrays.asList(ballon, copyright, highQuality, lowQuality, thumbnail);
+			ExecutorService executor = Executors.newFixedThreadPool(4);
+			try {
+				List<HashResult<BufferedImage>> results = h.hashImages(images, executor, 2, true)
+						.collect(Collectors.toList());
+				assertEquals(images.size(), results.size());
+				for (int i = 0; i < images.size(); i++) {
+					HashResult<BufferedImage> result = results.get(i);
+					assertEquals(i, result.getIndex());
+					assertTrue(result.isSuccess());
+					assertEquals(h.hash(images.get(i)), result.getHash());
+				}
+			} finally {
+				executor.shutdown();
+			}
+		}
+
+		@Test
+		public void unordered() {
+			HashingAlgorithm h = getInstance(32 + offsetBitResolution());
+			List<BufferedImage> images = Arrays.asList(ballon, copyright, highQuality, lowQuality, thumbnail);
+			ExecutorService executor = Executors.newFixedThreadPool(4);
+			try {
+				Set<Integer> indices = new HashSet<>();
+				h.hash(images.iterator(), image -> image, executor, 3, false, result -> {
+					assertEquals(h.hash(images.get(result.getIndex())), result.getHash());
+					indices.add(result.getIndex());
+				});
+				assertEquals(images.size(), indices.size());
+			} finally {
+				executor.shutdown();
+			}
+		}
+
+		@Test
+		public void errorPerItem() {
+			HashingAlgorithm h = getInstance(32 + offsetBitResolution());
+			List<File> files = Arrays.asList(
+					new File(TestResources.class.getClassLoader().getResource("ballon.jpg").getFile()),
+					new File("doesNotExist.jpg"));
+			ExecutorService executor = Executors.newFixedThreadPool(2);
+			try {
+				List<HashResult<File>> results = h.hashFiles(files, executor, 2, true).collect(Collectors.toList());
+				assertAll(() -> {
+					assertTrue(results.get(0).isSuccess());
+				}, () -> {
+					assertFalse(results.get(1).isSuccess());
+				}, () -> {
+					assertTrue(results.get(1).getError() instanceof IOException);
+				});
+			} finally {
+				executor.shutdown();
+			}
+		}
+	}
+
+	@Nested
+	class SharedPreparation {
+
+		@Test
+		public void identicalToSourceHash() {
+			HashingAlgorithm h = getInstance(32 + offsetBitResolution());
+			for (BufferedImage image : Arrays.asList(ballon, copyright, highQuality, lowQuality, thumbnail)) {
+				Hash hash = h.hash(new PreparedImage(image));
+				assertEquals(h.hash(image), hash);
+				assertEquals(h.hash(image).getClass(), hash.getClass());
+			}
+		}
+
+		@Test
+		public void sharedBetweenAlgorithms() {
+			HashingAlgorithm h = getInstance(32 + offsetBitResolution());
+			HashingAlgorithm h1 = getInstance(64 + offsetBitResolution());
+			PreparedImage prepared = new PreparedImage(highQuality);
+			assertAll(() -> {
+				assertEquals(h.hash(highQuality), h.hash(prepared));
+			}, () -> {
+				assertEquals(h1.hash(highQuality), h1.hash(prepared));
+			}, () -> {
+				assertEquals(h.hash(highQuality), h.hash(prepared));
+			});
+		}
+
+		@Test
+		public void pyramid() {
+			HashingAlgorithm h = getInstance(32 + offsetBitResolution());
+			Hash pyramidHash = h.hash(new PreparedImage(highQuality, 128));
+			Hash hash = h.hash(highQuality);
+			assertEquals(hash.getBitResolution(), pyramidHash.getBitResolution());
+			assertEquals(hash.getAlgorithmId(), pyramidHash.getAlgorithmId());
+		}
+	}
+
 	@Nested
 	class Filter {
 
+
 		/**
 		 * May not add filter after id has been calculated
 		 */
@@ -1,13 +1,23 @@
 package com.github.kilianB.hashAlgorithms;
 
+import static com.github.kilianB.TestResources.ballon;
+import static com.github.kilianB.TestResources.lenna;
 import static org.junit.jupiter.api.Assertions.assertAll;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 
+import java.awt.image.BufferedImage;
+import java.math.BigInteger;
+import java.util.Objects;
+
+import org.jtransforms.dct.DoubleDCT_2D;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 
+import com.github.kilianB.graphics.FastPixel;
+import com.github.kilianB.graphics.ImageUtil;
+
 class PerceptiveHashTest {
 
 	@Nested
@@ -41,10 +51,101 @@ class PerceptiveHashTest {
 		}
 	}
 
+	/**
+	 * The dct plan and buffers are reused between hashes. The hashes have to be
+	 * identical to the ones computed with a fresh plan and buffer.
+	 */
+	@Test
+	@DisplayName("Identical to previous implementation")
+	void matchesPreviousImplementation() {
+		for (int bitResolution : new int[] { 14, 25, 64, 128 }) {
+			HashingAlgorithm hasher = new PerceptiveHash(bitResolution);
+			HashingAlgorithm previous = new PreviousPerceptiveHash(bitResolution);
+			// Alternate the images to make sure no state leaks between hashes
+			for (BufferedImage image : new BufferedImage[] { ballon, lenna, ballon }) {
+				assertEquals(previous.hash(image).getHashValue(), hasher.hash(image).getHashValue());
+			}
+		}
+	}
+
+	/**
+	 * The implementation of the perceptive hash prior to 3.0.1 creating a new dct
+	 * plan and buffer for every hash.
+	 */
+	private static class PreviousPerceptiveHash extends HashingAlgorithm {
+
+		private static final long serialVersionUID = 1L;
+
+		private int height, width;
+
+		PreviousPerceptiveHash(int bitResolution) {
+			super(bitResolution);
+			int dimension = (int) Math.round(Math.sqrt(bitResolution)) * 4;
+			int normalBound = ((dimension / 4) * (dimension / 4));
+			int higherBound = ((dimension / 4) * (dimension / 4 + 1));
+
+			this.width = dimension;
+			this.height = dimension;
+
+			if (higherBound < bitResolution) {
+				this.width++;
+				this.height++;
+			} else {
+				if (normalBound < bitResolution || (normalBound - bitResolution) > (higherBound - bitResolution)) {
+					this.height += 4;
+				}
+			}
+		}
+
+		@Override
+		protected BigInteger hash(BufferedImage image, HashBuilder hash) {
+			int[][] lum = FastPixel.create(ImageUtil.getScaledInstance(image, width, height)).getLuma();
+
+
+			double[][] lumAsDouble = new double[width][height];
+			for (int x = 0; x < width; x++) {
+				for (int y = 0; y < height; y++) {
+					lumAsDouble[x][y] = lum[x][y] / 255d;
+				}
+			}
+
+			DoubleDCT_2D dct = new DoubleDCT_2D(width, height);
+			dct.forward(lumAsDouble, false);
+
+			double avg = 0;
+			int subWidth = (int) (width / 4d);
+			int subHeight = (int) (height / 4d);
+			int count = subWidth * subHeight;
+
+			for (int i = 1; i < subWidth + 1; i++) {
+				for (int j = 1; j < subHeight + 1; j++) {
+					avg += lumAsDouble[i][j] / count;
+				}
+			}
+
+			for (int i = 1; i < subWidth + 1; i++) {
+				for (int j = 1; j < subHeight + 1; j++) {
+					if (lumAsDouble[i][j] < avg) {
+						hash.prependZero();
+					} else {
+						hash.prependOne();
+					}
+				}
+			}
+			return hash.toBigInteger();
+		}
+
+		@Override
+		protected int precomputeAlgoId() {
+			return Objects.hash(getClass().getName(), height, width);
+		}
+	}
+
 	// Base Hashing algorithm tests
 	@Nested
 	class AlgorithmBaseTests extends HashTestBase {
 
+
 		@Override
 		protected HashingAlgorithm getInstance(int bitResolution) {
 			return new PerceptiveHash(bitResolution);
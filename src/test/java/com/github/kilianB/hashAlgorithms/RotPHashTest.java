@@ -1,13 +1,26 @@
 package com.github.kilianB.hashAlgorithms;
+import static com.github.kilianB.TestResources.ballon;
 import static com.github.kilianB.TestResources.lenna;
 import static org.junit.jupiter.api.Assertions.assertAll;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 
+import java.awt.image.BufferedImage;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import org.jtransforms.dct.DoubleDCT_1D;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 
+import com.github.kilianB.graphics.FastPixel;
+import com.github.kilianB.graphics.ImageUtil;
+import com.github.kilianB.hash.Hash;
+
 /**
  * @author Kilian
  * @since 2.0.0
@@ -63,9 +76,116 @@ class RotPHashTest {
 		assertEquals(200, hasher.hash(lenna).getBitResolution());
 	}
 
+	/**
+	 * The dct plans and buckets are reused between hashes. The hashes have to be
+	 * identical to the ones computed with fresh plans and boxed buckets.
+	 */
+	@Test
+	@DisplayName("Identical to previous implementation")
+	void matchesPreviousImplementation() {
+		for (int bitResolution : new int[] { 14, 25, 64, 200 }) {
+			for (boolean truncateKey : new boolean[] { true, false }) {
+				HashingAlgorithm hasher = new RotPHash(bitResolution, truncateKey);
+				HashingAlgorithm previous = new PreviousRotPHash(bitResolution, truncateKey);
+				// Alternate the images to make sure no state leaks between hashes
+				for (BufferedImage image : new BufferedImage[] { ballon, lenna, ballon }) {
+					Hash expected = previous.hash(image);
+					Hash actual = hasher.hash(image);
+					assertEquals(expected.getBitResolution(), actual.getBitResolution());
+					assertEquals(expected.getHashValue(), actual.getHashValue());
+				}
+			}
+		}
+	}
+
+	/**
+	 * The implementation of the rotational perceptive hash prior to 3.0.1 creating
+	 * new dct plans and boxed buckets for every hash.
+	 */
+	private static class PreviousRotPHash extends HashingAlgorithm {
+
+		private static final long serialVersionUID = 1L;
+
+		private final boolean truncateKey;
+		private int width, height, buckets;
+		private double centerX, centerY, widthPerSection;
+
+		PreviousRotPHash(int bitResolution, boolean truncateKey) {
+			super(bitResolution);
+			this.truncateKey = truncateKey;
+			buckets = (int) (Math.sqrt(this.bitResolution * 1.27)) + 3;
+			width = buckets * 2;
+			height = width;
+			widthPerSection = (width / 2d) / buckets;
+			centerX = (width - 1) / 2d;
+			centerY = centerX;
+		}
+
+		@Override
+		protected BigInteger hash(BufferedImage image, HashBuilder hash) {
+			int[][] lum = FastPixel.create(ImageUtil.getScaledInstance(image, width, height)).getLuma();
+
+			@SuppressWarnings("unchecked")
+			List<Integer>[] values = new List[buckets];
+			for (int i = 0; i < buckets; i++) {
+				values[i] = new ArrayList<Integer>();
+			}
+
+			for (int x = 0; x < width; x++) {
+				for (int y = 0; y < height; y++) {
+					double dx = x - centerX;
+					double dy = y - centerY;
+					int bucket = (int) (Math.sqrt(dx * dx + dy * dy) / widthPerSection);
+					if (bucket >= buckets) {
+						continue;
+					}
+					values[bucket].add(lum[x][y]);
+				}
+			}
+
+			int length = 0;
+			for (int i = 0; i < buckets; i++) {
+				Collections.sort(values[i]);
+
+				double[] arr = new double[values[i].size()];
+				for (int j = 0; j < arr.length; j++) {
+					arr[j] = values[i].get(j);
+				}
+
+				DoubleDCT_1D dct = new DoubleDCT_1D(arr.length);
+				dct.forward(arr, false);
+
+				double avg = 0;
+				int count = arr.length / 4 - 1;
+				for (int j = 2; j < count; j++) {
+					avg += (arr[j] / (count - 2));
+				}
+
+				for (int j = 2; j < count; j++) {
+					if (this.truncateKey && length == bitResolution)
+						break;
+
+					if (arr[j] >= avg) {
+						hash.prependZero();
+					} else {
+						hash.prependOne();
+					}
+					length++;
+				}
+			}
+			return hash.toBigInteger();
+		}
+
+		@Override
+		protected int precomputeAlgoId() {
+			return Objects.hash(getClass().getName(), width, height, truncateKey);
+		}
+	}
+
 	//Base Hashing algorithm tests
 	@Nested
 	class AlgorithmBaseTests extends RotationalTestBase{
+
 		@Override
 		protected HashingAlgorithm getInstance(int bitResolution) {
 			return new RotPHash(bitResolution);
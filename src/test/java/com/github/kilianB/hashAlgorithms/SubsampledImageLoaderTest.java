@@ -0,0 +1,85 @@
+package com.github.kilianB.hashAlgorithms;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.kilianB.TestResources;
+import com.github.kilianB.hash.Hash;
+
+class SubsampledImageLoaderTest {
+
+	private static final File BALLON = new File(
+			TestResources.class.getClassLoader().getResource("ballon.jpg").getFile());
+
+	@Test
+	public void subsamplingFactor() {
+		SubsampledImageLoader loader = new SubsampledImageLoader(100, false);
+		assertAll(() -> {
+			assertEquals(1, loader.getSubsamplingFactor(150, 4000));
+		}, () -> {
+			assertEquals(3, loader.getSubsamplingFactor(500, 360));
+		}, () -> {
+			assertEquals(1, loader.getSubsamplingFactor(50, 50));
+		});
+	}
+
+	@Test
+	public void subsampledDecode() throws IOException {
+		BufferedImage image = new SubsampledImageLoader(100, false).load(BALLON);
+		// 500 x 360 subsampled by 3
+		assertAll(() -> {
+			assertEquals(167, image.getWidth());
+		}, () -> {
+			assertEquals(120, image.getHeight());
+		});
+	}
+
+	@Test
+	public void stream() throws IOException {
+		try (InputStream is = TestResources.class.getClassLoader().getResourceAsStream("ballon.jpg")) {
+			BufferedImage image = new SubsampledImageLoader(100, false).load(is);
+			assertEquals(167, image.getWidth());
+		}
+	}
+
+	/**
+	 * Images smaller than the minimum size are decoded at full resolution
+	 */
+	@Test
+	public void fullResolution() throws IOException {
+		HashingAlgorithm hasher = new PerceptiveHash(32);
+		Hash expected = hasher.hash(BALLON);
+		assertEquals(expected, hasher.hash(BALLON, new SubsampledImageLoader(1000, true)));
+	}
+
+	@Test
+	public void subsampledHash() throws IOException {
+		HashingAlgorithm hasher = new AverageHash(32);
+		Hash hash = hasher.hash(BALLON, new SubsampledImageLoader(100, false));
+		assertEquals(hasher.getKeyResolution(), hash.getBitResolution());
+		assertTrue(hash.normalizedHammingDistance(hasher.hash(BALLON)) < 0.5);
+	}
+
+	@Test
+	public void missingFile() {
+		assertThrows(IOException.class, () -> {
+			new SubsampledImageLoader().load(new File("doesNotExist.jpg"));
+		});
+	}
+
+	@Test
+	public void invalidMinimumSize() {
+		assertThrows(IllegalArgumentException.class, () -> {
+			new SubsampledImageLoader(0, false);
+		});
+	}
+}
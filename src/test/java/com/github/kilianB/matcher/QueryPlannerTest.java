@@ -0,0 +1,346 @@
+package com.github.kilianB.matcher;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.github.kilianB.TestResources;
+import com.github.kilianB.datastructures.tree.Result;
+import com.github.kilianB.hash.Hash;
+import com.github.kilianB.hashAlgorithms.AverageHash;
+import com.github.kilianB.hashAlgorithms.HashingAlgorithm;
+import com.github.kilianB.hashAlgorithms.PerceptiveHash;
+import com.github.kilianB.hashAlgorithms.PreparedImage;
+import com.github.kilianB.matcher.TypedImageMatcher.AlgoSettings;
+
+class QueryPlannerTest {
+
+	private static final int VALUES = 2000;
+
+	private static final int CLUSTERS = 20;
+
+	private static ExecutorService executor;
+
+	@BeforeAll
+	static void startExecutor() {
+		executor = Executors.newFixedThreadPool(3);
+	}
+
+	@AfterAll
+	static void stopExecutor() {
+		executor.shutdown();
+	}
+
+	/**
+	 * Brute force index over random hashes grouped into clusters of near
+	 * duplicates
+	 */
+	private static class FakeSource implements QueryPlanner.Source<Integer, RuntimeException> {
+
+		final Hash[][] hashes;
+		final Hash[][] clusterCenters;
+		final boolean lookup;
+		final AtomicInteger searches = new AtomicInteger();
+		final AtomicInteger lookups = new AtomicInteger();
+
+		FakeSource(int algorithms, boolean lookup, long seed) {
+			this.lookup = lookup;
+			Random rng = new Random(seed);
+			hashes = new Hash[algorithms][VALUES];
+			clusterCenters = new Hash[algorithms][CLUSTERS];
+			for (int k = 0; k < algorithms; k++) {
+				long[] centers = new long[CLUSTERS];
+				for (int c = 0; c < CLUSTERS; c++) {
+					centers[c] = rng.nextLong();
+					clusterCenters[k][c] = new Hash(new long[] { centers[c] }, 64, 0);
+				}
+				for (int v = 0; v < VALUES; v++) {
+					long word = centers[v % CLUSTERS];
+					for (int flip = rng.nextInt(12); flip > 0; flip--) {
+						word ^= 1L << rng.nextInt(64);
+					}
+					hashes[k][v] = new Hash(new long[] { word }, 64, 0);
+				}
+			}
+		}
+
+		@Override
+		public int size(int algorithm) {
+			return VALUES;
+		}
+
+		@Override
+		public Collection<Result<Integer>> search(int algorithm, Hash needle, int maxDistance) {
+			searches.incrementAndGet();
+			List<Result<Integer>> results = new ArrayList<>();
+			for (int v = 0; v < VALUES; v++) {
+				int distance = needle.hammingDistanceFast(hashes[algorithm][v]);
+				if (distance <= maxDistance) {
+					results.add(new Result<>(v, distance, distance / 64d));
+				}
+			}
+			return results;
+		}
+
+		@Override
+		public boolean supportsLookup(int algorithm) {
+			return lookup;
+		}
+
+		@Override
+		public Map<Integer, Hash> lookup(int algorithm, Collection<Integer> candidates) {
+			lookups.incrementAndGet();
+			Map<Integer, Hash> stored = new HashMap<>();
+			for (Integer v : candidates) {
+				stored.put(v, hashes[algorithm][v]);
+			}
+			return stored;
+		}
+	}
+
+	/**
+	 * Brute force index over the hashes of real images
+	 */
+	private static class ImageSource implements QueryPlanner.Source<Integer, RuntimeException> {
+
+		final Hash[][] hashes;
+
+		ImageSource(HashingAlgorithm[] algorithms, BufferedImage[] images) {
+			hashes = new Hash[algorithms.length][images.length];
+			for (int k = 0; k < algorithms.length; k++) {
+				for (int v = 0; v < images.length; v++) {
+					hashes[k][v] = algorithms[k].hash(images[v]);
+				}
+			}
+		}
+
+		@Override
+		public int size(int algorithm) {
+			return hashes[algorithm].length;
+		}
+
+		@Override
+		public Collection<Result<Integer>> search(int algorithm, Hash needle, int maxDistance) {
+			List<Result<Integer>> results = new ArrayList<>();
+			for (int v = 0; v < hashes[algorithm].length; v++) {
+				int distance = needle.hammingDistanceFast(hashes[algorithm][v]);
+				if (distance <= maxDistance) {
+					results.add(new Result<>(v, distance, distance / (double) needle.getBitResolution()));
+				}
+			}
+			return results;
+		}
+
+		@Override
+		public boolean supportsLookup(int algorithm) {
+			return false;
+		}
+
+		@Override
+		public Map<Integer, Hash> lookup(int algorithm, Collection<Integer> candidates) {
+			return null;
+		}
+	}
+
+	private static HashingAlgorithm[] createAlgorithms() {
+		return new HashingAlgorithm[] { new AverageHash(32), new AverageHash(64), new PerceptiveHash(64) };
+	}
+
+	/**
+	 * Intersect the results of all algorithms reporting the distance of the last
+	 * algorithm
+	 */
+	private static Map<Integer, Double> naive(FakeSource source, AlgoSettings[] settings, Hash[] needles) {
+		Map<Integer, Double> expected = new HashMap<>();
+		for (int v = 0; v < VALUES; v++) {
+			int distance = 0;
+			boolean match = true;
+			for (int k = 0; k < settings.length && match; k++) {
+				distance = needles[k].hammingDistanceFast(source.hashes[k][v]);
+				match = distance <= QueryPlanner.getThreshold(settings[k], needles[k]);
+			}
+			if (match) {
+				expected.put(v, (double) distance);
+			}
+		}
+		return expected;
+	}
+
+	private static Map<Integer, Double> toMap(PriorityQueue<Result<Integer>> results) {
+		Map<Integer, Double> actual = new HashMap<>();
+		for (Result<Integer> r : results) {
+			actual.put(r.value, r.distance);
+		}
+		return actual;
+	}
+
+	private static Hash[] needles(FakeSource source, int cluster) {
+		Hash[] needles = new Hash[source.hashes.length];
+		for (int k = 0; k < needles.length; k++) {
+			needles[k] = source.clusterCenters[k][cluster];
+		}
+		return needles;
+	}
+
+	private static void assertMatchesNaive(boolean lookup, boolean parallel) {
+		HashingAlgorithm[] algorithms = createAlgorithms();
+		AlgoSettings[] settings = { new AlgoSettings(10, false), new AlgoSettings(.1, true),
+				new AlgoSettings(4, false) };
+		FakeSource source = new FakeSource(algorithms.length, lookup, 0);
+		QueryPlanner planner = new QueryPlanner();
+
+		// Repeated queries let the planner reorder the algorithms
+		for (int q = 0; q < 3 * CLUSTERS; q++) {
+			Hash[] needles = needles(source, q % CLUSTERS);
+			PriorityQueue<Result<Integer>> results = planner.execute(algorithms, settings, needles, null, source,
+					parallel ? executor : null);
+			assertEquals(naive(source, settings, needles), toMap(results));
+		}
+	}
+
+	@Test
+	public void matchesNaiveIntersectionLookup() {
+		assertMatchesNaive(true, false);
+	}
+
+	@Test
+	public void matchesNaiveIntersectionSearch() {
+		assertMatchesNaive(false, false);
+	}
+
+	@Test
+	public void matchesNaiveIntersectionParallel() {
+		assertMatchesNaive(true, true);
+		assertMatchesNaive(false, true);
+	}
+
+	@Test
+	public void parallelHashesImage() {
+		HashingAlgorithm[] algorithms = createAlgorithms();
+		AlgoSettings[] settings = { new AlgoSettings(.4, true), new AlgoSettings(.4, true),
+				new AlgoSettings(.4, true) };
+		BufferedImage[] images = { TestResources.ballon, TestResources.copyright, TestResources.highQuality,
+				TestResources.lowQuality, TestResources.thumbnail, TestResources.lenna };
+		ImageSource source = new ImageSource(algorithms, images);
+		QueryPlanner planner = new QueryPlanner();
+
+		for (BufferedImage image : images) {
+			Map<Integer, Double> expected = toMap(
+					planner.execute(algorithms, settings, null, new PreparedImage(image), source, null));
+			// All algorithms share the prepared image of the query
+			for (int q = 0; q < 10; q++) {
+				Map<Integer, Double> actual = toMap(
+						planner.execute(algorithms, settings, null, new PreparedImage(image), source, executor));
+				assertEquals(expected, actual);
+			}
+		}
+	}
+
+	@Test
+	public void onlyDriverSearches() {
+		HashingAlgorithm[] algorithms = createAlgorithms();
+		AlgoSettings[] settings = { new AlgoSettings(10, false), new AlgoSettings(10, false),
+				new AlgoSettings(10, false) };
+		FakeSource source = new FakeSource(algorithms.length, true, 1);
+		QueryPlanner planner = new QueryPlanner();
+
+		PriorityQueue<Result<Integer>> results = planner.execute(algorithms, settings, needles(source, 0), null,
+				source, null);
+		assertFalse(results.isEmpty());
+		assertEquals(1, source.searches.get());
+		assertEquals(2, source.lookups.get());
+	}
+
+	@Test
+	public void earlyExit() {
+		HashingAlgorithm[] algorithms = createAlgorithms();
+		AlgoSettings[] settings = { new AlgoSettings(10, false), new AlgoSettings(10, false),
+				new AlgoSettings(10, false) };
+		FakeSource source = new FakeSource(algorithms.length, false, 2);
+		QueryPlanner planner = new QueryPlanner();
+
+		// No hash is close to the inverted cluster center of the first algorithm
+		Hash[] needles = needles(source, 0);
+		needles[0] = new Hash(new long[] { ~needles[0].getPackedHashValue()[0] }, 64, 0);
+
+		PriorityQueue<Result<Integer>> results = planner.execute(algorithms, settings, needles, null, source, null);
+		assertTrue(results.isEmpty());
+		assertEquals(1, source.searches.get());
+	}
+
+	@Test
+	public void mostSelectiveAlgorithmDrives() {
+		HashingAlgorithm[] algorithms = createAlgorithms();
+		// The third algorithm only accepts exact matches
+		AlgoSettings[] settings = { new AlgoSettings(64, false), new AlgoSettings(40, false),
+				new AlgoSettings(0, false) };
+		FakeSource source = new FakeSource(algorithms.length, true, 3);
+		QueryPlanner planner = new QueryPlanner();
+
+		assertArrayEquals(new int[] { 0, 1, 2 }, planner.plan(algorithms));
+		for (int q = 0; q < CLUSTERS; q++) {
+			planner.execute(algorithms, settings, needles(source, q), null, source, null);
+		}
+		assertEquals(2, planner.plan(algorithms)[0]);
+		assertTrue(planner.getSelectivity(algorithms[2]) < planner.getSelectivity(algorithms[0]));
+
+		planner.reset();
+		assertTrue(Double.isNaN(planner.getSelectivity(algorithms[2])));
+		assertArrayEquals(new int[] { 0, 1, 2 }, planner.plan(algorithms));
+	}
+
+	@Test
+	public void limit() {
+		HashingAlgorithm[] algorithms = createAlgorithms();
+		AlgoSettings[] settings = { new AlgoSettings(20, false), new AlgoSettings(20, false),
+				new AlgoSettings(20, false) };
+		FakeSource source = new FakeSource(algorithms.length, true, 5);
+		QueryPlanner planner = new QueryPlanner();
+
+		Hash[] needles = needles(source, 0);
+		List<Double> expected = new ArrayList<>(naive(source, settings, needles).values());
+		Collections.sort(expected);
+
+		PriorityQueue<Result<Integer>> results = planner.execute(algorithms, settings, needles, null, source, null,
+				10);
+		assertEquals(10, results.size());
+		for (int i = 0; i < 10; i++) {
+			assertEquals((double) expected.get(i), results.poll().distance);
+		}
+		assertThrows(IllegalArgumentException.class, () -> {
+			planner.execute(algorithms, settings, needles, null, source, null, 0);
+		});
+	}
+
+	@Test
+	public void missingImage() {
+		HashingAlgorithm[] algorithms = createAlgorithms();
+		AlgoSettings[] settings = { new AlgoSettings(10, false), new AlgoSettings(10, false),
+				new AlgoSettings(10, false) };
+		FakeSource source = new FakeSource(algorithms.length, true, 4);
+		Hash[] needles = needles(source, 0);
+		needles[1] = null;
+		assertThrows(IllegalStateException.class, () -> {
+			new QueryPlanner().execute(algorithms, settings, needles, null, source, null);
+		});
+	}
+}
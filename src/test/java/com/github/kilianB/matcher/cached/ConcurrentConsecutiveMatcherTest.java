@@ -0,0 +1,156 @@
+package com.github.kilianB.matcher.cached;
+
+import static com.github.kilianB.TestResources.ballon;
+import static com.github.kilianB.TestResources.copyright;
+import static com.github.kilianB.TestResources.highQuality;
+import static com.github.kilianB.TestResources.lowQuality;
+import static com.github.kilianB.TestResources.thumbnail;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.kilianB.datastructures.tree.Result;
+import com.github.kilianB.hashAlgorithms.AverageHash;
+import com.github.kilianB.hashAlgorithms.HashingAlgorithm;
+import com.github.kilianB.hashAlgorithms.PerceptiveHash;
+import com.github.kilianB.matcher.TypedImageMatcher.AlgoSettings;
+
+class ConcurrentConsecutiveMatcherTest {
+
+	private static ConcurrentConsecutiveMatcher createMatcher() {
+		ConcurrentConsecutiveMatcher matcher = new ConcurrentConsecutiveMatcher();
+		matcher.addHashingAlgorithm(new AverageHash(32), .4);
+		matcher.addHashingAlgorithm(new PerceptiveHash(64), .3);
+		return matcher;
+	}
+
+	private static void assertMatches(ConcurrentConsecutiveMatcher matcher) {
+		PriorityQueue<Result<BufferedImage>> results = matcher.getMatchingImages(ballon);
+		assertEquals(1, results.size());
+		assertEquals(ballon, results.peek().value);
+
+		PriorityQueue<Result<BufferedImage>> results1 = matcher.getMatchingImages(highQuality);
+		assertEquals(4, results1.size());
+		assertFalse(results1.stream().anyMatch(result -> result.value.equals(ballon)));
+	}
+
+	private static BufferedImage copy(BufferedImage image) {
+		BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = copy.createGraphics();
+		g.drawImage(image, 0, 0, null);
+		g.dispose();
+		return copy;
+	}
+
+	@Test
+	public void defaultMatcher() {
+		ConcurrentConsecutiveMatcher matcher = createMatcher();
+		matcher.addImages(ballon, copyright, highQuality, lowQuality, thumbnail);
+		assertMatches(matcher);
+	}
+
+	@Test
+	public void noAlgorithm() {
+		ConcurrentConsecutiveMatcher matcher = new ConcurrentConsecutiveMatcher();
+		BufferedImage dummyImage = new BufferedImage(1, 1, 0x1);
+		assertThrows(IllegalStateException.class, () -> {
+			matcher.getMatchingImages(dummyImage);
+		});
+	}
+
+	@Test
+	public void removeImage() {
+		ConcurrentConsecutiveMatcher matcher = createMatcher();
+		matcher.addImages(ballon, copyright, highQuality, lowQuality, thumbnail);
+
+		assertTrue(matcher.removeImage(lowQuality));
+		assertFalse(matcher.removeImage(lowQuality));
+		assertEquals(4, matcher.getImageCount());
+
+		PriorityQueue<Result<BufferedImage>> results = matcher.getMatchingImages(highQuality);
+		assertEquals(3, results.size());
+		assertFalse(results.stream().anyMatch(result -> result.value.equals(lowQuality)));
+
+		// The image can be added again
+		matcher.addImage(lowQuality);
+		assertMatches(matcher);
+	}
+
+	@Test
+	public void alterAlgorithmAfterImageHasAlreadyBeenAdded() {
+
+		ConcurrentConsecutiveMatcher matcher = createMatcher();
+		matcher.addImages(ballon, copyright, highQuality, lowQuality, thumbnail);
+
+		Map<HashingAlgorithm, AlgoSettings> algorithm = matcher.getAlgorithms();
+		HashingAlgorithm[] algos = algorithm.keySet().toArray(new HashingAlgorithm[algorithm.size()]);
+		AlgoSettings setting = algorithm.get(algos[1]);
+
+		matcher.removeHashingAlgo(algos[1]);
+		assertEquals(1, matcher.getAlgorithms().size());
+
+		// Recreated original state of the matcher
+		matcher.addHashingAlgorithm(algos[1], setting.getThreshold(), setting.isNormalized());
+		assertEquals(2, matcher.getAlgorithms().size());
+		assertMatches(matcher);
+	}
+
+	@Test
+	public void concurrentAddAndMatch() throws Exception {
+		ConcurrentConsecutiveMatcher matcher = createMatcher();
+
+		int copies = 24;
+		int threads = 6;
+		List<BufferedImage> ballons = new ArrayList<>();
+		for (int i = 0; i < copies; i++) {
+			ballons.add(copy(ballon));
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+		try {
+			List<Future<?>> tasks = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				int thread = t;
+				tasks.add(executor.submit(() -> {
+					for (int i = thread; i < copies; i += threads) {
+						BufferedImage image = ballons.get(i);
+						matcher.addImages(image, copy(highQuality));
+						// The image is visible as soon as it was added
+						assertTrue(matcher.getMatchingImages(image).stream().anyMatch(r -> r.value == image));
+					}
+				}));
+			}
+			// Alter the algorithms while images are added
+			tasks.add(executor.submit(() -> {
+				HashingAlgorithm extra = new AverageHash(16);
+				for (int i = 0; i < 5; i++) {
+					matcher.addHashingAlgorithm(extra, .5);
+					matcher.removeHashingAlgo(extra);
+				}
+			}));
+			for (Future<?> task : tasks) {
+				task.get();
+			}
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(1, TimeUnit.MINUTES);
+		}
+
+		assertEquals(2 * copies, matcher.getImageCount());
+		assertEquals(copies, matcher.getMatchingImages(ballon).size());
+	}
+}
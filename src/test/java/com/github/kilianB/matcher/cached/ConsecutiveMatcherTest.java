@@ -9,6 +9,8 @@ import static org.junit.jupiter.api.Assertions.assertAll;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
 
 import java.awt.image.BufferedImage;
 import java.util.Map;
@@ -107,8 +109,67 @@ class ConsecutiveMatcherTest {
 		});
 	}
 
+	@Test
+	public void pyramidResolution() {
+		ConsecutiveMatcher matcher = createMatcher();
+		matcher.setPyramidResolution(128);
+		matcher.addImages(ballon, copyright, highQuality, lowQuality, thumbnail);
+
+		PriorityQueue<Result<BufferedImage>> results = matcher.getMatchingImages(ballon);
+		assertAll(() -> {
+			assertEquals(ballon, results.peek().value);
+		}, () -> {
+			assertEquals(0, results.peek().distance);
+		});
+	}
+
+	@Test
+	public void closestMatches() {
+		ConsecutiveMatcher matcher = new ConsecutiveMatcher();
+		matcher.addHashingAlgorithm(new AverageHash(32), .4);
+		matcher.addImages(ballon, copyright, highQuality, lowQuality, thumbnail);
+
+		PriorityQueue<Result<BufferedImage>> all = matcher.getMatchingImages(highQuality);
+		PriorityQueue<Result<BufferedImage>> closest = matcher.getMatchingImages(highQuality, 2);
+
+		assertEquals(2, closest.size());
+		assertEquals(0, closest.poll().distance);
+		all.poll();
+		assertEquals(all.poll().distance, closest.poll().distance);
+
+		// Multiple algorithms are truncated after evaluation
+		assertEquals(1, createMatcherWithImages().getMatchingImages(highQuality, 1).size());
+		assertThrows(IllegalArgumentException.class, () -> {
+			matcher.getMatchingImages(highQuality, 0);
+		});
+	}
+
+	@Test
+	public void removeImage() {
+		ConsecutiveMatcher matcher = createMatcherWithImages();
+
+		assertTrue(matcher.removeImage(lowQuality));
+		assertFalse(matcher.removeImage(lowQuality));
+
+		PriorityQueue<Result<BufferedImage>> results = matcher.getMatchingImages(highQuality);
+		assertEquals(3, results.size());
+		assertFalse(results.stream().anyMatch(result -> result.value.equals(lowQuality)));
+
+		// The image can be added again
+		matcher.addImage(lowQuality);
+		assertMatches(matcher);
+	}
+
+	private static ConsecutiveMatcher createMatcherWithImages() {
+		ConsecutiveMatcher matcher = createMatcher();
+		matcher.addImages(ballon, copyright, highQuality, lowQuality, thumbnail);
+		return matcher;
+	}
+
 	@Test
 	public void addAndClearAlgorithms() {
+
+
 		ConsecutiveMatcher matcher = new ConsecutiveMatcher();
 
 		assertEquals(0, matcher.getAlgorithms().size());
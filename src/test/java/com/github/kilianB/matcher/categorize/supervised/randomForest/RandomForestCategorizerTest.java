@@ -0,0 +1,213 @@
+package com.github.kilianB.matcher.categorize.supervised.randomForest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.github.kilianB.TestResources;
+import com.github.kilianB.hash.FuzzyHash;
+import com.github.kilianB.hash.Hash;
+import com.github.kilianB.hashAlgorithms.AverageHash;
+import com.github.kilianB.hashAlgorithms.HashingAlgorithm;
+import com.github.kilianB.hashAlgorithms.PerceptiveHash;
+import com.github.kilianB.hashAlgorithms.RotAverageHash;
+import com.github.kilianB.matcher.categorize.CategorizationResult;
+import com.github.kilianB.matcher.categorize.supervised.LabeledImage;
+
+/**
+ * @author Kilian
+ *
+ */
+class RandomForestCategorizerTest {
+
+	private static ForkJoinPool pool;
+
+	@BeforeAll
+	static void createPool() {
+		pool = new ForkJoinPool(4);
+	}
+
+	@AfterAll
+	static void shutdownPool() {
+		pool.shutdown();
+	}
+
+	private static File resource(String name) {
+		return new File(TestResources.class.getClassLoader().getResource(name).getFile());
+	}
+
+	private static RandomForestCategorizer train(long seed, ForkJoinPool pool) {
+		RandomForestCategorizer categorizer = new RandomForestCategorizer();
+		categorizer.addHashingAlgorithm(new AverageHash(32));
+		categorizer.addHashingAlgorithm(new PerceptiveHash(32));
+		categorizer.addHashingAlgorithm(new RotAverageHash(32));
+
+		categorizer.addTestImages(new LabeledImage(0, resource("ballon.jpg")));
+		categorizer.addTestImages(new LabeledImage(1, resource("copyright.jpg")));
+		categorizer.addTestImages(new LabeledImage(1, resource("highQuality.jpg")));
+		categorizer.addTestImages(new LabeledImage(1, resource("lowQuality.jpg")));
+		categorizer.addTestImages(new LabeledImage(1, resource("thumbnail.jpg")));
+		categorizer.addTestImages(new LabeledImage(5, resource("Lenna.png")));
+		categorizer.addTestImages(new LabeledImage(5, resource("Lenna90.png")));
+		categorizer.addTestImages(new LabeledImage(5, resource("Lenna180.png")));
+		categorizer.addTestImages(new LabeledImage(5, resource("Lenna270.png")));
+
+		categorizer.trainMatcher(15, 2, 2, seed, pool);
+		return categorizer;
+	}
+
+	private static InnerNode inner(Hash[] variables, HashingAlgorithm[] algorithms, int[] variableAlgorithm,
+			int variable, double threshold, TreeNode left, TreeNode right) {
+		InnerNode node = new InnerNode(new FuzzyHash(variables[variable]), algorithms[variableAlgorithm[variable]],
+				variable, threshold, 0, 0, 0);
+		node.leftNode = left;
+		node.rightNode = right;
+		return node;
+	}
+
+	/**
+	 * A hand built forest of three trees. Images close to lenna end up in
+	 * category 5, images close to the ballon in category 0.
+	 */
+	private static RandomForestCategorizer fixture() {
+		HashingAlgorithm[] algorithms = { new AverageHash(32), new PerceptiveHash(32) };
+		int[] variableAlgorithm = { 0, 1 };
+		Hash[] variables = { algorithms[0].hash(TestResources.lenna), algorithms[1].hash(TestResources.ballon) };
+
+		List<TreeNode> trees = new ArrayList<>();
+		trees.add(inner(variables, algorithms, variableAlgorithm, 0, 0.2, new LeafNode(5), new LeafNode(0)));
+		trees.add(inner(variables, algorithms, variableAlgorithm, 1, 0.2, new LeafNode(0),
+				inner(variables, algorithms, variableAlgorithm, 0, 0.2, new LeafNode(5), new LeafNode(1))));
+		trees.add(new LeafNode(1));
+
+		RandomForestCategorizer categorizer = new RandomForestCategorizer();
+		categorizer.forest = trees;
+		categorizer.packedForest = new PackedForest(trees, Arrays.asList(0, 1, 5), variables, variableAlgorithm);
+		categorizer.forestAlgorithms = algorithms;
+		categorizer.usedAlgorithms = categorizer.packedForest.usedAlgorithms(algorithms.length);
+		return categorizer;
+	}
+
+	private static List<BufferedImage> images() {
+		List<BufferedImage> images = new ArrayList<>();
+		images.add(TestResources.ballon);
+		images.add(TestResources.copyright);
+		images.add(TestResources.lowQuality);
+		images.add(TestResources.lenna);
+		images.add(TestResources.lenna180);
+		return images;
+	}
+
+	private static void assertSameTree(TreeNode expected, TreeNode actual) {
+		assertEquals(expected.getClass(), actual.getClass());
+		if (expected instanceof InnerNode) {
+			InnerNode e = (InnerNode) expected;
+			InnerNode a = (InnerNode) actual;
+			assertEquals(e.getVariableIndex(), a.getVariableIndex());
+			assertEquals(e.getThreshold(), a.getThreshold());
+			assertSameTree(e.leftNode, a.leftNode);
+			assertSameTree(e.rightNode, a.rightNode);
+		} else {
+			assertEquals(((LeafNode) expected).category, ((LeafNode) actual).category);
+		}
+	}
+
+	@Test
+	void deterministic() {
+		RandomForestCategorizer sequential = train(42, null);
+		RandomForestCategorizer parallel = train(42, pool);
+
+		assertEquals(sequential.forest.size(), parallel.forest.size());
+		for (int i = 0; i < sequential.forest.size(); i++) {
+			assertSameTree(sequential.forest.get(i), parallel.forest.get(i));
+		}
+		assertEquals(sequential.getOutOfBagError(), parallel.getOutOfBagError());
+		assertEquals(sequential.packedForest.nodeCount(), parallel.packedForest.nodeCount());
+	}
+
+	/**
+	 * Walk the node objects of a tree
+	 */
+	private static int predict(TreeNode node, double[] features) {
+		while (node instanceof InnerNode) {
+			InnerNode inner = (InnerNode) node;
+			node = features[inner.getVariableIndex()] < inner.getThreshold() ? inner.leftNode : inner.rightNode;
+		}
+		return ((LeafNode) node).category;
+	}
+
+	@Test
+	void packedMatchesNodes() {
+		RandomForestCategorizer categorizer = train(1, pool);
+		for (BufferedImage image : images()) {
+			// All algorithms, independent of the algorithms used by the forest
+			Hash[] hashes = new Hash[categorizer.forestAlgorithms.length];
+			for (int i = 0; i < hashes.length; i++) {
+				hashes[i] = categorizer.forestAlgorithms[i].hash(image);
+			}
+			double[] features = categorizer.packedForest.features(hashes);
+			for (int t = 0; t < categorizer.forest.size(); t++) {
+				int category = predict(categorizer.forest.get(t), features);
+				assertEquals(category, categorizer.packedForest.getCategory(categorizer.packedForest.predict(t, features)));
+			}
+		}
+	}
+
+	@Test
+	void batchMatchesSingle() {
+		RandomForestCategorizer categorizer = train(2, pool);
+		List<BufferedImage> images = images();
+		List<CategorizationResult> parallel = categorizer.categorizeImages(images, pool);
+		List<CategorizationResult> sequential = categorizer.categorizeImages(images, null);
+		for (int i = 0; i < images.size(); i++) {
+			CategorizationResult single = categorizer.categorizeImage(images.get(i));
+			assertEquals(single.getCategory(), parallel.get(i).getCategory());
+			assertEquals(single.getQuality(), parallel.get(i).getQuality());
+			assertEquals(single.getCategory(), sequential.get(i).getCategory());
+		}
+	}
+
+	@Test
+	void fixtureBatchMatchesSingle() {
+		RandomForestCategorizer categorizer = fixture();
+		List<BufferedImage> images = images();
+		List<CategorizationResult> parallel = categorizer.categorizeImages(images, pool);
+		List<CategorizationResult> sequential = categorizer.categorizeImages(images, null);
+		assertEquals(images.size(), parallel.size());
+		for (int i = 0; i < images.size(); i++) {
+			CategorizationResult single = categorizer.categorizeImage(images.get(i));
+			assertEquals(single.getCategory(), parallel.get(i).getCategory());
+			assertEquals(single.getQuality(), parallel.get(i).getQuality());
+			assertEquals(single.getCategory(), sequential.get(i).getCategory());
+			assertEquals(single.getQuality(), sequential.get(i).getQuality());
+		}
+		// Ballon and lenna are the variables of the fixture
+		assertEquals(0, parallel.get(0).getCategory());
+		assertEquals(5, parallel.get(3).getCategory());
+		assertEquals(2 / 3d, parallel.get(3).getQuality());
+	}
+
+	@Test
+	void outOfBagErrorRange() {
+		double error = train(3, pool).getOutOfBagError();
+		assertEquals(true, error >= 0 && error <= 1);
+	}
+
+	@Test
+	void untrained() {
+		RandomForestCategorizer categorizer = new RandomForestCategorizer();
+		assertThrows(IllegalStateException.class, () -> {
+			categorizer.trainMatcher(3, 1, 1, 0, null);
+		});
+	}
+}
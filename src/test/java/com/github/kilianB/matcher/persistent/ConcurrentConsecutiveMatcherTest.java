@@ -0,0 +1,178 @@
+package com.github.kilianB.matcher.persistent;
+
+import static com.github.kilianB.TestResources.ballon;
+import static com.github.kilianB.TestResources.copyright;
+import static com.github.kilianB.TestResources.highQuality;
+import static com.github.kilianB.TestResources.lowQuality;
+import static com.github.kilianB.TestResources.thumbnail;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.kilianB.datastructures.tree.Result;
+import com.github.kilianB.hashAlgorithms.AverageHash;
+import com.github.kilianB.hashAlgorithms.PerceptiveHash;
+
+/**
+ * @author Kilian
+ *
+ */
+class ConcurrentConsecutiveMatcherTest {
+
+	private static final BufferedImage[] IMAGES = { ballon, copyright, highQuality, lowQuality, thumbnail };
+
+	private static final String[] IDS = { "Ballon", "Copyright", "HighQuality", "LowQuality", "Thumbnail" };
+
+	private static ConcurrentConsecutiveMatcher createMatcher() {
+		ConcurrentConsecutiveMatcher matcher = new ConcurrentConsecutiveMatcher(true);
+		matcher.addHashingAlgorithm(new AverageHash(64), .4);
+		matcher.addHashingAlgorithm(new PerceptiveHash(64), .3);
+		return matcher;
+	}
+
+	private static void assertMatches(ConcurrentConsecutiveMatcher matcher) {
+		PriorityQueue<Result<String>> results = matcher.getMatchingImages(ballon);
+		assertEquals(1, results.size());
+		assertEquals("Ballon", results.peek().value);
+
+		PriorityQueue<Result<String>> results1 = matcher.getMatchingImages(highQuality);
+		assertEquals(4, results1.size());
+		assertFalse(results1.stream().anyMatch(result -> result.value.equals("Ballon")));
+	}
+
+	@Test
+	public void defaultMatcher() {
+		ConcurrentConsecutiveMatcher matcher = createMatcher();
+		for (int i = 0; i < IMAGES.length; i++) {
+			matcher.addImage(IDS[i], IMAGES[i]);
+		}
+		assertMatches(matcher);
+	}
+
+	@Test
+	public void noAlgorithm() {
+		ConcurrentConsecutiveMatcher matcher = new ConcurrentConsecutiveMatcher(false);
+		BufferedImage dummyImage = new BufferedImage(1, 1, 0x1);
+		assertThrows(IllegalStateException.class, () -> {
+			matcher.getMatchingImages(dummyImage);
+		});
+	}
+
+	@Test
+	public void algorithmsLocked() {
+		ConcurrentConsecutiveMatcher matcher = createMatcher();
+		matcher.addImage("Ballon", ballon);
+		assertThrows(IllegalStateException.class, () -> {
+			matcher.addHashingAlgorithm(new AverageHash(32), .2);
+		});
+	}
+
+	@Test
+	public void removeImage() {
+		ConcurrentConsecutiveMatcher matcher = createMatcher();
+		for (int i = 0; i < IMAGES.length; i++) {
+			matcher.addImage(IDS[i], IMAGES[i]);
+		}
+
+		assertTrue(matcher.removeImage("LowQuality", null));
+		assertFalse(matcher.removeImage("LowQuality", null));
+		assertEquals(4, matcher.getImageCount());
+
+		PriorityQueue<Result<String>> results = matcher.getMatchingImages(highQuality);
+		assertEquals(3, results.size());
+		assertFalse(results.stream().anyMatch(result -> result.value.equals("LowQuality")));
+
+		matcher.addImage("LowQuality", lowQuality);
+		assertMatches(matcher);
+	}
+
+	@Test
+	public void removeImageUncached() {
+		ConcurrentConsecutiveMatcher matcher = new ConcurrentConsecutiveMatcher(false);
+		matcher.addHashingAlgorithm(new AverageHash(64), .4);
+		matcher.addImage("Ballon", ballon);
+		matcher.addImage("HighQuality", highQuality);
+
+		assertThrows(IllegalStateException.class, () -> {
+			matcher.removeImage("Ballon", null);
+		});
+		assertTrue(matcher.removeImage("Ballon", ballon));
+		assertTrue(matcher.getMatchingImages(ballon).isEmpty());
+	}
+
+	@Test
+	public void serializeAndDeserialize() throws IOException, ClassNotFoundException {
+
+		ConcurrentConsecutiveMatcher matcher = createMatcher();
+		for (int i = 0; i < IMAGES.length; i++) {
+			matcher.addImage(IDS[i], IMAGES[i]);
+		}
+
+		File target = new File("ConcurrentConsecutiveMatcherTest.ser");
+		matcher.serializeState(target);
+		ConcurrentConsecutiveMatcher deserialized = (ConcurrentConsecutiveMatcher) PersistentImageMatcher
+				.reconstructState(target, true);
+
+		assertEquals(matcher, deserialized);
+		assertMatches(deserialized);
+
+		// The deserialized matcher still accepts images
+		deserialized.addImage("Ballon1", ballon);
+		assertEquals(2, deserialized.getMatchingImages(ballon).size());
+	}
+
+	@Test
+	public void concurrentAddAndMatch() throws Exception {
+		ConcurrentConsecutiveMatcher matcher = createMatcher();
+
+		int copies = 40;
+		int threads = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> tasks = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				int thread = t;
+				tasks.add(executor.submit(() -> {
+					for (int copy = thread; copy < copies; copy += threads) {
+						for (int i = 0; i < IMAGES.length; i++) {
+							matcher.addImage(IDS[i] + copy, IMAGES[i]);
+						}
+						// Every copy of the ballon added by this thread has to be visible
+						int found = 0;
+						for (Result<String> r : matcher.getMatchingImages(ballon)) {
+							assertTrue(r.value.startsWith("Ballon"));
+							if (Integer.parseInt(r.value.substring(6)) % threads == thread) {
+								found++;
+							}
+						}
+						assertEquals(copy / threads + 1, found);
+					}
+				}));
+			}
+			for (Future<?> task : tasks) {
+				task.get();
+			}
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(1, TimeUnit.MINUTES);
+		}
+
+		assertEquals(copies * IMAGES.length, matcher.getImageCount());
+		assertEquals(copies, matcher.getMatchingImages(ballon).size());
+		assertEquals(copies * 4, matcher.getMatchingImages(highQuality).size());
+	}
+}
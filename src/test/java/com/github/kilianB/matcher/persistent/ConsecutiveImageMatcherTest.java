@@ -9,6 +9,8 @@ import static org.junit.jupiter.api.Assertions.assertAll;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
 import static org.junit.jupiter.api.Assertions.fail;
 
 import java.awt.image.BufferedImage;
@@ -92,6 +94,35 @@ class ConsecutiveImageMatcherTest {
 		assertEquals(1, matcher.getAlgorithms().size());
 	}
 
+	@Test
+	public void removeImage() {
+		PersitentBinaryTreeMatcher matcher = createMatcherAndAddDefaultTestImages();
+
+		assertTrue(matcher.removeImage("LowQuality", null));
+		assertFalse(matcher.removeImage("LowQuality", null));
+
+		PriorityQueue<Result<String>> results = matcher.getMatchingImages(highQuality);
+		assertEquals(3, results.size());
+		assertFalse(results.stream().anyMatch(result -> result.value.equals("LowQuality")));
+
+		matcher.addImage("LowQuality", lowQuality);
+		assertMatches(matcher);
+	}
+
+	@Test
+	public void removeImageUncached() {
+		PersitentBinaryTreeMatcher matcher = new ConsecutiveMatcher(false);
+		matcher.addHashingAlgorithm(new AverageHash(64), .4);
+		matcher.addImage("Ballon", ballon);
+		matcher.addImage("HighQuality", highQuality);
+
+		assertThrows(IllegalStateException.class, () -> {
+			matcher.removeImage("Ballon", null);
+		});
+		assertTrue(matcher.removeImage("Ballon", ballon));
+		assertTrue(matcher.getMatchingImages(ballon).isEmpty());
+	}
+
 	@Test
 	@DisplayName("Empty Matcher")
 	public void noAlgorithm() {
@@ -147,4 +178,33 @@ class ConsecutiveImageMatcherTest {
 		}
 	}
 
+	@Test
+	public void pyramidResolutionLocked() {
+		PersitentBinaryTreeMatcher matcher = createMatcherAndAddDefaultTestImages();
+		assertThrows(IllegalStateException.class, () -> {
+			matcher.setPyramidResolution(128);
+		});
+	}
+
+	@Test
+	public void serializePyramidResolution() {
+		PersitentBinaryTreeMatcher matcher = new ConsecutiveMatcher(true);
+		matcher.addHashingAlgorithm(new AverageHash(32), .4);
+		matcher.setPyramidResolution(128);
+		matcher.addImage("ballon", ballon);
+
+		try {
+			File target = new File("ConsecutiveMatcherPyramidTest.ser");
+			matcher.serializeState(target);
+			PersitentBinaryTreeMatcher deserialized = (PersitentBinaryTreeMatcher) ConsecutiveMatcher
+					.reconstructState(target, true);
+			assertEquals(128, deserialized.getPyramidResolution());
+			assertEquals(0, deserialized.getMatchingImages(ballon).peek().distance);
+		} catch (IOException | ClassNotFoundException e) {
+			e.printStackTrace();
+			fail();
+		}
+	}
+
+
 }
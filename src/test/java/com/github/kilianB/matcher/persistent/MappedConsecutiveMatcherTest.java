@@ -0,0 +1,145 @@
+package com.github.kilianB.matcher.persistent;
+
+import static com.github.kilianB.TestResources.ballon;
+import static com.github.kilianB.TestResources.copyright;
+import static com.github.kilianB.TestResources.highQuality;
+import static com.github.kilianB.TestResources.lowQuality;
+import static com.github.kilianB.TestResources.thumbnail;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.PriorityQueue;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.kilianB.datastructures.tree.Result;
+import com.github.kilianB.hashAlgorithms.AverageHash;
+import com.github.kilianB.hashAlgorithms.PerceptiveHash;
+
+class MappedConsecutiveMatcherTest {
+
+	private static final BufferedImage[] IMAGES = { ballon, copyright, highQuality, lowQuality, thumbnail };
+
+	private static final String[] IDS = { "Ballon", "Copyright", "HighQuality", "LowQuality", "Thumbnail" };
+
+	private static File createFile() throws IOException {
+		File file = File.createTempFile("MappedConsecutiveMatcherTest", ".idx");
+		file.delete();
+		file.deleteOnExit();
+		MappedHashFile.idFile(file).deleteOnExit();
+		return file;
+	}
+
+	private static MappedConsecutiveMatcher createMatcher(File file) throws IOException {
+		MappedConsecutiveMatcher matcher = new MappedConsecutiveMatcher(file);
+		matcher.addHashingAlgorithm(new AverageHash(64), .4);
+		matcher.addHashingAlgorithm(new PerceptiveHash(64), .3);
+		for (int i = 0; i < IMAGES.length; i++) {
+			matcher.addImage(IDS[i], IMAGES[i]);
+		}
+		return matcher;
+	}
+
+	private static void assertMatches(MappedConsecutiveMatcher matcher) throws IOException {
+		PriorityQueue<Result<String>> results = matcher.getMatchingImages(ballon);
+		assertEquals(1, results.size());
+		assertEquals("Ballon", results.peek().value);
+		assertEquals(0, results.peek().distance);
+
+		PriorityQueue<Result<String>> results1 = matcher.getMatchingImages(highQuality);
+		assertEquals(4, results1.size());
+		assertFalse(results1.stream().anyMatch(result -> result.value.equals("Ballon")));
+	}
+
+	@Test
+	public void defaultMatcher() throws IOException {
+		try (MappedConsecutiveMatcher matcher = createMatcher(createFile())) {
+			assertEquals(IMAGES.length, matcher.getImageCount());
+			assertMatches(matcher);
+		}
+	}
+
+	@Test
+	public void emptyMatcher() throws IOException {
+		try (MappedConsecutiveMatcher matcher = new MappedConsecutiveMatcher(createFile())) {
+			matcher.addHashingAlgorithm(new AverageHash(64), .4);
+			assertTrue(matcher.getMatchingImages(ballon).isEmpty());
+			assertFalse(matcher.getFile().exists());
+		}
+	}
+
+	@Test
+	public void noAlgorithm() throws IOException {
+		try (MappedConsecutiveMatcher matcher = new MappedConsecutiveMatcher(createFile())) {
+			BufferedImage dummyImage = new BufferedImage(1, 1, 0x1);
+			assertThrows(IllegalStateException.class, () -> {
+				matcher.getMatchingImages(dummyImage);
+			});
+		}
+	}
+
+	@Test
+	public void algorithmsLocked() throws IOException {
+		try (MappedConsecutiveMatcher matcher = createMatcher(createFile())) {
+			assertThrows(IllegalStateException.class, () -> {
+				matcher.addHashingAlgorithm(new AverageHash(32), .2);
+			});
+			assertThrows(IllegalStateException.class, () -> {
+				matcher.clearHashingAlgorithms();
+			});
+		}
+	}
+
+	@Test
+	public void reopen() throws IOException {
+		File file = createFile();
+		createMatcher(file).close();
+
+		try (MappedConsecutiveMatcher matcher = new MappedConsecutiveMatcher(file)) {
+			assertEquals(2, matcher.getAlgorithms().size());
+			assertEquals(IMAGES.length, matcher.getImageCount());
+			assertMatches(matcher);
+
+			// Reopened matchers keep accepting images
+			matcher.addImage("Ballon1", ballon);
+			assertEquals(2, matcher.getMatchingImages(ballon).size());
+			assertThrows(IllegalStateException.class, () -> {
+				matcher.addHashingAlgorithm(new AverageHash(32), .2);
+			});
+		}
+
+		try (MappedConsecutiveMatcher matcher = new MappedConsecutiveMatcher(file)) {
+			assertEquals(IMAGES.length + 1, matcher.getImageCount());
+		}
+	}
+
+	@Test
+	public void convert() throws IOException {
+		ConsecutiveMatcher source = new ConsecutiveMatcher(true);
+		source.addHashingAlgorithm(new AverageHash(64), .4);
+		source.addHashingAlgorithm(new PerceptiveHash(64), .3);
+		for (int i = 0; i < IMAGES.length; i++) {
+			source.addImage(IDS[i], IMAGES[i]);
+		}
+
+		try (MappedConsecutiveMatcher matcher = MappedConsecutiveMatcher.convert(source, createFile())) {
+			assertEquals(IMAGES.length, matcher.getImageCount());
+			assertEquals(source.getAlgorithms(), matcher.getAlgorithms());
+			assertMatches(matcher);
+		}
+	}
+
+	@Test
+	public void convertRequiresCachedHashes() {
+		ConsecutiveMatcher source = new ConsecutiveMatcher(false);
+		source.addHashingAlgorithm(new AverageHash(64), .4);
+		assertThrows(IllegalArgumentException.class, () -> {
+			MappedConsecutiveMatcher.convert(source, createFile());
+		});
+	}
+}
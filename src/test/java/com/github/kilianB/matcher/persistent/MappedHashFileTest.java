@@ -0,0 +1,232 @@
+package com.github.kilianB.matcher.persistent;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.kilianB.datastructures.tree.Result;
+import com.github.kilianB.hash.Hash;
+
+class MappedHashFileTest {
+
+	private static final int[] BITS = { 64, 100 };
+
+	private static final int[] ALGORITHM_IDS = { 1, 2 };
+
+	private static File createFile() throws IOException {
+		File file = File.createTempFile("MappedHashFileTest", ".idx");
+		file.delete();
+		file.deleteOnExit();
+		MappedHashFile.idFile(file).deleteOnExit();
+		return file;
+	}
+
+	private static Hash createHash(Random rng, int bits, int algorithmId) {
+		long[] words = new long[(bits + 63) / 64];
+		for (int w = 0; w < words.length; w++) {
+			words[w] = rng.nextLong();
+		}
+		if (bits % 64 != 0) {
+			words[words.length - 1] &= (1L << (bits % 64)) - 1;
+		}
+		return new Hash(words, bits, algorithmId);
+	}
+
+	private static Hash[][] createHashes(int count, long seed) {
+		Random rng = new Random(seed);
+		Hash[][] hashes = new Hash[count][BITS.length];
+		for (int i = 0; i < count; i++) {
+			for (int k = 0; k < BITS.length; k++) {
+				if (i > 0 && rng.nextInt(4) == 0) {
+					// Near duplicate of a previous hash
+					long[] words = hashes[rng.nextInt(i)][k].getPackedHashValue().clone();
+					words[0] ^= 1L << rng.nextInt(64);
+					hashes[i][k] = new Hash(words, BITS[k], ALGORITHM_IDS[k]);
+				} else {
+					hashes[i][k] = createHash(rng, BITS[k], ALGORITHM_IDS[k]);
+				}
+			}
+		}
+		return hashes;
+	}
+
+	@Test
+	public void matchesBruteForce() throws IOException {
+		Hash[][] hashes = createHashes(2000, 0);
+		try (MappedHashFile hashFile = MappedHashFile.create(createFile(), BITS, ALGORITHM_IDS, new byte[0])) {
+			for (int i = 0; i < hashes.length; i++) {
+				assertEquals(i, hashFile.append("Image" + i, hashes[i]));
+			}
+			assertEquals(hashes.length, hashFile.size());
+
+			for (int k = 0; k < BITS.length; k++) {
+				for (int q = 0; q < 50; q++) {
+					Hash needle = hashes[q * 37][k];
+					Set<Long> expected = new HashSet<>();
+					for (int i = 0; i < hashes.length; i++) {
+						if (needle.hammingDistanceFast(hashes[i][k]) <= 12) {
+							expected.add((long) i);
+						}
+					}
+					Set<Long> actual = new HashSet<>();
+					for (Result<Long> r : hashFile.search(k, needle, 12)) {
+						assertEquals(needle.hammingDistanceFast(hashes[(int) (long) r.value][k]), (int) r.distance);
+						actual.add(r.value);
+					}
+					assertEquals(expected, actual);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void nearest() throws IOException {
+		Hash[][] hashes = createHashes(2000, 5);
+		try (MappedHashFile hashFile = MappedHashFile.create(createFile(), BITS, ALGORITHM_IDS, new byte[0])) {
+			for (int i = 0; i < hashes.length; i++) {
+				hashFile.append("Image" + i, hashes[i]);
+			}
+			for (int k = 0; k < BITS.length; k++) {
+				Hash needle = hashes[k * 101][k];
+				List<Integer> expected = new ArrayList<>();
+				for (int i = 0; i < hashes.length; i++) {
+					expected.add(needle.hammingDistanceFast(hashes[i][k]));
+				}
+				Collections.sort(expected);
+
+				List<Result<Long>> nearest = hashFile.nearest(k, needle, 20);
+				assertEquals(20, nearest.size());
+				for (int i = 0; i < nearest.size(); i++) {
+					Result<Long> r = nearest.get(i);
+					assertEquals(needle.hammingDistanceFast(hashes[(int) (long) r.value][k]), (int) r.distance);
+					assertEquals((int) expected.get(i), (int) r.distance);
+				}
+			}
+			assertThrows(IllegalArgumentException.class, () -> {
+				hashFile.nearest(0, hashes[0][0], 0);
+			});
+		}
+	}
+
+	@Test
+	public void readHashAndId() throws IOException {
+		Hash[][] hashes = createHashes(10, 1);
+		try (MappedHashFile hashFile = MappedHashFile.create(createFile(), BITS, ALGORITHM_IDS, new byte[0])) {
+			for (int i = 0; i < hashes.length; i++) {
+				hashFile.append("Bild ä" + i, hashes[i]);
+			}
+			for (int i = 0; i < hashes.length; i++) {
+				assertEquals("Bild ä" + i, hashFile.getId(i));
+				for (int k = 0; k < BITS.length; k++) {
+					assertEquals(hashes[i][k], hashFile.getHash(i, k));
+				}
+			}
+			assertThrows(IndexOutOfBoundsException.class, () -> {
+				hashFile.getHash(hashes.length, 0);
+			});
+		}
+	}
+
+	@Test
+	public void searchSeesAppendedRecords() throws IOException {
+		Hash[][] hashes = createHashes(100, 2);
+		try (MappedHashFile hashFile = MappedHashFile.create(createFile(), BITS, ALGORITHM_IDS, new byte[0])) {
+			for (int i = 0; i < hashes.length; i++) {
+				hashFile.append(Integer.toString(i), hashes[i]);
+				long found = hashFile.search(0, hashes[i][0], 0).stream().filter(r -> r.value == hashFile.size() - 1)
+						.count();
+				assertEquals(1, found);
+			}
+		}
+	}
+
+	@Test
+	public void ignoreUnusedCapacity() throws IOException {
+		Hash[][] hashes = createHashes(10, 6);
+		try (MappedHashFile hashFile = MappedHashFile.create(createFile(), BITS, ALGORITHM_IDS, new byte[0])) {
+			for (int i = 0; i < hashes.length; i++) {
+				hashFile.append("Image" + i, hashes[i]);
+			}
+			// The mapping has room for more records than were appended
+			assertEquals(hashes.length, hashFile.search(1, hashes[0][1], BITS[1]).size());
+			assertEquals(hashes.length, hashFile.nearest(0, hashes[0][0], 20).size());
+			assertThrows(IndexOutOfBoundsException.class, () -> {
+				hashFile.getHash(hashes.length, 0);
+			});
+		}
+	}
+
+	@Test
+	public void reopen() throws IOException {
+		File file = createFile();
+		Hash[][] hashes = createHashes(50, 3);
+		byte[] metadata = { 1, 2, 3 };
+		try (MappedHashFile hashFile = MappedHashFile.create(file, BITS, ALGORITHM_IDS, metadata)) {
+			for (int i = 0; i < 40; i++) {
+				hashFile.append(Integer.toString(i), hashes[i]);
+			}
+		}
+		try (MappedHashFile hashFile = MappedHashFile.open(file)) {
+			assertEquals(40, hashFile.size());
+			assertArrayEquals(metadata, hashFile.getMetadata());
+			assertEquals(100, hashFile.getBitResolution(1));
+			assertEquals(2, hashFile.getAlgorithmId(1));
+			assertEquals(hashes[7][1], hashFile.getHash(7, 1));
+			for (int i = 40; i < hashes.length; i++) {
+				hashFile.append(Integer.toString(i), hashes[i]);
+			}
+		}
+		try (MappedHashFile hashFile = MappedHashFile.open(file)) {
+			assertEquals(hashes.length, hashFile.size());
+			assertEquals("45", hashFile.getId(45));
+			assertEquals(hashes[45][0], hashFile.getHash(45, 0));
+		}
+	}
+
+	@Test
+	public void incompatibleHash() throws IOException {
+		try (MappedHashFile hashFile = MappedHashFile.create(createFile(), BITS, ALGORITHM_IDS, new byte[0])) {
+			Hash[] hashes = { createHash(new Random(), 64, 1), createHash(new Random(), 64, 2) };
+			assertThrows(IllegalArgumentException.class, () -> {
+				hashFile.append("Image", hashes);
+			});
+			assertEquals(0, hashFile.size());
+		}
+	}
+
+	@Test
+	public void rejectNewerVersion() throws IOException {
+		File file = createFile();
+		MappedHashFile.create(file, BITS, ALGORITHM_IDS, new byte[0]).close();
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.seek(4);
+			raf.writeInt(MappedHashFile.VERSION + 1);
+		}
+		assertThrows(IOException.class, () -> {
+			MappedHashFile.open(file);
+		});
+	}
+
+	@Test
+	public void rejectForeignFile() throws IOException {
+		File file = createFile();
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.write(new byte[64]);
+		}
+		assertThrows(IOException.class, () -> {
+			MappedHashFile.open(file);
+		});
+	}
+}
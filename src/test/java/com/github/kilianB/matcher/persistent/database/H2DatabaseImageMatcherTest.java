@@ -8,19 +8,28 @@ import static com.github.kilianB.TestResources.thumbnail;
 import static org.junit.jupiter.api.Assertions.assertAll;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 
 import org.h2.tools.DeleteDbFiles;
 import org.junit.jupiter.api.DisplayName;
@@ -290,6 +299,57 @@ class H2DatabaseImageMatcherTest {
 		}
 	}
 
+	@SuppressWarnings("resource")
+	@Test
+	public void getAllMatchingImagesStreamed() throws SQLException, IOException {
+		H2DatabaseImageMatcher dbMatcher = null;
+		try {
+			dbMatcher = new H2DatabaseImageMatcher("TestAllMatchingStreamed", "sa", "");
+			dbMatcher.addHashingAlgorithm(new AverageHash(64), .4);
+			dbMatcher.addHashingAlgorithm(new PerceptiveHash(32), .4);
+			dbMatcher.addImage("ballon", ballon);
+			dbMatcher.addImage("copyright", copyright);
+			dbMatcher.addImage("highQuality", highQuality);
+			dbMatcher.addImage("lowQuality", lowQuality);
+			dbMatcher.addImage("thumbnail", thumbnail);
+
+			Map<String, PriorityQueue<Result<String>>> allMatchingImages = dbMatcher.getAllMatchingImages();
+
+			Map<String, List<Result<String>>> streamed = new HashMap<>();
+			dbMatcher.getAllMatchingImages((id, matches) -> {
+				assertNull(streamed.put(id, matches));
+			}, false, ForkJoinPool.commonPool(), null);
+
+			// Same matches as the in memory map without the image itself
+			for (Entry<String, PriorityQueue<Result<String>>> entry : allMatchingImages.entrySet()) {
+				Set<String> expected = entry.getValue().stream().map(r -> r.value)
+						.filter(id -> !id.equals(entry.getKey())).collect(Collectors.toSet());
+				if (expected.isEmpty()) {
+					assertFalse(streamed.containsKey(entry.getKey()));
+				} else {
+					assertEquals(expected,
+							streamed.get(entry.getKey()).stream().map(r -> r.value).collect(Collectors.toSet()));
+				}
+			}
+
+			// Each pair is only reported once
+			Set<String> pairs = new HashSet<>();
+			dbMatcher.getAllMatchingImages((id, matches) -> {
+				for (Result<String> r : matches) {
+					assertTrue(id.compareTo(r.value) < 0);
+					assertTrue(pairs.add(id + "-" + r.value));
+				}
+			});
+			assertEquals(streamed.values().stream().mapToInt(List::size).sum(), pairs.size() * 2);
+		} finally {
+			try {
+				dbMatcher.deleteDatabase();
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
 	@Nested
 	class EntryExist {
 		@SuppressWarnings("resource")
@@ -360,4 +420,86 @@ class H2DatabaseImageMatcherTest {
 		}
 	}
 
+	@Nested
+	class HashChunkIndex {
+
+		@SuppressWarnings("resource")
+		@Test
+		public void indexedSearch() throws SQLException {
+			H2DatabaseImageMatcher dbMatcher = null;
+			try {
+				dbMatcher = new H2DatabaseImageMatcher("testChunkIndex", "sa", "");
+				HashingAlgorithm aHash = new AverageHash(64);
+				dbMatcher.addHashingAlgorithm(aHash, 10, false);
+				BufferedImage[] images = { ballon, copyright, highQuality, lowQuality, thumbnail };
+				for (int i = 0; i < images.length; i++) {
+					dbMatcher.addImage(Integer.toString(i), images[i]);
+				}
+				assertTrue(dbMatcher.hasHashChunkColumns(dbMatcher.resolveTableName(aHash)));
+
+				Hash needle = aHash.hash(highQuality);
+				// The radius is small enough to be answered by the index
+				assertNotNull(dbMatcher.buildChunkFilterQuery(dbMatcher.resolveTableName(aHash), needle, 10));
+
+				List<Result<String>> results = dbMatcher.getSimilarImages(needle, 10, aHash);
+				for (int i = 0; i < images.length; i++) {
+					boolean expected = needle.hammingDistance(aHash.hash(images[i])) <= 10;
+					String id = Integer.toString(i);
+					assertEquals(expected, results.stream().anyMatch(r -> r.value.equals(id)));
+				}
+			} finally {
+				try {
+					dbMatcher.deleteDatabase();
+				} catch (SQLException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+
+		@SuppressWarnings("resource")
+		@Test
+		public void migrateLegacyTable() throws SQLException {
+			H2DatabaseImageMatcher dbMatcher = null;
+			try {
+				dbMatcher = new H2DatabaseImageMatcher("testChunkMigration", "sa", "");
+				HashingAlgorithm aHash = new AverageHash(64);
+				Hash hash = aHash.hash(ballon);
+				String tableName = dbMatcher.resolveTableName(aHash);
+
+				// Table layout used prior to 3.0.1
+				try (Statement stmt = dbMatcher.conn.createStatement()) {
+					stmt.execute("CREATE TABLE " + tableName + " (url VARCHAR(260) PRIMARY KEY, hash BINARY(8))");
+				}
+				try (PreparedStatement ps = dbMatcher.conn
+						.prepareStatement("INSERT INTO " + tableName + " (url,hash) VALUES(?,?)")) {
+					ps.setString(1, "ballon");
+					ps.setBytes(2, hash.toByteArray());
+					ps.execute();
+				}
+				assertFalse(dbMatcher.hasHashChunkColumns(tableName));
+
+				dbMatcher.addHashingAlgorithm(aHash, 5, false);
+				assertTrue(dbMatcher.hasHashChunkColumns(tableName));
+
+				// Not yet migrated hashes are still found
+				assertEquals(1, dbMatcher.getSimilarImages(hash, 0, aHash).size());
+
+				assertEquals(1, dbMatcher.migrateHashTable(aHash));
+				try (Statement stmt = dbMatcher.conn.createStatement()) {
+					ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + tableName + " WHERE chunk0 IS NULL");
+					rs.next();
+					assertEquals(0, rs.getInt(1));
+				}
+				assertEquals(1, dbMatcher.getSimilarImages(hash, 0, aHash).size());
+				assertEquals(0, dbMatcher.migrateHashTable(aHash));
+			} finally {
+				try {
+					dbMatcher.deleteDatabase();
+				} catch (SQLException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
 }
@@ -0,0 +1,239 @@
+package com.github.kilianB.matcher.persistent.database;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.github.kilianB.datastructures.tree.Result;
+
+/**
+ * @author Kilian
+ *
+ */
+class HashJoinTest {
+
+	private static final int IMAGES = 500;
+
+	private static final int[] BIT_RESOLUTION = { 64, 128 };
+
+	private static final int[] THRESHOLD = { 10, 20 };
+
+	private static ExecutorService executor;
+
+	private static long[][] words;
+
+	private static String[] ids;
+
+	@BeforeAll
+	static void setup() {
+		executor = Executors.newFixedThreadPool(4);
+
+		Random rng = new Random(0);
+		ids = new String[IMAGES];
+		words = new long[][] { new long[IMAGES], new long[IMAGES * 2] };
+		for (int i = 0; i < IMAGES; i++) {
+			ids[i] = String.format("%04d", i);
+			if (i % 5 == 0) {
+				words[0][i] = rng.nextLong();
+				words[1][2 * i] = rng.nextLong();
+				words[1][2 * i + 1] = rng.nextLong();
+			} else {
+				// Near duplicate of the previous image
+				words[0][i] = flip(words[0][i - 1], rng);
+				words[1][2 * i] = flip(words[1][2 * i - 2], rng);
+				words[1][2 * i + 1] = flip(words[1][2 * i - 1], rng);
+			}
+		}
+	}
+
+	@AfterAll
+	static void tearDown() {
+		executor.shutdown();
+	}
+
+	private static long flip(long word, Random rng) {
+		for (int i = rng.nextInt(8); i > 0; i--) {
+			word ^= 1L << rng.nextInt(64);
+		}
+		return word;
+	}
+
+	private static HashJoin createJoin(boolean[][] present) {
+		return new HashJoin(ids, BIT_RESOLUTION, THRESHOLD, words, present);
+	}
+
+	private static HashJoin createJoin() {
+		return createJoin(new boolean[2][]);
+	}
+
+	private static boolean bruteForceMatch(int i, int j) {
+		int d0 = Long.bitCount(words[0][i] ^ words[0][j]);
+		int d1 = Long.bitCount(words[1][2 * i] ^ words[1][2 * j])
+				+ Long.bitCount(words[1][2 * i + 1] ^ words[1][2 * j + 1]);
+		return d0 <= THRESHOLD[0] && d1 <= THRESHOLD[1];
+	}
+
+	private static Set<String> collectPairs(HashJoin join, boolean uniquePairs) throws IOException {
+		Set<String> pairs = new HashSet<>();
+		join.run((id, matches) -> {
+			for (Result<String> r : matches) {
+				assertTrue(pairs.add(id + "-" + r.value));
+			}
+		}, uniquePairs, executor, null, 64);
+		return pairs;
+	}
+
+	@Test
+	public void matchesBruteForce() {
+		HashJoin join = createJoin();
+		for (int i = 0; i < IMAGES; i++) {
+			Set<String> expected = new HashSet<>();
+			for (int j = 0; j < IMAGES; j++) {
+				if (bruteForceMatch(i, j)) {
+					expected.add(ids[j]);
+				}
+			}
+			Set<String> actual = new HashSet<>();
+			for (Result<String> r : join.match(i, false, true)) {
+				actual.add(r.value);
+			}
+			assertEquals(expected, actual);
+		}
+	}
+
+	@Test
+	public void sortedByLastAlgorithm() {
+		HashJoin join = createJoin();
+		for (int i = 0; i < IMAGES; i++) {
+			double last = -1;
+			for (Result<String> r : join.match(i, false, true)) {
+				assertTrue(r.normalizedHammingDistance >= last);
+				assertEquals(r.distance / BIT_RESOLUTION[1], r.normalizedHammingDistance, 1e-9);
+				last = r.normalizedHammingDistance;
+			}
+		}
+	}
+
+	@Test
+	public void uniquePairs() throws IOException {
+		HashJoin join = createJoin();
+		Set<String> all = collectPairs(join, false);
+		Set<String> unique = collectPairs(join, true);
+
+		assertFalse(unique.isEmpty());
+		// Every pair is reported in both directions if unique pairs are disabled
+		assertEquals(all.size(), unique.size() * 2);
+		for (String pair : unique) {
+			String[] split = pair.split("-");
+			assertTrue(split[0].compareTo(split[1]) < 0);
+			assertTrue(all.contains(pair));
+			assertTrue(all.contains(split[1] + "-" + split[0]));
+		}
+	}
+
+	@Test
+	public void incompleteImagesDoNotMatch() throws IOException {
+		boolean[] present = new boolean[IMAGES];
+		for (int i = 0; i < IMAGES; i++) {
+			present[i] = i % 5 != 1;
+		}
+		HashJoin join = createJoin(new boolean[][] { null, present });
+		for (String pair : collectPairs(join, false)) {
+			for (String id : pair.split("-")) {
+				assertTrue(Integer.parseInt(id) % 5 != 1);
+			}
+		}
+	}
+
+	@Test
+	public void resumeFromCheckpoint() throws IOException {
+		File checkpoint = new File("hashJoin.checkpoint");
+		checkpoint.deleteOnExit();
+		checkpoint.delete();
+
+		HashJoin join = createJoin();
+		Set<String> expected = collectPairs(join, true);
+
+		// Abort the search midway
+		List<String> firstRun = new ArrayList<>();
+		assertThrows(IllegalStateException.class, () -> {
+			join.run((id, matches) -> {
+				if (id.equals("0250")) {
+					throw new IllegalStateException("Simulated crash");
+				}
+				firstRun.add(id);
+			}, true, executor, checkpoint, 100);
+		});
+		assertTrue(checkpoint.exists());
+
+		Set<String> pairs = new HashSet<>();
+		List<String> secondRun = new ArrayList<>();
+		join.run((id, matches) -> {
+			secondRun.add(id);
+			for (Result<String> r : matches) {
+				pairs.add(id + "-" + r.value);
+			}
+		}, true, ForkJoinPool.commonPool(), checkpoint, 100);
+
+		// The search resumes at the beginning of the interrupted block
+		assertTrue(secondRun.get(0).compareTo("0200") >= 0);
+		assertTrue(firstRun.contains("0200"));
+		assertFalse(checkpoint.exists());
+
+		for (String pair : expected) {
+			String anchor = pair.split("-")[0];
+			if (anchor.compareTo("0200") >= 0) {
+				assertTrue(pairs.contains(pair));
+			}
+		}
+	}
+
+	@Test
+	public void checkpointOfDifferentJoin() throws IOException {
+		File checkpoint = new File("hashJoinDifferent.checkpoint");
+		checkpoint.deleteOnExit();
+		checkpoint.delete();
+
+		HashJoin join = createJoin();
+		assertThrows(IllegalStateException.class, () -> {
+			join.run((id, matches) -> {
+				if (id.compareTo("0150") > 0) {
+					throw new IllegalStateException("Simulated crash");
+				}
+			}, true, executor, checkpoint, 100);
+		});
+		assertTrue(checkpoint.exists());
+
+		// Different pair setting
+		assertThrows(IllegalStateException.class, () -> {
+			join.run((id, matches) -> {
+			}, false, executor, checkpoint, 100);
+		});
+		checkpoint.delete();
+	}
+
+	@Test
+	public void empty() throws IOException {
+		HashJoin join = new HashJoin(new String[0], BIT_RESOLUTION, THRESHOLD, new long[2][0], new boolean[2][]);
+		join.run((id, matches) -> {
+			throw new AssertionError();
+		}, true, executor, null, 100);
+		assertEquals(0, join.size());
+	}
+}
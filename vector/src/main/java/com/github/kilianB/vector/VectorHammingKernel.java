@@ -0,0 +1,123 @@
+package com.github.kilianB.vector;
+
+import com.github.kilianB.hash.HammingKernel;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Hamming distance kernel utilizing the incubating vector api. Multiple words
+ * are xored at once and the bits are counted lane wise.
+ *
+ * <p>
+ * Long hashes are compared by processing as many words per instruction as the
+ * preferred species of the platform holds. Single word hashes packed into a
+ * contiguous array are compared against the needle several hashes at a time.
+ * The remaining words are counted using {@link Long#bitCount(long)}.
+ *
+ * <p>
+ * The kernel is registered as a service of {@link HammingKernel} and picked up
+ * by {@link HammingKernel#getInstance()} if this module is on the class path
+ * and the jvm was started with <code>--add-modules jdk.incubator.vector</code>.
+ * On platforms without vector registers the kernel refuses to load and the
+ * scalar kernel is used instead.
+ *
+ * @author Kilian
+ * @since 3.0.1
+ */
+public class VectorHammingKernel extends HammingKernel {
+
+	private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+
+	private static final int LANES = SPECIES.length();
+
+	private static final long M1 = 0x5555555555555555L;
+	private static final long M2 = 0x3333333333333333L;
+	private static final long M4 = 0x0F0F0F0F0F0F0F0FL;
+
+	/** Integer species holding one lane for each lane of {@link #SPECIES} */
+	private final VectorSpecies<Integer> intSpecies;
+
+	/**
+	 * @throws UnsupportedOperationException if the platform does not offer
+	 *                                       vector registers wider than a single
+	 *                                       long
+	 */
+	public VectorHammingKernel() {
+		if (LANES < 2) {
+			throw new UnsupportedOperationException("No vector registers available. Preferred species: " + SPECIES);
+		}
+		intSpecies = VectorSpecies.of(int.class, VectorShape.forBitSize(SPECIES.vectorBitSize() / 2));
+	}
+
+	@Override
+	public int distance(long[] words, int offset, long[] words1, int offset1, int wordCount) {
+		int i = 0;
+		int distance = 0;
+		if (wordCount >= LANES) {
+			LongVector sum = LongVector.zero(SPECIES);
+			for (int bound = SPECIES.loopBound(wordCount); i < bound; i += LANES) {
+				LongVector a = LongVector.fromArray(SPECIES, words, offset + i);
+				LongVector b = LongVector.fromArray(SPECIES, words1, offset1 + i);
+				sum = sum.add(bitCount(a.lanewise(VectorOperators.XOR, b)));
+			}
+			distance = (int) sum.reduceLanes(VectorOperators.ADD);
+		}
+		for (; i < wordCount; i++) {
+			distance += Long.bitCount(words[offset + i] ^ words1[offset1 + i]);
+		}
+		return distance;
+	}
+
+	@Override
+	protected void distancesUnchecked(long[] needle, long[] haystack, int wordCount, int count, int[] distances) {
+		if (wordCount == 1) {
+			long word = needle[0];
+			LongVector broadcast = LongVector.broadcast(SPECIES, word);
+			int i = 0;
+			for (int bound = SPECIES.loopBound(count); i < bound; i += LANES) {
+				LongVector hashes = LongVector.fromArray(SPECIES, haystack, i);
+				LongVector counts = bitCount(hashes.lanewise(VectorOperators.XOR, broadcast));
+				((IntVector) counts.convertShape(VectorOperators.L2I, intSpecies, 0)).intoArray(distances, i);
+			}
+			for (; i < count; i++) {
+				distances[i] = Long.bitCount(word ^ haystack[i]);
+			}
+		} else {
+			for (int i = 0; i < count; i++) {
+				distances[i] = distance(needle, 0, haystack, i * wordCount, wordCount);
+			}
+		}
+	}
+
+	@Override
+	public boolean isVectorized() {
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + " [" + SPECIES + "]";
+	}
+
+	/**
+	 * Count the set bits of each lane. The vector api of jdk 17 does not offer a
+	 * bit count operation, the bits are summed up using shifts and masks instead.
+	 *
+	 * @param v the vector
+	 * @return a vector holding the number of set bits of each lane of v
+	 */
+	private static LongVector bitCount(LongVector v) {
+		v = v.sub(v.lanewise(VectorOperators.LSHR, 1).and(M1));
+		v = v.and(M2).add(v.lanewise(VectorOperators.LSHR, 2).and(M2));
+		v = v.add(v.lanewise(VectorOperators.LSHR, 4)).and(M4);
+		// Sum up the bytes. 64 fits into the lowest 7 bits
+		v = v.add(v.lanewise(VectorOperators.LSHR, 8));
+		v = v.add(v.lanewise(VectorOperators.LSHR, 16));
+		v = v.add(v.lanewise(VectorOperators.LSHR, 32));
+		return v.and(0x7FL);
+	}
+}
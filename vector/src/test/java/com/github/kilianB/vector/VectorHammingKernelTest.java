@@ -0,0 +1,67 @@
+package com.github.kilianB.vector;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.kilianB.hash.HammingKernel;
+
+class VectorHammingKernelTest {
+
+	private final HammingKernel vector = new VectorHammingKernel();
+
+	private final HammingKernel scalar = HammingKernel.scalar();
+
+	private static long[] random(Random rng, int length) {
+		long[] words = new long[length];
+		for (int i = 0; i < length; i++) {
+			words[i] = rng.nextLong();
+		}
+		return words;
+	}
+
+	@Test
+	public void loadedAsService() {
+		assertTrue(HammingKernel.getInstance() instanceof VectorHammingKernel);
+		assertTrue(HammingKernel.getInstance().isVectorized());
+	}
+
+	@Test
+	public void distanceMatchesScalar() {
+		Random rng = new Random(0);
+		// Covers word counts below, at and above multiples of the lane count
+		for (int wordCount = 1; wordCount <= 33; wordCount++) {
+			long[] a = random(rng, wordCount + 3);
+			long[] b = random(rng, wordCount + 5);
+			assertEquals(scalar.distance(a, 3, b, 5, wordCount), vector.distance(a, 3, b, 5, wordCount));
+		}
+	}
+
+	@Test
+	public void extremeValues() {
+		long[] ones = { -1L, -1L, -1L, -1L, -1L, -1L, -1L, -1L };
+		long[] zeros = new long[ones.length];
+		assertEquals(64 * ones.length, vector.distance(ones, zeros));
+		assertEquals(0, vector.distance(ones, ones.clone()));
+	}
+
+	@Test
+	public void distancesMatchScalar() {
+		Random rng = new Random(1);
+		for (int wordCount : new int[] { 1, 2, 4, 16 }) {
+			for (int count : new int[] { 0, 1, 7, 64, 129 }) {
+				long[] needle = random(rng, wordCount);
+				long[] haystack = random(rng, wordCount * count);
+				int[] expected = new int[count];
+				int[] actual = new int[count];
+				scalar.distances(needle, haystack, wordCount, count, expected);
+				vector.distances(needle, haystack, wordCount, count, actual);
+				assertArrayEquals(expected, actual);
+			}
+		}
+	}
+}